@@ -19,7 +19,10 @@
 
 package org.dasein.cloud;
 
+import org.dasein.cloud.util.InvalidationBus;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Created by stas on 28/04/2015.
@@ -46,4 +49,19 @@ public abstract class AbstractProviderService<T extends CloudProvider> {
         }
         return ctx;
     }
+
+    /**
+     * Publishes an invalidation event for a resource changed through this service so that caches holding data about
+     * resources of that type drop their stale data. Implementations that override mutating operations should call
+     * this once the change has been made.
+     * @param resourceType the Dasein Cloud model class of the changed resource
+     * @param resourceId the unique ID of the changed resource, or null if the change affects many resources
+     */
+    protected void invalidate(@Nonnull Class<?> resourceType, @Nullable String resourceId) {
+        ProviderContext ctx = getProvider().getContext();
+
+        if( ctx != null ) {
+            InvalidationBus.publish(ctx, resourceType, resourceId);
+        }
+    }
 }
@@ -20,5 +20,5 @@
 package org.dasein.cloud;
 
 public enum CloudErrorType {
-    GENERAL, COMMUNICATION, AUTHENTICATION, THROTTLING, CAPACITY, QUOTA
+    GENERAL, COMMUNICATION, AUTHENTICATION, THROTTLING, CAPACITY, QUOTA, UNAVAILABLE
 }
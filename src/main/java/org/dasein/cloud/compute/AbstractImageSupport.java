@@ -30,7 +30,13 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheEvictionPolicy;
+import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.util.TraceContext;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -48,6 +54,11 @@ import java.util.Locale;
  * @since 2013.04
  */
 public abstract class AbstractImageSupport<T extends CloudProvider> extends AbstractProviderService<T> implements MachineImageSupport {
+    /**
+     * How long {@link #getMachineImage(String)} remembers image IDs that could not be found
+     */
+    static public final TimePeriod<Second> NOT_FOUND_TIMEOUT = new TimePeriod<Second>(10, TimePeriod.SECOND);
+
     protected AbstractImageSupport(T provider) {
         super(provider);
     }
@@ -113,7 +124,7 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
             throw new OperationNotSupportedException("Image capture is not supported in " + getProvider().getCloudName());
         }
         getProvider().hold();
-        Thread t = new Thread() {
+        Thread t = new Thread(TraceContext.capture().wrap(new Runnable() {
             public void run() {
                 try {
                     MachineImage img = capture(options, taskTracker);
@@ -129,7 +140,7 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
                     getProvider().release();
                 }
             }
-        };
+        }));
 
         t.setName("Capture of " + options.getVirtualMachineId() + " in " + getProvider().getCloudName());
         t.setDaemon(true);
@@ -141,9 +152,24 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
         throw new OperationNotSupportedException("Image copying is not currently implemented in " + getProvider().getCloudName());
     }
 
+    /**
+     * Looks up an image through {@link #getImage(String)}, remembering image IDs that could not be found for
+     * {@link #NOT_FOUND_TIMEOUT} so that repeated lookups for deleted images do not each go back to the cloud.
+     */
     @Override
     public final @Nullable MachineImage getMachineImage(@Nonnull String providerImageId) throws CloudException, InternalException {
-        return getImage(providerImageId);
+        Cache<MachineImage> cache = Cache.getInstance(getProvider(), "imageNotFound", MachineImage.class, CacheLevel.REGION_ACCOUNT, NOT_FOUND_TIMEOUT, CacheEvictionPolicy.unbounded(), NOT_FOUND_TIMEOUT);
+        ProviderContext ctx = getContext();
+
+        if( cache.isNotFound(ctx, providerImageId) ) {
+            return null;
+        }
+        MachineImage image = getImage(providerImageId);
+
+        if( image == null ) {
+            cache.putNotFound(ctx, providerImageId);
+        }
+        return image;
     }
 
     @Override
@@ -218,7 +244,7 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
         final AsynchronousTask<String> task = new AsynchronousTask<String>();
 
         getProvider().hold();
-        Thread t = new Thread() {
+        Thread t = new Thread(TraceContext.capture().wrap(new Runnable() {
             public void run() {
                 try {
                     task.completeWithResult(capture(options, null).getProviderMachineImageId());
@@ -230,7 +256,7 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
                     getProvider().release();
                 }
             }
-        };
+        }));
 
         t.setName("Capture Image from " + vm.getProviderVirtualMachineId() + " in " + getProvider().getCloudName());
         t.setDaemon(true);
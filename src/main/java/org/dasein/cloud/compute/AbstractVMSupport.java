@@ -38,6 +38,7 @@ import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Megabyte;
 import org.dasein.util.uom.storage.Storage;
 import org.dasein.util.uom.time.Day;
+import org.dasein.util.uom.time.Second;
 import org.dasein.util.uom.time.TimePeriod;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -65,6 +66,16 @@ import java.util.concurrent.Future;
  * @since 2013.04
  */
 public abstract class AbstractVMSupport<T extends CloudProvider> extends AbstractProviderService<T> implements VirtualMachineSupport {
+    /**
+     * How long the listing backing the default single-virtual machine lookup is cached
+     */
+    static public final TimePeriod<Second> INDEX_TIMEOUT = new TimePeriod<Second>(15, TimePeriod.SECOND);
+
+    /**
+     * How long the default single-virtual machine lookup remembers IDs that could not be found
+     */
+    static public final TimePeriod<Second> NOT_FOUND_TIMEOUT = new TimePeriod<Second>(10, TimePeriod.SECOND);
+
     protected AbstractVMSupport(T provider) {
         super(provider);
     }
@@ -183,14 +194,34 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         }
     }
 
+    /**
+     * Looks up a virtual machine in a short-lived, indexed cache of the full listing, so that a burst of lookups costs a
+     * single listing call. The listing is cached for {@link #INDEX_TIMEOUT}, and a miss against an older listing
+     * forces a reload so that newly created resources are found. IDs missing even from a fresh listing are remembered
+     * for {@link #NOT_FOUND_TIMEOUT}.
+     * <p>
+     * The state of a cached virtual machine may be up to {@link #INDEX_TIMEOUT} old. The default {@link #terminate(String)},
+     * {@link #stop(String)} and {@link #reboot(String)} drop the listing when they change a virtual machine and while
+     * they wait for its state to change. Implementations of the other operations that change a virtual machine, such
+     * as start, stop, pause, suspend or alter, should call {@link #invalidate(Class, String)} once the change is made.
+     * The returned object is shared with every caller that finds it in the same listing and must not be modified.
+     * </p>
+     */
     @Override
     public @Nullable VirtualMachine getVirtualMachine( @Nonnull String vmId ) throws InternalException, CloudException {
-        for( VirtualMachine vm : listVirtualMachines(null) ) {
-            if( vm.getProviderVirtualMachineId().equals(vmId) ) {
-                return vm;
+        Cache<VirtualMachine> cache = Cache.getInstance(getProvider(), "virtualMachineIndex", VirtualMachine.class, CacheLevel.REGION_ACCOUNT, INDEX_TIMEOUT, CacheEvictionPolicy.unbounded(), NOT_FOUND_TIMEOUT);
+
+        return cache.get(getContext(), vmId, new Cache.Index<VirtualMachine>() {
+            @Override
+            public @Nullable String getId(@Nonnull VirtualMachine vm) {
+                return vm.getProviderVirtualMachineId();
             }
-        }
-        return null;
+
+            @Override
+            public @Nonnull Iterable<VirtualMachine> list() throws CloudException, InternalException {
+                return listVirtualMachines(null);
+            }
+        });
     }
 
     @Override
@@ -275,11 +306,12 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         return getCapabilities().isUserDataSupported();
     }
 
-    static private final ExecutorService launchPool = Executors.newCachedThreadPool();
+    static private final ExecutorService launchPool = TraceContext.propagating(Executors.newCachedThreadPool());
 
     /**
      * Launches a virtual machine asynchronously from a cached thread pool. All errors are pulled out from the
-     * the {@link java.util.concurrent.Future} result.
+     * the {@link java.util.concurrent.Future} result. The launch is traced as part of the operation in progress
+     * on the calling thread.
      *
      * @param withLaunchOptions the launch options to use in launching the virtual machine
      * @return the unique ID of the launched virtual machine
@@ -288,7 +320,10 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         return launchPool.submit(new Callable<String>() {
             @Override
             public String call() throws Exception {
-                return launch(withLaunchOptions).getProviderVirtualMachineId();
+                String vmId = launch(withLaunchOptions).getProviderVirtualMachineId();
+
+                invalidate(VirtualMachine.class, vmId);
+                return vmId;
             }
         });
     }
@@ -300,7 +335,10 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
             throw new InternalException("Invalid attempt to launch less than 1 virtual machine (requested " + count + ").");
         }
         if( count == 1 ) {
-            return Collections.singleton(launch(withLaunchOptions).getProviderVirtualMachineId());
+            String vmId = launch(withLaunchOptions).getProviderVirtualMachineId();
+
+            invalidate(VirtualMachine.class, vmId);
+            return Collections.singleton(vmId);
         }
         final List<Future<String>> results = new ArrayList<Future<String>>();
         MachineImage image = null;
@@ -382,7 +420,10 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         if( firewallIds != null ) {
             options.behindFirewalls(firewallIds);
         }
-        return launch(options);
+        VirtualMachine vm = launch(options);
+
+        invalidate(VirtualMachine.class, vm.getProviderVirtualMachineId());
+        return vm;
     }
 
     @Override
@@ -411,7 +452,10 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
             }
             options.withMetaData(metaData);
         }
-        return launch(options);
+        VirtualMachine vm = launch(options);
+
+        invalidate(VirtualMachine.class, vm.getProviderVirtualMachineId());
+        return vm;
     }
 
     @Override
@@ -599,6 +643,7 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
 
         while( timeout > System.currentTimeMillis() ) {
             try {
+                invalidate(VirtualMachine.class, vmId);
                 vm = getVirtualMachine(vmId);
             } catch( Throwable ignore ) {
             }
@@ -607,6 +652,7 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
             }
             if( vm.getCurrentState().equals(VmState.STOPPED) ) {
                 start(vmId);
+                invalidate(VirtualMachine.class, vmId);
                 return;
             }
         }
@@ -634,6 +680,7 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
             } catch( InterruptedException ignore ) {
             }
             try {
+                invalidate(VirtualMachine.class, vmId);
                 VirtualMachine vm = getVirtualMachine(vmId);
 
                 if( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) || VmState.STOPPED.equals(vm.getCurrentState()) ) {
@@ -645,6 +692,7 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         }
 
         stop(vmId, true);
+        invalidate(VirtualMachine.class, vmId);
     }
 
     @Override
@@ -706,6 +754,7 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
     @Override
     public void terminate( @Nonnull String vmId ) throws CloudException, InternalException {
         terminate(vmId, null);
+        invalidate(VirtualMachine.class, vmId);
     }
 
     @Override
@@ -752,6 +801,7 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
             }
 
             updateTags(id, tags);
+            invalidate(VirtualMachine.class, id);
         }
     }
 
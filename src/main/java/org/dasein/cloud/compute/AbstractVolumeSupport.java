@@ -29,9 +29,13 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -47,6 +51,10 @@ import java.util.*;
  * @since 2013.04
  */
 public abstract class AbstractVolumeSupport<T extends CloudProvider> extends AbstractProviderService<T> implements VolumeSupport {
+    /**
+     * How long the listing backing the default single-volume lookup is cached
+     */
+    static public final TimePeriod<Second> INDEX_TIMEOUT = new TimePeriod<Second>(15, TimePeriod.SECOND);
 
     protected AbstractVolumeSupport(T provider) {
         super(provider);
@@ -163,6 +171,7 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
     @Override
     public final void detach(@Nonnull String volumeId) throws InternalException, CloudException {
         detach(volumeId, false);
+        invalidate(Volume.class, volumeId);
     }
 
     @Override
@@ -207,14 +216,32 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
         return getCapabilities().getMinimumVolumeSize();
     }
 
+    /**
+     * Looks up a volume in a short-lived, indexed cache of the full listing, so that a burst of lookups costs a
+     * single listing call. The listing is cached for {@link #INDEX_TIMEOUT}, and a miss against an older listing
+     * forces a reload so that newly created resources are found.
+     * <p>
+     * The state of a cached volume may be up to {@link #INDEX_TIMEOUT} old. Implementations of the operations that
+     * change a volume, such as attach, detach or tag changes, should call {@link #invalidate(Class, String)} once the
+     * change is made. The returned object is shared with every caller that finds it in the same listing and must not
+     * be modified.
+     * </p>
+     */
     @Override
     public Volume getVolume(@Nonnull String volumeId) throws InternalException, CloudException {
-        for( Volume volume : listVolumes() ) {
-            if( volume.getProviderVolumeId().equals(volumeId) ) {
-                return volume;
+        Cache<Volume> cache = Cache.getInstance(getProvider(), "volumeIndex", Volume.class, CacheLevel.REGION_ACCOUNT, INDEX_TIMEOUT);
+
+        return cache.get(getContext(), volumeId, new Cache.Index<Volume>() {
+            @Override
+            public @Nullable String getId(@Nonnull Volume volume) {
+                return volume.getProviderVolumeId();
             }
-        }
-        return null;
+
+            @Override
+            public @Nonnull Iterable<Volume> list() throws CloudException, InternalException {
+                return listVolumes();
+            }
+        });
     }
 
     @Override
@@ -305,6 +332,7 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
             }
 
             updateTags(id, tags);
+            invalidate(Volume.class, id);
         }
     }
 
@@ -29,7 +29,12 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheEvictionPolicy;
+import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -51,6 +56,16 @@ import java.util.Map;
  */
 @SuppressWarnings("UnusedDeclaration")
 public abstract class AbstractFirewallSupport<T extends CloudProvider> extends AbstractProviderService<T> implements FirewallSupport {
+    /**
+     * How long the listing backing the default single-firewall lookup is cached
+     */
+    static public final TimePeriod<Second> INDEX_TIMEOUT = new TimePeriod<Second>(15, TimePeriod.SECOND);
+
+    /**
+     * How long the default single-firewall lookup remembers IDs that could not be found
+     */
+    static public final TimePeriod<Second> NOT_FOUND_TIMEOUT = new TimePeriod<Second>(10, TimePeriod.SECOND);
+
     protected AbstractFirewallSupport(T provider) {
         super(provider);
     }
@@ -58,7 +73,7 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
     @Override
     @Deprecated
     public final @Nonnull String authorize(@Nonnull String firewallId, @Nonnull String source, @Nonnull Protocol protocol, int beginPort, int endPort) throws CloudException, InternalException {
-        return authorize(firewallId, Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort, 0);
+        return rulesChanged(firewallId, authorize(firewallId, Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort, 0));
 
     }
 
@@ -66,10 +81,10 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
     @Deprecated
     public final @Nonnull String authorize(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull String source, @Nonnull Protocol protocol, int beginPort, int endPort) throws CloudException, InternalException {
         if( direction.equals(Direction.INGRESS) ) {
-            return authorize(firewallId, direction, Permission.ALLOW, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort, 0);
+            return rulesChanged(firewallId, authorize(firewallId, direction, Permission.ALLOW, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort, 0));
         }
         else {
-            return authorize(firewallId, direction, Permission.ALLOW, RuleTarget.getGlobal(firewallId), protocol, RuleTarget.getCIDR(source), beginPort, endPort, 0);
+            return rulesChanged(firewallId, authorize(firewallId, direction, Permission.ALLOW, RuleTarget.getGlobal(firewallId), protocol, RuleTarget.getCIDR(source), beginPort, endPort, 0));
         }
     }
 
@@ -77,10 +92,10 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
     @Deprecated
     public final @Nonnull String authorize(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull Permission permission, @Nonnull String source, @Nonnull Protocol protocol, int beginPort, int endPort) throws CloudException, InternalException {
         if( direction.equals(Direction.INGRESS) ) {
-            return authorize(firewallId, direction, permission, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort, 0);
+            return rulesChanged(firewallId, authorize(firewallId, direction, permission, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort, 0));
         }
         else {
-            return authorize(firewallId, direction, permission, RuleTarget.getGlobal(firewallId), protocol, RuleTarget.getCIDR(source), beginPort, endPort, 0);
+            return rulesChanged(firewallId, authorize(firewallId, direction, permission, RuleTarget.getGlobal(firewallId), protocol, RuleTarget.getCIDR(source), beginPort, endPort, 0));
         }
     }
 
@@ -88,10 +103,10 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
     @Deprecated
     public final @Nonnull String authorize(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull Permission permission, @Nonnull String source, @Nonnull Protocol protocol, @Nonnull RuleTarget target, int beginPort, int endPort) throws CloudException, InternalException {
         if( direction.equals(Direction.INGRESS) ) {
-            return authorize(firewallId, direction, permission, RuleTarget.getCIDR(source), protocol, target, beginPort, endPort, 0);
+            return rulesChanged(firewallId, authorize(firewallId, direction, permission, RuleTarget.getCIDR(source), protocol, target, beginPort, endPort, 0));
         }
         else {
-            return authorize(firewallId, direction, permission, target, protocol, RuleTarget.getCIDR(source), beginPort, endPort, 0);
+            return rulesChanged(firewallId, authorize(firewallId, direction, permission, target, protocol, RuleTarget.getCIDR(source), beginPort, endPort, 0));
         }
     }
 
@@ -111,13 +126,16 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
         if( dest == null ) {
             dest = RuleTarget.getGlobal(firewallId);
         }
-        return authorize(firewallId, options.getDirection(), options.getPermission(), source, options.getProtocol(), dest, options.getPortRangeStart(), options.getPortRangeEnd(), options.getPrecedence());
+        return rulesChanged(firewallId, authorize(firewallId, options.getDirection(), options.getPermission(), source, options.getProtocol(), dest, options.getPortRangeStart(), options.getPortRangeEnd(), options.getPrecedence()));
     }
 
     @Override
     @Deprecated
     public @Nonnull String create(@Nonnull String name, @Nonnull String description) throws InternalException, CloudException {
-        return create(FirewallCreateOptions.getInstance(name, description));
+        String firewallId = create(FirewallCreateOptions.getInstance(name, description));
+
+        invalidate(Firewall.class, firewallId);
+        return firewallId;
 
     }
 
@@ -129,7 +147,10 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
     @Override
     @Deprecated
     public @Nonnull String createInVLAN(@Nonnull String name, @Nonnull String description, @Nonnull String providerVlanId) throws InternalException, CloudException {
-        return create(FirewallCreateOptions.getInstance(providerVlanId, name, description));
+        String firewallId = create(FirewallCreateOptions.getInstance(providerVlanId, name, description));
+
+        invalidate(Firewall.class, firewallId);
+        return firewallId;
     }
 
     @Override
@@ -156,14 +177,27 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
         return active;
     }
 
+    /**
+     * Looks up a firewall in a short-lived, indexed cache of the full listing, so that a burst of lookups costs a
+     * single listing call. The listing is cached for {@link #INDEX_TIMEOUT}, and a miss against an older listing forces
+     * a reload so that newly created resources are found. IDs missing even from a fresh listing are remembered for
+     * {@link #NOT_FOUND_TIMEOUT}. The returned object is shared with other callers and must not be modified.
+     */
     @Override
     public @Nullable Firewall getFirewall(@Nonnull String firewallId) throws InternalException, CloudException {
-        for( Firewall fw : list() ) {
-            if( firewallId.equals(fw.getProviderFirewallId()) ) {
-                return fw;
+        Cache<Firewall> cache = Cache.getInstance(getProvider(), "firewallIndex", Firewall.class, CacheLevel.REGION_ACCOUNT, INDEX_TIMEOUT, CacheEvictionPolicy.unbounded(), NOT_FOUND_TIMEOUT);
+
+        return cache.get(getContext(), firewallId, new Cache.Index<Firewall>() {
+            @Override
+            public @Nullable String getId(@Nonnull Firewall fw) {
+                return fw.getProviderFirewallId();
             }
-        }
-        return null;
+
+            @Override
+            public @Nonnull Iterable<Firewall> list() throws CloudException, InternalException {
+                return AbstractFirewallSupport.this.list();
+            }
+        });
     }
 
     @Override
@@ -344,10 +378,24 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
 
             }
             revoke(rule.getProviderRuleId());
+            rulesChanged(firewallId, null);
             return;
         }
     }
 
+    /**
+     * Publishes invalidation events for the rules of the specified firewall, and for the firewall itself since
+     * firewalls carry their rules.
+     * @param firewallId the firewall whose rules changed
+     * @param ruleId the ID of the rule that was added, if any
+     * @return the rule ID that was passed in
+     */
+    protected @Nullable String rulesChanged(@Nonnull String firewallId, @Nullable String ruleId) {
+        invalidate(FirewallRule.class, firewallId);
+        invalidate(Firewall.class, firewallId);
+        return ruleId;
+    }
+
     @Override
     @Deprecated
     public boolean supportsRules(@Nonnull Direction direction, @Nonnull Permission permission, boolean inVlan) throws CloudException, InternalException {
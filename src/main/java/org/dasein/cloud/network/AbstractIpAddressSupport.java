@@ -28,6 +28,7 @@ import org.dasein.cloud.Tag;
 import org.dasein.cloud.*;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.util.TraceContext;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -121,7 +122,7 @@ public abstract class AbstractIpAddressSupport<T extends CloudProvider> extends
         return listIpPool(IPVersion.IPV4, unassignedOnly);
     }
 
-    private static final ExecutorService taskPool = Executors.newCachedThreadPool();
+    private static final ExecutorService taskPool = TraceContext.propagating(Executors.newCachedThreadPool());
 
     @Nonnull
     @Override
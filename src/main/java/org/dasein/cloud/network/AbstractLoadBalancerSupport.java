@@ -29,7 +29,11 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -48,6 +52,10 @@ import java.util.Locale;
  */
 public abstract class AbstractLoadBalancerSupport<T extends CloudProvider> extends AbstractProviderService<T> implements
         LoadBalancerSupport {
+    /**
+     * How long the listing backing the default single-load balancer lookup is cached
+     */
+    static public final TimePeriod<Second> INDEX_TIMEOUT = new TimePeriod<Second>(15, TimePeriod.SECOND);
 
     protected AbstractLoadBalancerSupport(T provider) {
         super(provider);
@@ -93,14 +101,32 @@ public abstract class AbstractLoadBalancerSupport<T extends CloudProvider> exten
         throw new OperationNotSupportedException("Creating a server certificate is not implemented in " + getContext().getRegionId() + " of " + getProvider().getCloudName());
     }
 
+    /**
+     * Looks up a load balancer in a short-lived, indexed cache of the full listing, so that a burst of lookups costs a
+     * single listing call. The listing is cached for {@link #INDEX_TIMEOUT}, and a miss against an older listing
+     * forces a reload so that newly created resources are found.
+     * <p>
+     * The state of a cached load balancer may be up to {@link #INDEX_TIMEOUT} old. Implementations of the operations
+     * that change a load balancer, such as adding or removing servers, listeners or data centers, should call
+     * {@link #invalidate(Class, String)} once the change is made. The returned object is shared with every caller that
+     * finds it in the same listing and must not be modified.
+     * </p>
+     */
     @Override
     public LoadBalancer getLoadBalancer(@Nonnull String loadBalancerId) throws CloudException, InternalException {
-        for( LoadBalancer lb : listLoadBalancers() ) {
-            if( loadBalancerId.equals(lb.getProviderLoadBalancerId()) ) {
-                return lb;
+        Cache<LoadBalancer> cache = Cache.getInstance(getProvider(), "loadBalancerIndex", LoadBalancer.class, CacheLevel.REGION_ACCOUNT, INDEX_TIMEOUT);
+
+        return cache.get(getContext(), loadBalancerId, new Cache.Index<LoadBalancer>() {
+            @Override
+            public @Nullable String getId(@Nonnull LoadBalancer lb) {
+                return lb.getProviderLoadBalancerId();
             }
-        }
-        return null;
+
+            @Override
+            public @Nonnull Iterable<LoadBalancer> list() throws CloudException, InternalException {
+                return listLoadBalancers();
+            }
+        });
     }
 
     @Override
@@ -315,6 +341,7 @@ public abstract class AbstractLoadBalancerSupport<T extends CloudProvider> exten
             }
 
             updateTags(id, tags);
+            invalidate(LoadBalancer.class, id);
         }
     }
 }
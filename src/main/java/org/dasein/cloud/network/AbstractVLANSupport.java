@@ -24,7 +24,12 @@ import org.dasein.cloud.compute.ComputeServices;
 import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VirtualMachineSupport;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheEvictionPolicy;
+import org.dasein.cloud.util.CacheLevel;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -41,6 +46,15 @@ import java.util.List;
  * @since 2013.04
  */
 public abstract class AbstractVLANSupport<T extends CloudProvider> extends AbstractProviderService<T> implements VLANSupport {
+    /**
+     * How long the listing backing the default single-subnet lookup is cached
+     */
+    static public final TimePeriod<Second> INDEX_TIMEOUT = new TimePeriod<Second>(15, TimePeriod.SECOND);
+
+    /**
+     * How long the default single-subnet lookup remembers IDs that could not be found
+     */
+    static public final TimePeriod<Second> NOT_FOUND_TIMEOUT = new TimePeriod<Second>(10, TimePeriod.SECOND);
 
     protected AbstractVLANSupport(T provider) {
         super(provider);
@@ -206,16 +220,34 @@ public abstract class AbstractVLANSupport<T extends CloudProvider> extends Abstr
       return null;
     }
 
+    /**
+     * Looks up a subnet in a short-lived, indexed cache of the subnets in all VLANs, so that a burst of lookups costs a
+     * single crawl of the VLANs. The listing is cached for {@link #INDEX_TIMEOUT}, a miss against an older listing
+     * forces a reload so that newly created subnets are found, and IDs missing even from a fresh listing are remembered
+     * for {@link #NOT_FOUND_TIMEOUT}. The returned object is shared with other callers and must not be modified.
+     */
     @Override
     public Subnet getSubnet(@Nonnull String subnetId) throws CloudException, InternalException {
-        for( VLAN vlan : listVlans() ) {
-            for( Subnet subnet : listSubnets(vlan.getProviderVlanId()) ) {
-                if( subnet.getProviderSubnetId().equals(subnetId) ) {
-                    return subnet;
+        Cache<Subnet> cache = Cache.getInstance(getProvider(), "subnetIndex", Subnet.class, CacheLevel.REGION_ACCOUNT, INDEX_TIMEOUT, CacheEvictionPolicy.unbounded(), NOT_FOUND_TIMEOUT);
+
+        return cache.get(getContext(), subnetId, new Cache.Index<Subnet>() {
+            @Override
+            public @Nullable String getId(@Nonnull Subnet subnet) {
+                return subnet.getProviderSubnetId();
+            }
+
+            @Override
+            public @Nonnull Iterable<Subnet> list() throws CloudException, InternalException {
+                List<Subnet> list = new ArrayList<Subnet>();
+
+                for( VLAN vlan : listVlans() ) {
+                    for( Subnet subnet : listSubnets(vlan.getProviderVlanId()) ) {
+                        list.add(subnet);
+                    }
                 }
+                return list;
             }
-        }
-        return null;
+        });
     }
 
     @Override
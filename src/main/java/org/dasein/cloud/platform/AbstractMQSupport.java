@@ -27,6 +27,10 @@ import org.dasein.cloud.OperationNotSupportedException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheLevel;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -41,6 +45,11 @@ import java.util.Iterator;
  * @since 2013.07
  */
 public abstract class AbstractMQSupport<T extends CloudProvider> extends AbstractProviderService<T> implements MQSupport {
+    /**
+     * How long the listing backing the default single-message queue lookup is cached
+     */
+    static public final TimePeriod<Second> INDEX_TIMEOUT = new TimePeriod<Second>(15, TimePeriod.SECOND);
+
     protected AbstractMQSupport(T provider) {
         super(provider);
     }
@@ -55,14 +64,27 @@ public abstract class AbstractMQSupport<T extends CloudProvider> extends Abstrac
         throw new OperationNotSupportedException("Message queue creation is not supported in " + getContext().getRegionId() + " of " + getProvider().getCloudName());
     }
 
+    /**
+     * Looks up a message queue in a short-lived, indexed cache of the full listing, so that a burst of lookups costs a
+     * single listing call. The listing is cached for {@link #INDEX_TIMEOUT}, and a miss against an older listing forces
+     * a reload so that newly created resources are found. The returned object is shared with other callers and must not
+     * be modified.
+     */
     @Override
     public @Nullable MessageQueue getMessageQueue(@Nonnull String mqId) throws CloudException, InternalException {
-        for( MessageQueue q : listMessageQueues() ) {
-            if( mqId.equals(q.getProviderMessageQueueId()) ) {
-                return q;
+        Cache<MessageQueue> cache = Cache.getInstance(getProvider(), "messageQueueIndex", MessageQueue.class, CacheLevel.REGION_ACCOUNT, INDEX_TIMEOUT);
+
+        return cache.get(getContext(), mqId, new Cache.Index<MessageQueue>() {
+            @Override
+            public @Nullable String getId(@Nonnull MessageQueue q) {
+                return q.getProviderMessageQueueId();
             }
-        }
-        return null;
+
+            @Override
+            public @Nonnull Iterable<MessageQueue> list() throws CloudException, InternalException {
+                return listMessageQueues();
+            }
+        });
     }
 
     @Override
@@ -37,6 +37,7 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.util.NamingConstraints;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.util.TraceContext;
 import org.dasein.util.Retry;
 import org.dasein.util.uom.storage.*;
 import org.dasein.util.uom.storage.Byte;
@@ -91,6 +92,7 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
             }
         }
         removeBucket(bucket);
+        invalidate(Blob.class, bucket);
     }
 
     protected void copy(@Nullable String sourceBucket, @Nullable String sourceObject, @Nullable String targetBucket, @Nullable String targetObject) throws InternalException, CloudException {
@@ -103,6 +105,7 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
             }
             if( targetBucket != null && !exists(targetBucket) ) {
                 createBucket(targetBucket, false);
+                invalidate(Blob.class, targetBucket);
             }
             for( Blob blob : list(sourceBucket) ) {
                 copy(blob.getBucketName(), blob.getObjectName(), targetBucket, null);
@@ -177,7 +180,7 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
         if( transfer.getBytesToTransfer() == -1L ) {
             throw new CloudException("No such file: " + ((bucketName == null ? "/" : "/" + bucketName) + "/" + objectName));
         }
-        Thread t = new Thread() {
+        Thread t = new Thread(TraceContext.capture().wrap(new Runnable() {
             public void run() {
                 Callable<Object> operation = new Callable<Object>() {
                     public Object call() throws Exception {
@@ -213,7 +216,7 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
                     transfer.complete(t);
                 }
             }
-        };
+        }));
         
         t.setDaemon(true);
         t.start();
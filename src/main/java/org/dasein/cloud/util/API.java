@@ -28,9 +28,18 @@ import javax.annotation.Nullable;
  * <p>Created by George Reese: 11/17/12 9:55 AM</p>
  * @author George Reese
  * @version 2013.01 initial version (Issue #1)
+ * @version 2015.10 added latency percentiles and rates
+ * @version 2015.10 added sampled trace capture
+ * @version 2015.10 added trace modes
  * @since 2013.01
  */
 public class API implements APIMBean {
+    static private final int RATE_WINDOW = 60;
+
+    static private double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
     @Override
     public @Nonnull String[] getAccounts(@Nonnull String provider, @Nonnull String cloud) {
         return APITrace.listAccounts(provider, cloud);
@@ -71,6 +80,56 @@ public class API implements APIMBean {
         return APITrace.listClouds(provider);
     }
 
+    @Override
+    public double getLatencyByApiP50(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api) {
+        return toMillis(APITrace.getAPILatency(provider, cloud, api, 50.0));
+    }
+
+    @Override
+    public double getLatencyByApiP90(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api) {
+        return toMillis(APITrace.getAPILatency(provider, cloud, api, 90.0));
+    }
+
+    @Override
+    public double getLatencyByApiP99(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api) {
+        return toMillis(APITrace.getAPILatency(provider, cloud, api, 99.0));
+    }
+
+    @Override
+    public double getLatencyByApiMax(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api) {
+        return toMillis(APITrace.getAPIMaxLatency(provider, cloud, api));
+    }
+
+    @Override
+    public double getCallRateByApi(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api) {
+        return APITrace.getAPIRate(provider, cloud, api, RATE_WINDOW);
+    }
+
+    @Override
+    public double getLatencyByOperationP50(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation) {
+        return toMillis(APITrace.getOperationLatency(provider, cloud, operation, 50.0));
+    }
+
+    @Override
+    public double getLatencyByOperationP90(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation) {
+        return toMillis(APITrace.getOperationLatency(provider, cloud, operation, 90.0));
+    }
+
+    @Override
+    public double getLatencyByOperationP99(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation) {
+        return toMillis(APITrace.getOperationLatency(provider, cloud, operation, 99.0));
+    }
+
+    @Override
+    public double getLatencyByOperationMax(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation) {
+        return toMillis(APITrace.getOperationMaxLatency(provider, cloud, operation));
+    }
+
+    @Override
+    public double getOperationRate(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation) {
+        return APITrace.getOperationRate(provider, cloud, operation, RATE_WINDOW);
+    }
+
     @Override
     public long getOperationInvocationCount(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation) {
         return APITrace.getOperationCountAcrossAccounts(provider, cloud, operation);
@@ -96,6 +155,26 @@ public class API implements APIMBean {
         return APITrace.getStackTrace(provider, cloud, operation);
     }
 
+    @Override
+    public @Nonnull String getTraceMode() {
+        return APITrace.getMode().name();
+    }
+
+    @Override
+    public double getTraceSampleRate() {
+        return APITrace.getSampleRate();
+    }
+
+    @Override
+    public double getTraceTailPercentile() {
+        return APITrace.getTailPercentile();
+    }
+
+    @Override
+    public @Nonnull String[] getTraces() {
+        return APITrace.listTraces();
+    }
+
     @Override
     public void report(@Nonnull String prefix) {
         APITrace.report(prefix);
@@ -105,4 +184,19 @@ public class API implements APIMBean {
     public void reset() {
         APITrace.reset();
     }
+
+    @Override
+    public void setTraceMode(@Nonnull String mode) {
+        APITrace.setMode(TraceMode.valueOf(mode.trim().toUpperCase()));
+    }
+
+    @Override
+    public void setTraceSampleRate(double rate) {
+        APITrace.setSampleRate(rate);
+    }
+
+    @Override
+    public void setTraceTailPercentile(double percentile) {
+        APITrace.setTailPercentile(percentile);
+    }
 }
@@ -39,19 +39,23 @@ import javax.annotation.Nullable;
  *     that may be realized by 0 or more API calls</li>
  * </ul>
  * <p>
- *     For all of this to work, the log4j logging level for {@link APITrace} must be set to TRACE, DEBUG, or INFO
- *     depending on the level of information you want. Note that TRACE is very expensive, DEBUG is somewhat expensive,
- *     and INFO is largely innocuous. Unless otherwise specified, these methods require DEBUG.
+ *     For all of this to work, the {@link TraceMode} of {@link APITrace} must be set to FULL_TREE, TIMINGS, or COUNTERS
+ *     depending on the level of information you want, either here or through the {@link APITrace#MODE_PROPERTY} system
+ *     property. FULL_TREE is the most expensive; COUNTERS is largely innocuous. Unless otherwise specified, these
+ *     methods require COUNTERS.
  * </p>
  * <p>Created by George Reese: 11/17/12 9:55 AM</p>
  * @author George Reese
  * @version 2013.01 initial version (Issue #1)
+ * @version 2015.10 added latency percentiles and rates
+ * @version 2015.10 added sampled trace capture
+ * @version 2015.10 added trace modes
  * @since 2013.01
  */
 public interface APIMBean {
     /**
-     * Lists all accounts in the specified cloud that have API calls associated with them. This method works when
-     * log4j is set to INFO.
+     * Lists all accounts in the specified cloud that have API calls associated with them. This method works when the
+     * trace mode is COUNTERS.
      * @param provider the provider for the cloud
      * @param cloud the name of the cloud
      * @return a list of accounts in the target cloud for which at least one API call has been made
@@ -59,8 +63,8 @@ public interface APIMBean {
     public @Nonnull String[] getAccounts(@Nonnull String provider, @Nonnull String cloud);
 
     /**
-     * Lists all API calls that have had at least one call made against them. This method works when log4j is set to
-     * INFO.
+     * Lists all API calls that have had at least one call made against them. This method works when the trace mode is
+     * COUNTERS.
      * @param provider the provider of the cloud
      * @param cloud the name of the cloud
      * @return a list of API calls with at least one call made to it
@@ -69,7 +73,7 @@ public interface APIMBean {
 
     /**
      * Provides the total number of API calls that have been made on behalf of the specified account. This method is
-     * available with log4j set to INFO.
+     * available when the trace mode is COUNTERS.
      * @param provider the provider of the cloud
      * @param cloud the name of the cloud
      * @param account the account number of the account to count
@@ -78,7 +82,8 @@ public interface APIMBean {
     public @Nonnegative long getCallCountByAccount(@Nonnull String provider, @Nonnull String cloud, @Nonnull String account);
 
     /**
-     * The total number of calls from the specified account to the target API. This method works when log4j is set to INFO.
+     * The total number of calls from the specified account to the target API. This method works when the trace mode is
+     * COUNTERS.
      * @param provider the provider of the cloud
      * @param cloud the name of the cloud
      * @param account the account number under which the target API call has been made
@@ -88,8 +93,8 @@ public interface APIMBean {
     public @Nonnegative long getCallCountByAccountApi(@Nonnull String provider, @Nonnull String cloud, @Nonnull String account, @Nonnull String api);
 
     /**
-     * The total number of API calls made in support of a specific Dasein operation for the specified account. For example,
-     * if {@link VirtualMachineSupport#listVirtualMachines()} requires API calls and 10 calls have been made to
+     * The total number of API calls made in support of a specific Dasein operation for the specified account. For
+     * example, if {@link VirtualMachineSupport#listVirtualMachines()} requires API calls and 10 calls have been made to
      * {@link VirtualMachineSupport#listVirtualMachines()}, this method will return 20.
      * @param provider the provider of the cloud
      * @param cloud the name of the cloud
@@ -100,8 +105,8 @@ public interface APIMBean {
     public @Nonnegative long getCallCountByAccountOperation(@Nonnull String provider, @Nonnull String cloud, @Nonnull String account, @Nonnull String operation);
 
     /**
-     * The total number of calls made against a specific API across all accounts in a cloud. This method works when
-     * log4j is set to INFO.
+     * The total number of calls made against a specific API across all accounts in a cloud. This method works when the
+     * trace mode is COUNTERS.
      * @param provider the cloud provider
      * @param cloud the name of the cloud
      * @param api the name of the API call to be counted
@@ -110,7 +115,8 @@ public interface APIMBean {
     public @Nonnegative long getCallCountByApi(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api);
 
     /**
-     * The total number of API calls made in support of a specific Dasein Cloud operation across all accounts in a cloud.
+     * The total number of API calls made in support of a specific Dasein Cloud operation across all accounts in a
+     * cloud.
      * @param provider the cloud provider
      * @param cloud the name of the cloud
      * @param operation the operation whose API calls are being counted
@@ -119,12 +125,111 @@ public interface APIMBean {
     public @Nonnegative long getCallCountByOperation(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
 
     /**
-     * A list of clouds associated with a specific provider. This method works when log4j is set to INFO.
+     * A list of clouds associated with a specific provider. This method works when the trace mode is COUNTERS.
      * @param provider the name of the provider whose clouds you are listing
      * @return the list of clouds associated with the provider
      */
     public @Nonnull String[] getClouds(@Nonnull String provider);
 
+    /**
+     * The median latency of an API call across all accounts in a cloud. This method works when the trace mode is
+     * TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param api the API call to measure
+     * @return the median latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getLatencyByApiP50(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api);
+
+    /**
+     * The 90th percentile latency of an API call across all accounts in a cloud. This method works when the trace mode
+     * is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param api the API call to measure
+     * @return the 90th percentile latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getLatencyByApiP90(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api);
+
+    /**
+     * The 99th percentile latency of an API call across all accounts in a cloud. This method works when the trace mode
+     * is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param api the API call to measure
+     * @return the 99th percentile latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getLatencyByApiP99(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api);
+
+    /**
+     * The largest latency recorded for an API call across all accounts in a cloud. This method works when the trace
+     * mode is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param api the API call to measure
+     * @return the largest recorded latency in milliseconds
+     */
+    public double getLatencyByApiMax(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api);
+
+    /**
+     * The rate at which calls to an API completed over the last minute across all accounts in a cloud. This method
+     * works when the trace mode is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param api the API call to measure
+     * @return the mean number of calls per second over the last minute
+     */
+    public double getCallRateByApi(@Nonnull String provider, @Nonnull String cloud, @Nonnull String api);
+
+    /**
+     * The median latency of a Dasein Cloud operation across all accounts in a cloud. This method works when the trace
+     * mode is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param operation the operation to measure
+     * @return the median latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getLatencyByOperationP50(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
+
+    /**
+     * The 90th percentile latency of a Dasein Cloud operation across all accounts in a cloud. This method works when
+     * the trace mode is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param operation the operation to measure
+     * @return the 90th percentile latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getLatencyByOperationP90(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
+
+    /**
+     * The 99th percentile latency of a Dasein Cloud operation across all accounts in a cloud. This method works when
+     * the trace mode is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param operation the operation to measure
+     * @return the 99th percentile latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getLatencyByOperationP99(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
+
+    /**
+     * The largest latency recorded for a Dasein Cloud operation across all accounts in a cloud. This method works when
+     * the trace mode is TIMINGS.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param operation the operation to measure
+     * @return the largest recorded latency in milliseconds
+     */
+    public double getLatencyByOperationMax(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
+
+    /**
+     * The rate at which a Dasein Cloud operation completed over the last minute across all accounts in a cloud.
+     * @param provider the cloud provider
+     * @param cloud the name of the cloud
+     * @param operation the operation to measure
+     * @return the mean number of operations per second over the last minute
+     */
+    public double getOperationRate(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
+
     /**
      * The total number of times a specific Dasein Cloud operation has been invoked.
      * @param provider the cloud provider
@@ -153,15 +258,15 @@ public interface APIMBean {
     public @Nonnull String[] getOperations(@Nonnull String provider, @Nonnull String cloud);
 
     /**
-     * A list of all providers that have had calls made against them. This method works when log4j is set to INFO.
+     * A list of all providers that have had calls made against them. This method works when the trace mode is COUNTERS.
      * @return the list of providers with at least one call made against them
      */
     public @Nonnull String[] getProviders();
 
     /**
-     * Provides a full API stack trace for the last invocation of the specified operation along with all child operations
-     * it triggered as a JSON object. Not the same thing as a Java stack trace. This method provides useful data
-     * only when the log4j level is set to TRACE. WARNING: Setting to TRACE is very expensive.
+     * Provides a full API stack trace for the last invocation of the specified operation along with all child
+     * operations it triggered as a JSON object. Not the same thing as a Java stack trace. This method provides useful
+     * data only when the trace mode is FULL_TREE.
      * @param provider the cloud provider
      * @param cloud the name of the cloud
      * @param operation the name of the operation for which a stack trace is being fetched
@@ -170,14 +275,60 @@ public interface APIMBean {
     public @Nullable String getStackTrace(@Nonnull String provider, @Nonnull String cloud, @Nonnull String operation);
 
     /**
-     * Sends a report via log4j to the log class associated with {@link APITrace}. This method works when log4j is
-     * set to INFO.
+     * The current {@link TraceMode}, which determines what is recorded.
+     * @return the name of the trace mode: OFF, COUNTERS, TIMINGS, or FULL_TREE
+     */
+    public @Nonnull String getTraceMode();
+
+    /**
+     * The fraction of root operations whose full API stack traces are captured when the trace mode is FULL_TREE,
+     * regardless of how long they took.
+     * @return a value between 0 and 1
+     */
+    public double getTraceSampleRate();
+
+    /**
+     * The latency percentile at or above which the full API stack trace of a root operation is always captured when
+     * the trace mode is FULL_TREE.
+     * @return a percentile between 0 and 100, or 0 if slow operations are not captured specially
+     */
+    public double getTraceTailPercentile();
+
+    /**
+     * Provides the most recently captured API stack traces, newest first, as JSON objects. Only a fixed number of
+     * traces are kept. This method provides useful data only when the trace mode is FULL_TREE.
+     * @return JSON for each captured operation tree
+     */
+    public @Nonnull String[] getTraces();
+
+    /**
+     * Sends a report via log4j to the log class associated with {@link APITrace}. This method works when the trace mode
+     * is COUNTERS.
      * @param prefix a prefix to prepend to report entries
      */
     public void report(@Nonnull String prefix);
 
     /**
-     * Resets all counters to zero. This method works when log4j is set to INFO.
+     * Resets all counters to zero. This method works when the trace mode is COUNTERS.
      */
     public void reset();
+
+    /**
+     * Changes what is recorded. Takes effect immediately and does not depend on the log4j configuration.
+     * @param mode the name of the trace mode: OFF, COUNTERS, TIMINGS, or FULL_TREE
+     */
+    public void setTraceMode(@Nonnull String mode);
+
+    /**
+     * Sets the fraction of root operations whose full API stack traces are captured when the trace mode is FULL_TREE.
+     * @param rate a value between 0 (capture only slow operations) and 1 (capture every operation)
+     */
+    public void setTraceSampleRate(double rate);
+
+    /**
+     * Sets the latency percentile at or above which the full API stack trace of a root operation is always captured
+     * when the trace mode is FULL_TREE.
+     * @param percentile a percentile between 0 and 100, where 0 disables the capture of slow operations
+     */
+    public void setTraceTailPercentile(double percentile);
 }
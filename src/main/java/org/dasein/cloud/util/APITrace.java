@@ -23,23 +23,64 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudProvider;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.RequestTrackingStrategy;
+import org.dasein.util.uom.time.TimePeriod;
 import org.json.JSONObject;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A tool for tracing the load your Dasein Cloud usage is placing on a cloud provider. This class is used by
- * {@link API} to provide JMX integration. In order for any API tracing to be functional, you must set the
- * log level for org.dasein.cloud.util.APITrace to TRACE, DEBUG, or INFO depending on the information you are seeking.
- * To turn it off, set the level to WARN or higher.
+ * {@link API} to provide JMX integration. What is recorded is controlled by the {@link TraceMode}, which is set through
+ * {@link #setMode(TraceMode)}, the API MBean or the {@value #MODE_PROPERTY} system property. If the property is not set,
+ * the initial mode follows the log level for org.dasein.cloud.util.APITrace when the class is loaded: TRACE, DEBUG and
+ * INFO map to {@link TraceMode#FULL_TREE}, {@link TraceMode#TIMINGS} and {@link TraceMode#COUNTERS}, anything else to
+ * {@link TraceMode#OFF}. Later changes to the log level have no effect, and when tracing is off each call costs a single
+ * volatile read.
+ * <p>
+ * Counters are kept in {@link CounterTree}s of {@link StripedCounter}s with totals rolled up at each provider, cloud and
+ * account, so counting an API call never takes a lock and the JMX queries cost the same however many calls have been
+ * counted. API and operation names are matched exactly. The operations begun by a thread are
+ * kept on a stack confined to that thread, so beginning, ending and tracing within an operation never touch shared state
+ * beyond those counters.
+ * </p>
+ * <p>
+ * Alongside the counters, the latency of every API call and operation is recorded in a fixed-size
+ * {@link LatencyHistogram} and a one-minute {@link RateWindow}. Operations are timed from {@link #begin(CloudProvider, String)}
+ * to {@link #end()}. API calls are timed by whoever makes the call, through {@link #recordLatency(CloudProvider, long)}
+ * or {@link #recordLatency(CloudProvider, String, long)}; {@link org.dasein.cloud.util.requester.AbstractDaseinRequestExecutor}
+ * does so for every request it executes.
+ * </p>
+ * <p>
+ * In {@link TraceMode#FULL_TREE}, completed operation trees are captured in a ring of fixed capacity ({@value #TRACE_CAPACITY_PROPERTY},
+ * 256 by default), so the memory held by traces stays bounded however long tracing is left on. Each node of a tree
+ * keeps at most 64 API calls and 64 child operations. A tree is captured if its root operation was sampled when it
+ * began, with the probability set by {@link #setSampleRate(double)} ({@value #SAMPLE_RATE_PROPERTY}), or if the root
+ * took at least as long as the percentile of its recent latencies set by {@link #setTailPercentile(double)}
+ * ({@value #TAIL_PERCENTILE_PROPERTY}).
+ * </p>
+ * <p>
+ * To export the statistics to a monitoring system, register a {@link TraceReporter} through
+ * {@link #addReporter(TraceReporter, TimePeriod)} rather than scraping {@link #report(String)}.
+ * </p>
  * <p>Created by George Reese: 11/16/12 7:20 PM</p>
  * @author George Reese
  * @version 2013.01 initial version (Issue #1)
@@ -50,24 +91,112 @@ public class  APITrace {
     static public final String DELIMITER       = ".";
     static public final String DELIMITER_REGEX = "\\.";
 
-    static private class CloudOperation {
+    /**
+     * System property holding the initial {@link TraceMode}
+     */
+    static public final String MODE_PROPERTY            = "dasein.cloud.trace.mode";
+    /**
+     * System property holding the number of operation trees kept in {@link TraceMode#FULL_TREE}
+     */
+    static public final String TRACE_CAPACITY_PROPERTY  = "dasein.cloud.trace.capacity";
+    /**
+     * System property holding the fraction of root operations whose trees are captured regardless of their latency
+     */
+    static public final String SAMPLE_RATE_PROPERTY     = "dasein.cloud.trace.sampleRate";
+    /**
+     * System property holding the latency percentile above which operation trees are always captured; 0 disables
+     * tail capture
+     */
+    static public final String TAIL_PERCENTILE_PROPERTY = "dasein.cloud.trace.tailPercentile";
+
+    static private final int MAX_API_CALLS    = 64;
+    static private final int MAX_CHILDREN     = 64;
+    static private final int TAIL_MIN_SAMPLES = 100;
+
+    static final class CloudOperation {
         public String name;
         public long startTimestamp = System.currentTimeMillis();
         public long endTimestamp = 0L;
+        public long startNanos = System.nanoTime();
         public int calls = 0;
-        public CloudOperation currentChild;
+        public long childCalls = 0L;
         public ArrayList<CloudOperation> priorChildren;
         public ArrayList<String> apiCalls;
+        public TraceKey key;
+        public TraceKey metricKey;
+        public boolean sampled;
+        public boolean truncated;
+        public RequestTrackingStrategy strategy;
+        public CloudOperation origin; // set on spans continuing an operation from another thread
+
+        public CloudOperation(@Nonnull TraceKey key, @Nonnull TraceKey metricKey) { this.key = key; this.metricKey = metricKey; this.name = key.toString(); }
+    }
+
+    static private class Timing {
+        public final LatencyHistogram latency = new LatencyHistogram();
+        public final RateWindow       rate    = new RateWindow();
+    }
+
+    static private final CounterTree               apiCount       = new CounterTree();
+    static private final CounterTree               operationApis  = new CounterTree();
+    static private final CounterTree               operationCount = new CounterTree();
+    static private final TraceRing<CloudOperation> operationTrace = new TraceRing<CloudOperation>(Integer.getInteger(TRACE_CAPACITY_PROPERTY, 256));
+
+    static private volatile TraceMode     mode  = getInitialMode();
+    // bumped whenever the mode changes or APITrace is reset so that threads discard operations begun before the change
+    static private final    AtomicInteger epoch = new AtomicInteger(0);
+
+    static private volatile double sampleRate     = getProperty(SAMPLE_RATE_PROPERTY, 1.0);
+    static private volatile double tailPercentile = getProperty(TAIL_PERCENTILE_PROPERTY, 99.0);
+
+    static private final ConcurrentHashMap<TraceKey,Timing>          apiTimings       = new ConcurrentHashMap<TraceKey, Timing>();
+    static private final ConcurrentHashMap<TraceKey,Timing>          operationTimings = new ConcurrentHashMap<TraceKey, Timing>();
+
+    static private final ThreadLocal<TraceKey> lastApiCall    = new ThreadLocal<TraceKey>();
+    static private final ThreadLocal<String>   pendingApiCall = new ThreadLocal<String>();
+
+    static private final ThreadLocal<RequestTrackingStrategy> inheritedStrategy = new ThreadLocal<RequestTrackingStrategy>();
 
-        public CloudOperation(@Nonnull String name) { this.name = name; }
+    /**
+     * Undoes an {@link #attach(CloudOperation, RequestTrackingStrategy, String)}.
+     */
+    static final class Attachment {
+        public final RequestTrackingStrategy previousStrategy;
+        public final String                  previousApiCall;
+        public final TraceKey                previousApiKey;
+        public CloudOperation span;
+
+        Attachment(@Nullable RequestTrackingStrategy previousStrategy, @Nullable String previousApiCall, @Nullable TraceKey previousApiKey) {
+            this.previousStrategy = previousStrategy;
+            this.previousApiCall = previousApiCall;
+            this.previousApiKey = previousApiKey;
+        }
     }
 
-    static private final HashMap<String,Long>            apiCount       = new HashMap<String, Long>();
-    static private final HashMap<String,Long>            operationApis  = new HashMap<String, Long>();
-    static private final HashMap<String,Long>            operationCount = new HashMap<String, Long>();
-    static private final HashMap<String,CloudOperation>  operationTrace = new HashMap<String, CloudOperation>();
+    /**
+     * An API call traced on one thread but not yet executed, along with the key under which its latency is recorded.
+     */
+    static final class PendingCall {
+        public final String   apiCall;
+        public final TraceKey key;
 
-    static private HashMap<Long,CloudOperation> operations = new HashMap<Long, CloudOperation>();
+        PendingCall(@Nonnull String apiCall, @Nullable TraceKey key) {
+            this.apiCall = apiCall;
+            this.key = key;
+        }
+    }
+
+    static private class OperationStack {
+        public final ArrayDeque<CloudOperation> operations = new ArrayDeque<CloudOperation>();
+        public int epoch = APITrace.epoch.get();
+    }
+
+    static private final ThreadLocal<OperationStack> operations = new ThreadLocal<OperationStack>() {
+        @Override
+        protected OperationStack initialValue() {
+            return new OperationStack();
+        }
+    };
 
 
     static {
@@ -83,39 +212,134 @@ public class  APITrace {
         }
     }
 
+    static private final ConcurrentHashMap<TraceReporter,ScheduledFuture<?>> reporters = new ConcurrentHashMap<TraceReporter, ScheduledFuture<?>>();
+    static private ScheduledExecutorService reportingPool;
+
+    /**
+     * Exports a fresh {@link TraceSnapshot} to the specified reporter at a regular interval on a background thread. The
+     * snapshots are taken without blocking the threads being traced.
+     * @param reporter the reporter to call
+     * @param interval the time between reports
+     * @throws IllegalArgumentException the reporter is already registered
+     */
+    static public void addReporter(@Nonnull final TraceReporter reporter, @Nonnull TimePeriod<?> interval) {
+        long millis = Math.max(1L, interval.convertTo(TimePeriod.MILLISECOND).longValue());
+        ScheduledFuture<?> future;
+
+        synchronized( reporters ) {
+            if( reporters.containsKey(reporter) ) {
+                throw new IllegalArgumentException("Reporter is already registered: " + reporter);
+            }
+            if( reportingPool == null ) {
+                reportingPool = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@Nonnull Runnable r) {
+                        Thread t = new Thread(r, "dasein-trace-reporter");
+
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            future = reportingPool.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reporter.report(snapshot());
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Trace reporter " + reporter + " failed: " + t.getMessage());
+                    }
+                }
+            }, millis, millis, TimeUnit.MILLISECONDS);
+            reporters.put(reporter, future);
+        }
+    }
+
+    /**
+     * Stops exporting statistics to the specified reporter and closes it.
+     * @param reporter the reporter to remove
+     */
+    static public void removeReporter(@Nonnull TraceReporter reporter) {
+        ScheduledFuture<?> future;
+
+        synchronized( reporters ) {
+            future = reporters.remove(reporter);
+            if( reporters.isEmpty() && reportingPool != null ) {
+                reportingPool.shutdown();
+                reportingPool = null;
+            }
+        }
+        if( future != null ) {
+            future.cancel(false);
+            reporter.close();
+        }
+    }
+
+    /**
+     * Copies everything counted and timed so far. The copy is taken without locking, so calls made while it is being
+     * taken may or may not be included.
+     * @return a snapshot of the current statistics
+     */
+    static public @Nonnull TraceSnapshot snapshot() {
+        ArrayList<TraceStatistics> apis = new ArrayList<TraceStatistics>();
+        ArrayList<TraceStatistics> ops = new ArrayList<TraceStatistics>();
+        Map<TraceKey,Long> calls = operationApis.getCounts();
+
+        for( Map.Entry<TraceKey,Long> entry : apiCount.getCounts().entrySet() ) {
+            apis.add(toStatistics(TraceStatistics.Kind.API, entry.getKey(), entry.getValue(), 0L, apiTimings.get(entry.getKey())));
+        }
+        for( Map.Entry<TraceKey,Long> entry : operationCount.getCounts().entrySet() ) {
+            Long n = calls.get(entry.getKey());
+
+            ops.add(toStatistics(TraceStatistics.Kind.OPERATION, entry.getKey(), entry.getValue(), n == null ? 0L : n, operationTimings.get(entry.getKey())));
+        }
+        return new TraceSnapshot(mode, apis, ops);
+    }
+
+    static private @Nonnull TraceStatistics toStatistics(@Nonnull TraceStatistics.Kind kind, @Nonnull TraceKey key, long count, long apiCalls, @Nullable Timing timing) {
+        if( timing == null ) {
+            return new TraceStatistics(kind, key, count, apiCalls, 0L, 0.0, 0L, 0L, 0L, 0L, 0.0);
+        }
+        LatencyHistogram h = timing.latency;
+
+        return new TraceStatistics(kind, key, count, apiCalls, h.getCount(), h.getMean(), h.getPercentile(50.0), h.getPercentile(90.0), h.getPercentile(99.0), h.getMax(), timing.rate.getRate(RateWindow.MAX_WINDOW));
+    }
+
     static public void begin(@Nonnull CloudProvider provider, @Nonnull String operationName) {
-        if( logger.isDebugEnabled() ) {
+        if( mode != TraceMode.OFF ) {
             try {
                 ProviderContext ctx = provider.getContext();
                 String accountNumber = getAccountNumber( ctx );
-                RequestTrackingStrategy strategy = ctx.getRequestTrackingStrategy();
-                String requestTracking = "";
-                if(strategy != null && strategy.getInAPITrace()){
-                    requestTracking = strategy.getRequestId() + DELIMITER;
+                RequestTrackingStrategy strategy = inheritedStrategy.get();
+
+                if( strategy == null ) {
+                    strategy = ctx.getRequestTrackingStrategy();
                 }
+                // request IDs are left out of the metric key so that each request does not get its own counters and histogram
+                TraceKey metricKey = TraceKey.getInstance(provider.getProviderName(), provider.getCloudName(), accountNumber, operationName);
+                TraceKey key = metricKey;
 
-                operationName = provider.getProviderName().replaceAll(DELIMITER_REGEX, "_") + DELIMITER + provider.getCloudName().replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + requestTracking + operationName;
-                long thread = Thread.currentThread().getId();
-                CloudOperation operation = new CloudOperation(operationName);
-                CloudOperation current = operations.get(thread);
+                if(strategy != null && strategy.getInAPITrace()){
+                    operationName = strategy.getRequestId() + DELIMITER + operationName;
+                    // not interned, since request IDs are rarely seen twice
+                    key = TraceKey.getTransientInstance(provider.getProviderName(), provider.getCloudName(), accountNumber, operationName);
+                }
+                ArrayDeque<CloudOperation> stack = getStack();
+                CloudOperation operation = new CloudOperation(key, metricKey);
+                CloudOperation parent = stack.peek();
 
-                if( current == null ) {
-                    operations.put(thread, operation);
+                operation.strategy = strategy;
+                if( parent != null ) {
+                    operation.sampled = parent.sampled;
                 }
                 else {
-                    while( current.currentChild != null ) {
-                        current = current.currentChild;
-                    }
-                    current.currentChild = operation;
-                }
-                synchronized( operationCount ) {
-                    if( operationCount.containsKey(operationName) ) {
-                        operationCount.put(operationName,  operationCount.get(operationName) + 1);
-                    }
-                    else {
-                        operationCount.put(operationName, 1L);
-                    }
+                    double rate = sampleRate;
+
+                    operation.sampled = (rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate));
                 }
+                stack.push(operation);
+                operationCount.add(metricKey, 1L);
             }
             catch( Throwable t ) {
                 logger.warn("Error with API trace begin: " + t.getMessage());
@@ -123,44 +347,186 @@ public class  APITrace {
         }
     }
 
+    static private @Nonnull ArrayDeque<CloudOperation> getStack() {
+        OperationStack stack = operations.get();
+        int e = epoch.get();
+
+        if( stack.epoch != e ) {
+            stack.operations.clear();
+            stack.epoch = e;
+        }
+        return stack.operations;
+    }
+
+    static private @Nonnull TraceMode getInitialMode() {
+        String value = System.getProperty(MODE_PROPERTY);
+
+        if( value != null ) {
+            try {
+                return TraceMode.valueOf(value.trim().toUpperCase());
+            }
+            catch( IllegalArgumentException e ) {
+                logger.warn("Ignoring invalid value for " + MODE_PROPERTY + ": " + value);
+            }
+        }
+        if( logger.isTraceEnabled() ) {
+            return TraceMode.FULL_TREE;
+        }
+        if( logger.isDebugEnabled() ) {
+            return TraceMode.TIMINGS;
+        }
+        if( logger.isInfoEnabled() ) {
+            return TraceMode.COUNTERS;
+        }
+        return TraceMode.OFF;
+    }
+
+    /**
+     * @return what is currently being recorded
+     */
+    static public @Nonnull TraceMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Changes what is recorded. Operations in progress when the mode changes are discarded rather than recorded with
+     * partial information.
+     * @param mode the new mode
+     */
+    static public void setMode(@Nonnull TraceMode mode) {
+        if( mode != APITrace.mode ) {
+            epoch.incrementAndGet();
+            APITrace.mode = mode;
+        }
+    }
+
     static private long count(CloudOperation operation) {
-        long count = operation.calls;
+        return operation.calls + operation.childCalls;
+    }
+
+    static private double getProperty(@Nonnull String name, double defaultValue) {
+        String value = System.getProperty(name);
+
+        if( value != null ) {
+            try {
+                return Double.parseDouble(value);
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Ignoring invalid value for " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the fraction of root operations whose trees are captured at TRACE regardless of their latency
+     */
+    static public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the latency percentile at or above which operation trees are always captured at TRACE, or 0 if tail
+     * capture is disabled
+     */
+    static public double getTailPercentile() {
+        return tailPercentile;
+    }
+
+    /**
+     * @return the number of operation trees kept when tracing at TRACE
+     */
+    static public int getTraceCapacity() {
+        return operationTrace.getCapacity();
+    }
+
+    /**
+     * Provides the captured operation trees, newest first, as JSON objects. Trees are captured only at TRACE.
+     * @return the captured operation trees
+     */
+    static public @Nonnull String[] listTraces() {
+        ArrayList<String> traces = new ArrayList<String>();
+
+        for( CloudOperation operation : operationTrace.list() ) {
+            traces.add((new JSONObject(toJSON(operation))).toString());
+        }
+        return traces.toArray(new String[traces.size()]);
+    }
+
+    /**
+     * Sets the fraction of root operations whose trees are captured at TRACE regardless of their latency.
+     * @param rate a value between 0 (capture only tail latencies) and 1 (capture every tree)
+     */
+    static public void setSampleRate(double rate) {
+        if( rate < 0.0 || rate > 1.0 ) {
+            throw new IllegalArgumentException("Sample rates must be between 0 and 1: " + rate);
+        }
+        sampleRate = rate;
+    }
+
+    /**
+     * Sets the latency percentile at or above which operation trees are always captured at TRACE. The percentile is
+     * measured against the recent latencies of the same operation once it has completed at least 100 times.
+     * @param percentile a percentile between 0 and 100, where 0 disables tail capture
+     */
+    static public void setTailPercentile(double percentile) {
+        if( percentile < 0.0 || percentile > 100.0 ) {
+            throw new IllegalArgumentException("Percentiles must be between 0 and 100: " + percentile);
+        }
+        tailPercentile = percentile;
+    }
+
+    static private boolean isTail(@Nonnull CloudOperation operation, long nanos) {
+        double percentile = tailPercentile;
+
+        if( percentile <= 0.0 ) {
+            return false;
+        }
+        Timing timing = operationTimings.get(operation.metricKey);
+
+        return (timing != null && timing.latency.getCount() >= TAIL_MIN_SAMPLES && nanos >= timing.latency.getPercentile(percentile));
+    }
+
+    static private void record(@Nonnull ConcurrentHashMap<TraceKey,Timing> timings, @Nonnull TraceKey key, long nanos) {
+        Timing timing = timings.get(key);
+
+        if( timing == null ) {
+            timing = new Timing();
 
-        if( operation.priorChildren != null ) {
-            for( CloudOperation o : operation.priorChildren ) {
-                count += count(o);
+            Timing existing = timings.putIfAbsent(key, timing);
+
+            if( existing != null ) {
+                timing = existing;
             }
         }
-        return count;
+        timing.latency.record(nanos);
+        timing.rate.record();
     }
 
     static public void end() {
-        if( logger.isDebugEnabled() ) {
+        TraceMode m = mode;
+
+        if( m != TraceMode.OFF ) {
             try {
-                long thread = Thread.currentThread().getId();
-                CloudOperation current = operations.get(thread);
+                ArrayDeque<CloudOperation> stack = getStack();
+                CloudOperation current = stack.peek();
 
-                if( current == null ) {
-                    return;
+                if( current == null || current.origin != null ) {
+                    return; // unbalanced end() within work handed over from another thread
                 }
-                CloudOperation parent = null;
+                stack.pop();
+                CloudOperation parent = stack.peek();
+
+                long nanos = System.nanoTime() - current.startNanos;
 
-                while( current.currentChild != null ) {
-                    parent = current;
-                    current = current.currentChild;
-                }
                 current.endTimestamp = System.currentTimeMillis();
-                if( parent != null ) {
-                    if( parent.priorChildren == null ) {
-                        parent.priorChildren = new ArrayList<CloudOperation>();
-                    }
-                    parent.priorChildren.add(current);
-                    parent.currentChild = null;
+                if( m.includes(TraceMode.TIMINGS) ) {
+                    record(operationTimings, current.metricKey, nanos);
                 }
-                else {
-                    operations.remove(thread);
+                if( parent != null ) {
+                    addChild(parent, current, m);
                 }
-                log(current);
+                log(current, parent == null && m == TraceMode.FULL_TREE, nanos);
             }
             catch( Throwable t ) {
                 logger.warn("Error with API trace end: " + t.getMessage());
@@ -168,226 +534,360 @@ public class  APITrace {
         }
     }
 
-    static public long getAPICount() {
-        long count = 0L;
-
-        synchronized( apiCount ) {
-            for( Map.Entry<String,Long> api : apiCount.entrySet() ) {
-                count += api.getValue();
+    // children may be added by other threads when work is handed off through a TraceContext
+    static private void addChild(@Nonnull CloudOperation parent, @Nonnull CloudOperation child, @Nonnull TraceMode m) {
+        synchronized( parent ) {
+            parent.childCalls += count(child);
+            if( m == TraceMode.FULL_TREE ) {
+                if( parent.priorChildren == null ) {
+                    parent.priorChildren = new ArrayList<CloudOperation>();
+                }
+                if( parent.priorChildren.size() < MAX_CHILDREN ) {
+                    parent.priorChildren.add(child);
+                }
+                else {
+                    parent.truncated = true;
+                }
             }
         }
-        return count;
     }
 
-    static public long getAPICount(@Nonnull String providerName) {
-        return getAPICountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+    static private @Nonnull List<CloudOperation> getChildren(@Nonnull CloudOperation operation) {
+        synchronized( operation ) {
+            return (operation.priorChildren == null ? Collections.<CloudOperation>emptyList() : new ArrayList<CloudOperation>(operation.priorChildren));
+        }
     }
 
-    static public long getAPICount(@Nonnull String providerName, @Nonnull String cloudName) {
-        return getAPICountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+    /**
+     * Continues an operation begun on another thread in the current thread. Operations begun on this thread until the
+     * matching {@link #detach(Attachment)} become children of a span under the original operation, and the request
+     * tracking strategy of the original operation is applied to them. An API call traced on the other thread but not
+     * yet executed becomes pending on this one, and its latency is recorded when this thread makes it.
+     * @param origin the operation being continued, if any
+     * @param strategy the request tracking strategy to apply, if any
+     * @param call the API call pending on the other thread, if any
+     * @return the state needed to detach
+     */
+    static @Nonnull Attachment attach(@Nullable CloudOperation origin, @Nullable RequestTrackingStrategy strategy, @Nullable PendingCall call) {
+        Attachment attachment = new Attachment(inheritedStrategy.get(), pendingApiCall.get(), lastApiCall.get());
+
+        if( strategy != null ) {
+            inheritedStrategy.set(strategy);
+        }
+        if( call != null ) {
+            pendingApiCall.set(call.apiCall);
+            if( call.key == null ) {
+                lastApiCall.remove();
+            }
+            else {
+                lastApiCall.set(call.key);
+            }
+        }
+        if( origin != null && mode != TraceMode.OFF ) {
+            CloudOperation span = new CloudOperation(origin.key, origin.metricKey);
+
+            span.origin = origin;
+            span.sampled = origin.sampled;
+            span.strategy = origin.strategy;
+            getStack().push(span);
+            attachment.span = span;
+        }
+        return attachment;
     }
 
-    static public long getAPICount(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber) {
-        return getAPICountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+    /**
+     * Ends the work begun by {@link #attach(CloudOperation, RequestTrackingStrategy, PendingCall)}, adding its span to the
+     * original operation. Operations begun within the span but never ended are discarded.
+     * @param attachment the state returned by attach
+     */
+    static void detach(@Nonnull Attachment attachment) {
+        if( attachment.previousStrategy == null ) {
+            inheritedStrategy.remove();
+        }
+        else {
+            inheritedStrategy.set(attachment.previousStrategy);
+        }
+        if( attachment.previousApiCall == null ) {
+            pendingApiCall.remove();
+        }
+        else {
+            pendingApiCall.set(attachment.previousApiCall);
+        }
+        if( attachment.previousApiKey == null ) {
+            lastApiCall.remove();
+        }
+        else {
+            lastApiCall.set(attachment.previousApiKey);
+        }
+        CloudOperation span = attachment.span;
+
+        if( span != null ) {
+            ArrayDeque<CloudOperation> stack = getStack();
+            TraceMode m = mode;
+
+            if( !stack.contains(span) ) {
+                return; // discarded by a change of mode or a reset
+            }
+            while( stack.pop() != span ) {
+                // discard operations that were never ended
+            }
+            span.endTimestamp = System.currentTimeMillis();
+            if( m != TraceMode.OFF ) {
+                addChild(span.origin, span, m);
+            }
+        }
     }
 
-    static public long getAPICount(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String apiCall) {
-        return getAPICountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + apiCall);
+    /**
+     * @return the innermost operation in progress on the current thread, if any
+     */
+    static @Nullable CloudOperation getCurrentOperation() {
+        return (mode == TraceMode.OFF ? null : getStack().peek());
     }
 
-    static public long getAPICountAcrossAccounts(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String apiCall) {
-        String prefix = providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER;
-        long count = 0L;
+    /**
+     * @return the request tracking strategy applying to the innermost operation in progress on the current thread
+     */
+    static @Nullable RequestTrackingStrategy getCurrentRequestTracking() {
+        RequestTrackingStrategy strategy = inheritedStrategy.get();
 
-        synchronized( apiCount ) {
-            for( Map.Entry<String,Long> api : apiCount.entrySet() ) {
-                if( api.getKey().startsWith(prefix) && api.getKey().endsWith(apiCall)) {
-                    count += api.getValue();
-                }
+        if( strategy == null ) {
+            CloudOperation operation = getCurrentOperation();
+
+            if( operation != null ) {
+                strategy = operation.strategy;
             }
         }
-        return count;
+        return strategy;
     }
 
-    static private long getAPICountForPrefix(@Nonnull String prefix) {
-        long count = 0L;
+    static public long getAPICount() {
+        return apiCount.get();
+    }
 
-        synchronized( apiCount ) {
-            for( Map.Entry<String,Long> api : apiCount.entrySet() ) {
-                if( api.getKey().startsWith(prefix) ) {
-                    count += api.getValue();
-                }
-            }
-        }
-        return count;
+    static public long getAPICount(@Nonnull String providerName) {
+        return apiCount.get(TraceKey.sanitize(providerName));
     }
 
-    static public long getAPICountForOperation() {
-        long count = 0L;
+    static public long getAPICount(@Nonnull String providerName, @Nonnull String cloudName) {
+        return apiCount.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName));
+    }
 
-        synchronized( operationApis ) {
-            for( Map.Entry<String,Long> api : operationApis.entrySet() ) {
-                count += api.getValue();
-            }
-        }
-        return count;
+    static public long getAPICount(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber) {
+        return apiCount.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), TraceKey.sanitize(accountNumber));
+    }
+
+    static public long getAPICount(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String apiCall) {
+        return apiCount.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), TraceKey.sanitize(accountNumber), apiCall);
+    }
+
+    static public long getAPICountAcrossAccounts(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String apiCall) {
+        return apiCount.getAcrossAccounts(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), apiCall);
+    }
+
+    static public long getAPICountForOperation() {
+        return operationApis.get();
     }
 
     static public long getAPICountForOperation(@Nonnull String providerName) {
-        return getAPICountForPrefixForOperation(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+        return operationApis.get(TraceKey.sanitize(providerName));
     }
 
     static public long getAPICountForOperation(@Nonnull String providerName, @Nonnull String cloudName) {
-        return getAPICountForPrefixForOperation(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+        return operationApis.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName));
     }
 
     static public long getAPICountForOperation(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber) {
-        return getAPICountForPrefixForOperation(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+        return operationApis.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), TraceKey.sanitize(accountNumber));
     }
 
     static public long getAPICountForOperation(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String operation) {
-        return getAPICountForPrefixForOperation(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + operation);
+        return operationApis.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), TraceKey.sanitize(accountNumber), operation);
     }
 
     static public long getAPICountForOperationAcrossAccounts(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operation) {
-        String prefix = providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER;
-        long count = 0L;
-
-        synchronized( operationApis ) {
-            for( Map.Entry<String,Long> api : operationApis.entrySet() ) {
-                if( api.getKey().startsWith(prefix) && api.getKey().endsWith(operation)) {
-                    count += api.getValue();
-                }
-            }
-        }
-        return count;
-    }
-
-    static private long getAPICountForPrefixForOperation(@Nonnull String prefix) {
-        long count = 0L;
-
-        synchronized( operationApis ) {
-            for( Map.Entry<String,Long> api : operationApis.entrySet() ) {
-                if( api.getKey().startsWith(prefix) ) {
-                    count += api.getValue();
-                }
-            }
-        }
-        return count;
+        return operationApis.getAcrossAccounts(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), operation);
     }
 
     static public long getOperationCount() {
-        long count = 0L;
-
-        synchronized( operationCount ) {
-            for( Map.Entry<String,Long> api : operationCount.entrySet() ) {
-                count += api.getValue();
-            }
-        }
-        return count;
+        return operationCount.get();
     }
 
     static public long getOperationCount(@Nonnull String providerName) {
-        return getOperationCountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+        return operationCount.get(TraceKey.sanitize(providerName));
     }
 
     static public long getOperationCount(@Nonnull String providerName, @Nonnull String cloudName) {
-        return getOperationCountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+        return operationCount.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName));
     }
 
     static public long getOperationCount(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber) {
-        return getOperationCountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER);
+        return operationCount.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), TraceKey.sanitize(accountNumber));
     }
 
     static public long getOperationCount(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String operation) {
-        return getOperationCountForPrefix(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + operation);
+        return operationCount.get(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), TraceKey.sanitize(accountNumber), operation);
     }
 
     static public long getOperationCountAcrossAccounts(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operation) {
-        String prefix = providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER;
-        long count = 0L;
+        return operationCount.getAcrossAccounts(TraceKey.sanitize(providerName), TraceKey.sanitize(cloudName), operation);
+    }
 
-        synchronized( operationCount ) {
-            for( Map.Entry<String,Long> api : operationCount.entrySet() ) {
-                if( api.getKey().startsWith(prefix) && api.getKey().endsWith(operation)) {
-                    count += api.getValue();
-                }
+    /**
+     * Rolls up the latencies of an API call or operation across all accounts in a cloud.
+     * @param timings the timings to roll up
+     * @param providerName the raw provider name
+     * @param cloudName the raw cloud name
+     * @param name the API call or operation
+     * @return a histogram holding every matching latency
+     */
+    static private @Nonnull LatencyHistogram getLatency(@Nonnull ConcurrentHashMap<TraceKey,Timing> timings, @Nonnull String providerName, @Nonnull String cloudName, @Nonnull String name) {
+        String p = TraceKey.sanitize(providerName);
+        String c = TraceKey.sanitize(cloudName);
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for( Map.Entry<TraceKey,Timing> entry : timings.entrySet() ) {
+            TraceKey key = entry.getKey();
+
+            if( key.isIn(p, c, null) && key.getName().equals(name) ) {
+                histogram.add(entry.getValue().latency);
             }
         }
-        return count;
+        return histogram;
     }
 
-    static private long getOperationCountForPrefix(@Nonnull String prefix) {
-        long count = 0L;
+    static private double getRate(@Nonnull ConcurrentHashMap<TraceKey,Timing> timings, @Nonnull String providerName, @Nonnull String cloudName, @Nonnull String name, @Nonnegative int seconds) {
+        String p = TraceKey.sanitize(providerName);
+        String c = TraceKey.sanitize(cloudName);
+        double rate = 0.0;
 
-        synchronized( operationCount ) {
-            for( Map.Entry<String,Long> api : operationCount.entrySet() ) {
-                if( api.getKey().startsWith(prefix) ) {
-                    count += api.getValue();
-                }
+        for( Map.Entry<TraceKey,Timing> entry : timings.entrySet() ) {
+            TraceKey key = entry.getKey();
+
+            if( key.isIn(p, c, null) && key.getName().equals(name) ) {
+                rate += entry.getValue().rate.getRate(seconds);
             }
         }
-        return count;
+        return rate;
     }
 
-    static public @Nullable String getStackTrace(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operationName) {
+    /**
+     * Estimates the latency of an API call at the specified percentile across all accounts in a cloud.
+     * @param providerName the cloud provider
+     * @param cloudName the name of the cloud
+     * @param apiCall the API call
+     * @param percentile the percentile sought, between 0 and 100
+     * @return the estimated latency in nanoseconds, or 0 if no latencies have been recorded for the call
+     */
+    static public @Nonnegative long getAPILatency(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String apiCall, double percentile) {
+        return getLatency(apiTimings, providerName, cloudName, apiCall).getPercentile(percentile);
+    }
+
+    /**
+     * @param providerName the cloud provider
+     * @param cloudName the name of the cloud
+     * @param apiCall the API call
+     * @return the largest latency recorded for the API call across all accounts in a cloud, in nanoseconds
+     */
+    static public @Nonnegative long getAPIMaxLatency(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String apiCall) {
+        return getLatency(apiTimings, providerName, cloudName, apiCall).getMax();
+    }
 
-        CloudOperation operation = null;
+    /**
+     * Calculates the rate at which an API call has recently completed across all accounts in a cloud.
+     * @param providerName the cloud provider
+     * @param cloudName the name of the cloud
+     * @param apiCall the API call
+     * @param seconds the window over which the rate is calculated, at most 60 seconds
+     * @return the mean number of calls per second over the window
+     */
+    static public double getAPIRate(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String apiCall, @Nonnegative int seconds) {
+        return getRate(apiTimings, providerName, cloudName, apiCall, seconds);
+    }
 
-        synchronized( operationTrace ) {
-            for( Map.Entry<String,CloudOperation> entry : operationTrace.entrySet() ) {
-                if( entry.getKey().startsWith(providerName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + cloudName.replaceAll(DELIMITER_REGEX, "_") + DELIMITER) && entry.getKey().endsWith(DELIMITER + operationName) ) {
-                    operation = entry.getValue();
-                    break;
-                }
+    /**
+     * Estimates the latency of an operation at the specified percentile across all accounts in a cloud.
+     * @param providerName the cloud provider
+     * @param cloudName the name of the cloud
+     * @param operation the operation
+     * @param percentile the percentile sought, between 0 and 100
+     * @return the estimated latency in nanoseconds, or 0 if the operation has not completed
+     */
+    static public @Nonnegative long getOperationLatency(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operation, double percentile) {
+        return getLatency(operationTimings, providerName, cloudName, operation).getPercentile(percentile);
+    }
+
+    /**
+     * @param providerName the cloud provider
+     * @param cloudName the name of the cloud
+     * @param operation the operation
+     * @return the largest latency recorded for the operation across all accounts in a cloud, in nanoseconds
+     */
+    static public @Nonnegative long getOperationMaxLatency(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operation) {
+        return getLatency(operationTimings, providerName, cloudName, operation).getMax();
+    }
+
+    /**
+     * Calculates the rate at which an operation has recently completed across all accounts in a cloud.
+     * @param providerName the cloud provider
+     * @param cloudName the name of the cloud
+     * @param operation the operation
+     * @param seconds the window over which the rate is calculated, at most 60 seconds
+     * @return the mean number of operations per second over the window
+     */
+    static public double getOperationRate(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operation, @Nonnegative int seconds) {
+        return getRate(operationTimings, providerName, cloudName, operation, seconds);
+    }
+
+    static public @Nullable String getStackTrace(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String operationName) {
+        String p = TraceKey.sanitize(providerName);
+        String c = TraceKey.sanitize(cloudName);
+        for( CloudOperation root : operationTrace.list() ) {
+            CloudOperation operation = find(root, p, c, DELIMITER + operationName);
+
+            if( operation != null ) {
+                return (new JSONObject(toJSON(operation))).toString();
             }
         }
-        if( operation == null ) {
-            return null;
+        return null;
+    }
+
+    static private @Nullable CloudOperation find(@Nonnull CloudOperation operation, @Nonnull String providerName, @Nonnull String cloudName, @Nonnull String suffix) {
+        if( operation.key.isIn(providerName, cloudName, null) && operation.name.endsWith(suffix) ) {
+            return operation;
         }
-        return (new JSONObject(toJSON(operation))).toString();
+        for( CloudOperation child : getChildren(operation) ) {
+            CloudOperation match = find(child, providerName, cloudName, suffix);
+
+            if( match != null ) {
+                return match;
+            }
+        }
+        return null;
     }
 
     static private @Nonnull Map<String,Object> toJSON(@Nonnull CloudOperation operation) {
         HashMap<String,Object> map = new HashMap<String, Object>();
-        String[] parts = operation.name.split(DELIMITER_REGEX);
-        String provider, cloud;
-        String name;
-
-        if( parts.length == 4 ) {
-            provider = parts[0];
-            cloud = parts[1];
-            name = parts[3];
-        }
-        else if( parts.length > 4 ) {
-            StringBuilder tmp = new StringBuilder();
-
-            provider = parts[0];
-            cloud = parts[1];
-            for( int i=3; i<parts.length; i++ ) {
-                tmp.append(parts[i]);
-                if( i < parts.length-1 ) {
-                    tmp.append(DELIMITER);
-                }
-            }
-            name = tmp.toString();
+
+        map.put("operation", operation.key.getName());
+        map.put("provider", operation.key.getProviderName());
+        map.put("cloud", operation.key.getCloudName());
+        map.put("apiCalls", operation.apiCalls == null ? new String[0] : operation.apiCalls);
+        if( operation.truncated ) {
+            map.put("truncated", true);
         }
-        else {
-            provider = (parts.length > 0 ? parts[0] : "");
-            cloud = (parts.length > 1 ? parts[1] : "");
-            name = operation.name;
+        if( operation.origin != null ) {
+            map.put("async", true);
         }
-        map.put("operation", name);
-        map.put("provider", provider);
-        map.put("cloud", cloud);
-        map.put("apiCalls", operation.apiCalls == null ? new String[0] : operation.apiCalls);
         if( operation.endTimestamp > 0L ) {
             map.put("duration", operation.endTimestamp - operation.startTimestamp);
         }
-        if( operation.priorChildren != null ) {
+        List<CloudOperation> priorChildren = getChildren(operation);
+
+        if( !priorChildren.isEmpty() ) {
             ArrayList<Map<String,Object>> children = new ArrayList<Map<String, Object>>();
 
-            for( CloudOperation child : operation.priorChildren ) {
+            for( CloudOperation child : priorChildren ) {
                 children.add(toJSON(child));
             }
             map.put("operationCalls", children);
@@ -399,229 +899,172 @@ public class  APITrace {
     }
 
     static public String[] listAccounts(@Nonnull String provider, @Nonnull String cloud) {
-        provider = provider.replaceAll(DELIMITER_REGEX, "_");
-        cloud = cloud.replaceAll(DELIMITER_REGEX, "_");
-        TreeSet<String> list = new TreeSet<String>();
-
-        synchronized( apiCount ) {
-            for( String call : apiCount.keySet() ) {
-                String[] parts = call.split(DELIMITER_REGEX);
-
-                if( parts.length > 2 && parts[0].equals(provider) && parts[1].equals(cloud) ) {
-                    list.add(parts[2]);
-                }
-            }
-        }
-        return list.toArray(new String[list.size()]);
+        return apiCount.listAccounts(TraceKey.sanitize(provider), TraceKey.sanitize(cloud));
     }
 
     static public String[] listApis(@Nonnull String provider, @Nonnull String cloud) {
-        provider = provider.replaceAll(DELIMITER_REGEX, "_");
-        cloud = cloud.replaceAll(DELIMITER_REGEX, "_");
-        TreeSet<String> list = new TreeSet<String>();
-
-        synchronized( apiCount ) {
-            for( String call : apiCount.keySet() ) {
-                String[] parts = call.split(DELIMITER_REGEX);
-
-                if( parts.length > 3 && parts[0].equals(provider) && parts[1].equals(cloud) ) {
-                    if( parts.length == 4 ) {
-                        list.add(parts[3]);
-                    }
-                    else {
-                        StringBuilder tmp = new StringBuilder();
-
-                        for( int i=3; i<parts.length; i++ ) {
-                            tmp.append(parts[i]);
-                            if( i< parts.length-1 ) {
-                                tmp.append(DELIMITER);
-                            }
-                        }
-                        list.add(tmp.toString());
-                    }
-                }
-            }
-        }
-        return list.toArray(new String[list.size()]);
+        return apiCount.listNames(TraceKey.sanitize(provider), TraceKey.sanitize(cloud));
     }
 
     static public String[] listClouds(@Nonnull String provider) {
-        provider = provider.replaceAll(DELIMITER_REGEX, "_");
-        TreeSet<String> list = new TreeSet<String>();
-
-        synchronized( apiCount ) {
-            for( String call : apiCount.keySet() ) {
-                String[] parts = call.split(DELIMITER_REGEX);
-
-                if( parts.length > 1 && parts[0].equals(provider) ) {
-                    list.add(parts[1]);
-                }
-            }
-        }
-        return list.toArray(new String[list.size()]);
+        return apiCount.listClouds(TraceKey.sanitize(provider));
     }
 
     static public String[] listOperations(@Nonnull String provider, @Nonnull String cloud) {
-        provider = provider.replaceAll(DELIMITER_REGEX, "_");
-        cloud = cloud.replaceAll(DELIMITER_REGEX, "_");
-        TreeSet<String> list = new TreeSet<String>();
-
-        synchronized( operationCount ) {
-            for( String call : operationCount.keySet() ) {
-                String[] parts = call.split(DELIMITER_REGEX);
-
-                if( parts.length > 3 && parts[0].equals(provider) && parts[1].equals(cloud) ) {
-                    if( parts.length == 4 ) {
-                        list.add(parts[3]);
-                    }
-                    else {
-                        StringBuilder tmp = new StringBuilder();
-
-                        for( int i=3; i<parts.length; i++ ) {
-                            tmp.append(parts[i]);
-                            if( i< parts.length-1 ) {
-                                tmp.append(DELIMITER);
-                            }
-                        }
-                        list.add(tmp.toString());
-                    }
-                }
-            }
-        }
-        return list.toArray(new String[list.size()]);
+        return operationCount.listNames(TraceKey.sanitize(provider), TraceKey.sanitize(cloud));
     }
 
     static public String[] listProviders() {
-        TreeSet<String> providers = new TreeSet<String>();
-
-        synchronized( apiCount ) {
-            for( String call : apiCount.keySet() ) {
-                String[] parts = call.split(DELIMITER_REGEX);
-
-                if( parts.length > 0 ) {
-                    providers.add(parts[0]);
-                }
-            }
-        }
-        return providers.toArray(new String[providers.size()]);
+        return apiCount.listProviders();
     }
 
-    static private void log(CloudOperation operation) {
-        long count = count(operation);
-
-        synchronized( operationApis ) {
-            if( operationApis.containsKey(operation.name) ) {
-                operationApis.put(operation.name, operationApis.get(operation.name) + count);
-            }
-            else {
-                operationApis.put(operation.name, count);
-            }
-        }
-        if( logger.isTraceEnabled() ) {
-            operationTrace.put(operation.name, operation);
+    static private void log(CloudOperation operation, boolean capture, long nanos) {
+        operationApis.add(operation.metricKey, count(operation));
+        if( capture && (operation.sampled || isTail(operation, nanos)) ) {
+            operationTrace.add(operation);
         }
     }
 
     static public void report(@Nonnull String prefix) {
         logger.info("");
         if( logger.isInfoEnabled() ) {
-            synchronized( apiCount ) {
-                TreeSet<String> keys = new TreeSet<String>();
-
-                keys.addAll(apiCount.keySet());
-                logger.debug(prefix + "-> API calls: ");
-                for( String key : keys ) {
-                    logger.debug(prefix + "->\t" + key + " = " + apiCount.get(key));
-                }
+            logger.debug(prefix + "-> API calls: ");
+            for( Map.Entry<String,Long> entry : apiCount.toMap().entrySet() ) {
+                logger.debug(prefix + "->\t" + entry.getKey() + " = " + entry.getValue());
             }
         }
         if( logger.isDebugEnabled() ) {
-            synchronized( operationCount ) {
-                TreeSet<String> keys = new TreeSet<String>();
-
-                keys.addAll(operationCount.keySet());
-                logger.debug(prefix + "-> Operation calls:");
-                for( String key : keys ) {
-                    logger.debug(prefix + "->\t" + key + " = " + operationCount.get(key));
-                }
+            logger.debug(prefix + "-> Operation calls:");
+            for( Map.Entry<String,Long> entry : operationCount.toMap().entrySet() ) {
+                logger.debug(prefix + "->\t" + entry.getKey() + " = " + entry.getValue());
             }
-            synchronized( operationApis ) {
-                TreeSet<String> keys = new TreeSet<String>();
-
-                keys.addAll(operationApis.keySet());
-                logger.debug(prefix + "-> API calls by operation:");
-                for( String key : keys ) {
-                    logger.debug(prefix + "->\t" + key + " = " + operationApis.get(key));
-                }
+            logger.debug(prefix + "-> API calls by operation:");
+            for( Map.Entry<String,Long> entry : operationApis.toMap().entrySet() ) {
+                logger.debug(prefix + "->\t" + entry.getKey() + " = " + entry.getValue());
             }
         }
         if( logger.isTraceEnabled() ) {
-            synchronized( operationTrace ) {
-                TreeSet<String> keys = new TreeSet<String>();
-
-                keys.addAll(operationTrace.keySet());
-                logger.trace(prefix + "-> Stack trace:");
-                for( String key : keys ) {
-                    Map<String,Object> map = toJSON(operationTrace.get(key));
+            logger.trace(prefix + "-> Stack trace:");
+            for( CloudOperation operation : operationTrace.list() ) {
+                Map<String,Object> map = toJSON(operation);
 
-                    logger.trace((new JSONObject(map)).toString());
-                    logger.trace("");
-                }
+                logger.trace((new JSONObject(map)).toString());
+                logger.trace("");
             }
         }
         logger.info("");
     }
 
-    static public void reset() {
-        synchronized( apiCount ) {
-            apiCount.clear();
-        }
-        synchronized( operationApis ) {
-            operationApis.clear();
+    /**
+     * Provides the API call most recently traced by this thread through {@link #trace(CloudProvider, String)} that
+     * has not yet been executed, so that code executing requests can tell which API it is calling. Work handed to
+     * another thread through a {@link TraceContext} takes the pending call with it. Nothing is tracked while the trace
+     * mode is {@link TraceMode#OFF}.
+     * @return the name of the pending API call, or null if none has been traced since the last latency was recorded
+     */
+    static public @Nullable String getPendingApiCall() {
+        return (mode == TraceMode.OFF ? null : pendingApiCall.get());
+    }
+
+    /**
+     * Removes the pending API call from the current thread so that it can be made, and its latency recorded, on
+     * another one. The call is no longer timed on this thread.
+     * @return the pending API call, if any
+     */
+    static @Nullable PendingCall takePendingCall() {
+        String apiCall = pendingApiCall.get();
+
+        if( apiCall == null ) {
+            return null;
         }
-        synchronized( operationCount ) {
-            operationCount.clear();
+        TraceKey key = lastApiCall.get();
+
+        pendingApiCall.remove();
+        lastApiCall.remove();
+        return new PendingCall(apiCall, key);
+    }
+
+    /**
+     * Records the latency of the API call most recently traced by this thread through
+     * {@link #trace(CloudProvider, String)}. Nothing is recorded if no call has been traced since the last latency was
+     * recorded, so code that executes requests may call this without knowing whether the driver traces its calls.
+     * @param provider the provider against which the call was made
+     * @param nanos the time the call took in nanoseconds
+     */
+    static public void recordLatency(@Nonnull CloudProvider provider, @Nonnegative long nanos) {
+        TraceMode m = mode;
+
+        if( m != TraceMode.OFF ) {
+            pendingApiCall.remove();
+            if( m.includes(TraceMode.TIMINGS) ) {
+                TraceKey key = lastApiCall.get();
+
+                if( key != null ) {
+                    lastApiCall.remove();
+                    record(apiTimings, key, nanos);
+                }
+            }
         }
-        synchronized( operationTrace ) {
-            operationTrace.clear();
+    }
+
+    /**
+     * Records the latency of a specific API call.
+     * @param provider the provider against which the call was made
+     * @param apiCall the API call
+     * @param nanos the time the call took in nanoseconds
+     */
+    static public void recordLatency(@Nonnull CloudProvider provider, @Nonnull String apiCall, @Nonnegative long nanos) {
+        if( mode.includes(TraceMode.TIMINGS) ) {
+            try {
+                record(apiTimings, TraceKey.getInstance(provider.getProviderName(), provider.getCloudName(), getAccountNumber(provider.getContext()), apiCall), nanos);
+            }
+            catch( Throwable t ) {
+                logger.warn("Error with API trace latency: " + t.getMessage());
+            }
         }
-        operations.clear();
+    }
+
+    static public void reset() {
+        apiTimings.clear();
+        operationTimings.clear();
+        lastApiCall.remove();
+        pendingApiCall.remove();
+        epoch.incrementAndGet();
+        apiCount.clear();
+        operationApis.clear();
+        operationCount.clear();
+        operationTrace.clear();
+        TraceKey.clear();
     }
 
     static public void trace(@Nonnull CloudProvider provider,  @Nonnull String apiCall) {
-        if( logger.isInfoEnabled() ) {
-            ProviderContext ctx = provider.getContext();
-            String accountNumber = getAccountNumber( ctx );
-            String callName = provider.getProviderName().replaceAll(DELIMITER_REGEX, "_") + DELIMITER + provider.getCloudName().replaceAll(DELIMITER_REGEX, "_") + DELIMITER + accountNumber.replaceAll(DELIMITER_REGEX, "_") + DELIMITER + apiCall;
+        TraceMode m = mode;
 
+        if( m != TraceMode.OFF ) {
+            pendingApiCall.set(apiCall);
             try {
-                CloudOperation current = null;
-
-                if( logger.isDebugEnabled() ) {
-                    long thread = Thread.currentThread().getId();
+                ProviderContext ctx = provider.getContext();
+                TraceKey key = TraceKey.getInstance(provider.getProviderName(), provider.getCloudName(), getAccountNumber(ctx), apiCall);
+                CloudOperation current = getStack().peek();
 
-                    current = operations.get(thread);
-                    if( current != null ) {
-                        while( current.currentChild != null ) {
-                            current = current.currentChild;
-                        }
-                        current.calls++;
-                    }
+                if( current != null ) {
+                    current.calls++;
                 }
-                synchronized( apiCount ) {
-                    if( apiCount.containsKey(callName) ) {
-                        apiCount.put(callName, apiCount.get(callName) + 1);
-                    }
-                    else {
-                        apiCount.put(callName, 1L);
-                    }
+                apiCount.add(key, 1L);
+                if( m.includes(TraceMode.TIMINGS) ) {
+                    lastApiCall.set(key);
                 }
-                if( logger.isTraceEnabled() ) {
+                if( m == TraceMode.FULL_TREE ) {
                     if( current != null ) {
                         if( current.apiCalls == null ) {
                             current.apiCalls = new ArrayList<String>();
                         }
-                        current.apiCalls.add(apiCall);
+                        if( current.apiCalls.size() < MAX_API_CALLS ) {
+                            current.apiCalls.add(apiCall);
+                        }
+                        else {
+                            current.truncated = true;
+                        }
                     }
                 }
             }
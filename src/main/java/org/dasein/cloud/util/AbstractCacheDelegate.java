@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Implements the individual statistics operations of {@link CacheMBean} in terms of
+ * {@link CacheMBean#getStatistics(String)} so that JMX consoles can read them without access to
+ * {@link CacheStatistics}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+abstract class AbstractCacheDelegate implements CacheMBean {
+    @Override
+    public long getEstimatedSizeInBytes(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0L : s.getEstimatedSizeInBytes());
+    }
+
+    @Override
+    public long getEvictionCount(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0L : s.getEvictionCount());
+    }
+
+    @Override
+    public long getExpirationCount(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0L : s.getExpirationCount());
+    }
+
+    @Override
+    public long getHitCount(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0L : s.getHitCount());
+    }
+
+    @Override
+    public double getHitRatio(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0.0 : s.getHitRatio());
+    }
+
+    @Override
+    public long getLoadCount(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0L : s.getLoadCount());
+    }
+
+    @Override
+    public double getMeanLoadTimeInMillis(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0.0 : s.getMeanLoadTimeInMillis());
+    }
+
+    @Override
+    public long getMissCount(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0L : s.getMissCount());
+    }
+
+    @Override
+    public double getP99LoadTimeInMillis(@Nonnull String cacheName) {
+        CacheStatistics s = getStatistics(cacheName);
+
+        return (s == null ? 0.0 : s.getP99LoadTimeInMillis());
+    }
+}
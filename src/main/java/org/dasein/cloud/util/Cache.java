@@ -19,7 +19,10 @@
 
 package org.dasein.cloud.util;
 
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.time.Hour;
@@ -29,10 +32,24 @@ import org.dasein.util.uom.time.TimePeriod;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.File;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements efficient caching of non-changing resources so that you can minimize the number of API calls being made
@@ -43,6 +60,13 @@ import java.util.Set;
  * much stuff that you are eating up RAM. This cloud implements centralized caching so that you can minimize API calls
  * with efficient memory usage.
  * <p>
+ * Cached items are held in a single concurrent map keyed by the parts of the context that matter to the cache's
+ * {@link CacheLevel}. Reads never take a lock, and each entry expires on its own based on when it was cached.
+ * Caches with a bounded {@link CacheEvictionPolicy} hold their listings strongly until they expire or are evicted.
+ * Caches on the unbounded policy hold them through soft references, so the garbage collector may reclaim them under
+ * heap pressure, and a reclaimed listing is simply a cache miss.
+ * </p>
+ * <p>
  * Example:
  * </p>
  * <pre>
@@ -57,124 +81,261 @@ import java.util.Set;
  *         return regions;
  *     }
  * </pre>
+ * <p>
+ * Alternately, you can hand the cache a loader and let it manage the cache misses for you. Concurrent callers
+ * missing the same entry share a single load, and entries that are close to expiring are refreshed in the
+ * background while callers continue to get the cached value:
+ * </p>
+ * <pre>
+ *     public Iterable&lt;Region&gt; listRegions() throws CloudException, InternalException {
+ *         Cache&lt;Region&gt; cache = Cache.getInstance(provider, "regions", Region.class, CacheLevel.CLOUD);
+ *
+ *         return cache.get(provider.getContext(), new Callable&lt;Iterable&lt;Region&gt;&gt;() {
+ *             public Iterable&lt;Region&gt; call() throws Exception {
+ *                 // make API call to load regions
+ *             }
+ *         });
+ *     }
+ * </pre>
+ * <p>
+ * A cache may also persist its listings to a local directory through {@link #persistTo(File)}. Persisted listings
+ * are read back on a miss, so a freshly started JVM can serve slow-changing catalogs such as regions or products
+ * without going back to the cloud, as long as the listings have not outlived the cache timeout:
+ * </p>
+ * <pre>
+ *     Cache&lt;Region&gt; cache = Cache.getInstance(provider, "regions", Region.class, CacheLevel.CLOUD);
+ *
+ *     cache.persistTo(Cache.getDefaultPersistenceDirectory());
+ * </pre>
+ * <p>
+ * Each cache subscribes to {@link InvalidationBus} events for the type of item it holds, and may subscribe to more
+ * types through {@link #invalidateOn(Class[])}. When a resource changes, the cached data for the scope of the change at
+ * the cache's level is dropped immediately rather than lingering until it times out.
+ * </p>
  * <p>Created by George Reese: 11/16/12 4:51 PM</p>
  * @author George Reese
  * @version 2013.01 initial version
  * @since 2013.01
  */
 public final class Cache<T> {
-    static private final HashMap<String,Cache<?>> caches = new HashMap<String, Cache<?>>();
+    static private final Logger logger = Logger.getLogger(Cache.class);
+
+    static private final ConcurrentHashMap<String,Cache<?>> caches = new ConcurrentHashMap<String, Cache<?>>();
+
+    /**
+     * The fraction of the cache timeout after which a loader-based read triggers a background refresh
+     */
+    static public final double REFRESH_AHEAD_RATIO = 0.8;
 
-    static public class CacheDelegate implements CacheMBean {
+    /**
+     * The system property naming the directory under which persistent caches store their listings
+     */
+    static public final String PERSISTENCE_DIRECTORY_PROPERTY = "dasein.cloud.cache.directory";
+
+    static private final ThreadPoolExecutor refreshPool;
+
+    static {
+        refreshPool = new ThreadPoolExecutor(4, 4, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "dasein-cache-refresh-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        refreshPool.allowCoreThreadTimeOut(true);
+        CacheManager.register();
+    }
+
+    static public class CacheDelegate extends AbstractCacheDelegate {
         @Override
         public void clear(@Nonnull String cacheName) {
-            Cache<?> c;
+            Cache<?> c = caches.get(cacheName);
 
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return;
-                }
+            if( c != null ) {
+                c.clear();
             }
-            c.clear();
         }
 
         @Override
         public @Nonnull String[] getCaches() {
-            Set<String> names;
+            Set<String> names = caches.keySet();
 
-            synchronized( caches ) {
-                names = caches.keySet();
-            }
             return names.toArray(new String[names.size()]);
         }
 
         @Override
         public @Nullable CacheLevel getCacheLevel(@Nonnull String cacheName) {
-            Cache<?> c;
+            Cache<?> c = caches.get(cacheName);
 
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return null;
-                }
-            }
-            if( c.cloudCache != null ) {
-                return CacheLevel.CLOUD;
-            }
-            else if( c.cloudAccountCache != null ) {
-                return CacheLevel.CLOUD_ACCOUNT;
-            }
-            else if( c.regionCache != null ) {
-                return CacheLevel.REGION;
-            }
-            else if( c.regionAccountCache != null ) {
-                return CacheLevel.REGION_ACCOUNT;
-            }
-            return null;
+            return (c == null ? null : c.level);
         }
 
         @Override
         public long getNextTimeout(@Nonnull String cacheName) {
-            Cache<?> c;
+            Cache<?> c = caches.get(cacheName);
 
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return System.currentTimeMillis();
-                }
+            if( c == null ) {
+                return System.currentTimeMillis();
             }
             return (c.cacheStart + c.cacheTimeout.longValue());
         }
 
         @Override
         public long getTimeoutInSeconds(@Nonnull String cacheName) {
-            Cache<?> c;
+            Cache<?> c = caches.get(cacheName);
 
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return 0L;
-                }
+            if( c == null ) {
+                return 0L;
             }
             return (c.cacheTimeout.longValue()/1000L);
         }
 
         public void setTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds) {
-            Cache<?> c;
+            Cache<?> c = caches.get(cacheName);
 
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return;
+            if( c != null ) {
+                c.cacheTimeout = new TimePeriod<Millisecond>(timeoutInSeconds * 1000L, TimePeriod.MILLISECOND);
+            }
+        }
+
+        @Override
+        public long getNotFoundTimeoutInSeconds(@Nonnull String cacheName) {
+            Cache<?> c = caches.get(cacheName);
+
+            if( c == null ) {
+                return 0L;
+            }
+            return (c.notFoundTimeout/1000L);
+        }
+
+        @Override
+        public void setNotFoundTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds) {
+            Cache<?> c = caches.get(cacheName);
+
+            if( c != null ) {
+                c.setNotFoundTimeout(timeoutInSeconds < 1L ? null : new TimePeriod<Millisecond>(timeoutInSeconds * 1000L, TimePeriod.MILLISECOND));
+            }
+        }
+
+        @Override
+        public @Nullable CacheStatistics getStatistics(@Nonnull String cacheName) {
+            Cache<?> c = caches.get(cacheName);
+
+            return (c == null ? null : c.getStatistics());
+        }
+    }
+
+    /**
+     * Identifies the individual items in a cached listing so that they may be looked up by ID.
+     * @param <T> the type of the object being cached
+     */
+    public interface Identifier<T> {
+        /**
+         * @param item an item from a cached listing
+         * @return the unique ID of the item, or null if the item should not be indexed
+         */
+        public @Nullable String getId(@Nonnull T item);
+    }
+
+    /**
+     * Lists every item of a cache and identifies each one, so that single items may be looked up through
+     * {@link #get(ProviderContext, String, Index)}.
+     * @param <T> the type of the object being cached
+     */
+    public interface Index<T> extends Identifier<T> {
+        /**
+         * @return the full listing from the cloud provider, which may be read only once
+         * @throws CloudException an error occurred with the cloud provider while listing the items
+         * @throws InternalException an error occurred within Dasein Cloud while listing the items
+         */
+        public @Nonnull Iterable<T> list() throws CloudException, InternalException;
+    }
+
+    static private class Listing<T> {
+        public final Iterable<T> items;
+        public final long        loadedNanos;
+        private volatile Map<String,T> index;
+
+        public Listing(@Nonnull Iterable<T> items, long loadedNanos) {
+            this.items = items;
+            this.loadedNanos = loadedNanos;
+        }
+
+        public @Nullable T lookup(@Nonnull String id, @Nonnull Identifier<T> identifier) {
+            Map<String,T> idx = index;
+
+            if( idx == null ) {
+                synchronized( this ) {
+                    idx = index;
+                    if( idx == null ) {
+                        idx = new HashMap<String, T>();
+                        for( T item : items ) {
+                            String itemId = identifier.getId(item);
+
+                            if( itemId != null && !idx.containsKey(itemId) ) {
+                                idx.put(itemId, item);
+                            }
+                        }
+                        index = idx;
+                    }
                 }
             }
-            c.cacheTimeout = new TimePeriod<Millisecond>(timeoutInSeconds, TimePeriod.MILLISECOND);
+            return idx.get(id);
         }
+
+        public @Nonnull String toString() { return items.toString(); }
     }
 
     static private class CacheEntry<T> {
-        public long lastCacheClear;
-        public SoftReference<Iterable<T>> items;
-        public @Nonnull String toString() { return ((items == null) ? "--> empty <--" : items.toString()); }
+        public final long                       lastCacheClear;
+        public final long                       weight;
+        public volatile long                    lastAccess;
+        private final Listing<T>                listing;
+        private final SoftReference<Listing<T>> softListing;
+
+        public CacheEntry(@Nonnull Listing<T> listing, boolean soft, long weight, long tick, long cachedAt) {
+            this.listing = (soft ? null : listing);
+            this.softListing = (soft ? new SoftReference<Listing<T>>(listing) : null);
+            this.weight = weight;
+            this.lastCacheClear = cachedAt;
+            this.lastAccess = tick;
+        }
+
+        /**
+         * @return the cached listing, or null if the garbage collector has reclaimed it
+         */
+        public @Nullable Listing<T> getListing() {
+            return (listing == null ? softListing.get() : listing);
+        }
+
+        public @Nonnull String toString() {
+            Listing<T> l = getListing();
+
+            return (l == null ? "(reclaimed)" : l.toString());
+        }
     }
 
+    static private final AtomicLong accessClock = new AtomicLong(0L);
+
+    /**
+     * @return the directory configured through {@link #PERSISTENCE_DIRECTORY_PROPERTY}, or null if none is configured
+     */
+    static public @Nullable File getDefaultPersistenceDirectory() {
+        String dir = System.getProperty(PERSISTENCE_DIRECTORY_PROPERTY);
+
+        if( dir == null || dir.trim().isEmpty() ) {
+            return null;
+        }
+        return new File(dir.trim());
+    }
 
+    static @Nonnull String getCacheName(@Nonnull CloudProvider provider, @Nonnull String name) {
+        return provider.getClass().getName() + "." + name;
+    }
 
     /**
      * Provides access to a cache for items under the specified name.
@@ -200,61 +361,163 @@ public final class Cache<T> {
      * @return a cache containing the context-sensitive cached items
      */
     static public @Nonnull <X> Cache<X> getInstance(@Nonnull CloudProvider provider, @Nonnull String name, @Nonnull Class<X> typeClass, @Nonnull CacheLevel level, @Nonnegative TimePeriod<?> timeout) {
-        Cache<X> c;
+        return getInstance(provider, name, typeClass, level, timeout, CacheEvictionPolicy.unbounded());
+    }
+
+    /**
+     * Provides access to a cache for items under the specified name that evicts entries according to the specified
+     * policy. The policy applies only when the cache is first created; later calls for the same cache return the
+     * existing cache with its original policy.
+     * @param provider the cloud provider object governing the cache
+     * @param name the name of the cache
+     * @param typeClass the type of object being cached
+     * @param level the level at which these objects should be cached
+     * @param timeout the amount of time before the cache is automatically considered stale and forces you to reload from API
+     * @param policy the capacity and weight bounds for the cache
+     * @param <X> the type of the object being cached
+     * @return a cache containing the context-sensitive cached items
+     */
+    static public @Nonnull <X> Cache<X> getInstance(@Nonnull CloudProvider provider, @Nonnull String name, @Nonnull Class<X> typeClass, @Nonnull CacheLevel level, @Nonnegative TimePeriod<?> timeout, @Nonnull CacheEvictionPolicy policy) {
+        return getInstance(provider, name, typeClass, level, timeout, policy, null);
+    }
+
+    /**
+     * Provides access to a cache for items under the specified name that also remembers IDs that could not be found
+     * through {@link #get(ProviderContext, String, Identifier, Callable)}, so that repeated lookups for resources
+     * that no longer exist do not each cost a full listing. The policy and not-found timeout apply only when the cache
+     * is first created; the not-found timeout may be changed later through {@link #setNotFoundTimeout(TimePeriod)} or
+     * {@link CacheMBean#setNotFoundTimeoutInSeconds(String, long)}.
+     * @param provider the cloud provider object governing the cache
+     * @param name the name of the cache
+     * @param typeClass the type of object being cached
+     * @param level the level at which these objects should be cached
+     * @param timeout the amount of time before the cache is automatically considered stale and forces you to reload from API
+     * @param policy the capacity and weight bounds for the cache
+     * @param notFoundTimeout how long to remember that an ID was not found, or null to not remember missing IDs
+     * @param <X> the type of the object being cached
+     * @return a cache containing the context-sensitive cached items
+     */
+    static public @Nonnull <X> Cache<X> getInstance(@Nonnull CloudProvider provider, @Nonnull String name, @Nonnull Class<X> typeClass, @Nonnull CacheLevel level, @Nonnegative TimePeriod<?> timeout, @Nonnull CacheEvictionPolicy policy, @Nullable TimePeriod<?> notFoundTimeout) {
+        name = getCacheName(provider, name);
+
+        //noinspection unchecked
+        Cache<X> c = (Cache<X>)caches.get(name);
+
+        if( c == null ) {
+            c = new Cache<X>(name, typeClass, level, timeout, policy);
 
-        name = provider.getClass().getName() + "." + name;
-        synchronized( caches ) {
-            if( caches.containsKey(name) ) {
-                //noinspection unchecked
-                c = (Cache<X>)caches.get(name);
+            //noinspection unchecked
+            Cache<X> existing = (Cache<X>)caches.putIfAbsent(name, c);
+
+            if( existing != null ) {
+                c = existing;
             }
             else {
-                c = new Cache<X>(level, timeout);
-                caches.put(name, c);
+                c.setNotFoundTimeout(notFoundTimeout);
+                c.invalidateOn(typeClass);
             }
         }
         return c;
     }
 
-    private HashMap<String,CacheEntry<T>>                         cloudCache;
-    private HashMap<String,Map<String,CacheEntry<T>>>             cloudAccountCache;
-    private HashMap<String,Map<String,CacheEntry<T>>>             regionCache;
-    private HashMap<String,Map<String,Map<String,CacheEntry<T>>>> regionAccountCache;
+    private final ConcurrentHashMap<CacheKey,CacheEntry<T>> entries = new ConcurrentHashMap<CacheKey, CacheEntry<T>>();
+    private final ConcurrentHashMap<CacheKey,FutureTask<Listing<T>>> loading = new ConcurrentHashMap<CacheKey, FutureTask<Listing<T>>>();
+    private final ConcurrentHashMap<CacheKey,ConcurrentHashMap<String,Long>> notFound = new ConcurrentHashMap<CacheKey, ConcurrentHashMap<String, Long>>();
+    // IDs named by recent invalidation events; eventually consistent clouds may leave them out of listings for a while
+    private final ConcurrentHashMap<CacheKey,ConcurrentHashMap<String,Long>> changed = new ConcurrentHashMap<CacheKey, ConcurrentHashMap<String, Long>>();
+    private final String                                    name;
+    private final Class<T>                                  typeClass;
+    private final CacheLevel                                level;
+    private final CacheEvictionPolicy                       policy;
+    private final AtomicLong                                totalWeight = new AtomicLong(0L);
+    private final AtomicLong                                evictionCount = new AtomicLong(0L);
+    private final AtomicLong                                expirationCount = new AtomicLong(0L);
+    private final AtomicLong                                hitCount = new AtomicLong(0L);
+    private final AtomicLong                                loadFailureCount = new AtomicLong(0L);
+    private final AtomicLong                                invalidations = new AtomicLong(0L);
+    private final LatencyHistogram                          loadTimes = new LatencyHistogram();
+    private final AtomicLong                                missCount = new AtomicLong(0L);
+
+    private final InvalidationListener invalidator = new InvalidationListener() {
+        @Override
+        public void invalidated(@Nonnull InvalidationEvent event) {
+            CacheKey key = CacheKey.getInstance(level, event.getContext());
+            String id = event.getResourceId();
 
-    private TimePeriod<Millisecond> cacheTimeout;
-    private long                    cacheStart;
+            invalidate(key);
+            if( id != null ) {
+                long ttl = getNotFoundTtl();
 
-    private Cache() { }
+                if( ttl > 0L ) {
+                    long now = System.currentTimeMillis();
 
-    private Cache(CacheLevel level, TimePeriod<?> timeout) {
-        switch( level ) {
-            case CLOUD: cloudCache = new HashMap<String, CacheEntry<T>>(); break;
-            case CLOUD_ACCOUNT: cloudAccountCache = new HashMap<String, Map<String, CacheEntry<T>>>(); break;
-            case REGION: regionCache = new HashMap<String, Map<String, CacheEntry<T>>>(); break;
-            case REGION_ACCOUNT: regionAccountCache = new HashMap<String, Map<String, Map<String, CacheEntry<T>>>>(); break;
+                    put(changed, key, id, now + ttl);
+                    sweep(now);
+                }
+            }
         }
+    };
+
+    private volatile DiskCacheTier<T>        disk;
+    private volatile TimePeriod<Millisecond> cacheTimeout;
+    private volatile long                    notFoundTimeout;
+    private volatile long                    cacheStart;
+    private volatile long                    lastSweep;
+
+    private Cache(@Nonnull String name, @Nonnull Class<T> typeClass, @Nonnull CacheLevel level, @Nonnull TimePeriod<?> timeout, @Nonnull CacheEvictionPolicy policy) {
+        this.name = name;
+        this.typeClass = typeClass;
+        this.level = level;
+        this.policy = policy;
+        //noinspection unchecked
         cacheTimeout = (TimePeriod<Millisecond>)timeout.convertTo(TimePeriod.MILLISECOND);
         cacheStart = System.currentTimeMillis();
+        lastSweep = cacheStart;
     }
 
     /**
-     * Clears out the cache across the board, regardless of context.
+     * Clears out the cache across the board, regardless of context. Loads in flight finish for their callers, but
+     * their results are not cached.
      */
     public void clear() {
-        synchronized( this ) {
-            if( cloudCache != null ) {
-                cloudCache.clear();
-            }
-            else if( cloudAccountCache != null ) {
-                cloudAccountCache.clear();
-            }
-            else if( regionCache != null ) {
-                regionCache.clear();
+        invalidations.incrementAndGet();
+        loading.clear();
+        for( CacheKey key : entries.keySet() ) {
+            CacheEntry<T> entry = entries.get(key);
+
+            if( entry != null ) {
+                remove(key, entry);
             }
-            else if( regionAccountCache != null ) {
-                regionAccountCache.clear();
+        }
+        notFound.clear();
+        changed.clear();
+        DiskCacheTier<T> tier = disk;
+
+        if( tier != null ) {
+            tier.clear();
+        }
+        cacheStart = System.currentTimeMillis();
+    }
+
+    private void evict() {
+        synchronized( this ) {
+            while( entries.size() > policy.getMaximumEntries() || totalWeight.get() > policy.getMaximumWeight() ) {
+                CacheKey oldestKey = null;
+                CacheEntry<T> oldest = null;
+
+                for( Map.Entry<CacheKey,CacheEntry<T>> e : entries.entrySet() ) {
+                    if( oldest == null || e.getValue().lastAccess < oldest.lastAccess ) {
+                        oldestKey = e.getKey();
+                        oldest = e.getValue();
+                    }
+                }
+                if( oldest == null ) {
+                    return;
+                }
+                if( remove(oldestKey, oldest) ) {
+                    evictionCount.incrementAndGet();
+                }
             }
-            cacheStart = System.currentTimeMillis();
         }
     }
 
@@ -266,51 +529,454 @@ public final class Cache<T> {
      * @return the items currently in the cache if any are currently cached
      */
     public @Nullable Iterable<T> get(@Nonnull ProviderContext ctx) {
-        synchronized( this ) {
-            if( System.currentTimeMillis() > (cacheStart + CalendarWrapper.DAY) ) {
-                clear();
+        CacheKey key = CacheKey.getInstance(level, ctx);
+        CacheEntry<T> entry = entries.get(key);
+        Listing<T> listing = (entry == null ? null : listingOf(key, entry));
+
+        if( listing == null ) {
+            entry = restore(key, System.currentTimeMillis());
+            listing = (entry == null ? null : listingOf(key, entry));
+            if( listing == null ) {
+                missCount.incrementAndGet();
                 return null;
             }
         }
-        CacheEntry<T> entry = null;
-        String endpoint = ctx.getCloud().getEndpoint();
+        if( isExpired(entry, System.currentTimeMillis()) ) {
+            expire(key, entry);
+            missCount.incrementAndGet();
+            return null;
+        }
+        if( policy.isBounded() ) {
+            entry.lastAccess = accessClock.incrementAndGet();
+        }
+        hitCount.incrementAndGet();
+        return listing.items;
+    }
+
+    /**
+     * Fetches the items cached for the context specified, loading them through the specified loader if nothing is
+     * currently cached. When multiple threads miss the same entry at the same time, only one of them calls the loader
+     * and the others wait for its result. When a cached entry is older than {@link #REFRESH_AHEAD_RATIO} of the
+     * cache timeout, the cached items are returned immediately and the loader is run in the background to replace
+     * them before they expire.
+     * @param ctx the context for the caching
+     * @param loader the loader that fetches the items from the cloud provider on a cache miss
+     * @return the cached or freshly loaded items
+     * @throws CloudException an error occurred with the cloud provider while loading the items
+     * @throws InternalException an error occurred within Dasein Cloud while loading the items
+     */
+    public @Nonnull Iterable<T> get(@Nonnull ProviderContext ctx, @Nonnull Callable<? extends Iterable<T>> loader) throws CloudException, InternalException {
+        return getListing(CacheKey.getInstance(level, ctx), loader).items;
+    }
+
+    /**
+     * Fetches a single item from the listing cached for the context specified, loading the listing through the
+     * specified loader if nothing is currently cached. The first lookup against a cached listing indexes the listing
+     * by ID, so subsequent lookups against the same listing cost a hash lookup rather than a scan. If the item is not
+     * in a listing that was loaded before this call, the listing is reloaded once to pick up newly created resources.
+     * Loads are shared between concurrent callers in the same way as with {@link #get(ProviderContext, Callable)}.
+     * If this cache has a not-found timeout, an ID missing even from a fresh listing is remembered for that long
+     * (but never longer than the cache timeout), and lookups for it return null without loading anything. IDs named
+     * by an invalidation event within that time, such as those of newly created resources, are not remembered.
+     * @param ctx the context for the caching
+     * @param id the unique ID of the item being sought
+     * @param identifier the identifier that extracts the ID from each cached item
+     * @param loader the loader that fetches the full listing from the cloud provider
+     * @return the matching item, or null if no item in the current listing has the specified ID
+     * @throws CloudException an error occurred with the cloud provider while loading the listing
+     * @throws InternalException an error occurred within Dasein Cloud while loading the listing
+     */
+    public @Nullable T get(@Nonnull ProviderContext ctx, @Nonnull String id, @Nonnull Identifier<T> identifier, @Nonnull Callable<? extends Iterable<T>> loader) throws CloudException, InternalException {
+        CacheKey key = CacheKey.getInstance(level, ctx);
 
-        if( cloudCache != null ) {
-            entry = cloudCache.get(endpoint);
+        if( isNotFound(key, id) ) {
+            hitCount.incrementAndGet();
+            return null;
         }
-        else if( regionCache != null ) {
-            Map<String,CacheEntry<T>> map = regionCache.get(endpoint);
+        long start = System.nanoTime();
+        Listing<T> listing = getListing(key, loader);
+        T item = listing.lookup(id, identifier);
 
-            if( map != null ) {
-                entry = map.get(ctx.getRegionId());
+        if( item == null && listing.loadedNanos - start < 0L ) {
+            listing = load(key, loader);
+            item = listing.lookup(id, identifier);
+        }
+        if( item == null ) {
+            putNotFound(key, id);
+        }
+        return item;
+    }
+
+    /**
+     * Fetches a single item in the same way as {@link #get(ProviderContext, String, Identifier, Callable)}, loading
+     * the listing through the specified index. The listing is copied as it is read, so indexes may return listings
+     * that can only be iterated once. Items are shared between every caller that finds them in the same listing and
+     * must not be modified.
+     * @param ctx the context for the caching
+     * @param id the unique ID of the item being sought
+     * @param index the index that lists the items and extracts the ID from each of them
+     * @return the matching item, or null if no item in the current listing has the specified ID
+     * @throws CloudException an error occurred with the cloud provider while loading the listing
+     * @throws InternalException an error occurred within Dasein Cloud while loading the listing
+     */
+    public @Nullable T get(@Nonnull ProviderContext ctx, @Nonnull String id, @Nonnull final Index<T> index) throws CloudException, InternalException {
+        return get(ctx, id, index, new Callable<Iterable<T>>() {
+            @Override
+            public Iterable<T> call() throws Exception {
+                List<T> list = new ArrayList<T>();
+
+                for( T item : index.list() ) {
+                    list.add(item);
+                }
+                return list;
+            }
+        });
+    }
+
+    private @Nonnull Listing<T> getListing(@Nonnull CacheKey key, @Nonnull Callable<? extends Iterable<T>> loader) throws CloudException, InternalException {
+        CacheEntry<T> entry = entries.get(key);
+        Listing<T> listing = (entry == null ? null : listingOf(key, entry));
+        long now = System.currentTimeMillis();
+
+        if( listing != null ) {
+            if( !isExpired(entry, now) ) {
+                if( policy.isBounded() ) {
+                    entry.lastAccess = accessClock.incrementAndGet();
+                }
+                if( now - entry.lastCacheClear > (long)(Math.min(cacheTimeout.longValue(), CalendarWrapper.DAY) * REFRESH_AHEAD_RATIO) ) {
+                    refresh(key, loader);
+                }
+                hitCount.incrementAndGet();
+                return listing;
+            }
+            expire(key, entry);
+        }
+        entry = restore(key, now);
+        listing = (entry == null ? null : listingOf(key, entry));
+        if( listing != null ) {
+            hitCount.incrementAndGet();
+            return listing;
+        }
+        missCount.incrementAndGet();
+        return load(key, loader);
+    }
+
+    private @Nonnull FutureTask<Listing<T>> newLoad(final @Nonnull CacheKey key, final @Nonnull Callable<? extends Iterable<T>> loader) {
+        return new FutureTask<Listing<T>>(new Callable<Listing<T>>() {
+            @Override
+            public Listing<T> call() throws Exception {
+                long epoch = invalidations.get();
+                long start = System.nanoTime();
+                Iterable<T> items;
+
+                try {
+                    items = loader.call();
+                    if( items == null ) {
+                        throw new InternalException("Cache loader returned null");
+                    }
+                }
+                catch( Exception e ) {
+                    loadFailureCount.incrementAndGet();
+                    throw e;
+                }
+                catch( Error e ) {
+                    loadFailureCount.incrementAndGet();
+                    throw e;
+                }
+                loadTimes.record(System.nanoTime() - start);
+                Listing<T> listing = new Listing<T>(items, System.nanoTime());
+
+                if( invalidations.get() != epoch ) {
+                    // something changed while we were loading, so these items may already be stale
+                    return listing;
+                }
+                CacheEntry<T> entry = put(key, listing);
+
+                if( invalidations.get() != epoch ) {
+                    remove(key, entry);
+                }
+                return listing;
+            }
+        });
+    }
+
+    private @Nonnull Listing<T> load(@Nonnull CacheKey key, @Nonnull Callable<? extends Iterable<T>> loader) throws CloudException, InternalException {
+        FutureTask<Listing<T>> task = newLoad(key, loader);
+        FutureTask<Listing<T>> current = loading.putIfAbsent(key, task);
+
+        if( current == null ) {
+            current = task;
+            try {
+                task.run();
+            }
+            finally {
+                loading.remove(key, task);
             }
         }
-        else if( cloudAccountCache != null ) {
-            Map<String,CacheEntry<T>> map = cloudAccountCache.get(endpoint);
+        try {
+            return current.get();
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted while waiting for " + key + " to load", e);
+        }
+        catch( ExecutionException e ) {
+            Throwable cause = e.getCause();
 
-            if( map != null ) {
-                entry = map.get(ctx.getAccountNumber());
+            if( cause instanceof CloudException ) {
+                throw (CloudException)cause;
+            }
+            else if( cause instanceof InternalException ) {
+                throw (InternalException)cause;
+            }
+            else if( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            }
+            else if( cause instanceof Error ) {
+                throw (Error)cause;
             }
+            throw new InternalException(cause);
         }
-        else if( regionAccountCache != null ) {
-            Map<String,Map<String,CacheEntry<T>>> map = regionAccountCache.get(endpoint);
+    }
 
-            if( map != null ) {
-                Map<String,CacheEntry<T>> rmap = map.get(ctx.getRegionId());
+    private void refresh(final @Nonnull CacheKey key, @Nonnull Callable<? extends Iterable<T>> loader) {
+        final FutureTask<Listing<T>> task = newLoad(key, loader);
 
-                if( rmap != null ) {
-                    entry = rmap.get(ctx.getAccountNumber());
+        if( loading.putIfAbsent(key, task) != null ) {
+            return; // someone else is already loading this entry
+        }
+        try {
+            refreshPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                        task.get();
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Background refresh of " + key + " failed: " + t.getMessage());
+                    }
+                    finally {
+                        loading.remove(key, task);
+                    }
                 }
+            });
+        }
+        catch( RejectedExecutionException e ) {
+            loading.remove(key, task);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the usage statistics for this cache. Estimating the retained size serializes a sample of
+     * each cached listing, so this method is meant for monitoring rather than for use on every request.
+     * @return the current statistics for this cache
+     */
+    public @Nonnull CacheStatistics getStatistics() {
+        long entryCount = 0L;
+        long size = 0L;
+
+        for( CacheEntry<T> entry : entries.values() ) {
+            Listing<T> listing = entry.getListing();
+
+            if( listing != null ) {
+                entryCount++;
+                size += CacheStatistics.estimateSize(listing.items);
             }
         }
-        if( entry == null ) {
-            return null;
+        return new CacheStatistics(name, hitCount.get(), missCount.get(), expirationCount.get(), evictionCount.get(), loadTimes.getCount(), loadFailureCount.get(), loadTimes.getMean()/1000000.0, loadTimes.getPercentile(99.0)/1000000.0, entryCount, size);
+    }
+
+    /**
+     * @return the number of entries evicted from this cache to keep it within its eviction policy
+     */
+    public @Nonnegative long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the eviction policy governing the size of this cache
+     */
+    public @Nonnull CacheEvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the total weight of the listings currently held by this cache
+     */
+    public @Nonnegative long getWeight() {
+        return totalWeight.get();
+    }
+
+    /**
+     * Drops the data cached for the scope of the specified context at this cache's level, both in memory and on disk.
+     * Any load for that scope already under way is allowed to finish, but its results are handed only to the callers
+     * waiting on it and are not cached.
+     * @param ctx the context in which the cached data was changed
+     */
+    public void invalidate(@Nonnull ProviderContext ctx) {
+        invalidate(CacheKey.getInstance(level, ctx));
+    }
+
+    private void invalidate(@Nonnull CacheKey key) {
+        invalidations.incrementAndGet();
+        loading.remove(key);
+        notFound.remove(key);
+
+        CacheEntry<T> entry = entries.get(key);
+        DiskCacheTier<T> tier = disk;
+
+        if( entry != null ) {
+            remove(key, entry);
         }
-        if( entry.lastCacheClear + cacheTimeout.longValue() < System.currentTimeMillis() ) {
-            entry.items = null;
-            return null;
+        if( tier != null ) {
+            tier.delete(key);
+        }
+    }
+
+    /**
+     * Subscribes this cache to invalidation events for the specified resource types in addition to the type of item it
+     * holds. Use this for caches whose contents are derived from other resources, such as a cache of firewall rules
+     * that should be dropped when a firewall changes.
+     * @param resourceTypes the Dasein Cloud model classes whose changes make this cache stale
+     */
+    public void invalidateOn(@Nonnull Class<?> ... resourceTypes) {
+        for( Class<?> type : resourceTypes ) {
+            InvalidationBus.subscribe(type, invalidator);
         }
-        return entry.items.get();
+    }
+
+    /**
+     * Checks whether the specified ID was recently looked up in the specified context and not found.
+     * @param ctx the context for the caching
+     * @param id the unique ID of the resource
+     * @return true if the resource is known not to exist
+     */
+    public boolean isNotFound(@Nonnull ProviderContext ctx, @Nonnull String id) {
+        return isNotFound(CacheKey.getInstance(level, ctx), id);
+    }
+
+    private boolean isNotFound(@Nonnull CacheKey key, @Nonnull String id) {
+        return contains(notFound, key, id);
+    }
+
+    static private boolean contains(@Nonnull ConcurrentHashMap<CacheKey,ConcurrentHashMap<String,Long>> map, @Nonnull CacheKey key, @Nonnull String id) {
+        ConcurrentHashMap<String,Long> ids = map.get(key);
+
+        if( ids == null ) {
+            return false;
+        }
+        Long until = ids.get(id);
+
+        if( until == null ) {
+            return false;
+        }
+        if( until < System.currentTimeMillis() ) {
+            ids.remove(id, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers that the specified ID could not be found in the specified context for the not-found timeout of this
+     * cache. Use this when a lookup is not served through {@link #get(ProviderContext, String, Identifier, Callable)}.
+     * Nothing is remembered if this cache has no not-found timeout, or if the ID was named by an invalidation event
+     * within that timeout, since a resource that was just created may not show up in listings straight away.
+     * @param ctx the context for the caching
+     * @param id the unique ID of the resource that was not found
+     */
+    public void putNotFound(@Nonnull ProviderContext ctx, @Nonnull String id) {
+        putNotFound(CacheKey.getInstance(level, ctx), id);
+    }
+
+    private void putNotFound(@Nonnull CacheKey key, @Nonnull String id) {
+        long ttl = getNotFoundTtl();
+
+        if( ttl < 1L || contains(changed, key, id) ) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        put(notFound, key, id, now + ttl);
+        sweep(now);
+    }
+
+    private long getNotFoundTtl() {
+        return Math.min(notFoundTimeout, Math.min(cacheTimeout.longValue(), CalendarWrapper.DAY));
+    }
+
+    static private void put(@Nonnull ConcurrentHashMap<CacheKey,ConcurrentHashMap<String,Long>> map, @Nonnull CacheKey key, @Nonnull String id, long until) {
+        ConcurrentHashMap<String,Long> ids = map.get(key);
+
+        if( ids == null ) {
+            ids = new ConcurrentHashMap<String, Long>();
+
+            ConcurrentHashMap<String,Long> existing = map.putIfAbsent(key, ids);
+
+            if( existing != null ) {
+                ids = existing;
+            }
+        }
+        ids.put(id, until);
+    }
+
+    /**
+     * @return how long IDs that could not be found are remembered, or 0 if they are not remembered
+     */
+    public @Nonnull TimePeriod<Millisecond> getNotFoundTimeout() {
+        return new TimePeriod<Millisecond>(notFoundTimeout, TimePeriod.MILLISECOND);
+    }
+
+    /**
+     * Changes how long IDs that could not be found are remembered. The effective timeout never exceeds the cache
+     * timeout.
+     * @param timeout the new not-found timeout, or null to stop remembering missing IDs
+     */
+    public void setNotFoundTimeout(@Nullable TimePeriod<?> timeout) {
+        if( timeout == null ) {
+            notFoundTimeout = 0L;
+            notFound.clear();
+        }
+        else {
+            notFoundTimeout = timeout.convertTo(TimePeriod.MILLISECOND).longValue();
+        }
+    }
+
+    /**
+     * @return true if this cache persists its listings to disk
+     */
+    public boolean isPersistent() {
+        return (disk != null);
+    }
+
+    /**
+     * Persists the listings in this cache under the specified directory, in a subdirectory named after the cache, in
+     * addition to holding them in memory. On a miss, the cache first looks for a persisted listing that is still
+     * within the cache timeout before going back to the cloud. Only listings whose items are all serializable are
+     * persisted. Passing null turns persistence off without deleting anything already persisted.
+     * @param directory the root directory for persisted caches, or null to stop persisting this cache
+     */
+    public void persistTo(@Nullable File directory) {
+        if( directory == null ) {
+            disk = null;
+        }
+        else {
+            disk = new DiskCacheTier<T>(new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_")), typeClass);
+        }
+    }
+
+    private void expire(@Nonnull CacheKey key, @Nonnull CacheEntry<T> entry) {
+        if( remove(key, entry) ) {
+            expirationCount.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(@Nonnull CacheEntry<T> entry, long now) {
+        long age = now - entry.lastCacheClear;
+
+        // nothing lives longer than a day, no matter how long the configured timeout
+        return (age > cacheTimeout.longValue() || age > CalendarWrapper.DAY);
     }
 
     /**
@@ -319,47 +985,98 @@ public final class Cache<T> {
      * @param list the items to be cached
      */
     public void put(@Nonnull ProviderContext ctx, @Nonnull Iterable<T> list) {
-        CacheEntry<T> entry = new CacheEntry<T>();
-        String endpoint = ctx.getCloud().getEndpoint();
+        put(CacheKey.getInstance(level, ctx), new Listing<T>(list, System.nanoTime()));
+    }
+
+    private @Nonnull CacheEntry<T> put(@Nonnull CacheKey key, @Nonnull Listing<T> listing) {
+        Iterable<T> list = listing.items;
+        long weight = (policy.isBounded() ? policy.getWeigher().weigh(list) : 0L);
+        CacheEntry<T> entry = new CacheEntry<T>(listing, !policy.isBounded(), weight, accessClock.incrementAndGet(), System.currentTimeMillis());
+        CacheEntry<T> previous = entries.put(key, entry);
+        DiskCacheTier<T> tier = disk;
 
-        entry.items = new SoftReference<Iterable<T>>(list);
-        entry.lastCacheClear = System.currentTimeMillis();
-        if( cloudCache != null ) {
-            cloudCache.put(endpoint, entry);
+        notFound.remove(key);
+        totalWeight.addAndGet(weight - (previous == null ? 0L : previous.weight));
+        if( tier != null ) {
+            tier.write(key, list, entry.lastCacheClear);
         }
-        else if( regionCache != null ) {
-            Map<String,CacheEntry<T>> map = regionCache.get(endpoint);
+        sweep(entry.lastCacheClear);
+        if( entries.size() > policy.getMaximumEntries() || totalWeight.get() > policy.getMaximumWeight() ) {
+            evict();
+        }
+        return entry;
+    }
 
-            if( map == null ) {
-                map = new HashMap<String, CacheEntry<T>>();
-                regionCache.put(endpoint, map);
-            }
-            map.put(ctx.getRegionId(), entry);
+    private @Nullable CacheEntry<T> restore(@Nonnull CacheKey key, long now) {
+        DiskCacheTier<T> tier = disk;
+
+        if( tier == null ) {
+            return null;
         }
-        else if( cloudAccountCache != null ) {
-            Map<String,CacheEntry<T>> map = cloudAccountCache.get(endpoint);
+        DiskCacheTier.Snapshot<T> snapshot = tier.read(key);
 
-            if( map == null ) {
-                map = new HashMap<String, CacheEntry<T>>();
-                cloudAccountCache.put(endpoint, map);
-            }
-            map.put(ctx.getAccountNumber(), entry);
+        if( snapshot == null ) {
+            return null;
         }
-        else if( regionAccountCache != null ) {
-            Map<String,Map<String,CacheEntry<T>>> map = regionAccountCache.get(endpoint);
+        long weight = (policy.isBounded() ? policy.getWeigher().weigh(snapshot.items) : 0L);
+        Listing<T> listing = new Listing<T>(snapshot.items, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Math.max(0L, now - snapshot.cachedAt)));
+        CacheEntry<T> entry = new CacheEntry<T>(listing, !policy.isBounded(), weight, accessClock.incrementAndGet(), snapshot.cachedAt);
 
-            if( map == null ) {
-                map = new HashMap<String, Map<String, CacheEntry<T>>>();
-                regionAccountCache.put(endpoint, map);
-            }
+        if( isExpired(entry, now) ) {
+            tier.delete(key);
+            return null;
+        }
+        CacheEntry<T> current = entries.putIfAbsent(key, entry);
+
+        if( current != null ) {
+            return current;
+        }
+        totalWeight.addAndGet(weight);
+        if( entries.size() > policy.getMaximumEntries() || totalWeight.get() > policy.getMaximumWeight() ) {
+            evict();
+        }
+        return entry;
+    }
+
+    // the listing of the specified entry, dropping the entry if the garbage collector has reclaimed its listing
+    private @Nullable Listing<T> listingOf(@Nonnull CacheKey key, @Nonnull CacheEntry<T> entry) {
+        Listing<T> listing = entry.getListing();
 
-            Map<String,CacheEntry<T>> rmap = map.get(ctx.getRegionId());
+        if( listing == null ) {
+            remove(key, entry);
+        }
+        return listing;
+    }
 
-            if( rmap == null ) {
-                rmap = new HashMap<String, CacheEntry<T>>();
-                map.put(ctx.getRegionId(), rmap);
+    private boolean remove(@Nonnull CacheKey key, @Nonnull CacheEntry<T> entry) {
+        if( entries.remove(key, entry) ) {
+            totalWeight.addAndGet(-entry.weight);
+            return true;
+        }
+        return false;
+    }
+
+    static private void sweep(@Nonnull ConcurrentHashMap<CacheKey,ConcurrentHashMap<String,Long>> map, long now) {
+        for( ConcurrentHashMap<String,Long> ids : map.values() ) {
+            for( Map.Entry<String,Long> e : ids.entrySet() ) {
+                if( e.getValue() < now ) {
+                    ids.remove(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    private void sweep(long now) {
+        // drop expired entries for contexts nobody has asked about in a while
+        if( now - lastSweep > Math.min(cacheTimeout.longValue(), CalendarWrapper.DAY) ) {
+            lastSweep = now;
+            for( Map.Entry<CacheKey,CacheEntry<T>> e : entries.entrySet() ) {
+                if( isExpired(e.getValue(), now) ) {
+                    expire(e.getKey(), e.getValue());
+                }
             }
-            rmap.put(ctx.getAccountNumber(), entry);
+            sweep(notFound, now);
+            sweep(changed, now);
         }
     }
 }
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Describes how much a {@link Cache} may hold before it starts evicting entries. A cache may be bounded by the number
+ * of contexts it holds listings for, by the total weight of those listings, or both. When a bound is exceeded, the
+ * least recently used entries are evicted until the cache fits again. A bounded cache holds its listings with strong
+ * references, so the memory it uses is governed by this policy and the cache timeout rather than by the garbage
+ * collector. A cache on the {@link #unbounded()} policy holds them through soft references instead, leaving the garbage
+ * collector free to reclaim them under heap pressure.
+ * <p>
+ * Example:
+ * </p>
+ * <pre>
+ *     CacheEvictionPolicy policy = CacheEvictionPolicy.getInstance(50).withMaximumWeight(100000);
+ *     Cache&lt;MachineImage&gt; cache = Cache.getInstance(provider, "images", MachineImage.class, CacheLevel.REGION, timeout, policy);
+ * </pre>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class CacheEvictionPolicy {
+    /**
+     * Computes the weight of a cached listing. Weights should be stable for as long as the listing is cached.
+     */
+    public interface Weigher {
+        /**
+         * Computes the weight of the specified listing.
+         * @param items the listing being cached
+         * @return the relative weight of the listing
+         */
+        public @Nonnegative long weigh(@Nonnull Iterable<?> items);
+    }
+
+    /**
+     * The default weigher, which weighs each listing by the number of items in it.
+     */
+    static public final Weigher ITEM_COUNT = new Weigher() {
+        @Override
+        public long weigh(@Nonnull Iterable<?> items) {
+            if( items instanceof Collection ) {
+                return ((Collection<?>)items).size();
+            }
+            long count = 0L;
+
+            for( Object ignore : items ) {
+                count++;
+            }
+            return count;
+        }
+    };
+
+    static private final CacheEvictionPolicy UNBOUNDED = new CacheEvictionPolicy(Integer.MAX_VALUE, Long.MAX_VALUE, ITEM_COUNT);
+
+    /**
+     * @return a policy that never evicts, leaving entries in the cache until they time out or the garbage collector
+     * reclaims them
+     */
+    static public @Nonnull CacheEvictionPolicy unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * Constructs a policy that holds listings for at most the specified number of contexts.
+     * @param maximumEntries the maximum number of cached listings
+     * @return a policy bounded by the number of cached listings
+     */
+    static public @Nonnull CacheEvictionPolicy getInstance(@Nonnegative int maximumEntries) {
+        if( maximumEntries < 1 ) {
+            throw new IllegalArgumentException("A cache must be able to hold at least one entry");
+        }
+        return new CacheEvictionPolicy(maximumEntries, Long.MAX_VALUE, ITEM_COUNT);
+    }
+
+    private final int     maximumEntries;
+    private final long    maximumWeight;
+    private final Weigher weigher;
+
+    private CacheEvictionPolicy(int maximumEntries, long maximumWeight, @Nonnull Weigher weigher) {
+        this.maximumEntries = maximumEntries;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the maximum number of listings a cache using this policy will hold
+     */
+    public @Nonnegative int getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    /**
+     * @return the maximum total weight of the listings a cache using this policy will hold
+     */
+    public @Nonnegative long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @return the weigher used to compute the weight of each cached listing
+     */
+    public @Nonnull Weigher getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * @return true if this policy ever evicts entries
+     */
+    public boolean isBounded() {
+        return (maximumEntries < Integer.MAX_VALUE || maximumWeight < Long.MAX_VALUE);
+    }
+
+    /**
+     * Bounds the total weight of the listings held by the cache. By default, each listing weighs as much as the number
+     * of items in it.
+     * @param maximumWeight the maximum total weight
+     * @return a copy of this policy with the specified weight bound
+     */
+    public @Nonnull CacheEvictionPolicy withMaximumWeight(@Nonnegative long maximumWeight) {
+        if( maximumWeight < 1L ) {
+            throw new IllegalArgumentException("The maximum weight must be positive");
+        }
+        return new CacheEvictionPolicy(maximumEntries, maximumWeight, weigher);
+    }
+
+    /**
+     * Replaces the default item count weigher with a custom weigher.
+     * @param weigher the weigher to compute the weight of each listing
+     * @return a copy of this policy using the specified weigher
+     */
+    public @Nonnull CacheEvictionPolicy withWeigher(@Nonnull Weigher weigher) {
+        return new CacheEvictionPolicy(maximumEntries, maximumWeight, weigher);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        if( !isBounded() ) {
+            return "unbounded";
+        }
+        return ("entries <= " + (maximumEntries == Integer.MAX_VALUE ? "*" : String.valueOf(maximumEntries)) + ", weight <= " + (maximumWeight == Long.MAX_VALUE ? "*" : String.valueOf(maximumWeight)));
+    }
+}
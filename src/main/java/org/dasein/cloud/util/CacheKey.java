@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable composite key identifying the slot a context maps to within a {@link Cache} or {@link SingletonCache}.
+ * Which parts of the context participate in the key is determined by the {@link CacheLevel} of the cache, so that
+ * contexts that are supposed to share cached data map to equal keys.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class CacheKey {
+    /**
+     * Constructs the key for the specified context at the specified cache level.
+     * @param level the level at which the cache shares data
+     * @param ctx the context for which data is being cached
+     * @return a key that is equal to the keys of all contexts that should share cached data at this level
+     */
+    static @Nonnull CacheKey getInstance(@Nonnull CacheLevel level, @Nonnull ProviderContext ctx) {
+        String endpoint = ctx.getCloud().getEndpoint();
+
+        switch( level ) {
+            case CLOUD: return new CacheKey(endpoint, null, null);
+            case REGION: return new CacheKey(endpoint, ctx.getRegionId(), null);
+            case CLOUD_ACCOUNT: return new CacheKey(endpoint, null, ctx.getAccountNumber());
+            default: return new CacheKey(endpoint, ctx.getRegionId(), ctx.getAccountNumber());
+        }
+    }
+
+    private final String endpoint;
+    private final String regionId;
+    private final String accountNumber;
+    private final int    hashCode;
+
+    private CacheKey(@Nonnull String endpoint, @Nullable String regionId, @Nullable String accountNumber) {
+        this.endpoint = endpoint;
+        this.regionId = regionId;
+        this.accountNumber = accountNumber;
+
+        int h = endpoint.hashCode();
+
+        h = 31 * h + (regionId == null ? 0 : regionId.hashCode());
+        h = 31 * h + (accountNumber == null ? 0 : accountNumber.hashCode());
+        this.hashCode = h;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+        if( other == this ) {
+            return true;
+        }
+        if( !(other instanceof CacheKey) ) {
+            return false;
+        }
+        CacheKey key = (CacheKey)other;
+
+        return (hashCode == key.hashCode && endpoint.equals(key.endpoint) && equals(regionId, key.regionId) && equals(accountNumber, key.accountNumber));
+    }
+
+    static private boolean equals(@Nullable String a, @Nullable String b) {
+        return (a == null ? b == null : a.equals(b));
+    }
+
+    public @Nonnull String getEndpoint() {
+        return endpoint;
+    }
+
+    public @Nullable String getRegionId() {
+        return regionId;
+    }
+
+    public @Nullable String getAccountNumber() {
+        return accountNumber;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (endpoint + (regionId == null ? "" : "/" + regionId) + (accountNumber == null ? "" : "#" + accountNumber));
+    }
+}
@@ -41,4 +41,79 @@ public interface CacheMBean {
     public @Nonnegative long getTimeoutInSeconds(@Nonnull String cacheName);
 
     public void setTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return how long the cache remembers IDs that could not be found, or 0 if it does not remember them
+     */
+    public @Nonnegative long getNotFoundTimeoutInSeconds(@Nonnull String cacheName);
+
+    /**
+     * Changes how long the specified cache remembers IDs that could not be found. Setting the timeout to 0 turns off
+     * not-found caching for the cache.
+     * @param cacheName the fully qualified name of the cache
+     * @param timeoutInSeconds the new not-found timeout
+     */
+    public void setNotFoundTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds);
+
+    /**
+     * Takes a snapshot of the hit, miss, expiration, eviction and load statistics for the specified cache.
+     * @param cacheName the fully qualified name of the cache
+     * @return the current statistics for the cache, or null if no such cache exists
+     */
+    public @Nullable CacheStatistics getStatistics(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the number of reads answered from the cache
+     */
+    public @Nonnegative long getHitCount(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the fraction of reads answered from the cache
+     */
+    public double getHitRatio(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the number of reads that found nothing usable in the cache
+     */
+    public @Nonnegative long getMissCount(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the number of entries dropped because they outlived the cache timeout
+     */
+    public @Nonnegative long getExpirationCount(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the number of entries evicted to keep the cache within its bounds
+     */
+    public @Nonnegative long getEvictionCount(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the number of successful loads through a cache loader
+     */
+    public @Nonnegative long getLoadCount(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the mean time taken by successful loads in milliseconds
+     */
+    public double getMeanLoadTimeInMillis(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return the 99th percentile of the time taken by successful loads in milliseconds
+     */
+    public double getP99LoadTimeInMillis(@Nonnull String cacheName);
+
+    /**
+     * @param cacheName the fully qualified name of the cache
+     * @return a rough estimate of the memory retained by the cached data
+     */
+    public @Nonnegative long getEstimatedSizeInBytes(@Nonnull String cacheName);
 }
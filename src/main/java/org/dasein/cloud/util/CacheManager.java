@@ -19,19 +19,48 @@
 
 package org.dasein.cloud.util;
 
+import org.apache.log4j.Logger;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
 
 /**
  * Provides JMX access into cache management functionality. Through this bean, you can fetch a list of active caches, get
- * the meta-data around them, and clear them out.
+ * the meta-data around them, clear them out, and see how well they are working. The cache manager is registered with
+ * the platform MBean server as {@link #OBJECT_NAME} the first time a {@link Cache} is used.
  * <p>Created by George Reese: 5/14/13 2:54 PM</p>
  * @author George Reese
  * @version 2013.07 (issue #58)
+ * @version 2015.10 added cache statistics
  * @since 2013.07
  */
-public class CacheManager implements CacheMBean {
+public class CacheManager extends AbstractCacheDelegate {
+    static private final Logger logger = Logger.getLogger(CacheManager.class);
+
+    /**
+     * The JMX object name under which the cache manager is registered
+     */
+    static public final String OBJECT_NAME = "org.dasein:type=Cache";
+
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if( !server.isRegistered(name) ) {
+                server.registerMBean(new StandardMBean(new CacheManager(), CacheMBean.class), name);
+            }
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up cache MBean: " + t.getMessage());
+        }
+    }
+
     private Cache.CacheDelegate collections         = new Cache.CacheDelegate();
     private SingletonCache.CacheDelegate singletons = new SingletonCache.CacheDelegate();
 
@@ -97,4 +126,24 @@ public class CacheManager implements CacheMBean {
             collections.setTimeoutInSeconds(cacheName, timeoutInSeconds);
         }
     }
+
+    @Override
+    public long getNotFoundTimeoutInSeconds(@Nonnull String cacheName) {
+        return collections.getNotFoundTimeoutInSeconds(cacheName);
+    }
+
+    @Override
+    public void setNotFoundTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds) {
+        collections.setNotFoundTimeoutInSeconds(cacheName, timeoutInSeconds);
+    }
+
+    @Override
+    public @Nullable CacheStatistics getStatistics(@Nonnull String cacheName) {
+        CacheLevel l = collections.getCacheLevel(cacheName);
+
+        if( l == null ) {
+            return singletons.getStatistics(cacheName);
+        }
+        return collections.getStatistics(cacheName);
+    }
 }
@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * A point-in-time snapshot of the usage statistics of a single {@link Cache} or {@link SingletonCache}. Counters are
+ * cumulative from the time the cache was created. Load statistics only apply to caches populated through a loader.
+ * Snapshots are serializable so that remote JMX clients can read them through {@link CacheMBean#getStatistics(String)}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class CacheStatistics implements Serializable {
+    private static final long serialVersionUID = 4920317418126357092L;
+
+    static private final int  SAMPLE_SIZE   = 16;
+    static private final long OPAQUE_OBJECT = 64L;
+
+    /**
+     * Estimates the memory retained by a cached listing by serializing a sample of its items and extrapolating to the
+     * size of the listing. Items that cannot be serialized are assumed to be small objects.
+     * @param items the cached listing
+     * @return the estimated size of the listing in bytes
+     */
+    static long estimateSize(@Nonnull Iterable<?> items) {
+        long sampled = 0L;
+        long bytes = 0L;
+        long count = 0L;
+
+        for( Object item : items ) {
+            count++;
+            if( sampled < SAMPLE_SIZE ) {
+                sampled++;
+                bytes += estimateSize(item);
+            }
+        }
+        return (sampled == 0L ? 0L : (bytes * count)/sampled);
+    }
+
+    static long estimateSize(@Nullable Object item) {
+        if( item == null ) {
+            return 0L;
+        }
+        if( !(item instanceof Serializable) ) {
+            return OPAQUE_OBJECT;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+            out.writeObject(item);
+            out.close();
+            return bytes.size();
+        }
+        catch( IOException e ) {
+            return OPAQUE_OBJECT;
+        }
+    }
+
+    private final String cacheName;
+    private final long   entryCount;
+    private final long   estimatedSizeInBytes;
+    private final long   evictionCount;
+    private final long   expirationCount;
+    private final long   hitCount;
+    private final long   loadCount;
+    private final long   loadFailureCount;
+    private final double meanLoadTimeInMillis;
+    private final long   missCount;
+    private final double p99LoadTimeInMillis;
+    private final long   timestamp;
+
+    CacheStatistics(@Nonnull String cacheName, long hitCount, long missCount, long expirationCount, long evictionCount, long loadCount, long loadFailureCount, double meanLoadTimeInMillis, double p99LoadTimeInMillis, long entryCount, long estimatedSizeInBytes) {
+        this.cacheName = cacheName;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.expirationCount = expirationCount;
+        this.evictionCount = evictionCount;
+        this.loadCount = loadCount;
+        this.loadFailureCount = loadFailureCount;
+        this.meanLoadTimeInMillis = meanLoadTimeInMillis;
+        this.p99LoadTimeInMillis = p99LoadTimeInMillis;
+        this.entryCount = entryCount;
+        this.estimatedSizeInBytes = estimatedSizeInBytes;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the fully qualified name of the cache
+     */
+    public @Nonnull String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return the number of contexts for which the cache currently holds data
+     */
+    public @Nonnegative long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return a rough estimate of the memory retained by the cached data, based on the serialized size of a sample
+     * of the cached items
+     */
+    public @Nonnegative long getEstimatedSizeInBytes() {
+        return estimatedSizeInBytes;
+    }
+
+    /**
+     * @return the number of entries evicted to keep the cache within its eviction policy
+     */
+    public @Nonnegative long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries dropped because they outlived the cache timeout
+     */
+    public @Nonnegative long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * @return the number of reads answered from the cache
+     */
+    public @Nonnegative long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the fraction of reads answered from the cache, or 0 if the cache has never been read
+     */
+    public double getHitRatio() {
+        long requests = hitCount + missCount;
+
+        return (requests == 0L ? 0.0 : ((double)hitCount)/requests);
+    }
+
+    /**
+     * @return the number of successful loads, including background refreshes
+     */
+    public @Nonnegative long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return the number of loads that failed with an exception
+     */
+    public @Nonnegative long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * @return the mean time taken by successful loads in milliseconds
+     */
+    public double getMeanLoadTimeInMillis() {
+        return meanLoadTimeInMillis;
+    }
+
+    /**
+     * @return the number of reads that found nothing usable in the cache
+     */
+    public @Nonnegative long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the 99th percentile of the time taken by successful loads in milliseconds
+     */
+    public double getP99LoadTimeInMillis() {
+        return p99LoadTimeInMillis;
+    }
+
+    /**
+     * @return the time at which this snapshot was taken
+     */
+    public @Nonnegative long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (cacheName + " [hits=" + hitCount + ", misses=" + missCount + ", expirations=" + expirationCount + ", evictions=" + evictionCount + ", loads=" + loadCount + ", loadFailures=" + loadFailureCount + ", meanLoad=" + meanLoadTimeInMillis + "ms, p99Load=" + p99LoadTimeInMillis + "ms, entries=" + entryCount + ", ~" + estimatedSizeInBytes + " bytes]");
+    }
+}
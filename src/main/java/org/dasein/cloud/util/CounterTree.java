@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counters for {@link APITrace} arranged in a provider, cloud, account, name tree with a rolled-up total at every level.
+ * Each cloud additionally totals its calls by name across accounts. Counting adds to the handful of counters on the
+ * path to the key, which is looked up once per key and cached, so both counting and querying cost a fixed number of
+ * steps no matter how many keys have been counted. Nothing takes a lock.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class CounterTree {
+    static private final class Node {
+        public final StripedCounter                           count    = new StripedCounter();
+        public final ConcurrentHashMap<String,Node>           children = new ConcurrentHashMap<String, Node>();
+        public final ConcurrentHashMap<String,StripedCounter> byName   = new ConcurrentHashMap<String, StripedCounter>();
+
+        @Nonnull Node child(@Nonnull String name) {
+            Node node = children.get(name);
+
+            if( node == null ) {
+                node = new Node();
+
+                Node existing = children.putIfAbsent(name, node);
+
+                if( existing != null ) {
+                    node = existing;
+                }
+            }
+            return node;
+        }
+
+        @Nonnull StripedCounter named(@Nonnull String name) {
+            StripedCounter counter = byName.get(name);
+
+            if( counter == null ) {
+                counter = new StripedCounter();
+
+                StripedCounter existing = byName.putIfAbsent(name, counter);
+
+                if( existing != null ) {
+                    counter = existing;
+                }
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * The tree and the paths cached into it, swapped as a unit when the tree is cleared.
+     */
+    static private final class State {
+        public final Node                                         root  = new Node();
+        public final ConcurrentHashMap<TraceKey,StripedCounter[]> paths = new ConcurrentHashMap<TraceKey, StripedCounter[]>();
+    }
+
+    static private long count(@Nullable Node node) {
+        return (node == null ? 0L : node.count.sum());
+    }
+
+    static private @Nonnull String[] keys(@Nullable Node node) {
+        if( node == null ) {
+            return new String[0];
+        }
+        TreeSet<String> keys = new TreeSet<String>(node.children.keySet());
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    private volatile State state = new State();
+
+    /**
+     * Adds to the counter for the specified key and every total above it.
+     * @param key the key being counted
+     * @param delta the amount to add
+     */
+    void add(@Nonnull TraceKey key, long delta) {
+        State s = state;
+        StripedCounter[] path = s.paths.get(key);
+
+        if( path == null ) {
+            Node provider = s.root.child(key.getProviderName());
+            Node cloud = provider.child(key.getCloudName());
+            Node account = cloud.child(key.getAccountNumber());
+
+            path = new StripedCounter[] { s.root.count, provider.count, cloud.count, cloud.named(key.getName()), account.count, account.named(key.getName()) };
+            s.paths.putIfAbsent(key, path);
+        }
+        for( StripedCounter counter : path ) {
+            counter.add(delta);
+        }
+    }
+
+    /**
+     * Forgets every count. Counts added concurrently with a clear may be lost.
+     */
+    void clear() {
+        state = new State();
+    }
+
+    private @Nullable Node find(@Nonnull String ... names) {
+        Node node = state.root;
+
+        for( String name : names ) {
+            node = node.children.get(name);
+            if( node == null ) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    @Nonnegative long get() {
+        return count(state.root);
+    }
+
+    @Nonnegative long get(@Nonnull String providerName) {
+        return count(find(providerName));
+    }
+
+    @Nonnegative long get(@Nonnull String providerName, @Nonnull String cloudName) {
+        return count(find(providerName, cloudName));
+    }
+
+    @Nonnegative long get(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber) {
+        return count(find(providerName, cloudName, accountNumber));
+    }
+
+    @Nonnegative long get(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String name) {
+        Node account = find(providerName, cloudName, accountNumber);
+        StripedCounter counter = (account == null ? null : account.byName.get(name));
+
+        return (counter == null ? 0L : counter.sum());
+    }
+
+    @Nonnegative long getAcrossAccounts(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String name) {
+        Node cloud = find(providerName, cloudName);
+        StripedCounter counter = (cloud == null ? null : cloud.byName.get(name));
+
+        return (counter == null ? 0L : counter.sum());
+    }
+
+    @Nonnull String[] listProviders() {
+        return keys(state.root);
+    }
+
+    @Nonnull String[] listClouds(@Nonnull String providerName) {
+        return keys(find(providerName));
+    }
+
+    @Nonnull String[] listAccounts(@Nonnull String providerName, @Nonnull String cloudName) {
+        return keys(find(providerName, cloudName));
+    }
+
+    @Nonnull String[] listNames(@Nonnull String providerName, @Nonnull String cloudName) {
+        Node cloud = find(providerName, cloudName);
+
+        if( cloud == null ) {
+            return new String[0];
+        }
+        TreeSet<String> names = new TreeSet<String>(cloud.byName.keySet());
+
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * @return the count for every key that has been counted
+     */
+    @Nonnull Map<TraceKey,Long> getCounts() {
+        HashMap<TraceKey,Long> counts = new HashMap<TraceKey, Long>();
+
+        for( Map.Entry<TraceKey,StripedCounter[]> entry : state.paths.entrySet() ) {
+            StripedCounter[] path = entry.getValue();
+
+            counts.put(entry.getKey(), path[path.length-1].sum());
+        }
+        return counts;
+    }
+
+    /**
+     * @return every leaf counter keyed by its full provider.cloud.account.name path, in order
+     */
+    @Nonnull TreeMap<String,Long> toMap() {
+        TreeMap<String,Long> map = new TreeMap<String, Long>();
+
+        for( Map.Entry<String,Node> provider : state.root.children.entrySet() ) {
+            for( Map.Entry<String,Node> cloud : provider.getValue().children.entrySet() ) {
+                for( Map.Entry<String,Node> account : cloud.getValue().children.entrySet() ) {
+                    String prefix = provider.getKey() + APITrace.DELIMITER + cloud.getKey() + APITrace.DELIMITER + account.getKey() + APITrace.DELIMITER;
+
+                    for( Map.Entry<String,StripedCounter> name : account.getValue().byName.entrySet() ) {
+                        map.put(prefix + name.getKey(), name.getValue().sum());
+                    }
+                }
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists the listings of a single {@link Cache} to a local directory so that they survive a restart of the JVM.
+ * Each cache key maps to one file with the following layout:
+ * <pre>
+ *     int    magic number
+ *     short  format version
+ *     long   time the listing was originally cached (ms since epoch)
+ *     int    length of the cache key in bytes
+ *     byte[] cache key (UTF-8)
+ *     int    number of items
+ *     byte[] the items as a serialized array
+ * </pre>
+ * Files are written to a temporary file and atomically renamed into place, and read through a read-only memory
+ * mapping. Only listings whose items are all {@link Serializable} are persisted. Because the files are deserialized
+ * on read, the directory should be writable only by the user running Dasein Cloud.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class DiskCacheTier<T> {
+    static private final Logger logger = Logger.getLogger(DiskCacheTier.class);
+
+    static private final int     MAGIC   = 0xDA5E1CAC;
+    static private final short   VERSION = 1;
+    static private final Charset UTF8    = Charset.forName("UTF-8");
+
+    /**
+     * A listing read back from disk along with the time it was originally cached.
+     */
+    static final class Snapshot<T> {
+        public final long    cachedAt;
+        public final List<T> items;
+
+        Snapshot(long cachedAt, @Nonnull List<T> items) {
+            this.cachedAt = cachedAt;
+            this.items = items;
+        }
+    }
+
+    private final File     directory;
+    private final Class<T> typeClass;
+
+    DiskCacheTier(@Nonnull File directory, @Nonnull Class<T> typeClass) {
+        this.directory = directory;
+        this.typeClass = typeClass;
+    }
+
+    /**
+     * Removes every persisted listing for this cache.
+     */
+    void clear() {
+        File[] files = directory.listFiles();
+
+        if( files != null ) {
+            for( File f : files ) {
+                if( f.getName().endsWith(".bin") && !f.delete() ) {
+                    logger.warn("Unable to delete cache file " + f.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the listing persisted for the specified key, if any.
+     * @param key the key whose listing should be removed
+     */
+    void delete(@Nonnull CacheKey key) {
+        File f = getFile(key);
+
+        if( f.exists() && !f.delete() ) {
+            logger.warn("Unable to delete cache file " + f.getAbsolutePath());
+        }
+    }
+
+    @Nonnull File getDirectory() {
+        return directory;
+    }
+
+    private @Nonnull File getFile(@Nonnull CacheKey key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder name = new StringBuilder();
+
+            for( byte b : digest.digest(key.toString().getBytes(UTF8)) ) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(".bin").toString());
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new RuntimeException("Every JVM is required to support SHA-1", e);
+        }
+    }
+
+    /**
+     * Reads the listing persisted for the specified key.
+     * @param key the key whose listing is sought
+     * @return the persisted listing, or null if nothing readable is persisted for the key
+     */
+    @Nullable Snapshot<T> read(@Nonnull CacheKey key) {
+        File f = getFile(key);
+
+        if( !f.isFile() ) {
+            return null;
+        }
+        try {
+            FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+
+                if( buffer.getInt() != MAGIC || buffer.getShort() != VERSION ) {
+                    logger.warn("Ignoring cache file in an unknown format: " + f.getAbsolutePath());
+                    return null;
+                }
+                long cachedAt = buffer.getLong();
+                byte[] keyBytes = new byte[buffer.getInt()];
+
+                buffer.get(keyBytes);
+                if( !key.toString().equals(new String(keyBytes, UTF8)) ) {
+                    return null; // hash collision with another key
+                }
+                int count = buffer.getInt();
+                ObjectInputStream in = new ObjectInputStream(new ByteBufferInputStream(buffer)) {
+                    @Override
+                    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                        ClassLoader loader = typeClass.getClassLoader();
+
+                        if( loader != null ) {
+                            try {
+                                return Class.forName(desc.getName(), false, loader);
+                            }
+                            catch( ClassNotFoundException ignore ) {
+                                // fall back to the default resolution
+                            }
+                        }
+                        return super.resolveClass(desc);
+                    }
+                };
+                Object[] values = (Object[])in.readObject();
+                List<T> items = new ArrayList<T>(count);
+
+                for( Object value : values ) {
+                    items.add(typeClass.cast(value));
+                }
+                return new Snapshot<T>(cachedAt, items);
+            }
+            finally {
+                channel.close();
+            }
+        }
+        catch( Exception e ) {
+            logger.warn("Discarding unreadable cache file " + f.getAbsolutePath() + ": " + e.getMessage());
+            delete(key);
+            return null;
+        }
+    }
+
+    /**
+     * Persists the specified listing for the specified key, replacing any listing previously persisted for it.
+     * Listings containing items that are not serializable are silently skipped.
+     * @param key the key under which the listing is cached
+     * @param items the listing being cached
+     * @param cachedAt the time the listing was cached
+     */
+    void write(@Nonnull CacheKey key, @Nonnull Iterable<T> items, long cachedAt) {
+        ArrayList<Object> values = new ArrayList<Object>();
+
+        for( T item : items ) {
+            if( item != null && !(item instanceof Serializable) ) {
+                if( logger.isDebugEnabled() ) {
+                    logger.debug("Not persisting " + key + " because " + item.getClass().getName() + " is not serializable");
+                }
+                return;
+            }
+            values.add(item);
+        }
+        File target = getFile(key);
+        File tmp = null;
+
+        try {
+            if( !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory() ) {
+                throw new IOException("Unable to create " + directory.getAbsolutePath());
+            }
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(payload);
+
+            out.writeObject(values.toArray());
+            out.close();
+
+            byte[] keyBytes = key.toString().getBytes(UTF8);
+
+            tmp = File.createTempFile("cache", ".tmp", directory);
+            DataOutputStream file = new DataOutputStream(new FileOutputStream(tmp));
+
+            try {
+                file.writeInt(MAGIC);
+                file.writeShort(VERSION);
+                file.writeLong(cachedAt);
+                file.writeInt(keyBytes.length);
+                file.write(keyBytes);
+                file.writeInt(values.size());
+                payload.writeTo(file);
+            }
+            finally {
+                file.close();
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to persist " + key + " to " + directory.getAbsolutePath() + ": " + e.getMessage());
+        }
+        finally {
+            if( tmp != null && tmp.exists() && !tmp.delete() ) {
+                logger.warn("Unable to delete temporary cache file " + tmp.getAbsolutePath());
+            }
+        }
+    }
+
+    static private class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(@Nonnull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return (buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1);
+        }
+
+        @Override
+        public int read(@Nonnull byte[] bytes, int offset, int length) {
+            if( length == 0 ) {
+                return 0;
+            }
+            if( !buffer.hasRemaining() ) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+}
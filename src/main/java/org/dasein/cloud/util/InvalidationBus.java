@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Carries invalidation events from the operations that change cloud resources to the caches holding data about those
+ * resources. Mutating operations publish an {@link InvalidationEvent} naming the type of resource they changed, and
+ * every listener subscribed to that type is notified synchronously, before the operation returns. Each {@link Cache}
+ * subscribes to the type of item it holds, so a cache of virtual machines drops the listing for the affected
+ * {@link CacheLevel} scope as soon as a virtual machine is terminated through Dasein Cloud.
+ * <p>
+ * Example:
+ * </p>
+ * <pre>
+ *     public void terminate(String vmId, String explanation) throws CloudException, InternalException {
+ *         // make API call to terminate the virtual machine
+ *         InvalidationBus.publish(getContext(), VirtualMachine.class, vmId);
+ *     }
+ * </pre>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class InvalidationBus {
+    static private final Logger logger = Logger.getLogger(InvalidationBus.class);
+
+    static private final ConcurrentHashMap<Class<?>,CopyOnWriteArrayList<InvalidationListener>> listeners = new ConcurrentHashMap<Class<?>, CopyOnWriteArrayList<InvalidationListener>>();
+
+    /**
+     * Notifies all listeners subscribed to the type of the changed resource.
+     * @param event the event describing the change
+     */
+    static public void publish(@Nonnull InvalidationEvent event) {
+        CopyOnWriteArrayList<InvalidationListener> subscribers = listeners.get(event.getResourceType());
+
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Invalidating " + event);
+        }
+        if( subscribers == null ) {
+            return;
+        }
+        for( InvalidationListener listener : subscribers ) {
+            try {
+                listener.invalidated(event);
+            }
+            catch( Throwable t ) {
+                logger.error("Invalidation listener " + listener + " failed on " + event + ": " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Notifies all listeners subscribed to the specified resource type of a change.
+     * @param ctx the context in which the change was made
+     * @param resourceType the Dasein Cloud model class of the changed resource
+     * @param resourceId the unique ID of the changed resource, or null if the change affects many resources
+     */
+    static public void publish(@Nonnull ProviderContext ctx, @Nonnull Class<?> resourceType, @Nullable String resourceId) {
+        publish(InvalidationEvent.getInstance(ctx, resourceType, resourceId));
+    }
+
+    /**
+     * Subscribes the specified listener to changes to resources of the specified type. Subscribing the same listener
+     * to the same type more than once has no effect.
+     * @param resourceType the Dasein Cloud model class of the resources of interest
+     * @param listener the listener to notify
+     */
+    static public void subscribe(@Nonnull Class<?> resourceType, @Nonnull InvalidationListener listener) {
+        CopyOnWriteArrayList<InvalidationListener> subscribers = listeners.get(resourceType);
+
+        if( subscribers == null ) {
+            subscribers = new CopyOnWriteArrayList<InvalidationListener>();
+
+            CopyOnWriteArrayList<InvalidationListener> existing = listeners.putIfAbsent(resourceType, subscribers);
+
+            if( existing != null ) {
+                subscribers = existing;
+            }
+        }
+        subscribers.addIfAbsent(listener);
+    }
+
+    /**
+     * Stops notifying the specified listener of changes to resources of the specified type.
+     * @param resourceType the Dasein Cloud model class of the resources of interest
+     * @param listener the listener to stop notifying
+     */
+    static public void unsubscribe(@Nonnull Class<?> resourceType, @Nonnull InvalidationListener listener) {
+        CopyOnWriteArrayList<InvalidationListener> subscribers = listeners.get(resourceType);
+
+        if( subscribers != null ) {
+            subscribers.remove(listener);
+        }
+    }
+
+    private InvalidationBus() { }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Describes a change to a cloud resource that makes cached data about resources of that type stale. The event carries
+ * the context in which the change was made so that subscribers can work out which cached data is affected at their
+ * {@link CacheLevel}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class InvalidationEvent {
+    /**
+     * Constructs an event for a change to the specified resource.
+     * @param ctx the context in which the change was made
+     * @param resourceType the Dasein Cloud model class of the changed resource, such as VirtualMachine.class
+     * @param resourceId the unique ID of the changed resource, or null if the change affects many resources
+     * @return an event describing the change
+     */
+    static public @Nonnull InvalidationEvent getInstance(@Nonnull ProviderContext ctx, @Nonnull Class<?> resourceType, @Nullable String resourceId) {
+        return new InvalidationEvent(ctx, resourceType, resourceId);
+    }
+
+    private final ProviderContext context;
+    private final String          resourceId;
+    private final Class<?>        resourceType;
+    private final long            timestamp;
+
+    private InvalidationEvent(@Nonnull ProviderContext context, @Nonnull Class<?> resourceType, @Nullable String resourceId) {
+        this.context = context;
+        this.resourceType = resourceType;
+        this.resourceId = resourceId;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the context in which the change was made
+     */
+    public @Nonnull ProviderContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the unique ID of the changed resource, or null if the change affects many resources
+     */
+    public @Nullable String getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return the Dasein Cloud model class of the changed resource
+     */
+    public @Nonnull Class<?> getResourceType() {
+        return resourceType;
+    }
+
+    /**
+     * @return the time at which the change was published
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (resourceType.getSimpleName() + (resourceId == null ? "" : " " + resourceId) + " in " + CacheKey.getInstance(CacheLevel.REGION_ACCOUNT, context));
+    }
+}
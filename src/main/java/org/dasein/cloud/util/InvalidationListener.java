@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives invalidation events published through the {@link InvalidationBus} for the resource types the listener
+ * subscribed to.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface InvalidationListener {
+    /**
+     * Called on the publishing thread after a resource of a subscribed type has changed. Implementations should be
+     * quick and must not throw.
+     * @param event the event describing the change
+     */
+    public void invalidated(@Nonnull InvalidationEvent event);
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exports {@link APITrace} statistics by appending them to a file as JSON lines: one JSON object per API call or
+ * operation per report, each stamped with the time of the snapshot. Latencies are in milliseconds.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class JsonLinesTraceReporter implements TraceReporter {
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+
+    static @Nonnull Map<String,Object> toJSON(long timestamp, @Nonnull TraceStatistics s) {
+        HashMap<String,Object> json = new HashMap<String, Object>();
+
+        json.put("timestamp", timestamp);
+        json.put("kind", s.getKind().name());
+        json.put("provider", s.getProviderName());
+        json.put("cloud", s.getCloudName());
+        json.put("account", s.getAccountNumber());
+        json.put("name", s.getName());
+        json.put("count", s.getCount());
+        if( s.getKind() == TraceStatistics.Kind.OPERATION ) {
+            json.put("apiCalls", s.getApiCallCount());
+        }
+        if( s.getLatencyCount() > 0L ) {
+            json.put("latencyCount", s.getLatencyCount());
+            json.put("meanMs", s.getMeanLatency() / 1000000.0);
+            json.put("p50Ms", s.getP50Latency() / 1000000.0);
+            json.put("p90Ms", s.getP90Latency() / 1000000.0);
+            json.put("p99Ms", s.getP99Latency() / 1000000.0);
+            json.put("maxMs", s.getMaxLatency() / 1000000.0);
+            json.put("rate", s.getRate());
+        }
+        return json;
+    }
+
+    private final File file;
+
+    /**
+     * Creates a reporter appending to the specified file, which is created if it does not exist.
+     * @param file the file to append to
+     */
+    public JsonLinesTraceReporter(@Nonnull File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void close() {
+        // the file is only open while reporting
+    }
+
+    /**
+     * @return the file to which statistics are appended
+     */
+    public @Nonnull File getFile() {
+        return file;
+    }
+
+    @Override
+    public void report(@Nonnull TraceSnapshot snapshot) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+
+        try {
+            for( TraceStatistics s : snapshot.getApis() ) {
+                out.write((new JSONObject(toJSON(snapshot.getTimestamp(), s))).toString());
+                out.write('\n');
+            }
+            for( TraceStatistics s : snapshot.getOperations() ) {
+                out.write((new JSONObject(toJSON(snapshot.getTimestamp(), s))).toString());
+                out.write('\n');
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
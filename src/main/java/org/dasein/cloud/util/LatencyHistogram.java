@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies recorded in nanoseconds. Values are counted in log-linear buckets: every power of
+ * two is split into {@link #SUB_BUCKETS}/2 equally sized buckets, so percentiles are accurate to within about 6%
+ * across the full range of a long while the histogram stays a fixed size. Recording a value costs a few atomic
+ * increments and never blocks, so a histogram may be shared by any number of threads.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class LatencyHistogram {
+    /**
+     * The number of buckets in the first power-of-two range; values below this are counted exactly
+     */
+    static public final int SUB_BUCKETS = 32;
+
+    static private final int PRECISION = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    static private final int HALF      = SUB_BUCKETS / 2;
+    static private final int BUCKETS   = SUB_BUCKETS + (63 - PRECISION) * HALF;
+
+    static int getBucket(long value) {
+        if( value < SUB_BUCKETS ) {
+            return (int)Math.max(0L, value);
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (PRECISION - 1);
+
+        return SUB_BUCKETS + (shift - 1) * HALF + (int)((value >>> shift) - HALF);
+    }
+
+    static long getUpperBound(int bucket) {
+        if( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int j = bucket - SUB_BUCKETS;
+        int shift = j / HALF + 1;
+        long sub = (j % HALF) + HALF;
+
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      count  = new AtomicLong(0L);
+    private final AtomicLong      total  = new AtomicLong(0L);
+    private final AtomicLong      max    = new AtomicLong(0L);
+
+    /**
+     * Records a single latency.
+     * @param nanos the latency in nanoseconds; negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        if( nanos < 0L ) {
+            nanos = 0L;
+        }
+        counts.incrementAndGet(getBucket(nanos));
+        total.addAndGet(nanos);
+        count.incrementAndGet();
+
+        long current = max.get();
+
+        while( nanos > current && !max.compareAndSet(current, nanos) ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Adds every latency recorded by another histogram to this one. Used to roll several histograms up into a single
+     * view; latencies recorded concurrently in the other histogram may be partially counted.
+     * @param other the histogram whose latencies should be added
+     */
+    public void add(@Nonnull LatencyHistogram other) {
+        for( int i=0; i<BUCKETS; i++ ) {
+            long n = other.counts.get(i);
+
+            if( n > 0L ) {
+                counts.addAndGet(i, n);
+            }
+        }
+        total.addAndGet(other.total.get());
+        count.addAndGet(other.count.get());
+
+        long m = other.max.get();
+        long current = max.get();
+
+        while( m > current && !max.compareAndSet(current, m) ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public @Nonnegative long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the largest latency recorded, in nanoseconds
+     */
+    public @Nonnegative long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded latencies in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long n = count.get();
+
+        return (n == 0L ? 0.0 : ((double)total.get())/n);
+    }
+
+    /**
+     * Estimates the latency at the specified percentile. The estimate is the upper bound of the bucket holding the
+     * percentile, capped at the largest recorded latency.
+     * @param percentile the percentile sought, between 0 and 100
+     * @return the estimated latency at the specified percentile in nanoseconds, or 0 if nothing has been recorded
+     */
+    public @Nonnegative long getPercentile(double percentile) {
+        if( percentile < 0.0 || percentile > 100.0 ) {
+            throw new IllegalArgumentException("Percentiles must be between 0 and 100: " + percentile);
+        }
+        long[] snapshot = new long[BUCKETS];
+        long n = 0L;
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if( n == 0L ) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long)Math.ceil((percentile/100.0) * n));
+        long seen = 0L;
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            seen += snapshot[i];
+            if( seen >= rank ) {
+                return Math.min(getUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded latencies. Latencies recorded concurrently with a reset may be partially counted.
+     */
+    public void reset() {
+        for( int i=0; i<BUCKETS; i++ ) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        total.set(0L);
+        max.set(0L);
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Exports {@link APITrace} statistics in the Prometheus text exposition format, either by rewriting a file that a node
+ * exporter's textfile collector picks up or by serving the latest report over HTTP on the loopback interface. The HTTP
+ * endpoint only serves the text rendered at the last report, so a scrape never touches the tracing counters. Remove the
+ * reporter through {@link APITrace#removeReporter(TraceReporter)} to stop the HTTP server.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class PrometheusTraceReporter implements TraceReporter {
+    static private final Charset UTF8         = Charset.forName("UTF-8");
+    static private final String  CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Creates a reporter that rewrites the specified file with each report. The file is replaced atomically, so readers
+     * never see a partial report.
+     * @param file the file to write
+     * @return a reporter writing to the file
+     */
+    static public @Nonnull PrometheusTraceReporter toFile(@Nonnull File file) {
+        return new PrometheusTraceReporter(file, null);
+    }
+
+    /**
+     * Creates a reporter that serves the latest report at /metrics on the specified port of the loopback interface.
+     * @param port the port on which to listen
+     * @return a reporter serving its reports over HTTP
+     * @throws IOException the HTTP server could not be started
+     */
+    static public @Nonnull PrometheusTraceReporter toHttp(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        PrometheusTraceReporter reporter = new PrometheusTraceReporter(null, server);
+
+        server.createContext("/metrics", reporter.new MetricsHandler());
+        server.start();
+        return reporter;
+    }
+
+    static private @Nonnull String escape(@Nonnull String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Renders a snapshot in the Prometheus text exposition format.
+     * @param snapshot the snapshot to render
+     * @return the rendered snapshot
+     */
+    static @Nonnull String format(@Nonnull TraceSnapshot snapshot) {
+        StringBuilder out = new StringBuilder();
+
+        format(out, "dasein_api", "api", snapshot.getApis(), snapshot.getMode());
+        format(out, "dasein_operation", "operation", snapshot.getOperations(), snapshot.getMode());
+        return out.toString();
+    }
+
+    static private void format(@Nonnull StringBuilder out, @Nonnull String prefix, @Nonnull String label, @Nonnull List<TraceStatistics> statistics, @Nonnull TraceMode mode) {
+        if( statistics.isEmpty() ) {
+            return;
+        }
+        header(out, prefix + "_calls_total", "counter", "Number of times each " + label + " was called");
+        for( TraceStatistics s : statistics ) {
+            line(out, prefix + "_calls_total", labels(s, label, null), s.getCount());
+        }
+        if( statistics.get(0).getKind() == TraceStatistics.Kind.OPERATION ) {
+            header(out, prefix + "_api_calls_total", "counter", "Number of API calls made in support of each operation");
+            for( TraceStatistics s : statistics ) {
+                line(out, prefix + "_api_calls_total", labels(s, label, null), s.getApiCallCount());
+            }
+        }
+        if( !mode.includes(TraceMode.TIMINGS) ) {
+            return;
+        }
+        header(out, prefix + "_latency_seconds", "summary", "Latency of each " + label);
+        for( TraceStatistics s : statistics ) {
+            line(out, prefix + "_latency_seconds", labels(s, label, "0.5"), seconds(s.getP50Latency()));
+            line(out, prefix + "_latency_seconds", labels(s, label, "0.9"), seconds(s.getP90Latency()));
+            line(out, prefix + "_latency_seconds", labels(s, label, "0.99"), seconds(s.getP99Latency()));
+            line(out, prefix + "_latency_seconds_sum", labels(s, label, null), seconds(s.getMeanLatency() * s.getLatencyCount()));
+            line(out, prefix + "_latency_seconds_count", labels(s, label, null), s.getLatencyCount());
+        }
+        header(out, prefix + "_latency_max_seconds", "gauge", "Largest latency recorded for each " + label);
+        for( TraceStatistics s : statistics ) {
+            line(out, prefix + "_latency_max_seconds", labels(s, label, null), seconds(s.getMaxLatency()));
+        }
+        header(out, prefix + "_rate", "gauge", "Completions per second of each " + label + " over the last minute");
+        for( TraceStatistics s : statistics ) {
+            line(out, prefix + "_rate", labels(s, label, null), s.getRate());
+        }
+    }
+
+    static private void header(@Nonnull StringBuilder out, @Nonnull String metric, @Nonnull String type, @Nonnull String help) {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    static private @Nonnull String labels(@Nonnull TraceStatistics s, @Nonnull String label, @Nullable String quantile) {
+        StringBuilder str = new StringBuilder();
+
+        str.append("{provider=\"").append(escape(s.getProviderName()));
+        str.append("\",cloud=\"").append(escape(s.getCloudName()));
+        str.append("\",account=\"").append(escape(s.getAccountNumber()));
+        str.append("\",").append(label).append("=\"").append(escape(s.getName())).append('"');
+        if( quantile != null ) {
+            str.append(",quantile=\"").append(quantile).append('"');
+        }
+        return str.append('}').toString();
+    }
+
+    static private void line(@Nonnull StringBuilder out, @Nonnull String metric, @Nonnull String labels, double value) {
+        out.append(metric).append(labels).append(' ').append(value).append('\n');
+    }
+
+    static private void line(@Nonnull StringBuilder out, @Nonnull String metric, @Nonnull String labels, long value) {
+        out.append(metric).append(labels).append(' ').append(value).append('\n');
+    }
+
+    static private double seconds(double nanos) {
+        return nanos / 1000000000.0;
+    }
+
+    private final File       file;
+    private final HttpServer server;
+    private volatile byte[]  latest = new byte[0];
+
+    private PrometheusTraceReporter(@Nullable File file, @Nullable HttpServer server) {
+        this.file = file;
+        this.server = server;
+    }
+
+    @Override
+    public void close() {
+        if( server != null ) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * @return the port on which the HTTP endpoint is listening, or -1 if this reporter writes to a file
+     */
+    public int getPort() {
+        return (server == null ? -1 : server.getAddress().getPort());
+    }
+
+    @Override
+    public void report(@Nonnull TraceSnapshot snapshot) throws IOException {
+        byte[] bytes = format(snapshot).getBytes(UTF8);
+
+        latest = bytes;
+        if( file != null ) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+
+            try {
+                OutputStream out = new FileOutputStream(tmp);
+
+                try {
+                    out.write(bytes);
+                }
+                finally {
+                    out.close();
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                if( tmp.exists() && !tmp.delete() ) {
+                    tmp.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                byte[] bytes = latest;
+
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+                if( bytes.length > 0 ) {
+                    exchange.getResponseBody().write(bytes);
+                }
+            }
+            finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free count of events over a sliding window of recent seconds. Each slot of a fixed ring packs the second it
+ * belongs to into its upper 32 bits and the number of events in that second into its lower 32 bits, so a slot is
+ * claimed for a new second and counted with a single compare-and-set.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class RateWindow {
+    /**
+     * The longest window, in seconds, over which rates may be calculated
+     */
+    static final int MAX_WINDOW = 60;
+
+    static private final int  SLOTS = MAX_WINDOW + 1;
+    static private final long COUNT = 0xFFFFFFFFL;
+
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS);
+
+    /**
+     * Counts a single event at the current time.
+     */
+    void record() {
+        record(System.currentTimeMillis());
+    }
+
+    void record(long timestamp) {
+        long second = timestamp / 1000L;
+        int slot = (int)(second % SLOTS);
+
+        while( true ) {
+            long current = slots.get(slot);
+            long next = ((current >>> 32) == second ? current + 1L : (second << 32) | 1L);
+
+            if( slots.compareAndSet(slot, current, next) ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts the events in the last complete seconds. The second in progress is excluded so that rates do not dip at
+     * the start of every second.
+     * @param seconds the size of the window, at most {@link #MAX_WINDOW}
+     * @param timestamp the current time
+     * @return the number of events recorded in the window
+     */
+    @Nonnegative long getCount(@Nonnegative int seconds, long timestamp) {
+        long now = timestamp / 1000L;
+        long count = 0L;
+
+        seconds = Math.max(1, Math.min(seconds, MAX_WINDOW));
+        for( long second = now - seconds; second < now; second++ ) {
+            long value = slots.get((int)(second % SLOTS));
+
+            if( (value >>> 32) == second ) {
+                count += (value & COUNT);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Calculates the mean rate of events over the last complete seconds.
+     * @param seconds the size of the window, at most {@link #MAX_WINDOW}
+     * @return the mean number of events per second over the window
+     */
+    double getRate(@Nonnegative int seconds) {
+        seconds = Math.max(1, Math.min(seconds, MAX_WINDOW));
+        return ((double)getCount(seconds, System.currentTimeMillis()))/seconds;
+    }
+
+    /**
+     * Forgets every recorded event.
+     */
+    void reset() {
+        for( int i=0; i<SLOTS; i++ ) {
+            slots.set(i, 0L);
+        }
+    }
+}
@@ -30,13 +30,14 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements efficient caching of non-changing resources so that you can minimize the number of API calls being made
  * to a cloud provider. This is similar to the general {@link Cache} class, except it caches only singleton objects.
+ * Like {@link Cache}, reads are lock-free and each cached item expires on its own.
  * <p>
  * Example:
  * </p>
@@ -58,118 +59,89 @@ import java.util.Set;
  * @since 2013.07
  */
 public final class SingletonCache<T> {
-    static private final HashMap<String,SingletonCache<?>> caches = new HashMap<String, SingletonCache<?>>();
+    static private final ConcurrentHashMap<String,SingletonCache<?>> caches = new ConcurrentHashMap<String, SingletonCache<?>>();
 
-    static public class CacheDelegate implements CacheMBean {
+    static public class CacheDelegate extends AbstractCacheDelegate {
         @Override
         public void clear(@Nonnull String cacheName) {
-            SingletonCache<?> c;
-
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return;
-                }
+            SingletonCache<?> c = caches.get(cacheName);
+
+            if( c != null ) {
+                c.clear();
             }
-            c.clear();
         }
 
         @Override
         public @Nonnull String[] getCaches() {
-            Set<String> names;
+            Set<String> names = caches.keySet();
 
-            synchronized( caches ) {
-                names = caches.keySet();
-            }
             return names.toArray(new String[names.size()]);
         }
 
         @Override
         public @Nullable CacheLevel getCacheLevel(@Nonnull String cacheName) {
-            SingletonCache<?> c;
-
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return null;
-                }
-            }
-            if( c.cloudCache != null ) {
-                return CacheLevel.CLOUD;
-            }
-            else if( c.cloudAccountCache != null ) {
-                return CacheLevel.CLOUD_ACCOUNT;
-            }
-            else if( c.regionCache != null ) {
-                return CacheLevel.REGION;
-            }
-            else if( c.regionAccountCache != null ) {
-                return CacheLevel.REGION_ACCOUNT;
-            }
-            return null;
+            SingletonCache<?> c = caches.get(cacheName);
+
+            return (c == null ? null : c.level);
         }
 
         @Override
         public long getNextTimeout(@Nonnull String cacheName) {
-            SingletonCache<?> c;
-
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return System.currentTimeMillis();
-                }
+            SingletonCache<?> c = caches.get(cacheName);
+
+            if( c == null ) {
+                return System.currentTimeMillis();
             }
             return (c.cacheStart + c.cacheTimeout.longValue());
         }
 
         @Override
         public long getTimeoutInSeconds(@Nonnull String cacheName) {
-            SingletonCache<?> c;
-
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return 0L;
-                }
+            SingletonCache<?> c = caches.get(cacheName);
+
+            if( c == null ) {
+                return 0L;
             }
             return (c.cacheTimeout.longValue()/1000L);
         }
 
         public void setTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds) {
-            SingletonCache<?> c;
-
-            synchronized( caches ) {
-                if( caches.containsKey(cacheName) ) {
-                    //noinspection unchecked
-                    c = caches.get(cacheName);
-                }
-                else {
-                    return;
-                }
+            SingletonCache<?> c = caches.get(cacheName);
+
+            if( c != null ) {
+                c.cacheTimeout = new TimePeriod<Millisecond>(timeoutInSeconds * 1000L, TimePeriod.MILLISECOND);
             }
-            c.cacheTimeout = new TimePeriod<Millisecond>(timeoutInSeconds, TimePeriod.MILLISECOND);
+        }
+
+        @Override
+        public long getNotFoundTimeoutInSeconds(@Nonnull String cacheName) {
+            return 0L; // singleton caches have nothing to look up by ID
+        }
+
+        @Override
+        public void setNotFoundTimeoutInSeconds(@Nonnull String cacheName, @Nonnegative long timeoutInSeconds) {
+            // singleton caches have nothing to look up by ID
+        }
+
+        @Override
+        public @Nullable CacheStatistics getStatistics(@Nonnull String cacheName) {
+            SingletonCache<?> c = caches.get(cacheName);
+
+            return (c == null ? null : c.getStatistics());
         }
     }
 
     static private class CacheEntry<T> {
-        public long lastCacheClear;
-        public SoftReference<T> item;
-        public @Nonnull String toString() { return ((item == null) ? "--> empty <--" : item.toString()); }
-    }
+        public final long lastCacheClear;
+        public final SoftReference<T> item;
 
+        public CacheEntry(@Nonnull T item) {
+            this.item = new SoftReference<T>(item);
+            this.lastCacheClear = System.currentTimeMillis();
+        }
 
+        public @Nonnull String toString() { return item.toString(); }
+    }
 
     /**
      * Provides access to a cache for items under the specified name.
@@ -193,39 +165,39 @@ public final class SingletonCache<T> {
      * @return a cache containing the context-sensitive cached items
      */
     static public @Nonnull <X> SingletonCache<X> getInstance(@Nonnull CloudProvider provider, @Nonnull String name, @Nonnull CacheLevel level, @Nonnegative TimePeriod<?> timeout) {
-        SingletonCache<X> c;
+        name = Cache.getCacheName(provider, name);
 
-        name = provider.getClass().getName() + "." + name;
-        synchronized( caches ) {
-            if( caches.containsKey(name) ) {
-                //noinspection unchecked
-                c = (SingletonCache<X>)caches.get(name);
-            }
-            else {
-                c = new SingletonCache<X>(level, timeout);
-                caches.put(name, c);
+        //noinspection unchecked
+        SingletonCache<X> c = (SingletonCache<X>)caches.get(name);
+
+        if( c == null ) {
+            c = new SingletonCache<X>(name, level, timeout);
+
+            //noinspection unchecked
+            SingletonCache<X> existing = (SingletonCache<X>)caches.putIfAbsent(name, c);
+
+            if( existing != null ) {
+                c = existing;
             }
         }
         return c;
     }
 
-    private HashMap<String,CacheEntry<T>>                         cloudCache;
-    private HashMap<String,Map<String,CacheEntry<T>>>             cloudAccountCache;
-    private HashMap<String,Map<String,CacheEntry<T>>>             regionCache;
-    private HashMap<String,Map<String,Map<String,CacheEntry<T>>>> regionAccountCache;
-
-    private TimePeriod<Millisecond> cacheTimeout;
-    private long                    cacheStart;
-
-    private SingletonCache() { }
-
-    private SingletonCache(CacheLevel level, TimePeriod<?> timeout) {
-        switch( level ) {
-            case CLOUD: cloudCache = new HashMap<String, CacheEntry<T>>(); break;
-            case CLOUD_ACCOUNT: cloudAccountCache = new HashMap<String, Map<String, CacheEntry<T>>>(); break;
-            case REGION: regionCache = new HashMap<String, Map<String, CacheEntry<T>>>(); break;
-            case REGION_ACCOUNT: regionAccountCache = new HashMap<String, Map<String, Map<String, CacheEntry<T>>>>(); break;
-        }
+    private final ConcurrentHashMap<CacheKey,CacheEntry<T>> entries = new ConcurrentHashMap<CacheKey, CacheEntry<T>>();
+    private final String                                    name;
+    private final CacheLevel                                level;
+    private final AtomicLong                                evictionCount = new AtomicLong(0L);
+    private final AtomicLong                                expirationCount = new AtomicLong(0L);
+    private final AtomicLong                                hitCount = new AtomicLong(0L);
+    private final AtomicLong                                missCount = new AtomicLong(0L);
+
+    private volatile TimePeriod<Millisecond> cacheTimeout;
+    private volatile long                    cacheStart;
+
+    private SingletonCache(@Nonnull String name, @Nonnull CacheLevel level, @Nonnull TimePeriod<?> timeout) {
+        this.name = name;
+        this.level = level;
+        //noinspection unchecked
         cacheTimeout = (TimePeriod<Millisecond>)timeout.convertTo(TimePeriod.MILLISECOND);
         cacheStart = System.currentTimeMillis();
     }
@@ -234,21 +206,8 @@ public final class SingletonCache<T> {
      * Clears out the cache across the board, regardless of context.
      */
     public void clear() {
-        synchronized( this ) {
-            if( cloudCache != null ) {
-                cloudCache.clear();
-            }
-            else if( cloudAccountCache != null ) {
-                cloudAccountCache.clear();
-            }
-            else if( regionCache != null ) {
-                regionCache.clear();
-            }
-            else if( regionAccountCache != null ) {
-                regionAccountCache.clear();
-            }
-            cacheStart = System.currentTimeMillis();
-        }
+        entries.clear();
+        cacheStart = System.currentTimeMillis();
     }
 
     /**
@@ -259,51 +218,55 @@ public final class SingletonCache<T> {
      * @return the item currently in the cache if one is currently cached
      */
     public @Nullable T get(@Nonnull ProviderContext ctx) {
-        synchronized( this ) {
-            if( System.currentTimeMillis() > (cacheStart + CalendarWrapper.DAY) ) {
-                clear();
-                return null;
-            }
-        }
-        CacheEntry<T> entry = null;
-        String endpoint = ctx.getCloud().getEndpoint();
+        CacheKey key = CacheKey.getInstance(level, ctx);
+        CacheEntry<T> entry = entries.get(key);
 
-        if( cloudCache != null ) {
-            entry = cloudCache.get(endpoint);
+        if( entry == null ) {
+            missCount.incrementAndGet();
+            return null;
         }
-        else if( regionCache != null ) {
-            Map<String,CacheEntry<T>> map = regionCache.get(endpoint);
-
-            if( map != null ) {
-                entry = map.get(ctx.getRegionId());
+        if( isExpired(entry, System.currentTimeMillis()) ) {
+            if( entries.remove(key, entry) ) {
+                expirationCount.incrementAndGet();
             }
+            missCount.incrementAndGet();
+            return null;
         }
-        else if( cloudAccountCache != null ) {
-            Map<String,CacheEntry<T>> map = cloudAccountCache.get(endpoint);
+        T item = entry.item.get();
 
-            if( map != null ) {
-                entry = map.get(ctx.getAccountNumber());
+        if( item == null ) {
+            // the garbage collector reclaimed the item
+            if( entries.remove(key, entry) ) {
+                evictionCount.incrementAndGet();
             }
+            missCount.incrementAndGet();
+            return null;
         }
-        else if( regionAccountCache != null ) {
-            Map<String,Map<String,CacheEntry<T>>> map = regionAccountCache.get(endpoint);
+        hitCount.incrementAndGet();
+        return item;
+    }
 
-            if( map != null ) {
-                Map<String,CacheEntry<T>> rmap = map.get(ctx.getRegionId());
+    /**
+     * Takes a snapshot of the usage statistics for this cache. Evictions count items reclaimed by the garbage
+     * collector. Singleton caches have no loader, so load statistics are always zero.
+     * @return the current statistics for this cache
+     */
+    public @Nonnull CacheStatistics getStatistics() {
+        long entryCount = 0L;
+        long size = 0L;
 
-                if( rmap != null ) {
-                    entry = rmap.get(ctx.getAccountNumber());
-                }
-            }
-        }
-        if( entry == null ) {
-            return null;
-        }
-        if( entry.lastCacheClear + cacheTimeout.longValue() < System.currentTimeMillis() ) {
-            entry.item = null;
-            return null;
+        for( CacheEntry<T> entry : entries.values() ) {
+            entryCount++;
+            size += CacheStatistics.estimateSize(entry.item.get());
         }
-        return entry.item.get();
+        return new CacheStatistics(name, hitCount.get(), missCount.get(), expirationCount.get(), evictionCount.get(), 0L, 0L, 0.0, 0.0, entryCount, size);
+    }
+
+    private boolean isExpired(@Nonnull CacheEntry<T> entry, long now) {
+        long age = now - entry.lastCacheClear;
+
+        // nothing lives longer than a day, no matter how long the configured timeout
+        return (age > cacheTimeout.longValue() || age > CalendarWrapper.DAY);
     }
 
     /**
@@ -312,47 +275,6 @@ public final class SingletonCache<T> {
      * @param item the item to be cached
      */
     public void put(@Nonnull ProviderContext ctx, @Nonnull T item) {
-        CacheEntry<T> entry = new CacheEntry<T>();
-        String endpoint = ctx.getCloud().getEndpoint();
-
-        entry.item = new SoftReference<T>(item);
-        entry.lastCacheClear = System.currentTimeMillis();
-        if( cloudCache != null ) {
-            cloudCache.put(endpoint, entry);
-        }
-        else if( regionCache != null ) {
-            Map<String,CacheEntry<T>> map = regionCache.get(endpoint);
-
-            if( map == null ) {
-                map = new HashMap<String, CacheEntry<T>>();
-                regionCache.put(endpoint, map);
-            }
-            map.put(ctx.getRegionId(), entry);
-        }
-        else if( cloudAccountCache != null ) {
-            Map<String,CacheEntry<T>> map = cloudAccountCache.get(endpoint);
-
-            if( map == null ) {
-                map = new HashMap<String, CacheEntry<T>>();
-                cloudAccountCache.put(endpoint, map);
-            }
-            map.put(ctx.getAccountNumber(), entry);
-        }
-        else if( regionAccountCache != null ) {
-            Map<String,Map<String,CacheEntry<T>>> map = regionAccountCache.get(endpoint);
-
-            if( map == null ) {
-                map = new HashMap<String, Map<String, CacheEntry<T>>>();
-                regionAccountCache.put(endpoint, map);
-            }
-
-            Map<String,CacheEntry<T>> rmap = map.get(ctx.getRegionId());
-
-            if( rmap == null ) {
-                rmap = new HashMap<String, CacheEntry<T>>();
-                map.put(ctx.getRegionId(), rmap);
-            }
-            rmap.put(ctx.getAccountNumber(), entry);
-        }
+        entries.put(CacheKey.getInstance(level, ctx), new CacheEntry<T>(item));
     }
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that stays cheap under heavy concurrent updates. It starts out as a single atomic value and, the first time
+ * two threads collide updating it, spreads further updates across padded cells chosen by thread so that concurrent
+ * writers rarely touch the same cache line. Reading the counter sums the cells, so reads are slower than writes and
+ * may miss updates made while the sum is taken.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class StripedCounter {
+    static private final int PADDING = 8; // longs per 64 byte cache line
+    static private final int STRIPES;
+
+    static {
+        int n = 1;
+
+        while( n < Runtime.getRuntime().availableProcessors() && n < 64 ) {
+            n <<= 1;
+        }
+        STRIPES = n;
+    }
+
+    private final    AtomicLong      base = new AtomicLong(0L);
+    private volatile AtomicLongArray cells;
+
+    /**
+     * Adds the specified amount to this counter.
+     * @param delta the amount to add
+     */
+    void add(long delta) {
+        AtomicLongArray c = cells;
+
+        if( c == null ) {
+            long v = base.get();
+
+            if( base.compareAndSet(v, v + delta) ) {
+                return;
+            }
+            c = inflate();
+        }
+        c.addAndGet(getStripe() * PADDING, delta);
+    }
+
+    private static int getStripe() {
+        long id = Thread.currentThread().getId();
+
+        return (int)((id * 0x9E3779B97F4A7C15L) >>> 58) & (STRIPES - 1);
+    }
+
+    void increment() {
+        add(1L);
+    }
+
+    private AtomicLongArray inflate() {
+        synchronized( this ) {
+            if( cells == null ) {
+                cells = new AtomicLongArray(STRIPES * PADDING);
+            }
+            return cells;
+        }
+    }
+
+    /**
+     * @return the current total of this counter
+     */
+    long sum() {
+        long total = base.get();
+        AtomicLongArray c = cells;
+
+        if( c != null ) {
+            for( int i=0; i<STRIPES; i++ ) {
+                total += c.get(i * PADDING);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(sum());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.RequestTrackingStrategy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Carries the API trace state of the thread that created it into work run on other threads. Work wrapped by a trace
+ * context appears in the API trace as a child of the operation in progress when the context was captured, and uses the
+ * request tracking strategy of that operation, so that fan-out across threads is attributed to the operation that
+ * caused it. An API call traced but not yet executed when the context is captured moves with it, so that the request
+ * made by the wrapped work is attributed to that call and timed under it. Capture a context on the calling thread, then
+ * wrap the tasks handed to threads or executors:
+ * <pre>
+ *     pool.submit(TraceContext.capture().wrap(task));
+ * </pre>
+ * or wrap the executor itself with {@link #propagating(ExecutorService)}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class TraceContext {
+    /**
+     * Captures the trace state of the current thread. Any pending API call is taken from the current thread.
+     * @return the trace state of the current thread
+     * @see APITrace#getPendingApiCall()
+     */
+    static public @Nonnull TraceContext capture() {
+        return new TraceContext(APITrace.getCurrentOperation(), APITrace.getCurrentRequestTracking(), APITrace.takePendingCall());
+    }
+
+    /**
+     * Identifies the request tracking strategy that applies to work done on the current thread. Work run within a
+     * trace context uses the strategy of the operation that spawned it; any other work uses that of the provider
+     * context.
+     * @param ctx the provider context for the work being done
+     * @return the request tracking strategy to use, if any
+     */
+    static public @Nullable RequestTrackingStrategy getRequestTracking(@Nullable ProviderContext ctx) {
+        RequestTrackingStrategy strategy = APITrace.getCurrentRequestTracking();
+
+        if( strategy == null && ctx != null ) {
+            strategy = ctx.getRequestTrackingStrategy();
+        }
+        return strategy;
+    }
+
+    /**
+     * Wraps an executor so that every task submitted to it runs within the trace context of the submitting thread.
+     * Shutting down the returned executor shuts down the wrapped executor.
+     * @param executor the executor to wrap
+     * @return an executor propagating trace state to its tasks
+     */
+    static public @Nonnull ExecutorService propagating(@Nonnull ExecutorService executor) {
+        if( executor instanceof TraceContextExecutor ) {
+            return executor;
+        }
+        return new TraceContextExecutor(executor);
+    }
+
+    private final APITrace.CloudOperation  origin;
+    private final RequestTrackingStrategy  strategy;
+    private final APITrace.PendingCall     apiCall;
+
+    private TraceContext(@Nullable APITrace.CloudOperation origin, @Nullable RequestTrackingStrategy strategy, @Nullable APITrace.PendingCall apiCall) {
+        this.origin = origin;
+        this.strategy = strategy;
+        this.apiCall = apiCall;
+    }
+
+    /**
+     * Runs the specified task within this trace context on the current thread.
+     * @param task the task to run
+     * @param <T> the type of the task result
+     * @return the result of the task
+     * @throws Exception any exception raised by the task
+     */
+    public <T> T call(@Nonnull Callable<T> task) throws Exception {
+        APITrace.Attachment attachment = APITrace.attach(origin, strategy, apiCall);
+
+        try {
+            return task.call();
+        }
+        finally {
+            APITrace.detach(attachment);
+        }
+    }
+
+    /**
+     * Runs the specified task within this trace context on the current thread.
+     * @param task the task to run
+     */
+    public void run(@Nonnull Runnable task) {
+        APITrace.Attachment attachment = APITrace.attach(origin, strategy, apiCall);
+
+        try {
+            task.run();
+        }
+        finally {
+            APITrace.detach(attachment);
+        }
+    }
+
+    /**
+     * Wraps a task so that it runs within this trace context on whichever thread runs it.
+     * @param task the task to wrap
+     * @param <T> the type of the task result
+     * @return the wrapped task
+     */
+    public @Nonnull <T> Callable<T> wrap(@Nonnull final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return TraceContext.this.call(task);
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so that it runs within this trace context on whichever thread runs it.
+     * @param task the task to wrap
+     * @return the wrapped task
+     */
+    public @Nonnull Runnable wrap(@Nonnull final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                TraceContext.this.run(task);
+            }
+        };
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executor that runs every task within the {@link TraceContext} of the thread submitting it.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class TraceContextExecutor implements ExecutorService {
+    private final ExecutorService delegate;
+
+    TraceContextExecutor(@Nonnull ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    private @Nonnull <T> List<Callable<T>> wrap(@Nonnull Collection<? extends Callable<T>> tasks) {
+        TraceContext context = TraceContext.capture();
+        ArrayList<Callable<T>> wrapped = new ArrayList<Callable<T>>(tasks.size());
+
+        for( Callable<T> task : tasks ) {
+            wrapped.add(context.wrap(task));
+        }
+        return wrapped;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        delegate.execute(TraceContext.capture().wrap(command));
+    }
+
+    @Override
+    public @Nonnull <T> List<Future<T>> invokeAll(@Nonnull Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks));
+    }
+
+    @Override
+    public @Nonnull <T> List<Future<T>> invokeAll(@Nonnull Collection<? extends Callable<T>> tasks, long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public @Nonnull <T> T invokeAny(@Nonnull Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return delegate.invokeAny(wrap(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(@Nonnull Collection<? extends Callable<T>> tasks, long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return delegate.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public @Nonnull List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public @Nonnull <T> Future<T> submit(@Nonnull Callable<T> task) {
+        return delegate.submit(TraceContext.capture().wrap(task));
+    }
+
+    @Override
+    public @Nonnull Future<?> submit(@Nonnull Runnable task) {
+        return delegate.submit(TraceContext.capture().wrap(task));
+    }
+
+    @Override
+    public @Nonnull <T> Future<T> submit(@Nonnull Runnable task, T result) {
+        return delegate.submit(TraceContext.capture().wrap(task), result);
+    }
+}
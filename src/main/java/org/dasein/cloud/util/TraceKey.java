@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable key identifying an API call or operation counted by {@link APITrace}. The provider, cloud and account
+ * names are stored with the {@link APITrace#DELIMITER} replaced so that the key prints in the traditional
+ * provider.cloud.account.name form. Keys are interned by their raw parts, so looking up the key for a call that has
+ * been seen before neither sanitizes nor allocates anything.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class TraceKey {
+    static private final ConcurrentHashMap<String,ConcurrentHashMap<String,ConcurrentHashMap<String,ConcurrentHashMap<String,TraceKey>>>> keys = new ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<String, TraceKey>>>>();
+
+    /**
+     * Provides the key for the specified call.
+     * @param providerName the raw provider name
+     * @param cloudName the raw cloud name
+     * @param accountNumber the raw account number
+     * @param name the name of the API call or operation, which is not sanitized
+     * @return the interned key for the call
+     */
+    static @Nonnull TraceKey getInstance(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String name) {
+        ConcurrentHashMap<String,TraceKey> names = child(child(child(keys, providerName), cloudName), accountNumber);
+        TraceKey key = names.get(name);
+
+        if( key == null ) {
+            key = new TraceKey(sanitize(providerName), sanitize(cloudName), sanitize(accountNumber), name);
+
+            TraceKey existing = names.putIfAbsent(name, key);
+
+            if( existing != null ) {
+                key = existing;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Provides a key that is not interned, for names such as those carrying a request ID that are unlikely to be seen
+     * again and would otherwise be kept until the next {@link #clear()}.
+     * @param providerName the raw provider name
+     * @param cloudName the raw cloud name
+     * @param accountNumber the raw account number
+     * @param name the name of the API call or operation, which is not sanitized
+     * @return a new key for the call
+     */
+    static @Nonnull TraceKey getTransientInstance(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String name) {
+        return new TraceKey(sanitize(providerName), sanitize(cloudName), sanitize(accountNumber), name);
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nonnull <V> V child(@Nonnull ConcurrentHashMap<String,V> parent, @Nonnull String name) {
+        V child = parent.get(name);
+
+        if( child == null ) {
+            child = (V)new ConcurrentHashMap<String, Object>();
+
+            V existing = parent.putIfAbsent(name, child);
+
+            if( existing != null ) {
+                child = existing;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * Replaces the delimiter in a provider, cloud or account name.
+     * @param name the raw name
+     * @return the name with every {@link APITrace#DELIMITER} replaced by an underscore
+     */
+    static @Nonnull String sanitize(@Nonnull String name) {
+        return name.replace('.', '_');
+    }
+
+    /**
+     * Forgets all interned keys.
+     */
+    static void clear() {
+        keys.clear();
+    }
+
+    private final String accountNumber;
+    private final String cloudName;
+    private final int    hashCode;
+    private final String name;
+    private final String providerName;
+    private volatile String path;
+
+    private TraceKey(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String accountNumber, @Nonnull String name) {
+        this.providerName = providerName;
+        this.cloudName = cloudName;
+        this.accountNumber = accountNumber;
+        this.name = name;
+
+        int h = providerName.hashCode();
+
+        h = 31 * h + cloudName.hashCode();
+        h = 31 * h + accountNumber.hashCode();
+        h = 31 * h + name.hashCode();
+        this.hashCode = h;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+        if( other == this ) {
+            return true;
+        }
+        if( !(other instanceof TraceKey) ) {
+            return false;
+        }
+        TraceKey key = (TraceKey)other;
+
+        return (hashCode == key.hashCode && name.equals(key.name) && accountNumber.equals(key.accountNumber) && cloudName.equals(key.cloudName) && providerName.equals(key.providerName));
+    }
+
+    /**
+     * @return the sanitized account number
+     */
+    @Nonnull String getAccountNumber() {
+        return accountNumber;
+    }
+
+    /**
+     * @return the sanitized cloud name
+     */
+    @Nonnull String getCloudName() {
+        return cloudName;
+    }
+
+    /**
+     * @return the name of the API call or operation
+     */
+    @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * @return the sanitized provider name
+     */
+    @Nonnull String getProviderName() {
+        return providerName;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Checks whether this key belongs to the specified provider, cloud and account.
+     * @param providerName the sanitized provider name
+     * @param cloudName the sanitized cloud name, or null to match any cloud
+     * @param accountNumber the sanitized account number, or null to match any account
+     * @return true if this key falls within the specified scope
+     */
+    boolean isIn(@Nonnull String providerName, @Nullable String cloudName, @Nullable String accountNumber) {
+        return (this.providerName.equals(providerName) && (cloudName == null || this.cloudName.equals(cloudName)) && (accountNumber == null || this.accountNumber.equals(accountNumber)));
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        String p = path;
+
+        if( p == null ) {
+            p = providerName + APITrace.DELIMITER + cloudName + APITrace.DELIMITER + accountNumber + APITrace.DELIMITER + name;
+            path = p;
+        }
+        return p;
+    }
+}
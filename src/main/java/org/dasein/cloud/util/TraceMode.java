@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+/**
+ * Defines how much {@link APITrace} records. Each mode records everything the modes before it record.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public enum TraceMode {
+    /**
+     * Nothing is recorded
+     */
+    OFF,
+    /**
+     * API calls and operations are counted
+     */
+    COUNTERS,
+    /**
+     * Latencies and rates of API calls and operations are recorded
+     */
+    TIMINGS,
+    /**
+     * Sampled operation trees, including the API calls they made, are captured
+     */
+    FULL_TREE;
+
+    /**
+     * @param mode the mode to compare with
+     * @return true if this mode records everything the specified mode records
+     */
+    public boolean includes(TraceMode mode) {
+        return ordinal() >= mode.ordinal();
+    }
+}
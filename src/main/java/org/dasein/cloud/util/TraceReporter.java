@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Exports the statistics gathered by {@link APITrace} to an external monitoring system. Register a reporter with
+ * {@link APITrace#addReporter(TraceReporter, org.dasein.util.uom.time.TimePeriod)} and it is handed a fresh
+ * {@link TraceSnapshot} on a background thread at the requested interval. Reporters are never called concurrently
+ * with themselves, and a reporter that throws is simply called again at the next interval.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface TraceReporter {
+    /**
+     * Releases any resources held by the reporter. Called once the reporter has been removed.
+     */
+    public void close();
+
+    /**
+     * Exports a snapshot.
+     * @param snapshot the statistics to export
+     * @throws IOException the snapshot could not be exported
+     */
+    public void report(@Nonnull TraceSnapshot snapshot) throws IOException;
+}
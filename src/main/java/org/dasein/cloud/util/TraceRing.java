@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size, lock-free ring holding the most recent items added to it. Once the ring is full, each new item replaces
+ * the oldest one, so the memory retained is bounded by the capacity no matter how many items are added.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class TraceRing<T> {
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLong              next = new AtomicLong(0L);
+
+    TraceRing(@Nonnegative int capacity) {
+        items = new AtomicReferenceArray<T>(Math.max(1, capacity));
+    }
+
+    /**
+     * Adds an item, replacing the oldest item if the ring is full.
+     * @param item the item to add
+     */
+    void add(@Nonnull T item) {
+        items.set((int)(next.getAndIncrement() % items.length()), item);
+    }
+
+    /**
+     * Forgets every item in the ring.
+     */
+    void clear() {
+        for( int i=0; i<items.length(); i++ ) {
+            items.set(i, null);
+        }
+    }
+
+    @Nonnegative int getCapacity() {
+        return items.length();
+    }
+
+    /**
+     * @return the items in the ring from newest to oldest
+     */
+    @Nonnull List<T> list() {
+        int capacity = items.length();
+        long last = next.get();
+        ArrayList<T> list = new ArrayList<T>(capacity);
+
+        for( long i = last - 1; i >= 0 && i >= last - capacity; i-- ) {
+            T item = items.get((int)(i % capacity));
+
+            if( item != null ) {
+                list.add(item);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A point-in-time copy of everything {@link APITrace} has counted and timed, handed to each {@link TraceReporter}.
+ * Snapshots are taken without locking, so counts updated while a snapshot is being taken may or may not be included.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class TraceSnapshot {
+    private final List<TraceStatistics> apis;
+    private final TraceMode             mode;
+    private final List<TraceStatistics> operations;
+    private final long                  timestamp;
+
+    TraceSnapshot(@Nonnull TraceMode mode, @Nonnull List<TraceStatistics> apis, @Nonnull List<TraceStatistics> operations) {
+        this.mode = mode;
+        this.apis = Collections.unmodifiableList(apis);
+        this.operations = Collections.unmodifiableList(operations);
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the statistics for each API call in each account
+     */
+    public @Nonnull List<TraceStatistics> getApis() {
+        return apis;
+    }
+
+    /**
+     * @return the trace mode in effect when the snapshot was taken
+     */
+    public @Nonnull TraceMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the statistics for each operation in each account
+     */
+    public @Nonnull List<TraceStatistics> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the time at which the snapshot was taken
+     */
+    public @Nonnegative long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * The statistics {@link APITrace} has gathered for a single API call or operation in a single account, as captured in a
+ * {@link TraceSnapshot}. Counts are cumulative since the last {@link APITrace#reset()}; latencies are in nanoseconds and
+ * are zero unless the trace mode includes {@link TraceMode#TIMINGS}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class TraceStatistics {
+    /**
+     * Identifies what was measured
+     */
+    public enum Kind {
+        /**
+         * A call to a cloud provider API
+         */
+        API,
+        /**
+         * A Dasein Cloud operation, which may make any number of API calls
+         */
+        OPERATION
+    }
+
+    private final String accountNumber;
+    private final long   apiCallCount;
+    private final String cloudName;
+    private final long   count;
+    private final Kind   kind;
+    private final long   latencyCount;
+    private final long   maxLatency;
+    private final double meanLatency;
+    private final String name;
+    private final long   p50Latency;
+    private final long   p90Latency;
+    private final long   p99Latency;
+    private final String providerName;
+    private final double rate;
+
+    TraceStatistics(@Nonnull Kind kind, @Nonnull TraceKey key, long count, long apiCallCount, long latencyCount, double meanLatency, long p50Latency, long p90Latency, long p99Latency, long maxLatency, double rate) {
+        this.kind = kind;
+        this.providerName = key.getProviderName();
+        this.cloudName = key.getCloudName();
+        this.accountNumber = key.getAccountNumber();
+        this.name = key.getName();
+        this.count = count;
+        this.apiCallCount = apiCallCount;
+        this.latencyCount = latencyCount;
+        this.meanLatency = meanLatency;
+        this.p50Latency = p50Latency;
+        this.p90Latency = p90Latency;
+        this.p99Latency = p99Latency;
+        this.maxLatency = maxLatency;
+        this.rate = rate;
+    }
+
+    /**
+     * @return the account on whose behalf the calls were made
+     */
+    public @Nonnull String getAccountNumber() {
+        return accountNumber;
+    }
+
+    /**
+     * @return for operations, the number of API calls made in support of the operation; 0 for API calls
+     */
+    public @Nonnegative long getApiCallCount() {
+        return apiCallCount;
+    }
+
+    /**
+     * @return the name of the cloud
+     */
+    public @Nonnull String getCloudName() {
+        return cloudName;
+    }
+
+    /**
+     * @return the number of calls made or operations begun
+     */
+    public @Nonnegative long getCount() {
+        return count;
+    }
+
+    /**
+     * @return whether these statistics describe an API call or an operation
+     */
+    public @Nonnull Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public @Nonnegative long getLatencyCount() {
+        return latencyCount;
+    }
+
+    /**
+     * @return the largest latency recorded, in nanoseconds
+     */
+    public @Nonnegative long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @return the mean latency, in nanoseconds
+     */
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * @return the name of the API call or operation
+     */
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * @return the median latency, in nanoseconds
+     */
+    public @Nonnegative long getP50Latency() {
+        return p50Latency;
+    }
+
+    /**
+     * @return the 90th percentile latency, in nanoseconds
+     */
+    public @Nonnegative long getP90Latency() {
+        return p90Latency;
+    }
+
+    /**
+     * @return the 99th percentile latency, in nanoseconds
+     */
+    public @Nonnegative long getP99Latency() {
+        return p99Latency;
+    }
+
+    /**
+     * @return the name of the cloud provider
+     */
+    public @Nonnull String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * @return the mean number of calls or operations completed per second over the last minute
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (kind + " " + providerName + APITrace.DELIMITER + cloudName + APITrace.DELIMITER + accountNumber + APITrace.DELIMITER + name + " [count=" + count + ", p50=" + p50Latency + "ns, p99=" + p99Latency + "ns, max=" + maxLatency + "ns, rate=" + rate + "/s]");
+    }
+}
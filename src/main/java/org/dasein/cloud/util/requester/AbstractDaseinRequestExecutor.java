@@ -20,20 +20,29 @@
 package org.dasein.cloud.util.requester;
 
 import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.util.APITrace;
 
+import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.Properties;
 
 /**
  * Created by vmunthiu on 6/17/2015.
  */
 public abstract class AbstractDaseinRequestExecutor<T> {
+    static private final Logger logger = Logger.getLogger(AbstractDaseinRequestExecutor.class);
+
     protected CloudProvider provider;
     protected HttpClientBuilder httpClientBuilder;
     private ResponseHandler<T> responseHandler;
@@ -45,29 +54,166 @@ public abstract class AbstractDaseinRequestExecutor<T> {
     }
 
     protected T execute(HttpUriRequest httpUriRequest) throws CloudException {
+        return retryingExecute(null, httpUriRequest);
+    }
+
+    /**
+     * Borrows the shared client for this provider, building it from the configured builder if needed.
+     * @return a lease on the client to use, which must be closed after the request
+     * @see HttpClientPool
+     */
+    protected HttpClientPool.Lease lease() {
         httpClientBuilder = setProxyIfRequired(httpClientBuilder);
+        return HttpClientPool.lease(provider, getProxy(), httpClientBuilder);
+    }
+
+    protected T execute(CloseableHttpClient httpClient, HttpUriRequest httpUriRequest) throws CloudException {
+        return retryingExecute(httpClient, httpUriRequest);
+    }
+
+    /**
+     * Executes the request, retrying transient failures as allowed by the provider's {@link RetryPolicy}. Every
+     * attempt first waits for a permit from the {@link RateLimiter} and then for a slot under the in-flight limit of
+     * the request's endpoint, and reports its round trip time to that limit. Attempts fail fast while the
+     * {@link CircuitBreaker} of the endpoint is open. A failure is never retried once the response handler has started
+     * reading a successful response, since the handler may already have passed part of it on.
+     * @param httpClient the client to use, or null to lease one from the {@link HttpClientPool} for each attempt
+     * @param httpUriRequest the request to execute
+     * @return the handled response
+     * @throws CloudException the last failure once the request cannot be retried, or the circuit breaker is open
+     */
+    private T retryingExecute(CloseableHttpClient httpClient, HttpUriRequest httpUriRequest) throws CloudException {
+        RetryPolicy retryPolicy = RetryPolicy.getInstance(provider);
+        CircuitBreaker breaker = CircuitBreaker.getInstance(provider, httpUriRequest);
+        String apiCall = APITrace.getPendingApiCall();
+
+        retryPolicy.recordRequest();
+        for( int retries=0; ; retries++ ) {
+            RateLimiter.acquire(provider, apiCall);
+
+            boolean trial = (breaker != null && breaker.acquire());
+            boolean recorded = false;
+            Attempt<T> attempt = new Attempt<T>(responseHandler);
 
-        try {
-            CloseableHttpClient httpClient = this.httpClientBuilder.build();
             try {
-                return httpClient.execute(httpUriRequest, this.responseHandler);
-            }
-            finally{
-                httpClient.close();
+                T result = attempt(httpClient, httpUriRequest, attempt);
+
+                if( breaker != null ) {
+                    breaker.record(trial, false);
+                    recorded = true;
+                }
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw translateException(e);
+            } catch (Exception e) {
+                if( breaker != null ) {
+                    breaker.record(trial, CircuitBreaker.isFailure(e));
+                    recorded = true;
+                }
+                // a failure while reading a response may come after part of it was passed on, so sending the
+                // request again could hand the caller the same data twice
+                long delay = (attempt.isHandling() && !(e instanceof CloudResponseException) ? -1L : retryPolicy.getDelay(httpUriRequest, e, retries));
+
+                if( delay < 0L ) {
+                    throw translateException(e);
+                }
+                if( logger.isDebugEnabled() ) {
+                    logger.debug("Retrying " + httpUriRequest.getMethod() + " " + httpUriRequest.getURI() + " in " + delay + "ms after: " + e.getMessage());
+                }
+                try {
+                    Thread.sleep(delay);
+                }
+                catch( InterruptedException interrupted ) {
+                    Thread.currentThread().interrupt();
+                    throw translateException(e);
+                }
+                continue;
+            } finally {
+                // anything that left without an outcome, such as an interrupt or an Error, must not keep a trial
+                if( breaker != null && !recorded ) {
+                    breaker.release(trial);
+                }
             }
-        } catch (Exception e){
-            throw translateException(e);
         }
     }
 
-    protected T execute(CloseableHttpClient httpClient, HttpUriRequest httpUriRequest) throws CloudException {
+    private T attempt(CloseableHttpClient httpClient, HttpUriRequest httpUriRequest, Attempt<T> attempt) throws IOException, InterruptedException {
+        if( httpClient != null ) {
+            return timedExecute(httpClient, httpUriRequest, attempt);
+        }
+        HttpClientPool.Lease lease = lease();
         try {
-            return httpClient.execute(httpUriRequest, this.responseHandler);
-        } catch (Exception e) {
-            throw translateException(e);
+            return timedExecute(lease.getClient(), httpUriRequest, attempt);
+        }
+        finally{
+            lease.close();
         }
     }
 
+    private T timedExecute(CloseableHttpClient httpClient, HttpUriRequest httpUriRequest, Attempt<T> attempt) throws IOException, InterruptedException {
+        EndpointLimiter limiter = EndpointLimiter.getInstance(provider, httpUriRequest);
+        boolean acquired = limiter.acquire();
+        long start = System.nanoTime();
+        boolean dropped = false;
+
+        try {
+            return httpClient.execute(httpUriRequest, attempt);
+        }
+        catch( IOException e ) {
+            dropped = isDropped(e);
+            throw e;
+        }
+        finally {
+            long nanos = System.nanoTime() - start;
+
+            APITrace.recordLatency(provider, nanos);
+            limiter.record(nanos, dropped);
+            if( acquired ) {
+                limiter.release();
+            }
+        }
+    }
+
+    /**
+     * Passes the response of one attempt to the response handler, noting that it did so. Error responses are turned
+     * into a {@link CloudResponseException} before anything is read from them, but once the handler has started on a
+     * successful response it may already have handed part of it to the caller.
+     */
+    static private final class Attempt<T> implements ResponseHandler<T> {
+        private final ResponseHandler<T> handler;
+        private volatile boolean         handling;
+
+        Attempt(ResponseHandler<T> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public T handleResponse(HttpResponse httpResponse) throws IOException {
+            handling = true;
+            return handler.handleResponse(httpResponse);
+        }
+
+        boolean isHandling() {
+            return handling;
+        }
+    }
+
+    /**
+     * Tells whether a failure means the endpoint is over its capacity: it throttled the request or did not answer in
+     * time. Such failures shrink the adaptive limit on requests in flight to the endpoint.
+     * @param e the failure
+     * @return true if the endpoint is over its capacity
+     */
+    static boolean isDropped(IOException e) {
+        if( e instanceof CloudResponseException ) {
+            int code = ((CloudResponseException)e).getHttpCode();
+
+            return (code == RetryPolicy.SC_TOO_MANY_REQUESTS || code == HttpStatus.SC_SERVICE_UNAVAILABLE);
+        }
+        return (e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException);
+    }
+
     protected CloudException translateException(Exception exception) {
         if(exception instanceof  CloudResponseException) {
             CloudResponseException e = (CloudResponseException) exception;
@@ -79,9 +225,8 @@ public abstract class AbstractDaseinRequestExecutor<T> {
 
     protected HttpClientBuilder setProxyIfRequired(HttpClientBuilder httpClientBuilder)
     {
-        HttpProxyConfig httpProxyConfig = getHttpProxyConfigData();
-        if(httpProxyConfig != null){
-            HttpHost proxy = new HttpHost(httpProxyConfig.getHost(), httpProxyConfig.getPort());
+        HttpHost proxy = getProxy();
+        if(proxy != null){
             DefaultProxyRoutePlanner routePlanner = new DefaultProxyRoutePlanner(proxy);
             httpClientBuilder.setRoutePlanner(routePlanner);
         }
@@ -89,6 +234,15 @@ public abstract class AbstractDaseinRequestExecutor<T> {
         return httpClientBuilder;
     }
 
+    private HttpHost getProxy()
+    {
+        HttpProxyConfig httpProxyConfig = getHttpProxyConfigData();
+        if(httpProxyConfig == null){
+            return null;
+        }
+        return new HttpHost(httpProxyConfig.getHost(), httpProxyConfig.getPort());
+    }
+
     private HttpProxyConfig getHttpProxyConfigData()
     {
         Properties p = provider.getContext().getCustomProperties();
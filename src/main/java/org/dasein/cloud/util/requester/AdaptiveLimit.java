@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Adapts the number of requests allowed in flight to an endpoint to what the endpoint tolerates, using additive
+ * increase and multiplicative decrease. Every completed request is a sample. While requests complete normally and the
+ * endpoint is busy, the limit grows by one for every <i>limit</i> samples. It shrinks by a quarter when the endpoint
+ * throttles (429 or 503) or a request times out, and by a tenth when the recent round trip time climbs to more than
+ * {@link #TOLERANCE} times its long-term baseline, a sign that requests are queueing on the server. The limit shrinks
+ * at most once per recent round trip time so a burst of failures from one overloaded moment counts only once.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class AdaptiveLimit {
+    static final double DROP_BACKOFF    = 0.75;
+    static final double LATENCY_BACKOFF = 0.9;
+    static final double TOLERANCE       = 2.0;
+
+    static private final double BASELINE_WEIGHT = 0.01;
+    static private final double RECENT_WEIGHT   = 0.1;
+
+    private final int ceiling;
+    private double    baseline = -1.0;
+    private boolean   decreased;
+    private long      lastDecrease;
+    private double    limit;
+    private double    recent   = -1.0;
+
+    AdaptiveLimit(@Nonnegative int initial, @Nonnegative int ceiling) {
+        this.ceiling = Math.max(1, ceiling);
+        this.limit = Math.max(1, Math.min(initial, this.ceiling));
+    }
+
+    synchronized int getLimit() {
+        return (int)limit;
+    }
+
+    /**
+     * Adjusts the limit for a completed request.
+     * @param now the time the request completed, in nanoseconds
+     * @param rtt the time the request took, in nanoseconds
+     * @param inFlight the number of requests in flight when the request completed
+     * @param dropped true if the endpoint throttled the request or it timed out
+     * @return the new limit
+     */
+    synchronized int onSample(long now, @Nonnegative long rtt, @Nonnegative int inFlight, boolean dropped) {
+        boolean congested = dropped;
+
+        if( !dropped && rtt > 0L ) {
+            recent = (recent < 0.0 ? rtt : recent + (rtt - recent) * RECENT_WEIGHT);
+            if( baseline < 0.0 || recent < baseline ) {
+                baseline = recent;
+            }
+            else {
+                baseline += (rtt - baseline) * BASELINE_WEIGHT;
+            }
+            congested = (recent > baseline * TOLERANCE);
+        }
+        if( congested ) {
+            if( !decreased || now - lastDecrease >= (long)Math.max(recent, 0.0) ) {
+                limit = Math.max(1.0, limit * (dropped ? DROP_BACKOFF : LATENCY_BACKOFF));
+                lastDecrease = now;
+                decreased = true;
+            }
+        }
+        else if( inFlight * 2 >= (int)limit ) {
+            limit = Math.min(ceiling, limit + 1.0/limit);
+        }
+        return (int)limit;
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fails requests fast while the endpoint they are made to is down, instead of letting every thread wait out its own
+ * socket timeout. One breaker guards each endpoint and region. While <i>closed</i>, a breaker counts the outcomes of
+ * the most recent requests; when enough of them fail, it <i>opens</i> and requests fail at once with a
+ * {@link CloudErrorType#UNAVAILABLE} error. Once the open time has passed, the breaker is <i>half open</i> and lets a
+ * few trial requests through: if they all succeed it closes again, and if any fails it opens for another period.
+ * <p>
+ * Only failures that say the endpoint is unhealthy count: failures to connect or resolve the host, dropped
+ * connections, timeouts and 500, 502, 503 and 504 responses. Other errors, including throttling, count as successes
+ * since the endpoint answered.
+ * </p>
+ * <p>
+ * Breakers are configured through the following custom properties of the provider context, falling back to system
+ * properties of the same name. The settings of a breaker are fixed when it is created.
+ * </p>
+ * <ul>
+ *     <li>{@value #ENABLED} - set to false to turn the breakers off</li>
+ *     <li>{@value #WINDOW} - the number of recent requests counted (default {@value #DEFAULT_WINDOW})</li>
+ *     <li>{@value #MIN_REQUESTS} - the fewest recent requests on which the breaker will open (default {@value #DEFAULT_MIN_REQUESTS})</li>
+ *     <li>{@value #FAILURE_RATE} - the percentage of failed recent requests at which the breaker opens (default {@value #DEFAULT_FAILURE_RATE})</li>
+ *     <li>{@value #OPEN_TIME} - milliseconds the breaker stays open (default {@value #DEFAULT_OPEN_TIME})</li>
+ *     <li>{@value #TRIALS} - the number of trial requests that must succeed to close the breaker (default {@value #DEFAULT_TRIALS})</li>
+ * </ul>
+ * <p>
+ * Breaker states are available over JMX as {@link #OBJECT_NAME}.
+ * </p>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class CircuitBreaker {
+    static private final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    /**
+     * The JMX object name under which breaker states are registered
+     */
+    static public final String OBJECT_NAME = "org.dasein:type=CircuitBreaker";
+
+    static public final String ENABLED      = "httpBreaker";
+    static public final String WINDOW       = "httpBreakerWindow";
+    static public final String MIN_REQUESTS = "httpBreakerMinRequests";
+    static public final String FAILURE_RATE = "httpBreakerFailureRate";
+    static public final String OPEN_TIME    = "httpBreakerOpenTime";
+    static public final String TRIALS       = "httpBreakerTrials";
+
+    static public final int DEFAULT_WINDOW       = 20;
+    static public final int DEFAULT_MIN_REQUESTS = 10;
+    static public final int DEFAULT_FAILURE_RATE = 50;
+    static public final int DEFAULT_OPEN_TIME    = 30000;
+    static public final int DEFAULT_TRIALS       = 3;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static private final ConcurrentHashMap<String,CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if( !server.isRegistered(name) ) {
+                server.registerMBean(new StandardMBean(new Registry(), CircuitBreakerMBean.class), name);
+            }
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up circuit breaker MBean: " + t.getMessage());
+        }
+    }
+
+    /**
+     * Fetches the breaker for the endpoint of a request made for the provider's region, creating it as configured
+     * for the provider if it does not yet exist.
+     * @param provider the provider making the request
+     * @param request the request
+     * @return the breaker guarding the request, or null if breakers are turned off for the provider
+     */
+    static public @Nullable CircuitBreaker getInstance(@Nonnull CloudProvider provider, @Nonnull HttpUriRequest request) {
+        Properties p = RequesterConfig.getProperties(provider);
+
+        if( !RequesterConfig.getBoolean(p, ENABLED, true) ) {
+            return null;
+        }
+        ProviderContext ctx = provider.getContext();
+        String region = (ctx == null ? null : ctx.getRegionId());
+        String name = EndpointLimiter.getEndpoint(request) + " (" + (region == null ? "---" : region) + ")";
+        CircuitBreaker breaker = breakers.get(name);
+
+        if( breaker == null ) {
+            CircuitBreaker created = new CircuitBreaker(name, RequesterConfig.getInt(p, WINDOW, DEFAULT_WINDOW),
+                    RequesterConfig.getInt(p, MIN_REQUESTS, DEFAULT_MIN_REQUESTS), RequesterConfig.getInt(p, FAILURE_RATE, DEFAULT_FAILURE_RATE),
+                    RequesterConfig.getInt(p, OPEN_TIME, DEFAULT_OPEN_TIME), RequesterConfig.getInt(p, TRIALS, DEFAULT_TRIALS));
+
+            breaker = breakers.putIfAbsent(name, created);
+            if( breaker == null ) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Tells whether a failure means the endpoint is unhealthy.
+     * @param failure the reason a request failed
+     * @return true if the failure should count against the endpoint
+     */
+    static public boolean isFailure(@Nonnull Throwable failure) {
+        if( failure instanceof CloudResponseException ) {
+            int code = ((CloudResponseException)failure).getHttpCode();
+
+            return (code == HttpStatus.SC_INTERNAL_SERVER_ERROR || code == HttpStatus.SC_BAD_GATEWAY || code == HttpStatus.SC_SERVICE_UNAVAILABLE || code == HttpStatus.SC_GATEWAY_TIMEOUT);
+        }
+        for( Throwable t = failure; t != null; t = (t.getCause() == t ? null : t.getCause()) ) {
+            if( t instanceof SocketException || t instanceof SocketTimeoutException || t instanceof ConnectTimeoutException
+                    || t instanceof NoHttpResponseException || t instanceof UnknownHostException ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final String     name;
+    private final AtomicLong opened   = new AtomicLong(0L);
+    private final AtomicLong rejected = new AtomicLong(0L);
+
+    private final int       failureRate;
+    private final int       minRequests;
+    private final long      openTime;
+    private final boolean[] outcomes;
+    private final int       trials;
+
+    private int   count;
+    private int   failures;
+    private int   next;
+    private long  openedAt;
+    private State state = State.CLOSED;
+    private int   trialsInFlight;
+    private int   trialSuccesses;
+
+    CircuitBreaker(@Nonnull String name, @Nonnegative int window, @Nonnegative int minRequests, @Nonnegative int failureRate, @Nonnegative int openTime, @Nonnegative int trials) {
+        this.name = name;
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.minRequests = Math.max(1, Math.min(minRequests, outcomes.length));
+        this.failureRate = failureRate;
+        this.openTime = TimeUnit.MILLISECONDS.toNanos(openTime);
+        this.trials = Math.max(1, trials);
+    }
+
+    /**
+     * Lets a request through unless the breaker is open.
+     * @return true if the request is a trial made while the breaker is half open
+     * @throws CloudException the breaker is open
+     */
+    public boolean acquire() throws CloudException {
+        return acquire(System.nanoTime());
+    }
+
+    synchronized boolean acquire(long now) throws CloudException {
+        if( state == State.OPEN && now - openedAt >= openTime ) {
+            state = State.HALF_OPEN;
+            trialsInFlight = 0;
+            trialSuccesses = 0;
+            logger.info("Circuit breaker for " + name + " is half open");
+        }
+        if( state == State.CLOSED ) {
+            return false;
+        }
+        if( state == State.HALF_OPEN && trialsInFlight + trialSuccesses < trials ) {
+            trialsInFlight++;
+            return true;
+        }
+        rejected.incrementAndGet();
+        throw new CloudException(CloudErrorType.UNAVAILABLE, HttpStatus.SC_SERVICE_UNAVAILABLE, null, "Circuit breaker for " + name + " is open after repeated failures");
+    }
+
+    private void clear() {
+        count = 0;
+        failures = 0;
+        next = 0;
+    }
+
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * @return the percentage of failed requests among the recent requests counted
+     */
+    public synchronized double getFailureRate() {
+        return (count == 0 ? 0.0 : (failures * 100.0)/count);
+    }
+
+    public @Nonnull State getState() {
+        return getState(System.nanoTime());
+    }
+
+    synchronized @Nonnull State getState(long now) {
+        return ((state == State.OPEN && now - openedAt >= openTime) ? State.HALF_OPEN : state);
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        trialsInFlight = 0;
+        trialSuccesses = 0;
+        clear();
+        opened.incrementAndGet();
+        logger.warn("Circuit breaker for " + name + " is open for " + TimeUnit.NANOSECONDS.toMillis(openTime) + "ms");
+    }
+
+    /**
+     * Records the outcome of a request let through by {@link #acquire()}.
+     * @param trial the value returned by {@link #acquire()}
+     * @param failed true if the request failed in a way that means the endpoint is unhealthy
+     */
+    public void record(boolean trial, boolean failed) {
+        record(System.nanoTime(), trial, failed);
+    }
+
+    synchronized void record(long now, boolean trial, boolean failed) {
+        if( trial ) {
+            if( state != State.HALF_OPEN ) {
+                return;
+            }
+            trialsInFlight--;
+            if( failed ) {
+                open(now);
+            }
+            else if( ++trialSuccesses >= trials ) {
+                state = State.CLOSED;
+                clear();
+                logger.info("Circuit breaker for " + name + " is closed");
+            }
+            return;
+        }
+        if( state != State.CLOSED ) {
+            return;
+        }
+        if( count == outcomes.length ) {
+            if( outcomes[next] ) {
+                failures--;
+            }
+        }
+        else {
+            count++;
+        }
+        outcomes[next] = failed;
+        if( failed ) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+        if( count >= minRequests && failures * 100 >= failureRate * count ) {
+            open(now);
+        }
+    }
+
+    /**
+     * Gives back a trial that ended without an outcome, such as when the requesting thread was interrupted.
+     * @param trial the value returned by {@link #acquire()}
+     */
+    public synchronized void release(boolean trial) {
+        if( trial && state == State.HALF_OPEN ) {
+            trialsInFlight--;
+        }
+    }
+
+    /**
+     * Closes the breaker.
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        trialsInFlight = 0;
+        trialSuccesses = 0;
+        clear();
+    }
+
+    /**
+     * Opens the breaker.
+     */
+    public synchronized void trip() {
+        open(System.nanoTime());
+    }
+
+    /**
+     * Exposes the breakers over JMX.
+     */
+    static private final class Registry implements CircuitBreakerMBean {
+        @Override
+        public @Nonnull String[] getBreakers() {
+            List<String> names = new ArrayList<String>(breakers.keySet());
+
+            Collections.sort(names);
+            return names.toArray(new String[names.size()]);
+        }
+
+        @Override
+        public double getFailureRate(@Nonnull String breakerName) {
+            CircuitBreaker breaker = breakers.get(breakerName);
+
+            return (breaker == null ? 0.0 : breaker.getFailureRate());
+        }
+
+        @Override
+        public @Nonnegative long getOpenCount(@Nonnull String breakerName) {
+            CircuitBreaker breaker = breakers.get(breakerName);
+
+            return (breaker == null ? 0L : breaker.opened.get());
+        }
+
+        @Override
+        public @Nonnegative long getRejectedCount(@Nonnull String breakerName) {
+            CircuitBreaker breaker = breakers.get(breakerName);
+
+            return (breaker == null ? 0L : breaker.rejected.get());
+        }
+
+        @Override
+        public String getState(@Nonnull String breakerName) {
+            CircuitBreaker breaker = breakers.get(breakerName);
+
+            return (breaker == null ? null : breaker.getState().name());
+        }
+
+        @Override
+        public void reset(@Nonnull String breakerName) {
+            CircuitBreaker breaker = breakers.get(breakerName);
+
+            if( breaker != null ) {
+                breaker.reset();
+            }
+        }
+
+        @Override
+        public void trip(@Nonnull String breakerName) {
+            CircuitBreaker breaker = breakers.get(breakerName);
+
+            if( breaker != null ) {
+                breaker.trip();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * JMX view of the circuit breakers guarding the endpoints called through the requester framework. Breakers are named
+ * after the endpoint they guard and the region for which it is called.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface CircuitBreakerMBean {
+    /**
+     * @return the names of the active breakers
+     */
+    public @Nonnull String[] getBreakers();
+
+    /**
+     * @param breakerName the name of the breaker
+     * @return the percentage of failed requests among the recent requests counted by the breaker
+     */
+    public double getFailureRate(@Nonnull String breakerName);
+
+    /**
+     * @param breakerName the name of the breaker
+     * @return the number of times the breaker has opened
+     */
+    public @Nonnegative long getOpenCount(@Nonnull String breakerName);
+
+    /**
+     * @param breakerName the name of the breaker
+     * @return the number of requests failed fast because the breaker was open
+     */
+    public @Nonnegative long getRejectedCount(@Nonnull String breakerName);
+
+    /**
+     * @param breakerName the name of the breaker
+     * @return CLOSED, OPEN or HALF_OPEN, or null if there is no such breaker
+     */
+    public String getState(@Nonnull String breakerName);
+
+    /**
+     * Closes a breaker, letting requests through again at once.
+     * @param breakerName the name of the breaker
+     */
+    public void reset(@Nonnull String breakerName);
+
+    /**
+     * Opens a breaker, failing requests fast until it next lets a trial request through.
+     * @param breakerName the name of the breaker
+     */
+    public void trip(@Nonnull String breakerName);
+}
@@ -29,6 +29,7 @@ public class CloudResponseException extends ClientProtocolException {
     private CloudErrorType errorType;
     private int            httpCode;
     private String         providerCode;
+    private long           retryAfter = -1L;
 
     public CloudResponseException(CloudErrorType cloudErrorType, int httpCode, String providerCode, String message){
         super(message);
@@ -37,6 +38,15 @@ public class CloudResponseException extends ClientProtocolException {
         this.providerCode = providerCode;
     }
 
+    /**
+     * @param retryAfter milliseconds the server asked clients to wait before retrying, or -1 if it did not say
+     * @see RetryPolicy#getRetryAfter(org.apache.http.HttpResponse)
+     */
+    public CloudResponseException(CloudErrorType cloudErrorType, int httpCode, String providerCode, String message, long retryAfter){
+        this(cloudErrorType, httpCode, providerCode, message);
+        this.retryAfter = retryAfter;
+    }
+
     public CloudErrorType getErrorType() {
         return errorType;
     }
@@ -48,4 +58,11 @@ public class CloudResponseException extends ClientProtocolException {
     public String getProviderCode() {
         return providerCode;
     }
+
+    /**
+     * @return milliseconds the server asked clients to wait before retrying, or -1 if it did not say
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
 }
@@ -21,23 +21,55 @@ package org.dasein.cloud.util.requester;
 
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.util.TraceContext;
 import org.dasein.cloud.util.requester.fluent.ParallelRequester;
 
+import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Created by vmunthiu on 6/17/2015.
+ * Executes a batch of requests in parallel. All batches share a single bounded pool of {@value #DEFAULT_THREADS}
+ * daemon threads (configurable through the {@value #THREADS} system property). The number of requests in flight to any
+ * one endpoint starts at the {@value #MAX_IN_FLIGHT} custom property of the provider context, which defaults to
+ * {@link HttpClientPool#DEFAULT_MAX_PER_ROUTE}. Requests over that limit wait without holding a thread. The limit then
+ * adapts to the endpoint: it grows while requests complete quickly, up to {@value #MAX_IN_FLIGHT_CEILING} (by default
+ * the larger of the starting limit and {@value HttpClientPool#MAX_PER_ROUTE}), and shrinks when the endpoint throttles
+ * or slows down. Set {@value #ADAPTIVE} to false for a fixed limit.
  */
 public class DaseinParallelRequestExecutor<T> extends AbstractDaseinRequestExecutor<T> implements ParallelRequester<T> {
+    static private final Logger logger = Logger.getLogger(DaseinParallelRequestExecutor.class);
+
+    /**
+     * System property setting the number of threads shared by all requests run in the background
+     */
+    static public final String THREADS               = "dasein.requester.threads";
+    /**
+     * Custom property of the provider context setting the maximum number of requests in flight to one endpoint
+     */
+    static public final String MAX_IN_FLIGHT         = "httpMaxInFlight";
+    /**
+     * Custom property of the provider context setting the highest the limit on requests in flight may grow
+     */
+    static public final String MAX_IN_FLIGHT_CEILING = "httpMaxInFlightCeiling";
+    /**
+     * Custom property of the provider context turning the adaptive limit on requests in flight on or off
+     */
+    static public final String ADAPTIVE              = "httpAdaptiveInFlight";
+    static public final int    DEFAULT_THREADS       = 64;
+
     private ArrayList<HttpUriRequest> httpUriRequests;
 
     public DaseinParallelRequestExecutor(CloudProvider provider, HttpClientBuilder httpClientBuilder, ArrayList<HttpUriRequest> httpUriRequests, ResponseHandler<T> responseHandler){
@@ -45,36 +77,126 @@ public class DaseinParallelRequestExecutor<T> extends AbstractDaseinRequestExecu
         this.httpUriRequests = httpUriRequests;
     }
 
+    /**
+     * Executes every request and waits for all of them to complete.
+     * @return the handled responses, in the order of the requests
+     * @throws CloudException the error from the first request in the batch that failed
+     */
     public List<T> execute() throws CloudException {
-        final HttpClientBuilder clientBuilder = setProxyIfRequired(httpClientBuilder);
+        Object[] results = new Object[httpUriRequests.size()];
+        CloudException error = null;
+        int errorIndex = results.length;
 
-        final CloseableHttpClient httpClient = clientBuilder.build();
+        for( RequestResult<T> result : executeAsCompleted() ) {
+            if( result.isSuccessful() ) {
+                results[result.getIndex()] = result.getResult();
+            }
+            else if( result.getIndex() < errorIndex ) {
+                error = result.getError();
+                errorIndex = result.getIndex();
+            }
+        }
+        if( error != null ) {
+            throw error;
+        }
+        //noinspection unchecked
+        return (List<T>)Arrays.asList(results);
+    }
 
-        List<T> results = new ArrayList<T>();
-        List<Callable<T>> tasks = new ArrayList<Callable<T>>();
-        for (final HttpUriRequest httpUriRequest : httpUriRequests) {
-            tasks.add(new Callable<T>() {
+    /**
+     * Starts every request and returns their outcomes as they complete. Iterating blocks until the next request
+     * completes; a failed request is reported in its result without affecting the rest of the batch. The returned
+     * iterable may be iterated only once.
+     * @return the outcome of each request, in the order in which they complete
+     * @throws CloudException an error occurred setting up the requests
+     */
+    public Iterable<RequestResult<T>> executeAsCompleted() throws CloudException {
+        if( httpUriRequests.isEmpty() ) {
+            return Collections.emptyList();
+        }
+        final HttpClientPool.Lease lease = lease();
+        final BlockingQueue<RequestResult<T>> completed = new LinkedBlockingQueue<RequestResult<T>>();
+        final AtomicInteger remaining = new AtomicInteger(httpUriRequests.size());
+        TraceContext context = TraceContext.capture();
+
+        for( int i=0; i<httpUriRequests.size(); i++ ) {
+            final HttpUriRequest httpUriRequest = httpUriRequests.get(i);
+            final int index = i;
+            RequesterPool.submit(provider, httpUriRequest, context, new Runnable() {
                 @Override
-                public T call() throws Exception {
-                    return execute(httpClient, httpUriRequest);
+                public void run() {
+                    RequestResult<T> result;
+
+                    try {
+                        result = new RequestResult<T>(httpUriRequest, index, execute(lease.getClient(), httpUriRequest), null);
+                    }
+                    catch( CloudException e ) {
+                        result = new RequestResult<T>(httpUriRequest, index, null, e);
+                    }
+                    catch( Throwable t ) {
+                        result = new RequestResult<T>(httpUriRequest, index, null, new CloudException(t));
+                    }
+                    completed.add(result);
+                    if( remaining.decrementAndGet() == 0 ) {
+                        try {
+                            lease.close();
+                        }
+                        catch( IOException e ) {
+                            logger.warn("Unable to release HTTP client: " + e.getMessage());
+                        }
+                    }
                 }
             });
         }
+        return new CompletionIterable<T>(completed, httpUriRequests.size());
+    }
 
-        try{
-            try {
-                ExecutorService executorService = Executors.newFixedThreadPool(httpUriRequests.size());
-                List<Future<T>> futures = executorService.invokeAll(tasks);
-                for (Future<T> future : futures) {
-                    T result = future.get();
-                    results.add(result);
-                }
-                return results;
-            } finally {
-                httpClient.close();
+    static private final class CompletionIterable<T> implements Iterable<RequestResult<T>> {
+        private final BlockingQueue<RequestResult<T>> completed;
+        private final int                             count;
+        private boolean                               iterated;
+
+        CompletionIterable(@Nonnull BlockingQueue<RequestResult<T>> completed, int count) {
+            this.completed = completed;
+            this.count = count;
+        }
+
+        @Override
+        public synchronized @Nonnull Iterator<RequestResult<T>> iterator() {
+            if( iterated ) {
+                throw new IllegalStateException("The results of a parallel request may only be iterated once");
             }
-        } catch (Exception e) {
-            throw new CloudException(e.getMessage());
+            iterated = true;
+            return new Iterator<RequestResult<T>>() {
+                private int returned = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return (returned < count);
+                }
+
+                @Override
+                public RequestResult<T> next() {
+                    if( returned >= count ) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        RequestResult<T> result = completed.take();
+
+                        returned++;
+                        return result;
+                    }
+                    catch( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for parallel requests to complete");
+                    }
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
     }
 }
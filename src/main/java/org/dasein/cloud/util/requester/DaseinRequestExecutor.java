@@ -22,15 +22,21 @@ package org.dasein.cloud.util.requester;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.util.requester.fluent.AsyncRequester;
 import org.dasein.cloud.util.requester.fluent.Requester;
 
+import java.io.IOException;
+
 /**
  * @author Vlad Munthiu
  */
 
-public class DaseinRequestExecutor<T> extends AbstractDaseinRequestExecutor<T> implements Requester<T> {
+public class DaseinRequestExecutor<T> extends AbstractDaseinRequestExecutor<T> implements Requester<T>, AsyncRequester<T> {
+    static private final Logger logger = Logger.getLogger(DaseinRequestExecutor.class);
+
     private HttpUriRequest httpUriRequest;
 
     public DaseinRequestExecutor(CloudProvider provider, HttpClientBuilder httpClientBuilder, HttpUriRequest httpUriRequest, ResponseHandler<T> responseHandler){
@@ -41,4 +47,50 @@ public class DaseinRequestExecutor<T> extends AbstractDaseinRequestExecutor<T> i
     public T execute() throws CloudException {
         return execute(this.httpUriRequest);
     }
+
+    /**
+     * Runs the request on the threads shared by the requester framework, subject to the in-flight limit of its
+     * endpoint. Cancelling the returned future aborts the request.
+     * @return a future for the handled response
+     */
+    public RequestFuture<T> executeAsync() {
+        final RequestFuture<T> future = new RequestFuture<T>();
+
+        future.setCanceller(new Runnable() {
+            @Override
+            public void run() {
+                httpUriRequest.abort();
+            }
+        });
+        RequesterPool.submit(provider, httpUriRequest, new Runnable() {
+            @Override
+            public void run() {
+                if( future.isDone() ) {
+                    return; // cancelled while waiting for its endpoint
+                }
+                try {
+                    HttpClientPool.Lease lease = lease();
+
+                    try {
+                        future.complete(execute(lease.getClient(), httpUriRequest));
+                    }
+                    finally {
+                        try {
+                            lease.close();
+                        }
+                        catch( IOException e ) {
+                            logger.warn("Unable to release HTTP client: " + e.getMessage());
+                        }
+                    }
+                }
+                catch( CloudException e ) {
+                    future.fail(e);
+                }
+                catch( Throwable t ) {
+                    future.fail(new CloudException(t));
+                }
+            }
+        });
+        return future;
+    }
 }
@@ -24,7 +24,6 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.util.EntityUtils;
-import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.util.requester.streamprocessors.StreamProcessor;
 
 import java.io.IOException;
@@ -50,8 +49,9 @@ public class DaseinResponseHandlerWithMapper<T, V> implements ResponseHandler<V>
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_NO_CONTENT
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_ACCEPTED ) {
-            throw new CloudResponseException(CloudErrorType.GENERAL, httpResponse.getStatusLine().getStatusCode(),
-                    httpResponse.getStatusLine().getReasonPhrase(), EntityUtils.toString(httpResponse.getEntity()));
+            throw new CloudResponseException(RetryPolicy.getErrorType(httpResponse), httpResponse.getStatusLine().getStatusCode(),
+                    httpResponse.getStatusLine().getReasonPhrase(), EntityUtils.toString(httpResponse.getEntity()),
+                    RetryPolicy.getRetryAfter(httpResponse));
         }
         else {
             if(httpResponse.getEntity() == null)
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.util.TraceContext;
+import org.dasein.cloud.util.requester.fluent.AsyncRequester;
+import org.dasein.cloud.util.requester.fluent.Requester;
+import org.dasein.cloud.util.requester.streamprocessors.IterableStreamProcessor;
+import org.dasein.cloud.util.requester.streamprocessors.StreamProcessor;
+import org.dasein.util.Jiterator;
+import org.dasein.util.JiteratorPopulator;
+import org.dasein.util.PopulatorThread;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Executes a request for a list and returns its items as they are read from the response. The request runs in a
+ * populator thread that parses the response with an {@link IterableStreamProcessor} and hands each item to the
+ * returned iterable, so neither the raw response nor a parsed tree of it is ever held in memory. Errors reading the
+ * response are raised from the iterable.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class DaseinStreamingRequestExecutor<V> implements Requester<Iterable<V>>, AsyncRequester<Iterable<V>> {
+    private final HttpClientBuilder          httpClientBuilder;
+    private final HttpUriRequest             httpUriRequest;
+    private final IterableStreamProcessor<V> processor;
+    private final CloudProvider              provider;
+
+    public DaseinStreamingRequestExecutor(@Nonnull CloudProvider provider, @Nonnull HttpClientBuilder httpClientBuilder, @Nonnull HttpUriRequest httpUriRequest, @Nonnull IterableStreamProcessor<V> processor) {
+        this.provider = provider;
+        this.httpClientBuilder = httpClientBuilder;
+        this.httpUriRequest = httpUriRequest;
+        this.processor = processor;
+    }
+
+    @Override
+    public Iterable<V> execute() throws CloudException {
+        final TraceContext context = TraceContext.capture();
+        PopulatorThread<V> populator = new PopulatorThread<V>(new JiteratorPopulator<V>() {
+            @Override
+            public void populate(@Nonnull final Jiterator<V> iterator) throws Exception {
+                context.call(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        new DaseinRequestExecutor<Void>(provider, httpClientBuilder, httpUriRequest,
+                                new DaseinResponseHandler<Void>(new PushingStreamProcessor<V>(processor, iterator), Void.class)).execute();
+                        return null;
+                    }
+                });
+            }
+        });
+
+        populator.populate();
+        return populator.getResult();
+    }
+
+    /**
+     * Adapts an {@link IterableStreamProcessor} to the response handler by pushing each item it reads to the
+     * populator's iterator. It only ever reads a response, so it has nothing to write.
+     */
+    static private class PushingStreamProcessor<V> implements StreamProcessor<Void> {
+        private final IterableStreamProcessor<V> processor;
+        private final Jiterator<V>               iterator;
+
+        PushingStreamProcessor(@Nonnull IterableStreamProcessor<V> processor, @Nonnull Jiterator<V> iterator) {
+            this.processor = processor;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public @Nullable Void read(InputStream inputStream, Class<Void> classType) throws IOException {
+            for( V item : processor.read(inputStream) ) {
+                iterator.push(item);
+            }
+            return null;
+        }
+
+        @Override
+        public @Nullable String write(Void object) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts the request in a populator thread. The returned future completes at once with the iterable, which
+     * yields items as they arrive.
+     * @return a future for the items of the list
+     */
+    @Override
+    public RequestFuture<Iterable<V>> executeAsync() {
+        try {
+            return RequestFuture.completed(execute());
+        }
+        catch( CloudException e ) {
+            return RequestFuture.failed(e);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of requests in flight to a single endpoint. Tasks over the limit wait in a queue without holding a
+ * thread and are handed to the executor as earlier tasks for the endpoint complete. Requests made directly from other
+ * threads take a slot too, blocking while the endpoint is at its limit. Unless turned off, the limit adapts to the
+ * round trip times and throttling observed for the endpoint through an {@link AdaptiveLimit}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class EndpointLimiter {
+    static private final Logger logger = Logger.getLogger(EndpointLimiter.class);
+
+    static private final ConcurrentHashMap<String,EndpointLimiter> limiters = new ConcurrentHashMap<String, EndpointLimiter>();
+    static private final ThreadLocal<EndpointLimiter>              holding  = new ThreadLocal<EndpointLimiter>();
+
+    /**
+     * Identifies the endpoint to which a request is made by its scheme, host and port.
+     * @param request the request
+     * @return the endpoint of the request
+     */
+    static @Nonnull String getEndpoint(@Nonnull HttpUriRequest request) {
+        URI uri = request.getURI();
+
+        if( uri == null || uri.getHost() == null ) {
+            return "";
+        }
+        String scheme = (uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ENGLISH));
+        int port = uri.getPort();
+
+        if( port < 0 ) {
+            port = (scheme.equals("https") ? 443 : 80);
+        }
+        return scheme + "://" + uri.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+    }
+
+    /**
+     * Fetches the limiter for the endpoint of a request, creating it as configured for the provider if it does not yet
+     * exist.
+     * @param provider the provider making the request
+     * @param request the request
+     * @return the limiter for the endpoint of the request
+     * @see DaseinParallelRequestExecutor#MAX_IN_FLIGHT
+     */
+    static @Nonnull EndpointLimiter getInstance(@Nonnull CloudProvider provider, @Nonnull HttpUriRequest request) {
+        String endpoint = getEndpoint(request);
+        EndpointLimiter limiter = limiters.get(endpoint);
+
+        if( limiter != null ) {
+            return limiter;
+        }
+        Properties p = RequesterConfig.getProperties(provider);
+        int limit = RequesterConfig.getInt(p, DaseinParallelRequestExecutor.MAX_IN_FLIGHT, HttpClientPool.DEFAULT_MAX_PER_ROUTE);
+
+        if( !RequesterConfig.getBoolean(p, DaseinParallelRequestExecutor.ADAPTIVE, true) ) {
+            return getInstance(endpoint, limit);
+        }
+        int ceiling = Math.max(limit, RequesterConfig.getInt(p, HttpClientPool.MAX_PER_ROUTE, HttpClientPool.DEFAULT_MAX_PER_ROUTE));
+
+        return getInstance(endpoint, limit, RequesterConfig.getInt(p, DaseinParallelRequestExecutor.MAX_IN_FLIGHT_CEILING, ceiling), true);
+    }
+
+    /**
+     * Fetches the limiter for the specified endpoint, creating it with the specified fixed limit if it does not yet
+     * exist.
+     * @param endpoint the endpoint
+     * @param limit the limit for a new limiter
+     * @return the limiter for the endpoint
+     */
+    static @Nonnull EndpointLimiter getInstance(@Nonnull String endpoint, @Nonnegative int limit) {
+        return getInstance(endpoint, limit, limit, false);
+    }
+
+    /**
+     * Fetches the limiter for the specified endpoint, creating it if it does not yet exist.
+     * @param endpoint the endpoint
+     * @param limit the initial limit for a new limiter
+     * @param ceiling the highest an adaptive limit may grow
+     * @param adaptive true if the limit of a new limiter should adapt to the observed round trip times and throttling
+     * @return the limiter for the endpoint
+     */
+    static @Nonnull EndpointLimiter getInstance(@Nonnull String endpoint, @Nonnegative int limit, @Nonnegative int ceiling, boolean adaptive) {
+        EndpointLimiter limiter = limiters.get(endpoint);
+
+        if( limiter == null ) {
+            EndpointLimiter created = new EndpointLimiter(endpoint, limit, (adaptive ? new AdaptiveLimit(limit, ceiling) : null));
+
+            limiter = limiters.putIfAbsent(endpoint, created);
+            if( limiter == null ) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * A request made directly by a thread, waiting in the queue for a slot.
+     */
+    static private final class Admission implements Runnable {
+        private final AtomicBoolean  claimed  = new AtomicBoolean(false);
+        private final CountDownLatch admitted = new CountDownLatch(1);
+
+        boolean admit() {
+            if( claimed.compareAndSet(false, true) ) {
+                admitted.countDown();
+                return true;
+            }
+            return false;
+        }
+
+        boolean cancel() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            admit();
+        }
+    }
+
+    private final AdaptiveLimit        adaptive;
+    private final String               endpoint;
+    private volatile Executor          executor;
+    private int                        inFlight;
+    private int                        limit;
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<Runnable>();
+
+    private EndpointLimiter(@Nonnull String endpoint, @Nonnegative int limit, @Nullable AdaptiveLimit adaptive) {
+        this.endpoint = endpoint;
+        this.limit = Math.max(1, (adaptive == null ? limit : adaptive.getLimit()));
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Takes a slot for a request made directly by the current thread, waiting while the endpoint is at its limit.
+     * Threads already running a task for this endpoint reuse the slot of that task.
+     * @return true if a slot was taken and must be given back through {@link #release()}, false if the thread already
+     * holds one
+     * @throws InterruptedException the thread was interrupted while waiting
+     */
+    public boolean acquire() throws InterruptedException {
+        if( holding.get() == this ) {
+            return false;
+        }
+        Admission admission;
+
+        synchronized( this ) {
+            if( inFlight < limit ) {
+                inFlight++;
+                return true;
+            }
+            admission = new Admission();
+            waiting.add(admission);
+        }
+        try {
+            admission.admitted.await();
+            return true;
+        }
+        catch( InterruptedException e ) {
+            if( admission.cancel() ) {
+                synchronized( this ) {
+                    waiting.remove(admission);
+                }
+            }
+            else {
+                release();
+            }
+            throw e;
+        }
+    }
+
+    private void dispatch(@Nonnull final Executor executor, @Nonnull final Runnable task) {
+        Runnable wrapped = new Runnable() {
+            @Override
+            public void run() {
+                holding.set(EndpointLimiter.this);
+                try {
+                    task.run();
+                }
+                finally {
+                    holding.remove();
+                    next(executor);
+                }
+            }
+        };
+
+        try {
+            executor.execute(wrapped);
+        }
+        catch( RejectedExecutionException e ) {
+            next(executor);
+            throw e;
+        }
+    }
+
+    public @Nonnull String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized @Nonnegative int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized @Nonnegative int getLimit() {
+        return limit;
+    }
+
+    public synchronized @Nonnegative int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return true if the limit adapts to the observed round trip times and throttling
+     */
+    public boolean isAdaptive() {
+        return (adaptive != null);
+    }
+
+    private void next(@Nullable Executor executor) {
+        Runnable task;
+
+        synchronized( this ) {
+            task = (inFlight <= limit ? waiting.poll() : null);
+            if( task == null ) {
+                inFlight--;
+            }
+        }
+        if( task != null ) {
+            start(executor, task);
+        }
+    }
+
+    /**
+     * Records the outcome of a request to the endpoint, adapting the limit if it is adaptive.
+     * @param rtt the time the request took in nanoseconds
+     * @param dropped true if the endpoint throttled the request or it timed out
+     */
+    public void record(@Nonnegative long rtt, boolean dropped) {
+        if( adaptive == null ) {
+            return;
+        }
+        int current = getLimit();
+        int updated = adaptive.onSample(System.nanoTime(), rtt, getInFlight(), dropped);
+
+        if( updated != current ) {
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Limit for " + endpoint + " is now " + updated + " requests in flight");
+            }
+            setLimit(updated, executor);
+        }
+    }
+
+    /**
+     * Gives back a slot taken through {@link #acquire()}.
+     */
+    public void release() {
+        next(executor);
+    }
+
+    /**
+     * Changes the limit. Raising it starts waiting tasks at once; lowering it lets tasks in flight finish.
+     * @param limit the new limit
+     * @param executor the executor on which to start waiting tasks
+     */
+    public void setLimit(@Nonnegative int limit, @Nullable Executor executor) {
+        ArrayDeque<Runnable> ready = new ArrayDeque<Runnable>();
+
+        synchronized( this ) {
+            this.limit = Math.max(1, limit);
+            while( inFlight < this.limit && !waiting.isEmpty() ) {
+                inFlight++;
+                ready.add(waiting.poll());
+            }
+        }
+        for( Runnable task : ready ) {
+            start(executor, task);
+        }
+    }
+
+    private void start(@Nullable Executor executor, @Nonnull Runnable task) {
+        if( task instanceof Admission ) {
+            if( !((Admission)task).admit() ) {
+                next(executor); // the waiting thread gave up, so pass the slot on
+            }
+        }
+        else {
+            dispatch(executor == null ? this.executor : executor, task);
+        }
+    }
+
+    /**
+     * Runs the task on the executor as soon as the endpoint is under its limit.
+     * @param executor the executor to run the task
+     * @param task the task to run
+     */
+    public void submit(@Nonnull Executor executor, @Nonnull Runnable task) {
+        this.executor = executor;
+        synchronized( this ) {
+            if( inFlight >= limit ) {
+                waiting.add(task);
+                return;
+            }
+            inFlight++;
+        }
+        dispatch(executor, task);
+    }
+}
@@ -0,0 +1,460 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares long-lived, pooled HTTP clients between the requests made by the requester framework so that API calls reuse
+ * open connections instead of paying for a new TCP and TLS handshake each time. Pooling is off unless a driver or
+ * client turns it on with {@value #POOLING}; otherwise every request builds its own client from its own builder.
+ * <p>
+ * When pooling is on, one client backed by a {@link PoolingHttpClientConnectionManager} is kept per provider,
+ * endpoint, account, credentials and proxy. It is built from the {@link HttpClientBuilder} of the first request made
+ * for that combination, so the interceptors, default headers and request configuration of that builder apply to every
+ * later request and their builders are ignored. The pooled client manages its own connections: any connection manager,
+ * keep-alive strategy, SSL context or SSL socket factory set on the builder is replaced. The pool clears the
+ * connection manager and keep-alive strategy from the builder once the pooled client is built, so clients built later
+ * from the same builder get their own connections. Drivers should turn pooling on only when they build
+ * every client the same way and rely on the default TLS setup. A background thread closes connections left idle
+ * longer than the idle timeout and discards clients that have not been used for {@link #CLIENT_TIMEOUT} milliseconds.
+ * </p>
+ * <p>
+ * Pools are configured through the following custom properties of the provider context, falling back to system
+ * properties of the same name. The limits of a pool are fixed when it is created.
+ * </p>
+ * <ul>
+ *     <li>{@value #POOLING} - set to true to share pooled clients between requests (default false)</li>
+ *     <li>{@value #MAX_TOTAL} - the maximum number of open connections (default {@value #DEFAULT_MAX_TOTAL})</li>
+ *     <li>{@value #MAX_PER_ROUTE} - the maximum number of open connections to a single host (default {@value #DEFAULT_MAX_PER_ROUTE})</li>
+ *     <li>{@value #IDLE_TIMEOUT} - seconds after which an idle connection is closed (default {@value #DEFAULT_IDLE_TIMEOUT})</li>
+ *     <li>{@value #KEEP_ALIVE} - seconds to keep a connection open when the server does not say (default {@value #DEFAULT_KEEP_ALIVE})</li>
+ * </ul>
+ * <p>
+ * Pool statistics are available over JMX as {@link #OBJECT_NAME}.
+ * </p>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class HttpClientPool implements HttpClientPoolMBean {
+    static private final Logger logger = Logger.getLogger(HttpClientPool.class);
+
+    /**
+     * The JMX object name under which pool statistics are registered
+     */
+    static public final String OBJECT_NAME = "org.dasein:type=HttpClientPool";
+
+    static public final String POOLING       = "httpPooling";
+    static public final String MAX_TOTAL     = "httpPoolMaxTotal";
+    static public final String MAX_PER_ROUTE = "httpPoolMaxPerRoute";
+    static public final String IDLE_TIMEOUT  = "httpPoolIdleTimeout";
+    static public final String KEEP_ALIVE    = "httpKeepAlive";
+
+    static public final int DEFAULT_MAX_TOTAL     = 100;
+    static public final int DEFAULT_MAX_PER_ROUTE = 20;
+    static public final int DEFAULT_IDLE_TIMEOUT  = 30;
+    static public final int DEFAULT_KEEP_ALIVE    = 30;
+
+    /**
+     * Milliseconds after which a client that has not been used is closed and discarded
+     */
+    static public final long CLIENT_TIMEOUT = 600000L;
+
+    static private final long    REAPER_INTERVAL = 5000L;
+    static private final Charset UTF8            = Charset.forName("UTF-8");
+
+    static private final ConcurrentHashMap<String,Pool> pools = new ConcurrentHashMap<String, Pool>();
+    static private final HttpClientPool instance = new HttpClientPool();
+
+    static private ScheduledExecutorService reaper;
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if( !server.isRegistered(name) ) {
+                server.registerMBean(new StandardMBean(instance, HttpClientPoolMBean.class), name);
+            }
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up HTTP client pool MBean: " + t.getMessage());
+        }
+    }
+
+    /**
+     * A client borrowed for the duration of a request. Closing the lease returns a pooled client to its pool, or closes
+     * a client built for the request alone.
+     */
+    static public final class Lease {
+        private final CloseableHttpClient client;
+        private final Pool                pool;
+
+        private Lease(@Nonnull CloseableHttpClient client, @Nullable Pool pool) {
+            this.client = client;
+            this.pool = pool;
+        }
+
+        public @Nonnull CloseableHttpClient getClient() {
+            return client;
+        }
+
+        /**
+         * @return true if the client is shared with other requests
+         */
+        public boolean isPooled() {
+            return (pool != null);
+        }
+
+        public void close() throws IOException {
+            if( pool == null ) {
+                client.close();
+            }
+            else {
+                pool.release();
+            }
+        }
+    }
+
+    static private final class Pool {
+        public final String                              name;
+        public final PoolingHttpClientConnectionManager manager;
+        public final CloseableHttpClient                 client;
+        public final int                                 idleTimeout;
+        public int                                       inUse;
+        public long                                      lastUsed;
+        public boolean                                   closed;
+
+        Pool(@Nonnull String name, @Nonnull PoolingHttpClientConnectionManager manager, @Nonnull CloseableHttpClient client, int idleTimeout) {
+            this.name = name;
+            this.manager = manager;
+            this.client = client;
+            this.idleTimeout = idleTimeout;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized boolean acquire() {
+            if( closed ) {
+                return false;
+            }
+            inUse++;
+            lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void release() {
+            inUse--;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        void reap(long now) {
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+            synchronized( this ) {
+                if( inUse > 0 || now - lastUsed < CLIENT_TIMEOUT ) {
+                    return;
+                }
+                closed = true;
+            }
+            pools.remove(name, this);
+            shutdown();
+        }
+
+        void shutdown() {
+            try {
+                client.close();
+            }
+            catch( IOException e ) {
+                logger.warn("Unable to close HTTP client pool " + name + ": " + e.getMessage());
+            }
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * Borrows a client for a request made on behalf of the specified provider. The builder should already be
+     * configured with any proxy. When pooling is on it is used only if a new pooled client must be built, and then
+     * only for its settings other than the connection manager and SSL setup.
+     * @param provider the provider making the request
+     * @param proxy the proxy through which the request is made, if any
+     * @param builder the builder for the client making the request
+     * @return a lease on the client to use, which must be closed once the response has been handled
+     */
+    static public @Nonnull Lease lease(@Nonnull CloudProvider provider, @Nullable HttpHost proxy, @Nonnull HttpClientBuilder builder) {
+        Properties p = RequesterConfig.getProperties(provider);
+
+        if( !RequesterConfig.getBoolean(p, POOLING, false) ) {
+            return new Lease(builder.build(), null);
+        }
+        String name = getName(provider, proxy);
+
+        while( true ) {
+            Pool pool = pools.get(name);
+
+            if( pool == null ) {
+                Pool created = create(name, p, builder);
+
+                pool = pools.putIfAbsent(name, created);
+                if( pool == null ) {
+                    pool = created;
+                    if( logger.isInfoEnabled() ) {
+                        logger.info("Pooling HTTP connections for " + name + " with a client built from the builder of the current request");
+                    }
+                    startReaper();
+                }
+                else {
+                    created.shutdown();
+                }
+            }
+            if( pool.acquire() ) {
+                return new Lease(pool.client, pool);
+            }
+            // the pool was discarded between the lookup and the acquire
+        }
+    }
+
+    static private @Nonnull Pool create(@Nonnull String name, @Nullable Properties p, @Nonnull HttpClientBuilder builder) {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        final long keepAlive = TimeUnit.SECONDS.toMillis(RequesterConfig.getInt(p, KEEP_ALIVE, DEFAULT_KEEP_ALIVE));
+
+        manager.setMaxTotal(RequesterConfig.getInt(p, MAX_TOTAL, DEFAULT_MAX_TOTAL));
+        manager.setDefaultMaxPerRoute(RequesterConfig.getInt(p, MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE));
+        builder.setConnectionManager(manager);
+        builder.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+
+                return (duration > 0L ? duration : keepAlive);
+            }
+        });
+        try {
+            return new Pool(name, manager, builder.build(), RequesterConfig.getInt(p, IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT));
+        }
+        finally {
+            // clients built later from the same builder must not share, and on close shut down, the pooled connections
+            builder.setConnectionManager(null);
+            builder.setKeepAliveStrategy(null);
+        }
+    }
+
+    // a digest of the credentials of the context, so that contexts with different credentials do not share a client
+    static private @Nonnull String getCredentialsId(@Nonnull CloudProvider provider, @Nonnull ProviderContext ctx) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+            for( ContextRequirements.Field field : provider.getContextRequirements().getConfigurableValues() ) {
+                if( field.type == ContextRequirements.FieldType.KEYPAIR || field.type == ContextRequirements.FieldType.PASSWORD || field.type == ContextRequirements.FieldType.TOKEN ) {
+                    Object value = ctx.getConfigurationValue(field);
+
+                    digest.update(field.name.getBytes(UTF8));
+                    if( value instanceof byte[][] ) {
+                        for( byte[] part : (byte[][])value ) {
+                            digest.update((byte)0);
+                            if( part != null ) {
+                                digest.update(part);
+                            }
+                        }
+                    }
+                    else if( value instanceof byte[] ) {
+                        digest.update((byte)0);
+                        digest.update((byte[])value);
+                    }
+                    else if( value != null ) {
+                        digest.update((byte)0);
+                        digest.update(value.toString().getBytes(UTF8));
+                    }
+                    digest.update((byte)1);
+                }
+            }
+            StringBuilder id = new StringBuilder();
+            byte[] hash = digest.digest();
+
+            for( int i=0; i<8; i++ ) {
+                id.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return id.toString();
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new RuntimeException("Every JVM is required to support SHA-1", e);
+        }
+    }
+
+    static private @Nonnull String getName(@Nonnull CloudProvider provider, @Nullable HttpHost proxy) {
+        ProviderContext ctx = provider.getContext();
+        StringBuilder name = new StringBuilder();
+
+        name.append(provider.getProviderName()).append('/').append(provider.getCloudName());
+        if( ctx != null ) {
+            name.append('/').append(ctx.getCloud().getEndpoint()).append('/').append(ctx.getAccountNumber());
+            name.append(" as ").append(getCredentialsId(provider, ctx));
+        }
+        if( proxy != null ) {
+            name.append(" via ").append(proxy.getHostName()).append(':').append(proxy.getPort());
+        }
+        return name.toString();
+    }
+
+    static private synchronized void startReaper() {
+        if( reaper != null ) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "dasein-http-pool-reaper");
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reap(System.currentTimeMillis());
+                }
+                catch( Throwable t ) {
+                    logger.error("Error reaping HTTP connections: " + t.getMessage(), t);
+                }
+            }
+        }, REAPER_INTERVAL, REAPER_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    static void reap(long now) {
+        for( Pool pool : pools.values() ) {
+            pool.reap(now);
+        }
+    }
+
+    /**
+     * Closes every pooled client. Requests in progress on a pooled client may fail.
+     */
+    static public void shutdownAll() {
+        for( Map.Entry<String,Pool> entry : pools.entrySet() ) {
+            Pool pool = entry.getValue();
+
+            synchronized( pool ) {
+                pool.closed = true;
+            }
+            pools.remove(entry.getKey(), pool);
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return the JMX view of the pools
+     */
+    static public @Nonnull HttpClientPoolMBean getInstance() {
+        return instance;
+    }
+
+    private HttpClientPool() { }
+
+    private @Nullable PoolStats getStats(@Nonnull String poolName) {
+        Pool pool = pools.get(poolName);
+
+        return (pool == null ? null : pool.manager.getTotalStats());
+    }
+
+    @Override
+    public @Nonnegative int getAvailableConnections(@Nonnull String poolName) {
+        PoolStats stats = getStats(poolName);
+
+        return (stats == null ? 0 : stats.getAvailable());
+    }
+
+    @Override
+    public @Nonnegative int getLeasedConnections(@Nonnull String poolName) {
+        PoolStats stats = getStats(poolName);
+
+        return (stats == null ? 0 : stats.getLeased());
+    }
+
+    @Override
+    public @Nonnegative int getMaxConnections(@Nonnull String poolName) {
+        PoolStats stats = getStats(poolName);
+
+        return (stats == null ? 0 : stats.getMax());
+    }
+
+    @Override
+    public @Nonnegative int getMaxConnectionsPerRoute(@Nonnull String poolName) {
+        Pool pool = pools.get(poolName);
+
+        return (pool == null ? 0 : pool.manager.getDefaultMaxPerRoute());
+    }
+
+    @Override
+    public @Nonnegative int getPendingConnections(@Nonnull String poolName) {
+        PoolStats stats = getStats(poolName);
+
+        return (stats == null ? 0 : stats.getPending());
+    }
+
+    @Override
+    public @Nonnull String[] getPools() {
+        List<String> names = new ArrayList<String>(pools.keySet());
+
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public void closeIdleConnections() {
+        for( Pool pool : pools.values() ) {
+            pool.manager.closeIdleConnections(0L, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * JMX view of the connection pools behind the HTTP clients shared by the requester framework. Pools are named after
+ * the provider, cloud, endpoint, account and proxy they serve.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface HttpClientPoolMBean {
+    /**
+     * Closes every connection currently idle in any pool.
+     */
+    public void closeIdleConnections();
+
+    /**
+     * @param poolName the name of the pool
+     * @return the number of open connections waiting to be reused
+     */
+    public @Nonnegative int getAvailableConnections(@Nonnull String poolName);
+
+    /**
+     * @param poolName the name of the pool
+     * @return the number of connections currently carrying a request
+     */
+    public @Nonnegative int getLeasedConnections(@Nonnull String poolName);
+
+    /**
+     * @param poolName the name of the pool
+     * @return the maximum number of open connections in the pool
+     */
+    public @Nonnegative int getMaxConnections(@Nonnull String poolName);
+
+    /**
+     * @param poolName the name of the pool
+     * @return the maximum number of open connections to any one host
+     */
+    public @Nonnegative int getMaxConnectionsPerRoute(@Nonnull String poolName);
+
+    /**
+     * @param poolName the name of the pool
+     * @return the number of requests waiting for a connection
+     */
+    public @Nonnegative int getPendingConnections(@Nonnull String poolName);
+
+    /**
+     * @return the names of the active pools
+     */
+    public @Nonnull String[] getPools();
+}
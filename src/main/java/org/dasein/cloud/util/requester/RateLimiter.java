@@ -0,0 +1,400 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.util.APITrace;
+import org.dasein.cloud.util.LatencyHistogram;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spaces out the requests made through the requester framework so that they stay within the rate limits clouds place
+ * on each account and API. Requests draw permits from token buckets named after the provider, cloud and account
+ * they are made for, in the same way as {@link APITrace} keys its counters. Each request takes a permit from the
+ * account's bucket and, when one is configured for it, from the bucket of the API call being made, waiting until
+ * the permits are available. The API call is the one most recently passed to
+ * {@link APITrace#trace(CloudProvider, String)} by the thread making the request, or by the thread that handed the
+ * request to it through a {@link org.dasein.cloud.util.TraceContext}. Pending API calls are not tracked while API
+ * tracing is off, so only the account's limit applies then.
+ * <p>
+ * Limits are configured through the following custom properties of the provider context, falling back to system
+ * properties of the same name. No limits apply by default.
+ * </p>
+ * <ul>
+ *     <li>{@value #RATE} - requests per second allowed for the account across every API call</li>
+ *     <li>{@value #RATE}.<i>prefix</i> - requests per second allowed for API calls whose name starts with
+ *     <i>prefix</i>, such as <code>{@value #RATE}.Describe=20</code>; calls matching the same prefix share a bucket
+ *     and the longest matching prefix applies; the prefixes are read once for each provider context</li>
+ *     <li>{@value #BURST} - seconds' worth of requests that may be made at once after a quiet period (default 1)</li>
+ *     <li>{@value #MAX_WAIT} - the longest a request waits for a permit, in milliseconds; requests that would wait
+ *     longer fail with a {@link CloudErrorType#THROTTLING} error (default {@value #DEFAULT_MAX_WAIT})</li>
+ * </ul>
+ * <p>
+ * Waits are available over JMX as {@link #OBJECT_NAME}.
+ * </p>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class RateLimiter implements RateLimiterMBean {
+    static private final Logger logger = Logger.getLogger(RateLimiter.class);
+
+    /**
+     * The JMX object name under which rate limiter statistics are registered
+     */
+    static public final String OBJECT_NAME = "org.dasein:type=RateLimiter";
+
+    static public final String RATE     = "httpRateLimit";
+    static public final String BURST    = "httpRateBurst";
+    static public final String MAX_WAIT = "httpRateMaxWait";
+
+    static public final int DEFAULT_MAX_WAIT = 60000;
+
+    static private final String ACCOUNT = "*";
+    static private final String PREFIX  = RATE + ".";
+
+    static private final String[] NO_PREFIXES = new String[0];
+
+    static private final ConcurrentHashMap<String,Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    // the API prefixes with a configured rate, longest first, for each provider context that has made a request
+    static private final Map<ProviderContext,String[]>    prefixes = Collections.synchronizedMap(new WeakHashMap<ProviderContext, String[]>());
+    static private final RateLimiter instance = new RateLimiter();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if( !server.isRegistered(name) ) {
+                server.registerMBean(new StandardMBean(instance, RateLimiterMBean.class), name);
+            }
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up rate limiter MBean: " + t.getMessage());
+        }
+    }
+
+    /**
+     * A token bucket. Permits accrue continuously at the configured rate up to the capacity of the bucket. Reserving a
+     * permit may leave the bucket in debt, in which case the reservation waits until its permit would have accrued;
+     * later reservations queue up behind it.
+     */
+    static final class Bucket {
+        final AtomicLong       rejected = new AtomicLong(0L);
+        final AtomicLong       requests = new AtomicLong(0L);
+        final AtomicLong       waits    = new AtomicLong(0L);
+        final LatencyHistogram waiting  = new LatencyHistogram();
+
+        private double capacity;
+        private double permits;
+        private double rate;
+        private long   updated;
+
+        Bucket(double rate, double capacity, long now) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.permits = capacity;
+            this.updated = now;
+        }
+
+        synchronized void configure(double rate, double capacity, long now) {
+            if( rate != this.rate || capacity != this.capacity ) {
+                refill(now);
+                this.rate = rate;
+                this.capacity = capacity;
+                permits = Math.min(permits, capacity);
+            }
+        }
+
+        synchronized double getAvailable(long now) {
+            refill(now);
+            return Math.max(0.0, permits);
+        }
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        private void refill(long now) {
+            if( now > updated ) {
+                permits = Math.min(capacity, permits + ((now - updated) * rate)/TimeUnit.SECONDS.toNanos(1L));
+                updated = now;
+            }
+        }
+
+        /**
+         * Takes a permit from the bucket.
+         * @param now the current time in nanoseconds
+         * @param maxWait the longest acceptable wait in nanoseconds
+         * @return the nanoseconds to wait before the permit may be used, or -1 if no permit was taken because the
+         * wait would be longer than the maximum
+         */
+        synchronized long reserve(long now, long maxWait) {
+            refill(now);
+
+            double deficit = 1.0 - permits;
+            long wait = (deficit <= 0.0 ? 0L : (long)Math.ceil((deficit * TimeUnit.SECONDS.toNanos(1L))/rate));
+
+            if( wait > maxWait ) {
+                rejected.incrementAndGet();
+                return -1L;
+            }
+            permits -= 1.0;
+            return wait;
+        }
+    }
+
+    /**
+     * Waits until the specified provider may make another request for the specified API call.
+     * @param provider the provider about to make a request
+     * @param apiCall the API call about to be made, or null if it is not known
+     * @throws CloudException the request would have to wait longer than the configured maximum
+     * @see APITrace#getPendingApiCall()
+     */
+    static public void acquire(@Nonnull CloudProvider provider, @Nullable String apiCall) throws CloudException {
+        Properties p = RequesterConfig.getProperties(provider);
+        String family = (apiCall == null ? null : getFamily(getPrefixes(provider.getContext()), apiCall));
+        double rate = RequesterConfig.getDouble(p, RATE, 0.0);
+
+        if( family == null && rate <= 0.0 ) {
+            return;
+        }
+        String account = provider.getProviderName() + "/" + provider.getCloudName() + "/" + APITrace.getAccountNumber(provider.getContext());
+        double burst = RequesterConfig.getDouble(p, BURST, 1.0);
+        long maxWait = TimeUnit.MILLISECONDS.toNanos(RequesterConfig.getInt(p, MAX_WAIT, DEFAULT_MAX_WAIT));
+        long now = System.nanoTime();
+        long wait = 0L;
+
+        if( family != null ) {
+            wait = reserve(account + "/" + family, RequesterConfig.getDouble(p, PREFIX + family, 0.0), burst, now, maxWait);
+        }
+        if( rate > 0.0 ) {
+            wait = Math.max(wait, reserve(account + "/" + ACCOUNT, rate, burst, now, maxWait));
+        }
+        if( wait > 0L ) {
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Waiting " + TimeUnit.NANOSECONDS.toMillis(wait) + "ms to call " + (apiCall == null ? "the cloud" : apiCall) + " for " + account);
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new CloudException("Interrupted while waiting to call " + (apiCall == null ? "the cloud" : apiCall), e);
+            }
+        }
+    }
+
+    static private long reserve(@Nonnull String name, double rate, double burst, long now, long maxWait) throws CloudException {
+        Bucket bucket = getBucket(name, rate, burst, now);
+        long wait = bucket.reserve(now, maxWait);
+
+        if( wait < 0L ) {
+            throw new CloudException(CloudErrorType.THROTTLING, RetryPolicy.SC_TOO_MANY_REQUESTS, null, "Rate limit for " + name + " exceeded by more than " + TimeUnit.NANOSECONDS.toMillis(maxWait) + "ms");
+        }
+        bucket.requests.incrementAndGet();
+        if( wait > 0L ) {
+            bucket.waits.incrementAndGet();
+        }
+        bucket.waiting.record(wait);
+        return wait;
+    }
+
+    static @Nonnull Bucket getBucket(@Nonnull String name, double rate, double burst, long now) {
+        double capacity = Math.max(1.0, rate * burst);
+        Bucket bucket = buckets.get(name);
+
+        if( bucket == null ) {
+            Bucket created = new Bucket(rate, capacity, now);
+
+            bucket = buckets.putIfAbsent(name, created);
+            if( bucket == null ) {
+                return created;
+            }
+        }
+        bucket.configure(rate, capacity, now);
+        return bucket;
+    }
+
+    static private @Nonnull String[] getPrefixes(@Nullable ProviderContext ctx) {
+        if( ctx == null ) {
+            return getPrefixes((Properties)null);
+        }
+        String[] list = prefixes.get(ctx);
+
+        if( list == null ) {
+            list = getPrefixes(ctx.getCustomProperties());
+            prefixes.put(ctx, list);
+        }
+        return list;
+    }
+
+    /**
+     * Lists the API prefixes with a configured rate.
+     * @param p the custom properties of the provider context
+     * @return the prefixes, longest first
+     */
+    static @Nonnull String[] getPrefixes(@Nullable Properties p) {
+        List<String> list = new ArrayList<String>();
+
+        for( Properties source : new Properties[] { p, System.getProperties() } ) {
+            if( source == null ) {
+                continue;
+            }
+            for( String name : source.stringPropertyNames() ) {
+                if( name.startsWith(PREFIX) ) {
+                    String prefix = name.substring(PREFIX.length());
+
+                    if( !list.contains(prefix) && RequesterConfig.getDouble(p, name, 0.0) > 0.0 ) {
+                        list.add(prefix);
+                    }
+                }
+            }
+        }
+        if( list.isEmpty() ) {
+            return NO_PREFIXES;
+        }
+        Collections.sort(list, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return (b.length() - a.length());
+            }
+        });
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Finds the longest API prefix with a configured rate that matches the specified API call.
+     * @param prefixes the prefixes with a configured rate, longest first
+     * @param apiCall the API call
+     * @return the matching prefix, or null if no rate is configured for the call
+     */
+    static @Nullable String getFamily(@Nonnull String[] prefixes, @Nonnull String apiCall) {
+        for( String prefix : prefixes ) {
+            if( apiCall.startsWith(prefix) ) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the rate limiter statistics, as also registered with JMX
+     */
+    static public @Nonnull RateLimiterMBean getInstance() {
+        return instance;
+    }
+
+    private RateLimiter() { }
+
+    @Override
+    public @Nonnull String[] getBuckets() {
+        List<String> names = new ArrayList<String>(buckets.keySet());
+
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public double getAvailablePermits(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0.0 : bucket.getAvailable(System.nanoTime()));
+    }
+
+    @Override
+    public double getMaxWaitInMillis(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0.0 : bucket.waiting.getMax()/1000000.0);
+    }
+
+    @Override
+    public double getMeanWaitInMillis(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0.0 : bucket.waiting.getMean()/1000000.0);
+    }
+
+    @Override
+    public double getP99WaitInMillis(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0.0 : bucket.waiting.getPercentile(99.0)/1000000.0);
+    }
+
+    @Override
+    public double getRate(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0.0 : bucket.getRate());
+    }
+
+    @Override
+    public @Nonnegative long getRejectedCount(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0L : bucket.rejected.get());
+    }
+
+    @Override
+    public @Nonnegative long getRequestCount(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0L : bucket.requests.get());
+    }
+
+    @Override
+    public @Nonnegative long getWaitCount(@Nonnull String bucketName) {
+        Bucket bucket = buckets.get(bucketName);
+
+        return (bucket == null ? 0L : bucket.waits.get());
+    }
+
+    @Override
+    public void resetStatistics() {
+        for( Bucket bucket : buckets.values() ) {
+            bucket.rejected.set(0L);
+            bucket.requests.set(0L);
+            bucket.waits.set(0L);
+            bucket.waiting.reset();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * JMX view of the token buckets through which the requester framework rate limits API calls. Buckets are named after
+ * the provider, cloud and account they serve, followed by the API calls they cover or <code>*</code> for every call
+ * made for the account.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface RateLimiterMBean {
+    /**
+     * @return the names of the active buckets
+     */
+    public @Nonnull String[] getBuckets();
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the number of requests that may currently be made without waiting
+     */
+    public double getAvailablePermits(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the largest time a request has waited for the bucket, in milliseconds
+     */
+    public double getMaxWaitInMillis(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the mean time requests waited for the bucket, in milliseconds
+     */
+    public double getMeanWaitInMillis(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the 99th percentile of the time requests waited for the bucket, in milliseconds
+     */
+    public double getP99WaitInMillis(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the number of requests per second the bucket allows
+     */
+    public double getRate(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the number of requests that passed through the bucket
+     */
+    public @Nonnegative long getRequestCount(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the number of requests turned away because the wait would have been too long
+     */
+    public @Nonnegative long getRejectedCount(@Nonnull String bucketName);
+
+    /**
+     * @param bucketName the name of the bucket
+     * @return the number of requests that had to wait for the bucket
+     */
+    public @Nonnegative long getWaitCount(@Nonnull String bucketName);
+
+    /**
+     * Clears the wait statistics of every bucket.
+     */
+    public void resetStatistics();
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pending result of an asynchronous request. Besides the usual {@link Future} operations, a request future accepts
+ * callbacks and can be composed with other work without blocking:
+ * <pre>
+ *     RequestFuture&lt;List&lt;VirtualMachine&gt;&gt; vms = requester.executeAsync()
+ *             .map(new DriverToCoreMapper&lt;ServerList, List&lt;VirtualMachine&gt;&gt;() { ... });
+ * </pre>
+ * Callbacks, mappers and continuations run on the thread that completes the future, or on the calling thread if the
+ * future is already complete, so they should not block.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class RequestFuture<T> implements Future<T> {
+    static private final Logger logger = Logger.getLogger(RequestFuture.class);
+
+    /**
+     * Receives the outcome of a request future.
+     */
+    public interface Callback<T> {
+        void onFailure(@Nonnull CloudException error);
+        void onSuccess(@Nullable T result);
+    }
+
+    /**
+     * Starts further asynchronous work from the result of a request future.
+     */
+    public interface Continuation<T, V> {
+        @Nonnull RequestFuture<V> apply(@Nullable T result) throws CloudException;
+    }
+
+    /**
+     * Combines several futures into one that completes with all of their results, in the order of the futures, once
+     * every one of them has succeeded. It fails as soon as any of them fails.
+     * @param futures the futures to combine
+     * @param <T> the type of the results
+     * @return a future for the list of results
+     */
+    static public @Nonnull <T> RequestFuture<List<T>> allOf(@Nonnull List<RequestFuture<T>> futures) {
+        final RequestFuture<List<T>> all = new RequestFuture<List<T>>();
+        final Object[] results = new Object[futures.size()];
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+
+        if( futures.isEmpty() ) {
+            all.complete(new ArrayList<T>());
+            return all;
+        }
+        for( int i=0; i<futures.size(); i++ ) {
+            final int index = i;
+
+            futures.get(i).addCallback(new Callback<T>() {
+                @Override
+                public void onFailure(@Nonnull CloudException error) {
+                    all.fail(error);
+                }
+
+                @Override
+                public void onSuccess(@Nullable T result) {
+                    results[index] = result;
+                    if( remaining.decrementAndGet() == 0 ) {
+                        //noinspection unchecked
+                        all.complete((List<T>)Arrays.asList(results));
+                    }
+                }
+            });
+        }
+        return all;
+    }
+
+    static public @Nonnull <T> RequestFuture<T> completed(@Nullable T result) {
+        RequestFuture<T> future = new RequestFuture<T>();
+
+        future.complete(result);
+        return future;
+    }
+
+    static public @Nonnull <T> RequestFuture<T> failed(@Nonnull CloudException error) {
+        RequestFuture<T> future = new RequestFuture<T>();
+
+        future.fail(error);
+        return future;
+    }
+
+    private final CountDownLatch done      = new CountDownLatch(1);
+    private List<Callback<T>>    callbacks = new ArrayList<Callback<T>>();
+    private volatile Runnable    canceller;
+    private boolean              cancelled;
+    private boolean              completed;
+    private CloudException       error;
+    private T                    result;
+
+    /**
+     * Registers a callback to receive the outcome of this future. If the future is already complete, the callback is
+     * called at once.
+     * @param callback the callback to register
+     * @return this future
+     */
+    public @Nonnull RequestFuture<T> addCallback(@Nonnull Callback<T> callback) {
+        synchronized( this ) {
+            if( !completed ) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if( !finish(null, new CloudException("The request was cancelled"), true) ) {
+            return false;
+        }
+        Runnable r = canceller;
+
+        if( r != null ) {
+            r.run();
+        }
+        return true;
+    }
+
+    /**
+     * Completes this future with the specified result.
+     * @param result the result
+     * @return false if the future was already complete
+     */
+    public boolean complete(@Nullable T result) {
+        return finish(result, null, false);
+    }
+
+    /**
+     * Completes this future with the specified error.
+     * @param error the error
+     * @return false if the future was already complete
+     */
+    public boolean fail(@Nonnull CloudException error) {
+        return finish(null, error, false);
+    }
+
+    private boolean finish(@Nullable T result, @Nullable CloudException error, boolean cancel) {
+        List<Callback<T>> pending;
+
+        synchronized( this ) {
+            if( completed ) {
+                return false;
+            }
+            this.completed = true;
+            this.cancelled = cancel;
+            this.result = result;
+            this.error = error;
+            pending = callbacks;
+            callbacks = null;
+        }
+        done.countDown();
+        for( Callback<T> callback : pending ) {
+            notify(callback);
+        }
+        return true;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if( !done.await(timeout, unit) ) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    /**
+     * Waits for this future to complete.
+     * @return the result of the request
+     * @throws CloudException the error from the request, or an error indicating that it was cancelled or that the
+     * wait was interrupted
+     */
+    public @Nullable T getResult() throws CloudException {
+        try {
+            done.await();
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new CloudException("Interrupted while waiting for the request", e);
+        }
+        synchronized( this ) {
+            if( error != null ) {
+                throw error;
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return completed;
+    }
+
+    /**
+     * Transforms the result of this future once it succeeds. Errors thrown by the mapper fail the returned future.
+     * @param mapper the transformation to apply
+     * @param <V> the type of the transformed result
+     * @return a future for the transformed result
+     */
+    public @Nonnull <V> RequestFuture<V> map(@Nonnull final DriverToCoreMapper<T, V> mapper) {
+        final RequestFuture<V> next = new RequestFuture<V>();
+
+        addCallback(new Callback<T>() {
+            @Override
+            public void onFailure(@Nonnull CloudException error) {
+                next.fail(error);
+            }
+
+            @Override
+            public void onSuccess(@Nullable T result) {
+                try {
+                    next.complete(mapper.mapFrom(result));
+                }
+                catch( Throwable t ) {
+                    next.fail(new CloudException(t));
+                }
+            }
+        });
+        return next;
+    }
+
+    private void notify(@Nonnull Callback<T> callback) {
+        CloudException e;
+        T r;
+
+        synchronized( this ) {
+            e = error;
+            r = result;
+        }
+        try {
+            if( e == null ) {
+                callback.onSuccess(r);
+            }
+            else {
+                callback.onFailure(e);
+            }
+        }
+        catch( Throwable t ) {
+            logger.error("Request callback failed: " + t.getMessage(), t);
+        }
+    }
+
+    private synchronized T report() throws ExecutionException {
+        if( cancelled ) {
+            throw new CancellationException();
+        }
+        if( error != null ) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    void setCanceller(@Nullable Runnable canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * Starts further asynchronous work once this future succeeds, such as a request that depends on its result.
+     * @param continuation the work to start
+     * @param <V> the type of the result of the further work
+     * @return a future for the result of the further work
+     */
+    public @Nonnull <V> RequestFuture<V> then(@Nonnull final Continuation<T, V> continuation) {
+        final RequestFuture<V> next = new RequestFuture<V>();
+
+        addCallback(new Callback<T>() {
+            @Override
+            public void onFailure(@Nonnull CloudException error) {
+                next.fail(error);
+            }
+
+            @Override
+            public void onSuccess(@Nullable T result) {
+                try {
+                    continuation.apply(result).addCallback(new Callback<V>() {
+                        @Override
+                        public void onFailure(@Nonnull CloudException error) {
+                            next.fail(error);
+                        }
+
+                        @Override
+                        public void onSuccess(@Nullable V value) {
+                            next.complete(value);
+                        }
+                    });
+                }
+                catch( CloudException e ) {
+                    next.fail(e);
+                }
+                catch( Throwable t ) {
+                    next.fail(new CloudException(t));
+                }
+            }
+        });
+        return next;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.dasein.cloud.CloudException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of one request in a parallel batch: either the handled response or the error that prevented it.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class RequestResult<T> {
+    private final CloudException error;
+    private final int            index;
+    private final HttpUriRequest request;
+    private final T              result;
+
+    RequestResult(@Nonnull HttpUriRequest request, @Nonnegative int index, @Nullable T result, @Nullable CloudException error) {
+        this.request = request;
+        this.index = index;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return the handled response
+     * @throws CloudException the error that prevented the request from completing
+     */
+    public @Nullable T get() throws CloudException {
+        if( error != null ) {
+            throw error;
+        }
+        return result;
+    }
+
+    /**
+     * @return the error that prevented the request from completing, or null if it succeeded
+     */
+    public @Nullable CloudException getError() {
+        return error;
+    }
+
+    /**
+     * @return the position of the request in the batch
+     */
+    public @Nonnegative int getIndex() {
+        return index;
+    }
+
+    public @Nonnull HttpUriRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return the handled response, or null if the request failed
+     */
+    public @Nullable T getResult() {
+        return result;
+    }
+
+    public boolean isSuccessful() {
+        return (error == null);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (request.getMethod() + " " + request.getURI() + (error == null ? " succeeded" : " failed: " + error.getMessage()));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Properties;
+
+/**
+ * Reads the settings of the requester framework from the custom properties of a provider context, falling back to
+ * system properties of the same name.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class RequesterConfig {
+    static private final Logger logger = Logger.getLogger(RequesterConfig.class);
+
+    static @Nullable Properties getProperties(@Nullable CloudProvider provider) {
+        ProviderContext ctx = (provider == null ? null : provider.getContext());
+
+        return (ctx == null ? null : ctx.getCustomProperties());
+    }
+
+    static boolean getBoolean(@Nullable Properties p, @Nonnull String property, boolean defaultValue) {
+        String value = getProperty(p, property, null);
+
+        return (value == null ? defaultValue : Boolean.parseBoolean(value.trim()));
+    }
+
+    static double getDouble(@Nullable Properties p, @Nonnull String property, double defaultValue) {
+        String value = getProperty(p, property, null);
+
+        if( value != null ) {
+            try {
+                double d = Double.parseDouble(value.trim());
+
+                if( d > 0.0 && !Double.isInfinite(d) ) {
+                    return d;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+            logger.warn("Ignoring invalid value for " + property + ": " + value);
+        }
+        return defaultValue;
+    }
+
+    static int getInt(@Nullable Properties p, @Nonnull String property, int defaultValue) {
+        String value = getProperty(p, property, null);
+
+        if( value != null ) {
+            try {
+                int i = Integer.parseInt(value.trim());
+
+                if( i > 0 ) {
+                    return i;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+            logger.warn("Ignoring invalid value for " + property + ": " + value);
+        }
+        return defaultValue;
+    }
+
+    static @Nullable String getProperty(@Nullable Properties p, @Nonnull String property, @Nullable String defaultValue) {
+        String value = (p == null ? null : p.getProperty(property));
+
+        if( value == null || value.isEmpty() ) {
+            value = System.getProperty(property);
+        }
+        return ((value == null || value.isEmpty()) ? defaultValue : value);
+    }
+
+    private RequesterConfig() { }
+}
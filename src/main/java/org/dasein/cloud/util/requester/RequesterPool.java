@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.util.TraceContext;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded pool of daemon threads shared by every request that the requester framework runs in the background.
+ * Requests are admitted through the {@link EndpointLimiter} of their endpoint and run within the trace context of the
+ * thread that submitted them.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class RequesterPool {
+    static private final ThreadPoolExecutor pool;
+
+    static {
+        int threads = RequesterConfig.getInt(null, DaseinParallelRequestExecutor.THREADS, DaseinParallelRequestExecutor.DEFAULT_THREADS);
+
+        pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "dasein-requester-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs a task that makes the specified request once the endpoint of the request is under its in-flight limit.
+     * @param provider the provider making the request
+     * @param request the request the task makes
+     * @param task the task to run
+     */
+    static void submit(@Nonnull CloudProvider provider, @Nonnull HttpUriRequest request, @Nonnull Runnable task) {
+        submit(provider, request, TraceContext.capture(), task);
+    }
+
+    static void submit(@Nonnull CloudProvider provider, @Nonnull HttpUriRequest request, @Nonnull TraceContext context, @Nonnull Runnable task) {
+        EndpointLimiter.getInstance(provider, request).submit(pool, context.wrap(task));
+    }
+
+    private RequesterPool() { }
+}
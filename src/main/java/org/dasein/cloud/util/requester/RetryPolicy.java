@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudProvider;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether and when a failed request made through the requester framework is retried. The following failures
+ * are retried:
+ * <ul>
+ *     <li>429 (too many requests) and 503 (service unavailable) responses, which mean the request was not processed</li>
+ *     <li>failures to connect, since the request was never sent</li>
+ *     <li>other 5xx responses, dropped connections and connection resets, for idempotent requests only</li>
+ * </ul>
+ * Requests whose body cannot be sent twice are never retried. Retries back off exponentially with full jitter: the
+ * wait before retry <i>n</i> is a random time up to {@link #BASE_DELAY} &times; 2<sup><i>n</i>-1</sup>, capped at
+ * {@link #MAX_DELAY}. When a 429 or 503 response carries a <code>Retry-After</code> header, the wait is the time the
+ * server asked for instead; if that is longer than the maximum delay, the request fails at once.
+ * <p>
+ * So that retries cannot multiply the load on a cloud that is already throttling, retries are also drawn from a budget
+ * shared by every request made for the same provider and cloud. Each request adds {@link #BUDGET} percent of a retry
+ * to the budget and each retry takes a whole one. The budget starts full and holds at most {@link #BUDGET_RESERVE}
+ * retries. Once it is empty, failures are returned without retrying until enough new requests have been made.
+ * </p>
+ * <p>
+ * The policy is configured through the following custom properties of the provider context, falling back to system
+ * properties of the same name.
+ * </p>
+ * <ul>
+ *     <li>{@value #RETRIES} - the maximum number of retries of a single request, 0 to turn retries off (default {@value #DEFAULT_RETRIES})</li>
+ *     <li>{@value #BASE_DELAY} - milliseconds of the initial backoff (default {@value #DEFAULT_BASE_DELAY})</li>
+ *     <li>{@value #MAX_DELAY} - the longest wait in milliseconds before a retry (default {@value #DEFAULT_MAX_DELAY})</li>
+ *     <li>{@value #BUDGET} - the percentage of requests that may be retried (default {@value #DEFAULT_BUDGET})</li>
+ *     <li>{@value #BUDGET_RESERVE} - the number of retries the budget can hold (default {@value #DEFAULT_BUDGET_RESERVE})</li>
+ * </ul>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class RetryPolicy {
+    static private final Logger logger = Logger.getLogger(RetryPolicy.class);
+
+    static public final String RETRIES        = "httpRetries";
+    static public final String BASE_DELAY     = "httpRetryBaseDelay";
+    static public final String MAX_DELAY      = "httpRetryMaxDelay";
+    static public final String BUDGET         = "httpRetryBudget";
+    static public final String BUDGET_RESERVE = "httpRetryBudgetReserve";
+
+    static public final int DEFAULT_RETRIES        = 3;
+    static public final int DEFAULT_BASE_DELAY     = 200;
+    static public final int DEFAULT_MAX_DELAY      = 20000;
+    static public final int DEFAULT_BUDGET         = 10;
+    static public final int DEFAULT_BUDGET_RESERVE = 10;
+
+    /**
+     * Too many requests; not defined by the HTTP components version in use
+     */
+    static public final int SC_TOO_MANY_REQUESTS = 429;
+
+    static private final ConcurrentHashMap<String,Budget> budgets = new ConcurrentHashMap<String, Budget>();
+
+    /**
+     * Retries available to the requests made for one provider and cloud, counted in thousandths of a retry.
+     */
+    static final class Budget {
+        private final AtomicLong balance;
+        private final long       capacity;
+        private final long       deposit;
+
+        Budget(@Nonnegative int percent, @Nonnegative int reserve) {
+            this.capacity = reserve * 1000L;
+            this.deposit = percent * 10L;
+            this.balance = new AtomicLong(capacity);
+        }
+
+        void deposit() {
+            long current = balance.get();
+
+            while( current < capacity && !balance.compareAndSet(current, Math.min(capacity, current + deposit)) ) {
+                current = balance.get();
+            }
+        }
+
+        double getBalance() {
+            return balance.get()/1000.0;
+        }
+
+        boolean withdraw() {
+            long current = balance.get();
+
+            while( current >= 1000L ) {
+                if( balance.compareAndSet(current, current - 1000L) ) {
+                    return true;
+                }
+                current = balance.get();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Builds the retry policy configured for the specified provider.
+     * @param provider the provider making requests
+     * @return the retry policy for the provider's requests
+     */
+    static public @Nonnull RetryPolicy getInstance(@Nonnull CloudProvider provider) {
+        Properties p = RequesterConfig.getProperties(provider);
+        String retries = RequesterConfig.getProperty(p, RETRIES, null);
+        int max = ((retries != null && retries.trim().equals("0")) ? 0 : RequesterConfig.getInt(p, RETRIES, DEFAULT_RETRIES));
+        int percent = RequesterConfig.getInt(p, BUDGET, DEFAULT_BUDGET);
+        int reserve = RequesterConfig.getInt(p, BUDGET_RESERVE, DEFAULT_BUDGET_RESERVE);
+
+        return new RetryPolicy(getBudget(provider.getProviderName() + "/" + provider.getCloudName(), percent, reserve), max,
+                RequesterConfig.getInt(p, BASE_DELAY, DEFAULT_BASE_DELAY), RequesterConfig.getInt(p, MAX_DELAY, DEFAULT_MAX_DELAY));
+    }
+
+    static @Nonnull Budget getBudget(@Nonnull String name, @Nonnegative int percent, @Nonnegative int reserve) {
+        Budget budget = budgets.get(name);
+
+        if( budget == null ) {
+            Budget created = new Budget(percent, reserve);
+
+            budget = budgets.putIfAbsent(name, created);
+            if( budget == null ) {
+                budget = created;
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * Maps the status of a failed response to the type of error it represents.
+     * @param response the failed response
+     * @return {@link CloudErrorType#THROTTLING} for a 429 response, otherwise {@link CloudErrorType#GENERAL}
+     */
+    static public @Nonnull CloudErrorType getErrorType(@Nonnull HttpResponse response) {
+        return (response.getStatusLine().getStatusCode() == SC_TOO_MANY_REQUESTS ? CloudErrorType.THROTTLING : CloudErrorType.GENERAL);
+    }
+
+    /**
+     * Reads the <code>Retry-After</code> header of a response, which holds either a number of seconds or an HTTP date.
+     * @param response the response
+     * @return the number of milliseconds the server asked clients to wait, or -1 if the header is missing or invalid
+     */
+    static public long getRetryAfter(@Nonnull HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        String value = (header == null ? null : header.getValue());
+
+        if( value == null || value.trim().isEmpty() ) {
+            return -1L;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0L, Long.parseLong(value) * 1000L);
+        }
+        catch( NumberFormatException ignore ) {
+            // not a number of seconds, so it should be a date
+        }
+        Date date = DateUtils.parseDate(value);
+
+        return (date == null ? -1L : Math.max(0L, date.getTime() - System.currentTimeMillis()));
+    }
+
+    static boolean isIdempotent(@Nonnull HttpUriRequest request) {
+        String method = request.getMethod();
+
+        if( method == null ) {
+            return false;
+        }
+        method = method.toUpperCase(Locale.ENGLISH);
+        return (method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS") || method.equals("PUT") || method.equals("DELETE") || method.equals("TRACE"));
+    }
+
+    static boolean isRepeatable(@Nonnull HttpUriRequest request) {
+        if( request instanceof HttpEntityEnclosingRequest ) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+
+            return (entity == null || entity.isRepeatable());
+        }
+        return true;
+    }
+
+    private final Budget budget;
+    private final int    baseDelay;
+    private final int    maxDelay;
+    private final int    maxRetries;
+
+    RetryPolicy(@Nonnull Budget budget, @Nonnegative int maxRetries, @Nonnegative int baseDelay, @Nonnegative int maxDelay) {
+        this.budget = budget;
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Computes the wait before the next attempt of a failed request. A retry is counted against the budget when this
+     * method returns a wait, so it must only be called once per failure.
+     * @param request the request that failed
+     * @param failure the reason it failed
+     * @param retries the number of times the request has already been retried
+     * @return the number of milliseconds to wait before retrying, or -1 if the request should not be retried
+     */
+    public long getDelay(@Nonnull HttpUriRequest request, @Nonnull Throwable failure, @Nonnegative int retries) {
+        if( retries >= maxRetries || !isRetryable(request, failure) ) {
+            return -1L;
+        }
+        long delay = getBackoff(retries);
+
+        if( failure instanceof CloudResponseException ) {
+            long retryAfter = ((CloudResponseException)failure).getRetryAfter();
+
+            if( retryAfter > maxDelay ) {
+                if( logger.isDebugEnabled() ) {
+                    logger.debug("Not retrying " + request.getMethod() + " " + request.getURI() + " because the server asked for a wait of " + retryAfter + "ms");
+                }
+                return -1L;
+            }
+            if( retryAfter >= 0L ) {
+                delay = retryAfter;
+            }
+        }
+        if( !budget.withdraw() ) {
+            logger.warn("Retry budget exhausted, not retrying " + request.getMethod() + " " + request.getURI() + ": " + failure.getMessage());
+            return -1L;
+        }
+        return delay;
+    }
+
+    long getBackoff(@Nonnegative int retries) {
+        long ceiling = Math.min((long)maxDelay, ((long)baseDelay) << Math.min(retries, 30));
+
+        return (ceiling < 1L ? 0L : ThreadLocalRandom.current().nextLong(ceiling + 1L));
+    }
+
+    /**
+     * @return the maximum number of times a single request will be retried
+     */
+    public @Nonnegative int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Tells whether a request that failed in the specified way may safely be sent again.
+     * @param request the request that failed
+     * @param failure the reason it failed
+     * @return true if the failure is transient and retrying the request cannot repeat its effects
+     */
+    public boolean isRetryable(@Nonnull HttpUriRequest request, @Nullable Throwable failure) {
+        if( failure == null || !isRepeatable(request) ) {
+            return false;
+        }
+        if( failure instanceof CloudResponseException ) {
+            int code = ((CloudResponseException)failure).getHttpCode();
+
+            if( code == SC_TOO_MANY_REQUESTS || code == HttpStatus.SC_SERVICE_UNAVAILABLE ) {
+                return true;
+            }
+            return (code >= 500 && code != HttpStatus.SC_NOT_IMPLEMENTED && code != HttpStatus.SC_HTTP_VERSION_NOT_SUPPORTED && isIdempotent(request));
+        }
+        for( Throwable t = failure; t != null; t = (t.getCause() == t ? null : t.getCause()) ) {
+            if( t instanceof ConnectException || t instanceof ConnectTimeoutException ) {
+                return true;
+            }
+            if( t instanceof NoHttpResponseException ) {
+                return isIdempotent(request);
+            }
+            if( t instanceof SocketException ) {
+                String message = t.getMessage();
+
+                return (message != null && message.toLowerCase(Locale.ENGLISH).contains("reset") && isIdempotent(request));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a new request against the retry budget. Called once for each request, not for each attempt.
+     */
+    public void recordRequest() {
+        budget.deposit();
+    }
+}
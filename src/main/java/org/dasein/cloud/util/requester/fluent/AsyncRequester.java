@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester.fluent;
+
+import org.dasein.cloud.util.requester.RequestFuture;
+
+/**
+ * A request that can run without blocking the calling thread. The requesters built by {@link DaseinRequest} implement
+ * this interface alongside {@link Requester}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface AsyncRequester<T> {
+    /**
+     * Starts the request in the background.
+     * @return a future for the handled response
+     */
+    RequestFuture<T> executeAsync();
+}
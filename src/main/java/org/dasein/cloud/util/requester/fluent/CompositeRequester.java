@@ -33,6 +33,8 @@ public interface CompositeRequester extends Requester<String> {
     <T, V> Requester<V> withXmlProcessor(DriverToCoreMapper<T, V> mapper, Class<T> classType);
     <T> Requester<T> withJsonProcessor(Class<T> classType);
     <T, V> Requester<V> withJsonProcessor(DriverToCoreMapper<T, V> mapper, Class<T> classType);
+    <T, V> Requester<Iterable<V>> withXmlStreamProcessor(String elementPath, DriverToCoreMapper<T, V> mapper, Class<T> classType);
+    <T, V> Requester<Iterable<V>> withJsonStreamProcessor(String fieldPath, DriverToCoreMapper<T, V> mapper, Class<T> classType);
     <T> DaseinRequestExecutor<Document> withDocumentProcessor();
     <T> DaseinRequestExecutor<JSONObject> withJSONObjectProcessor();
     String execute() throws CloudException;
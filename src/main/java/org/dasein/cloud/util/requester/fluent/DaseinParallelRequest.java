@@ -220,4 +220,21 @@ public class DaseinParallelRequest implements CompositeParallelRequester {
         return new DaseinParallelRequestExecutor<String>(this.provider, this.httpClientBuilder, this.httpUriRequests,
                 new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).execute();
     }
+
+    /**
+     * Executes HTTP requests using a string processor for the response, returning each outcome as it completes.
+     *
+     * <pre>
+     *     for( RequestResult&lt;String&gt; result : new DaseinParallelRequest(cloudProvider, httpClientBuilder, httpUriRequests).executeAsCompleted() ) {
+     *         //...handle result.getResult() or result.getError()...
+     *     }
+     * </pre>
+     *
+     * @return the outcome of each request, in the order in which they complete
+     **/
+    @Override
+    public Iterable<RequestResult<String>> executeAsCompleted() throws CloudException {
+        return new DaseinParallelRequestExecutor<String>(this.provider, this.httpClientBuilder, this.httpUriRequests,
+                new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).executeAsCompleted();
+    }
 }
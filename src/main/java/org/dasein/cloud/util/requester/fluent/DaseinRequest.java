@@ -43,7 +43,7 @@ import javax.annotation.Nonnull;
  * @author Vlad Munthiu
 * */
 
-public class DaseinRequest implements CompositeRequester {
+public class DaseinRequest implements CompositeRequester, AsyncRequester<String> {
 
     private CloudProvider provider;
     private HttpClientBuilder httpClientBuilder;
@@ -83,7 +83,7 @@ public class DaseinRequest implements CompositeRequester {
      * @return an instance of the classType type representing the response XML
     **/
     @Override
-    public <T> Requester<T> withXmlProcessor(@Nonnull Class<T> classType) {
+    public <T> DaseinRequestExecutor<T> withXmlProcessor(@Nonnull Class<T> classType) {
         if(classType == null)
             throw new IllegalArgumentException("Parameter classType cannot be null");
 
@@ -112,7 +112,7 @@ public class DaseinRequest implements CompositeRequester {
      * @return an instance of the V type which should be a Dasien Core type.
      **/
     @Override
-    public <T, V> Requester<V> withXmlProcessor(@Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
+    public <T, V> DaseinRequestExecutor<V> withXmlProcessor(@Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
         if(mapper == null)
             throw new IllegalArgumentException("Parameter mapper cannot be null");
 
@@ -135,7 +135,7 @@ public class DaseinRequest implements CompositeRequester {
      * @return an instance of the classType type representing the response JSON
      **/
     @Override
-    public <T> Requester<T> withJsonProcessor(@Nonnull Class<T> classType) {
+    public <T> DaseinRequestExecutor<T> withJsonProcessor(@Nonnull Class<T> classType) {
         if(classType == null)
             throw new IllegalArgumentException("Parameter classType cannot be null");
 
@@ -164,7 +164,7 @@ public class DaseinRequest implements CompositeRequester {
      * @return an instance of the V type which should be a Dasien Core type.
      **/
     @Override
-    public <T, V> Requester<V> withJsonProcessor(@Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
+    public <T, V> DaseinRequestExecutor<V> withJsonProcessor(@Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
         if(mapper == null)
             throw new IllegalArgumentException("Parameter mapper cannot be null");
 
@@ -175,6 +175,66 @@ public class DaseinRequest implements CompositeRequester {
                 new DaseinResponseHandlerWithMapper<T, V>(new JsonStreamToObjectProcessor(), mapper, classType));
     }
 
+    /**
+     * Constructs a requester that streams the items of an XML list response. Each element found at the specified path
+     * is unmarshalled into the specified type T and mapped to a Dasein Core model ( V ) as it is read, so the response
+     * is never held in memory as a whole. Mapped items that are null are skipped.
+     *
+     * <pre>
+     *     Iterable&lt;VirtualMachine&gt; result = new DaseinRequest(cloudProvider, httpClientBuilder, httpUriRequestBuilder)
+     *                  .withXmlStreamProcessor("DescribeInstancesResponse/instancesSet/item", mapper, DaseinDriverType.class).execute();
+     * </pre>
+     *
+     * @param elementPath the slash separated local names of the elements from the document root to a list item
+     * @param mapper an implementation of {@link org.dasein.cloud.util.requester.DriverToCoreMapper} interface
+     * @param classType the type of the list items in the response
+     * @return an iterable of the V type which yields items as they are read from the response
+     **/
+    @Override
+    public <T, V> DaseinStreamingRequestExecutor<V> withXmlStreamProcessor(@Nonnull String elementPath, @Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
+        if(elementPath == null)
+            throw new IllegalArgumentException("Parameter elementPath cannot be null");
+
+        if(mapper == null)
+            throw new IllegalArgumentException("Parameter mapper cannot be null");
+
+        if(classType == null)
+            throw new IllegalArgumentException("Parameter classType cannot be null");
+
+        return new DaseinStreamingRequestExecutor<V>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
+                new XmlStreamToIterableProcessor<T, V>(elementPath, mapper, classType));
+    }
+
+    /**
+     * Constructs a requester that streams the items of a JSON list response. Each element of the array found at the
+     * specified field path is deserialized into the specified type T and mapped to a Dasein Core model ( V ) as it is
+     * read, so the response is never held in memory as a whole. Mapped items that are null are skipped.
+     *
+     * <pre>
+     *     Iterable&lt;VirtualMachine&gt; result = new DaseinRequest(cloudProvider, httpClientBuilder, httpUriRequestBuilder)
+     *                  .withJsonStreamProcessor("servers", mapper, DaseinDriverType.class).execute();
+     * </pre>
+     *
+     * @param fieldPath the slash separated field names from the document root to the array, empty for a top level array
+     * @param mapper an implementation of {@link org.dasein.cloud.util.requester.DriverToCoreMapper} interface
+     * @param classType the type of the array elements in the response
+     * @return an iterable of the V type which yields items as they are read from the response
+     **/
+    @Override
+    public <T, V> DaseinStreamingRequestExecutor<V> withJsonStreamProcessor(@Nonnull String fieldPath, @Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
+        if(fieldPath == null)
+            throw new IllegalArgumentException("Parameter fieldPath cannot be null");
+
+        if(mapper == null)
+            throw new IllegalArgumentException("Parameter mapper cannot be null");
+
+        if(classType == null)
+            throw new IllegalArgumentException("Parameter classType cannot be null");
+
+        return new DaseinStreamingRequestExecutor<V>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
+                new JsonStreamToIterableProcessor<T, V>(fieldPath, mapper, classType));
+    }
+
     /**
      * Constructs a instance of a DaseinRequestExecutor with a stream processor that, once the HTTP request has been
      * finished, will try to parse the response stream into a valid XML Document object.
@@ -217,4 +277,19 @@ public class DaseinRequest implements CompositeRequester {
         return new DaseinRequestExecutor<String>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
                 new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).execute();
     }
+
+    /**
+     * Starts a HTTP request in the background using a string processor for the response.
+     *
+     * <pre>
+     *     RequestFuture&lt;String&gt; result = new DaseinRequest(cloudProvider, httpClientBuilder, httpUriRequestBuilder).executeAsync();
+     * </pre>
+     *
+     * @return a future for the string representing the response of the HTTP call.
+    **/
+    @Override
+    public RequestFuture<String> executeAsync() {
+        return new DaseinRequestExecutor<String>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
+                new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).executeAsync();
+    }
 }
@@ -20,6 +20,7 @@
 package org.dasein.cloud.util.requester.fluent;
 
 import org.dasein.cloud.CloudException;
+import org.dasein.cloud.util.requester.RequestResult;
 
 import java.util.List;
 
@@ -28,4 +29,5 @@ import java.util.List;
  */
 public interface ParallelRequester<T> {
     List<T> execute() throws CloudException;
+    Iterable<RequestResult<T>> executeAsCompleted() throws CloudException;
 }
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import javax.annotation.Nonnull;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the expensive-to-build codecs used by the stream processors. JAXB contexts, Jackson readers and writers are
+ * thread-safe and shared by every thread, one per model type, as is the StAX factory. DOM parsers and XML transformers are not, so each thread
+ * keeps its own and resets it between uses.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public final class CodecRegistry {
+    static private final ObjectMapper                             mapper       = new ObjectMapper();
+    static private final ConcurrentHashMap<Class<?>,JAXBContext>  contexts     = new ConcurrentHashMap<Class<?>, JAXBContext>();
+    static private final ConcurrentHashMap<Class<?>,ObjectReader> readers      = new ConcurrentHashMap<Class<?>, ObjectReader>();
+    static private final ConcurrentHashMap<Class<?>,ObjectWriter> writers      = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+    static private final DocumentBuilderFactory                   builders     = DocumentBuilderFactory.newInstance();
+    static private final TransformerFactory                       transformers = TransformerFactory.newInstance();
+    static private final XMLInputFactory                          inputs       = XMLInputFactory.newInstance();
+
+    static {
+        inputs.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputs.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    static private final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>();
+    static private final ThreadLocal<Transformer>     transformer     = new ThreadLocal<Transformer>();
+
+    /**
+     * Discards every cached codec. Mostly useful when model classes are being reloaded.
+     */
+    static public void clear() {
+        contexts.clear();
+        readers.clear();
+        writers.clear();
+    }
+
+    /**
+     * @return a DOM parser for the current thread, reset and ready to use
+     * @throws ParserConfigurationException the platform has no usable DOM parser
+     */
+    static public @Nonnull DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = documentBuilder.get();
+
+        if( builder == null ) {
+            synchronized( builders ) {
+                builder = builders.newDocumentBuilder();
+            }
+            documentBuilder.set(builder);
+        }
+        else {
+            builder.reset();
+        }
+        return builder;
+    }
+
+    /**
+     * @param type the model type
+     * @return the JAXB context for the specified type
+     * @throws JAXBException the type cannot be bound
+     */
+    static public @Nonnull JAXBContext getJAXBContext(@Nonnull Class<?> type) throws JAXBException {
+        JAXBContext context = contexts.get(type);
+
+        if( context == null ) {
+            JAXBContext created = JAXBContext.newInstance(type);
+
+            context = contexts.putIfAbsent(type, created);
+            if( context == null ) {
+                context = created;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * @return the object mapper from which the cached readers and writers are derived
+     */
+    static public @Nonnull ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    /**
+     * @param type the model type
+     * @return a JSON reader binding to the specified type
+     */
+    static public @Nonnull ObjectReader getReader(@Nonnull Class<?> type) {
+        ObjectReader reader = readers.get(type);
+
+        if( reader == null ) {
+            ObjectReader created = mapper.reader(type);
+
+            reader = readers.putIfAbsent(type, created);
+            if( reader == null ) {
+                reader = created;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * @return a transformer for the current thread that writes indented UTF-8 XML with a declaration
+     * @throws TransformerConfigurationException the platform has no usable transformer
+     */
+    static public @Nonnull Transformer getTransformer() throws TransformerConfigurationException {
+        Transformer t = transformer.get();
+
+        if( t == null ) {
+            synchronized( transformers ) {
+                t = transformers.newTransformer();
+            }
+            t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+            t.setOutputProperty(OutputKeys.METHOD, "xml");
+            t.setOutputProperty(OutputKeys.INDENT, "yes");
+            t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.set(t);
+        }
+        return t;
+    }
+
+    /**
+     * @param type the model type
+     * @return a JSON writer for values of the specified type
+     */
+    static public @Nonnull ObjectWriter getWriter(@Nonnull Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+
+        if( writer == null ) {
+            ObjectWriter created = mapper.writerWithType(type);
+
+            writer = writers.putIfAbsent(type, created);
+            if( writer == null ) {
+                writer = created;
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * @return the shared StAX factory, which does not resolve DTDs or external entities
+     */
+    static public @Nonnull XMLInputFactory getXMLInputFactory() {
+        return inputs;
+    }
+
+    private CodecRegistry() { }
+}
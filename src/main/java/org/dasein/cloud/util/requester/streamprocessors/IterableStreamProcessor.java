@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the items of a list response one at a time. Rather than parsing the whole response before returning, the
+ * processor parses each item as the returned iterable reaches it, so only the item being read is held in memory. The
+ * iterable may be iterated only once and closes the stream when it reaches the end of the list.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public interface IterableStreamProcessor<V> {
+    /**
+     * @param inputStream the response body
+     * @return the items of the list, read lazily
+     * @throws IOException the response could not be read up to the start of the list
+     */
+    @Nonnull Iterable<V> read(@Nonnull InputStream inputStream) throws IOException;
+}
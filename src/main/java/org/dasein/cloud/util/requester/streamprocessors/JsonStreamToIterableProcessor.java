@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.dasein.cloud.util.requester.DriverToCoreMapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the items of a JSON list response through the Jackson streaming parser. Items are the elements of the array
+ * found at the specified path of field names from the top-level object, such as {@code response/servers}; an empty
+ * path denotes a top-level array. Each item is bound to the driver type and mapped into the core type as it is read;
+ * items the mapper maps to null are skipped. If the path is not found, there are no items.
+ * <pre>
+ *     Iterable&lt;VirtualMachine&gt; vms = new JsonStreamToIterableProcessor&lt;Server, VirtualMachine&gt;("servers", mapper, Server.class).read(in);
+ * </pre>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class JsonStreamToIterableProcessor<T, V> implements IterableStreamProcessor<V> {
+    private final Class<T>                 classType;
+    private final DriverToCoreMapper<T, V> mapper;
+    private final List<String>             path;
+
+    /**
+     * @param fieldPath the slash-separated path of field names leading to the array of items
+     * @param mapper the mapping from the driver type to the core type
+     * @param classType the driver type of each item
+     */
+    public JsonStreamToIterableProcessor(@Nonnull String fieldPath, @Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
+        this.path = new ArrayList<String>();
+        for( String name : fieldPath.split("/") ) {
+            if( !name.isEmpty() ) {
+                path.add(name);
+            }
+        }
+        this.mapper = mapper;
+        this.classType = classType;
+    }
+
+    // positions the parser on the start of the array of items, returning false if there is no such array
+    private boolean find(@Nonnull JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+
+        for( String name : path ) {
+            if( token != JsonToken.START_OBJECT ) {
+                return false;
+            }
+            while( true ) {
+                token = parser.nextToken();
+                if( token != JsonToken.FIELD_NAME ) {
+                    return false;
+                }
+                token = parser.nextToken();
+                if( name.equals(parser.getCurrentName()) ) {
+                    break;
+                }
+                parser.skipChildren();
+            }
+        }
+        return (token == JsonToken.START_ARRAY);
+    }
+
+    @Override
+    public @Nonnull Iterable<V> read(@Nonnull InputStream inputStream) throws IOException {
+        final ObjectReader reader = CodecRegistry.getReader(classType);
+        final JsonParser parser;
+        final boolean found;
+
+        try {
+            parser = CodecRegistry.getObjectMapper().getFactory().createParser(inputStream);
+            found = find(parser);
+        }
+        catch( IOException e ) {
+            inputStream.close();
+            throw e;
+        }
+        return new SingleUseIterable<V>(new StreamIterator<V>(inputStream) {
+            private boolean done = !found;
+
+            @Override
+            protected @Nullable V readNext() throws Exception {
+                while( !done ) {
+                    JsonToken token = parser.nextToken();
+
+                    if( token == null || token == JsonToken.END_ARRAY ) {
+                        done = true;
+                        break;
+                    }
+                    T item = (token == JsonToken.VALUE_NULL ? null : reader.<T>readValue(parser));
+                    V mapped = (item == null ? null : mapper.mapFrom(item));
+
+                    if( mapped != null ) {
+                        return mapped;
+                    }
+                }
+                parser.close();
+                return end();
+            }
+        });
+    }
+}
@@ -19,8 +19,6 @@
 
 package org.dasein.cloud.util.requester.streamprocessors;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import javax.annotation.Nullable;
 import java.io.InputStream;
 
@@ -30,8 +28,7 @@ import java.io.InputStream;
 public class JsonStreamToObjectProcessor<T> implements StreamProcessor<T> {
     public @Nullable T read(InputStream inputStream, Class<T> classType){
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.readValue(inputStream, classType);
+            return CodecRegistry.getReader(classType).readValue(inputStream);
         } catch (Exception ex) {
             throw new RuntimeException("Error deserializing response input stream into dasein object", ex);
         }
@@ -39,8 +36,10 @@ public class JsonStreamToObjectProcessor<T> implements StreamProcessor<T> {
 
     public @Nullable String write(T object){
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.writeValueAsString(object);
+            if( object == null ) {
+                return CodecRegistry.getObjectMapper().writeValueAsString(null);
+            }
+            return CodecRegistry.getWriter(object.getClass()).writeValueAsString(object);
         } catch (Exception ex) {
             throw new RuntimeException("Error serializing dasein object into string", ex);
         }
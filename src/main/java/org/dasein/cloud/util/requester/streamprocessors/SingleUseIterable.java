@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import javax.annotation.Nonnull;
+import java.util.Iterator;
+
+/**
+ * Exposes an iterator over a stream that can only be read once as an iterable.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+final class SingleUseIterable<V> implements Iterable<V> {
+    private Iterator<V> iterator;
+
+    SingleUseIterable(@Nonnull Iterator<V> iterator) {
+        this.iterator = iterator;
+    }
+
+    @Override
+    public synchronized @Nonnull Iterator<V> iterator() {
+        if( iterator == null ) {
+            throw new IllegalStateException("A streamed response may only be iterated once");
+        }
+        Iterator<V> it = iterator;
+
+        iterator = null;
+        return it;
+    }
+}
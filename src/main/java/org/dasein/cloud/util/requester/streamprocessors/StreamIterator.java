@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Base for iterators that parse one item ahead from a response stream. The stream is closed when the end of the
+ * items is reached or an error occurs.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+abstract class StreamIterator<V> implements Iterator<V> {
+    static private final Logger logger = Logger.getLogger(StreamIterator.class);
+
+    private final Closeable stream;
+    private boolean         fetched;
+    private boolean         finished;
+    private V               next;
+
+    protected StreamIterator(@Nonnull Closeable stream) {
+        this.stream = stream;
+    }
+
+    private void close() {
+        try {
+            stream.close();
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to close response stream: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Marks the end of the items.
+     * @return null, for use as the return value of {@link #readNext()}
+     */
+    protected final @Nullable V end() {
+        finished = true;
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if( !fetched && !finished ) {
+            try {
+                next = readNext();
+            }
+            catch( Exception e ) {
+                finished = true;
+                close();
+                throw new RuntimeException("Error deserializing response input stream into dasein object", e);
+            }
+            if( finished ) {
+                close();
+            }
+            else {
+                fetched = true;
+            }
+        }
+        return fetched;
+    }
+
+    @Override
+    public V next() {
+        if( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        V item = next;
+
+        next = null;
+        fetched = false;
+        return item;
+    }
+
+    /**
+     * Reads the next item from the stream.
+     * @return the next item, or the result of {@link #end()} if there are no more items
+     * @throws Exception the stream could not be read
+     */
+    protected abstract @Nullable V readNext() throws Exception;
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -22,11 +22,7 @@ package org.dasein.cloud.util.requester.streamprocessors;
 import org.w3c.dom.Document;
 
 import javax.annotation.Nullable;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.IOException;
@@ -41,9 +37,7 @@ public class StreamToDocumentProcessor implements StreamProcessor<Document> {
     @Override
     public Document read(InputStream inputStream, Class<Document> classType) throws IOException {
         try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            return documentBuilder.parse(inputStream);
+            return CodecRegistry.getDocumentBuilder().parse(inputStream);
         } catch (Exception e) {
             throw new IOException(e.getMessage());
         }
@@ -57,12 +51,7 @@ public class StreamToDocumentProcessor implements StreamProcessor<Document> {
     public String write(Document document) {
         try {
             StringWriter stringWriter = new StringWriter();
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer transformer = tf.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            Transformer transformer = CodecRegistry.getTransformer();
 
             transformer.transform(new DOMSource(document), new StreamResult(stringWriter));
             return stringWriter.toString();
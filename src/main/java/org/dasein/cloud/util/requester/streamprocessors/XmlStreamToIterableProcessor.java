@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import org.dasein.cloud.util.requester.DriverToCoreMapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the items of an XML list response through StAX. Items are the elements found at the specified path of local
+ * element names from the document root, such as {@code DescribeInstancesResponse/reservationSet/item}. Each one is
+ * unmarshalled into the driver type through JAXB and mapped into the core type as it is read; items the mapper maps to
+ * null are skipped.
+ * <pre>
+ *     Iterable&lt;VirtualMachine&gt; vms = new XmlStreamToIterableProcessor&lt;Instance, VirtualMachine&gt;("DescribeInstancesResponse/reservationSet/item", mapper, Instance.class).read(in);
+ * </pre>
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class XmlStreamToIterableProcessor<T, V> implements IterableStreamProcessor<V> {
+    private final Class<T>                 classType;
+    private final DriverToCoreMapper<T, V> mapper;
+    private final List<String>             path;
+
+    /**
+     * @param elementPath the slash-separated path of the item elements from the document root
+     * @param mapper the mapping from the driver type to the core type
+     * @param classType the driver type of each item
+     */
+    public XmlStreamToIterableProcessor(@Nonnull String elementPath, @Nonnull DriverToCoreMapper<T, V> mapper, @Nonnull Class<T> classType) {
+        this.path = parse(elementPath);
+        this.mapper = mapper;
+        this.classType = classType;
+    }
+
+    static @Nonnull List<String> parse(@Nonnull String elementPath) {
+        List<String> names = new ArrayList<String>();
+
+        for( String name : elementPath.split("/") ) {
+            if( !name.isEmpty() ) {
+                names.add(name);
+            }
+        }
+        if( names.isEmpty() ) {
+            throw new IllegalArgumentException("Invalid element path: " + elementPath);
+        }
+        return names;
+    }
+
+    @Override
+    public @Nonnull Iterable<V> read(@Nonnull final InputStream inputStream) throws IOException {
+        final XMLStreamReader reader;
+        final Unmarshaller unmarshaller;
+
+        try {
+            reader = CodecRegistry.getXMLInputFactory().createXMLStreamReader(inputStream);
+            unmarshaller = CodecRegistry.getJAXBContext(classType).createUnmarshaller();
+        }
+        catch( XMLStreamException e ) {
+            inputStream.close();
+            throw new IOException("Unable to read the XML response: " + e.getMessage(), e);
+        }
+        catch( JAXBException e ) {
+            inputStream.close();
+            throw new IOException("Unable to bind " + classType.getName() + ": " + e.getMessage(), e);
+        }
+        return new SingleUseIterable<V>(new StreamIterator<V>(inputStream) {
+            private final String[] current = new String[path.size()];
+            private int            depth   = 0;
+
+            @Override
+            protected @Nullable V readNext() throws Exception {
+                while( true ) {
+                    switch( reader.getEventType() ) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            if( depth < current.length ) {
+                                current[depth] = reader.getLocalName();
+                            }
+                            depth++;
+                            if( depth == current.length && Arrays.asList(current).equals(path) ) {
+                                depth--;
+                                // leaves the reader on the event following the end of the item
+                                T item = unmarshaller.unmarshal(reader, classType).getValue();
+                                V mapped = (item == null ? null : mapper.mapFrom(item));
+
+                                if( mapped != null ) {
+                                    return mapped;
+                                }
+                                continue;
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            depth--;
+                            break;
+                        case XMLStreamConstants.END_DOCUMENT:
+                            reader.close();
+                            return end();
+                        default:
+                            break;
+                    }
+                    reader.next();
+                }
+            }
+        });
+    }
+}
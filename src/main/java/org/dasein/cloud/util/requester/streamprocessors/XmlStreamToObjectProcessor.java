@@ -20,7 +20,6 @@
 package org.dasein.cloud.util.requester.streamprocessors;
 
 import javax.annotation.Nullable;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import java.io.InputStream;
@@ -32,8 +31,7 @@ import java.io.StringWriter;
 public class XmlStreamToObjectProcessor<T> implements StreamProcessor<T> {
     public @Nullable T read(InputStream inputStream, Class<T> classType){
         try {
-            JAXBContext context = JAXBContext.newInstance(classType);
-            Unmarshaller u = context.createUnmarshaller();
+            Unmarshaller u = CodecRegistry.getJAXBContext(classType).createUnmarshaller();
             return (T)u.unmarshal(inputStream);
         } catch (Exception ex) {
             throw new RuntimeException("Error deserializing response input stream into dasein object", ex);
@@ -43,8 +41,7 @@ public class XmlStreamToObjectProcessor<T> implements StreamProcessor<T> {
     public @Nullable String write(T object) {
         try {
             StringWriter stringWriter = new StringWriter();
-            JAXBContext jc = JAXBContext.newInstance(object.getClass());
-            Marshaller m = jc.createMarshaller();
+            Marshaller m = CodecRegistry.getJAXBContext(object.getClass()).createMarshaller();
             m.marshal(object, stringWriter);
 
             return stringWriter.toString();
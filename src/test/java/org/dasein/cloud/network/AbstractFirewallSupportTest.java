@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Verifies the firewall lookups that {@link AbstractFirewallSupport} answers from its indexed cache of the listing.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class AbstractFirewallSupportTest {
+    static private int testNumber = 0;
+
+    static private class Firewalls extends AbstractFirewallSupport<CloudProvider> {
+        final AtomicInteger listings = new AtomicInteger(0);
+
+        Firewalls(CloudProvider provider) {
+            super(provider);
+        }
+
+        static private Firewall firewall(String id) {
+            Firewall fw = new Firewall();
+
+            fw.setProviderFirewallId(id);
+            fw.setName(id);
+            return fw;
+        }
+
+        @Override
+        public void delete(@Nonnull String firewallId) throws InternalException, CloudException {
+            throw new OperationNotSupportedException("Not supported");
+        }
+
+        @Override
+        public @Nonnull FirewallCapabilities getCapabilities() throws CloudException, InternalException {
+            throw new OperationNotSupportedException("Not supported");
+        }
+
+        @Override
+        public boolean isSubscribed() throws CloudException, InternalException {
+            return true;
+        }
+
+        @Override
+        public @Nonnull Iterable<Firewall> list() throws InternalException, CloudException {
+            listings.incrementAndGet();
+            return Arrays.asList(firewall("fw-1"), firewall("fw-2"));
+        }
+    }
+
+    private Firewalls firewalls;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Firewall Provider", "Firewall Cloud", "https://firewall.example.com/" + testNumber, TestNewCloudProvider.class);
+
+        firewalls = new Firewalls(cloud.createContext("account", "region").connect());
+    }
+
+    @Test
+    public void firewallsAreLookedUpInTheIndexedListing() throws Exception {
+        Firewall fw = firewalls.getFirewall("fw-2");
+
+        assertNotNull("The firewall was not found", fw);
+        assertEquals("Wrong firewall", "fw-2", fw.getProviderFirewallId());
+        assertNotNull("The other firewall was not found", firewalls.getFirewall("fw-1"));
+        assertEquals("Lookups did not share a single listing", 1, firewalls.listings.get());
+    }
+
+    @Test
+    public void unknownFirewallsAreNotFound() throws Exception {
+        assertNull("A firewall missing from the listing was found", firewalls.getFirewall("fw-3"));
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the counters kept by {@link APITrace}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class APITraceTest {
+    static private int testNumber = 0;
+
+    private TraceMode     mode;
+    private CloudProvider provider;
+    private CloudProvider otherAccount;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Trace.Provider", "Trace Cloud", "https://trace.example.com/" + testNumber, TestNewCloudProvider.class);
+
+        mode = APITrace.getMode();
+        APITrace.setMode(TraceMode.TIMINGS);
+        APITrace.reset();
+        provider = cloud.createContext("account", "region").connect();
+        otherAccount = cloud.createContext("other.account", "region").connect();
+    }
+
+    @After
+    public void tearDown() {
+        APITrace.setSampleRate(1.0);
+        APITrace.setTailPercentile(99.0);
+        APITrace.reset();
+        APITrace.setMode(mode);
+    }
+
+    @Test
+    public void countsApiCallsByScope() {
+        APITrace.trace(provider, "listServers");
+        APITrace.trace(provider, "listServers");
+        APITrace.trace(provider, "getServer");
+        APITrace.trace(otherAccount, "listServers");
+
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        assertEquals("Total API count is wrong", 4L, APITrace.getAPICount());
+        assertEquals("Provider API count is wrong", 4L, APITrace.getAPICount(p));
+        assertEquals("Cloud API count is wrong", 4L, APITrace.getAPICount(p, c));
+        assertEquals("Account API count is wrong", 3L, APITrace.getAPICount(p, c, "account"));
+        assertEquals("Dotted account API count is wrong", 1L, APITrace.getAPICount(p, c, "other.account"));
+        assertEquals("Single API count is wrong", 2L, APITrace.getAPICount(p, c, "account", "listServers"));
+        assertEquals("Cross-account API count is wrong", 3L, APITrace.getAPICountAcrossAccounts(p, c, "listServers"));
+    }
+
+    @Test
+    public void listsSanitizedNames() {
+        APITrace.trace(provider, "listServers");
+        APITrace.trace(otherAccount, "getServer");
+
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        assertArrayEquals("Providers are wrong", new String[] { TraceKey.sanitize(p) }, APITrace.listProviders());
+        assertArrayEquals("Clouds are wrong", new String[] { TraceKey.sanitize(c) }, APITrace.listClouds(p));
+        assertArrayEquals("Accounts are wrong", new String[] { "account", "other_account" }, APITrace.listAccounts(p, c));
+        assertArrayEquals("APIs are wrong", new String[] { "getServer", "listServers" }, APITrace.listApis(p, c));
+    }
+
+    @Test
+    public void countsOperationsAndTheirCalls() {
+        APITrace.begin(provider, "VM.launch");
+        APITrace.trace(provider, "runInstances");
+        APITrace.begin(provider, "VM.getVirtualMachine");
+        APITrace.trace(provider, "describeInstances");
+        APITrace.end();
+        APITrace.end();
+
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        assertEquals("Operation count is wrong", 2L, APITrace.getOperationCount(p, c, "account"));
+        assertEquals("Nested operation count is wrong", 1L, APITrace.getOperationCount(p, c, "account", "VM.getVirtualMachine"));
+        assertEquals("Calls for the outer operation are wrong", 2L, APITrace.getAPICountForOperation(p, c, "account", "VM.launch"));
+        assertEquals("Calls for the inner operation are wrong", 1L, APITrace.getAPICountForOperation(p, c, "account", "VM.getVirtualMachine"));
+        assertArrayEquals("Operations are wrong", new String[] { "VM.getVirtualMachine", "VM.launch" }, APITrace.listOperations(p, c));
+    }
+
+    @Test
+    public void recordsLatencyOfTheLastTracedCall() {
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        APITrace.recordLatency(provider, 5000000L);
+        assertEquals("Latency was recorded without a traced call", 0L, APITrace.getAPIMaxLatency(p, c, "listServers"));
+        for( int i=0; i<99; i++ ) {
+            APITrace.trace(provider, "listServers");
+            APITrace.recordLatency(provider, 1000000L);
+        }
+        APITrace.trace(otherAccount, "listServers");
+        APITrace.recordLatency(otherAccount, 50000000L);
+        APITrace.recordLatency(otherAccount, 90000000L);
+
+        assertEquals("The maximum latency is wrong", 50000000L, APITrace.getAPIMaxLatency(p, c, "listServers"));
+        assertTrue("The median latency is wrong", Math.abs(APITrace.getAPILatency(p, c, "listServers", 50.0) - 1000000L) < 70000L);
+        assertEquals("The tail latency is wrong", 50000000L, APITrace.getAPILatency(p, c, "listServers", 100.0));
+    }
+
+    @Test
+    public void recordsOperationLatencyWithoutRequestIds() throws InterruptedException {
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        APITrace.begin(provider, "VM.launch");
+        Thread.sleep(20L);
+        APITrace.end();
+        assertTrue("The operation latency is too short", APITrace.getOperationMaxLatency(p, c, "VM.launch") >= 20000000L);
+        assertEquals("Unknown operations have a latency", 0L, APITrace.getOperationLatency(p, c, "VM.terminate", 99.0));
+    }
+
+    @Test
+    public void nothingIsRecordedWhenOff() {
+        APITrace.setMode(TraceMode.OFF);
+        APITrace.begin(provider, "VM.launch");
+        APITrace.trace(provider, "runInstances");
+        APITrace.recordLatency(provider, 1000000L);
+        APITrace.end();
+        assertEquals("API calls were counted", 0L, APITrace.getAPICount());
+        assertEquals("Operations were counted", 0L, APITrace.getOperationCount());
+        assertEquals("Latencies were recorded", 0L, APITrace.getOperationMaxLatency(provider.getProviderName(), provider.getCloudName(), "VM.launch"));
+    }
+
+    @Test
+    public void noCallIsPendingWhenOff() {
+        APITrace.trace(provider, "runInstances");
+        APITrace.setMode(TraceMode.OFF);
+        assertNull("A call is pending while tracing is off", APITrace.getPendingApiCall());
+        APITrace.recordLatency(provider, 1000000L);
+        APITrace.setMode(TraceMode.TIMINGS);
+        APITrace.recordLatency(provider, 1000000L);
+        assertNull("The call is still pending after its latency was recorded", APITrace.getPendingApiCall());
+    }
+
+    @Test
+    public void countersModeRecordsNoTimings() {
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        APITrace.setMode(TraceMode.COUNTERS);
+        APITrace.begin(provider, "VM.launch");
+        APITrace.trace(provider, "runInstances");
+        APITrace.recordLatency(provider, 1000000L);
+        APITrace.end();
+        assertEquals("API calls were not counted", 1L, APITrace.getAPICount());
+        assertEquals("Calls for the operation were not counted", 1L, APITrace.getAPICountForOperation(p, c, "account", "VM.launch"));
+        assertEquals("API latencies were recorded", 0L, APITrace.getAPIMaxLatency(p, c, "runInstances"));
+        assertEquals("Operation latencies were recorded", 0L, APITrace.getOperationMaxLatency(p, c, "VM.launch"));
+    }
+
+    @Test
+    public void changingModeDiscardsOperationsInProgress() {
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        APITrace.begin(provider, "VM.launch");
+        APITrace.setMode(TraceMode.OFF);
+        APITrace.setMode(TraceMode.TIMINGS);
+        APITrace.trace(provider, "runInstances");
+        APITrace.end();
+        assertEquals("A discarded operation collected calls", 0L, APITrace.getAPICountForOperation(p, c, "account", "VM.launch"));
+        assertEquals("The API call was not counted", 1L, APITrace.getAPICount());
+    }
+
+    @Test
+    public void capturedTracesAreBounded() {
+        APITrace.setMode(TraceMode.FULL_TREE);
+        for( int i=0; i<APITrace.getTraceCapacity() + 10; i++ ) {
+            APITrace.begin(provider, "op" + i);
+            APITrace.end();
+        }
+        String[] traces = APITrace.listTraces();
+
+        assertEquals("The trace ring is not bounded", APITrace.getTraceCapacity(), traces.length);
+        assertTrue("The newest trace is not first", traces[0].contains("op" + (APITrace.getTraceCapacity() + 9)));
+        assertNull("An evicted trace is still available", APITrace.getStackTrace(provider.getProviderName(), provider.getCloudName(), "op0"));
+        assertNotNull("A recent trace is missing", APITrace.getStackTrace(provider.getProviderName(), provider.getCloudName(), "op10"));
+    }
+
+    @Test
+    public void unsampledTracesAreNotCaptured() {
+        APITrace.setMode(TraceMode.FULL_TREE);
+        APITrace.setSampleRate(0.0);
+        APITrace.setTailPercentile(0.0);
+        APITrace.begin(provider, "VM.launch");
+        APITrace.trace(provider, "runInstances");
+        APITrace.end();
+        assertEquals("An unsampled trace was captured", 0, APITrace.listTraces().length);
+        assertEquals("Unsampled operations were not counted", 1L, APITrace.getAPICountForOperation(provider.getProviderName(), provider.getCloudName(), "account", "VM.launch"));
+    }
+
+    @Test
+    public void slowOperationsAreCapturedWithoutSampling() throws InterruptedException {
+        APITrace.setMode(TraceMode.FULL_TREE);
+        APITrace.setSampleRate(0.0);
+        for( int i=0; i<200; i++ ) {
+            APITrace.begin(provider, "VM.launch");
+            APITrace.end();
+        }
+        APITrace.begin(provider, "VM.launch");
+        APITrace.trace(provider, "slowCall");
+        Thread.sleep(20L);
+        APITrace.end();
+
+        String[] traces = APITrace.listTraces();
+
+        assertTrue("The slow operation was not captured", traces.length > 0 && traces[0].contains("slowCall"));
+    }
+
+    @Test
+    public void operationTreesAreTruncated() {
+        APITrace.setMode(TraceMode.FULL_TREE);
+        APITrace.begin(provider, "VM.launch");
+        for( int i=0; i<100; i++ ) {
+            APITrace.trace(provider, "describeInstances");
+        }
+        APITrace.end();
+
+        String trace = APITrace.getStackTrace(provider.getProviderName(), provider.getCloudName(), "VM.launch");
+
+        assertNotNull("The trace was not captured", trace);
+        assertTrue("The trace was not marked as truncated", trace.contains("\"truncated\":true"));
+        assertEquals("Truncated calls were not counted", 100L, APITrace.getAPICountForOperation(provider.getProviderName(), provider.getCloudName(), "account", "VM.launch"));
+    }
+
+    @Test
+    public void operationStacksAreConfinedToTheirThread() throws InterruptedException {
+        final int threads = 8;
+        final int operations = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for( int i=0; i<threads; i++ ) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for( int j=0; j<operations; j++ ) {
+                            APITrace.begin(provider, "outer");
+                            APITrace.begin(provider, "inner");
+                            APITrace.trace(provider, "describeInstances");
+                            APITrace.end();
+                            APITrace.trace(provider, "runInstances");
+                            APITrace.end();
+                        }
+                    }
+                    catch( InterruptedException ignore ) {
+                        // done
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            };
+
+            t.setDaemon(true);
+            t.start();
+        }
+        start.countDown();
+        assertTrue("Tracing threads did not finish", done.await(30, TimeUnit.SECONDS));
+
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+        long expected = (long)threads * operations;
+
+        assertEquals("Outer operations were lost", expected, APITrace.getOperationCount(p, c, "account", "outer"));
+        assertEquals("Calls for the inner operation are wrong", expected, APITrace.getAPICountForOperation(p, c, "account", "inner"));
+        assertEquals("Calls for the outer operation are wrong", 2 * expected, APITrace.getAPICountForOperation(p, c, "account", "outer"));
+    }
+
+    @Test
+    public void concurrentCallsAreNotLost() throws InterruptedException {
+        final int threads = 8;
+        final int calls = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for( int i=0; i<threads; i++ ) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for( int j=0; j<calls; j++ ) {
+                            APITrace.trace(provider, "listServers");
+                        }
+                    }
+                    catch( InterruptedException ignore ) {
+                        // done
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            };
+
+            t.setDaemon(true);
+            t.start();
+        }
+        start.countDown();
+        assertTrue("Tracing threads did not finish", done.await(30, TimeUnit.SECONDS));
+        assertEquals("API calls were lost", (long)threads * calls, APITrace.getAPICount());
+    }
+}
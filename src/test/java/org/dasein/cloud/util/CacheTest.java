@@ -0,0 +1,674 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.dasein.cloud.CloudException;
+import org.dasein.util.uom.time.Millisecond;
+import org.dasein.util.uom.time.Minute;
+import org.dasein.util.uom.time.TimePeriod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies the context-sensitive behavior of {@link Cache} and {@link SingletonCache}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class CacheTest {
+    static private int testNumber = 0;
+
+    private CloudProvider   provider;
+    private ProviderContext ctx;
+    private ProviderContext otherRegion;
+    private ProviderContext otherAccount;
+    private String          cacheName;
+    private File            directory;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Cache Provider", "Cache Cloud", "https://cache.example.com/" + testNumber, TestNewCloudProvider.class);
+
+        ctx = cloud.createContext("account", "region");
+        otherRegion = cloud.createContext("account", "other-region");
+        otherAccount = cloud.createContext("other-account", "region");
+        provider = ctx.connect();
+        cacheName = "test-" + testNumber;
+        directory = Files.createTempDirectory("dasein-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        Cache.getInstance(provider, cacheName, String.class, CacheLevel.CLOUD).clear();
+        delete(directory);
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+
+        if( children != null ) {
+            for( File child : children ) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void emptyCacheReturnsNull() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+
+        assertNull("Nothing was cached, but the cache returned a value", cache.get(ctx));
+    }
+
+    @Test
+    public void sameNameReturnsSameCache() {
+        Cache<String> first = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        Cache<String> second = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+
+        first.put(ctx, Arrays.asList("a", "b"));
+        assertEquals("The second lookup of the cache did not return the same instance", first, second);
+        assertNotNull("Items put into one reference were not visible through the other", second.get(ctx));
+    }
+
+    @Test
+    public void cloudLevelSharesAcrossRegionsAndAccounts() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.CLOUD);
+        List<String> items = Arrays.asList("a", "b");
+
+        cache.put(ctx, items);
+        assertEquals("The cached items do not match", items, cache.get(ctx));
+        assertEquals("Cloud level items were not shared across regions", items, cache.get(otherRegion));
+        assertEquals("Cloud level items were not shared across accounts", items, cache.get(otherAccount));
+    }
+
+    @Test
+    public void regionLevelSharesAcrossAccountsOnly() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION);
+        List<String> items = Arrays.asList("a", "b");
+
+        cache.put(ctx, items);
+        assertEquals("Region level items were not shared across accounts", items, cache.get(otherAccount));
+        assertNull("Region level items leaked into another region", cache.get(otherRegion));
+    }
+
+    @Test
+    public void cloudAccountLevelSharesAcrossRegionsOnly() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.CLOUD_ACCOUNT);
+        List<String> items = Arrays.asList("a", "b");
+
+        cache.put(ctx, items);
+        assertEquals("Account level items were not shared across regions", items, cache.get(otherRegion));
+        assertNull("Account level items leaked into another account", cache.get(otherAccount));
+    }
+
+    @Test
+    public void regionAccountLevelIsNotShared() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+
+        cache.put(ctx, Arrays.asList("a", "b"));
+        assertNull("Region/account level items leaked into another region", cache.get(otherRegion));
+        assertNull("Region/account level items leaked into another account", cache.get(otherAccount));
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+
+        cache.put(ctx, Arrays.asList("a", "b"));
+        cache.put(otherRegion, Arrays.asList("c"));
+        cache.clear();
+        assertNull("Items survived a clear", cache.get(ctx));
+        assertNull("Items survived a clear", cache.get(otherRegion));
+    }
+
+    @Test
+    public void expiredItemsAreNotReturned() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(0, TimePeriod.MINUTE));
+
+        cache.put(ctx, Arrays.asList("a", "b"));
+        Thread.sleep(5L);
+        assertNull("An expired item was returned from the cache", cache.get(ctx));
+    }
+
+    @Test
+    public void concurrentReadsAndWrites() throws Exception {
+        final Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        final ProviderContext[] contexts = new ProviderContext[] { ctx, otherRegion, otherAccount };
+        final List<String> items = Collections.singletonList("a");
+        final CountDownLatch done = new CountDownLatch(8);
+        final AtomicInteger misses = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for( int i=0; i<8; i++ ) {
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        for( int j=0; j<10000; j++ ) {
+                            ProviderContext c = contexts[j % contexts.length];
+
+                            if( cache.get(c) == null ) {
+                                misses.incrementAndGet();
+                                cache.put(c, items);
+                            }
+                        }
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        for( Thread t : threads ) {
+            t.start();
+        }
+        done.await();
+        for( ProviderContext c : contexts ) {
+            assertEquals("The cache lost items under concurrent access", items, cache.get(c));
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvictedWhenFull() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(10, TimePeriod.MINUTE), CacheEvictionPolicy.getInstance(2));
+
+        cache.put(ctx, Arrays.asList("a"));
+        cache.put(otherRegion, Arrays.asList("b"));
+        assertNotNull("The first entry should still be cached", cache.get(ctx));
+        cache.put(otherAccount, Arrays.asList("c"));
+        assertNotNull("The most recently read entry was evicted", cache.get(ctx));
+        assertNull("The least recently used entry was not evicted", cache.get(otherRegion));
+        assertNotNull("The newest entry was evicted", cache.get(otherAccount));
+        assertEquals("The eviction count does not match", 1L, cache.getEvictionCount());
+    }
+
+    @Test
+    public void heavyEntriesAreEvictedByWeight() {
+        CacheEvictionPolicy policy = CacheEvictionPolicy.unbounded().withMaximumWeight(4);
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(10, TimePeriod.MINUTE), policy);
+
+        cache.put(ctx, Arrays.asList("a", "b", "c"));
+        assertEquals("The cache weight should be the number of cached items", 3L, cache.getWeight());
+        cache.put(otherRegion, Arrays.asList("d", "e"));
+        assertNull("The cache did not evict to stay within its weight", cache.get(ctx));
+        assertEquals("The cache weight does not match the remaining items", 2L, cache.getWeight());
+        cache.put(otherRegion, Arrays.asList("f"));
+        assertEquals("Replacing an entry did not release its weight", 1L, cache.getWeight());
+        cache.clear();
+        assertEquals("Clearing the cache did not release its weight", 0L, cache.getWeight());
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        final Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+        final AtomicInteger loads = new AtomicInteger(0);
+        final Callable<Iterable<String>> loader = new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return Arrays.asList("a", "b");
+            }
+        };
+
+        for( int i=0; i<5; i++ ) {
+            new Thread() {
+                public void run() {
+                    try {
+                        cache.get(ctx, loader);
+                    }
+                    catch( Exception ignore ) {
+                        // counted below
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue("The loader was never called", started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50L);
+        release.countDown();
+        assertTrue("The waiting callers never completed", done.await(5, TimeUnit.SECONDS));
+        assertEquals("Concurrent misses did not share a single load", 1, loads.get());
+        assertEquals("The loaded items were not cached", Arrays.asList("a", "b"), cache.get(ctx));
+    }
+
+    @Test
+    public void loaderErrorsPropagate() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+
+        try {
+            cache.get(ctx, new Callable<Iterable<String>>() {
+                @Override
+                public Iterable<String> call() throws Exception {
+                    throw new CloudException("Boom");
+                }
+            });
+            fail("The loader error was swallowed");
+        }
+        catch( CloudException e ) {
+            assertEquals("The loader error does not match", "Boom", e.getMessage());
+        }
+        assertNull("A failed load left something in the cache", cache.get(ctx));
+    }
+
+    @Test
+    public void staleEntriesAreRefreshedInBackground() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Millisecond>(200, TimePeriod.MILLISECOND));
+        final AtomicInteger loads = new AtomicInteger(0);
+        Callable<Iterable<String>> loader = new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                return Collections.singletonList("v" + loads.incrementAndGet());
+            }
+        };
+
+        assertEquals("The initial load does not match", Collections.singletonList("v1"), cache.get(ctx, loader));
+        Thread.sleep(170L);
+        assertEquals("A nearly stale entry should still be served from the cache", Collections.singletonList("v1"), cache.get(ctx, loader));
+        for( int i=0; i<100 && !Collections.singletonList("v2").equals(cache.get(ctx)); i++ ) {
+            Thread.sleep(5L);
+        }
+        assertEquals("The refreshed items were not cached", Collections.singletonList("v2"), cache.get(ctx));
+        assertEquals("The entry was not refreshed exactly once", 2, loads.get());
+    }
+
+    @Test
+    public void indexedLookupsShareOneListing() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        final AtomicInteger loads = new AtomicInteger(0);
+        Callable<Iterable<String>> loader = new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                loads.incrementAndGet();
+                return Arrays.asList("a:1", "b:2", "c:3");
+            }
+        };
+        Cache.Identifier<String> identifier = new Cache.Identifier<String>() {
+            @Override
+            public String getId(String item) {
+                return item.substring(0, item.indexOf(':'));
+            }
+        };
+
+        assertEquals("The indexed item does not match", "a:1", cache.get(ctx, "a", identifier, loader));
+        assertEquals("The indexed item does not match", "c:3", cache.get(ctx, "c", identifier, loader));
+        assertEquals("Indexed lookups did not share a single listing", 1, loads.get());
+        assertNull("A missing item was found", cache.get(ctx, "d", identifier, loader));
+        assertEquals("A miss against an older listing should reload exactly once", 2, loads.get());
+        assertNull("A missing item was found", cache.get(otherAccount, "d", identifier, loader));
+        assertEquals("A miss against a fresh listing should not reload again", 3, loads.get());
+    }
+
+    @Test
+    public void indexesMayReturnSingleUseListings() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        final AtomicInteger loads = new AtomicInteger(0);
+        Cache.Index<String> index = new Cache.Index<String>() {
+            @Override
+            public String getId(String item) {
+                return item.substring(0, item.indexOf(':'));
+            }
+
+            @Override
+            public Iterable<String> list() {
+                final Iterator<String> items = Arrays.asList("a:1", "b:2").iterator();
+
+                loads.incrementAndGet();
+                return new Iterable<String>() {
+                    private boolean read = false;
+
+                    @Override
+                    public Iterator<String> iterator() {
+                        assertFalse("The listing was read twice", read);
+                        read = true;
+                        return items;
+                    }
+                };
+            }
+        };
+
+        assertEquals("The indexed item does not match", "a:1", cache.get(ctx, "a", index));
+        assertEquals("The indexed item does not match", "b:2", cache.get(ctx, "b", index));
+        assertEquals("Indexed lookups did not share a single listing", 1, loads.get());
+    }
+
+    @Test
+    public void persistedListingsAreRestoredAfterEviction() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(5, TimePeriod.MINUTE), CacheEvictionPolicy.getInstance(1));
+
+        cache.persistTo(directory);
+        assertTrue("The cache should be persistent", cache.isPersistent());
+        cache.put(ctx, Arrays.asList("a", "b"));
+        cache.put(otherAccount, Collections.singletonList("c"));
+        assertEquals("The first entry was not evicted from memory", 1, cache.getEvictionCount());
+        assertEquals("The persisted listing was not restored", Arrays.asList("a", "b"), cache.get(ctx, new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                fail("The loader was called even though the listing was persisted");
+                return null;
+            }
+        }));
+    }
+
+    @Test
+    public void expiredPersistedListingsAreIgnored() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Millisecond>(200, TimePeriod.MILLISECOND), CacheEvictionPolicy.getInstance(1));
+
+        cache.persistTo(directory);
+        cache.put(ctx, Arrays.asList("a", "b"));
+        cache.put(otherAccount, Collections.singletonList("c"));
+        Thread.sleep(250L);
+        assertNull("An expired listing was restored from disk", cache.get(ctx));
+    }
+
+    @Test
+    public void persistedListingsSurviveANewTier() throws Exception {
+        DiskCacheTier<String> tier = new DiskCacheTier<String>(directory, String.class);
+        CacheKey key = CacheKey.getInstance(CacheLevel.REGION_ACCOUNT, ctx);
+        long cachedAt = System.currentTimeMillis() - 1000L;
+
+        tier.write(key, Arrays.asList("a", null, "c"), cachedAt);
+
+        DiskCacheTier.Snapshot<String> snapshot = new DiskCacheTier<String>(directory, String.class).read(key);
+
+        assertNotNull("Nothing was read back from disk", snapshot);
+        assertEquals("The cache time was not preserved", cachedAt, snapshot.cachedAt);
+        assertEquals("The items were not preserved", Arrays.asList("a", null, "c"), snapshot.items);
+        assertNull("A listing was found for a different key", tier.read(CacheKey.getInstance(CacheLevel.REGION_ACCOUNT, otherAccount)));
+        tier.clear();
+        assertNull("A cleared listing was read back", tier.read(key));
+    }
+
+    @Test
+    public void nonSerializableListingsAreNotPersisted() {
+        DiskCacheTier<Object> tier = new DiskCacheTier<Object>(directory, Object.class);
+        CacheKey key = CacheKey.getInstance(CacheLevel.REGION_ACCOUNT, ctx);
+
+        tier.write(key, Collections.singletonList(new Object()), System.currentTimeMillis());
+        assertNull("A non-serializable listing was persisted", tier.read(key));
+        assertFalse("A file was left behind for a non-serializable listing", directory.list().length > 0);
+    }
+
+    @Test
+    public void statisticsTrackHitsMissesAndLoads() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        Callable<Iterable<String>> loader = new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                Thread.sleep(5L);
+                return Arrays.asList("a", "b");
+            }
+        };
+
+        assertNull("An empty cache returned something", cache.get(ctx));
+        cache.get(ctx, loader);
+        cache.get(ctx, loader);
+        cache.get(ctx);
+
+        CacheStatistics stats = cache.getStatistics();
+
+        assertEquals("The hit count does not match", 2L, stats.getHitCount());
+        assertEquals("The miss count does not match", 2L, stats.getMissCount());
+        assertEquals("The load count does not match", 1L, stats.getLoadCount());
+        assertEquals("The hit ratio does not match", 0.5, stats.getHitRatio(), 0.0001);
+        assertTrue("The mean load time was not recorded", stats.getMeanLoadTimeInMillis() >= 4.0);
+        assertTrue("The 99th percentile load time was not recorded", stats.getP99LoadTimeInMillis() >= 4.0);
+        assertEquals("The entry count does not match", 1L, stats.getEntryCount());
+        assertTrue("The retained size was not estimated", stats.getEstimatedSizeInBytes() > 0L);
+
+        CacheManager manager = new CacheManager();
+        String name = stats.getCacheName();
+
+        assertEquals("The cache manager does not see the same hits", 2L, manager.getHitCount(name));
+        assertEquals("The cache manager does not see the same loads", 1L, manager.getLoadCount(name));
+
+        // remote JMX clients receive the statistics in serialized form
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+        out.writeObject(stats);
+        out.close();
+
+        CacheStatistics copy = (CacheStatistics)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals("The serialized statistics do not match", stats.getHitCount(), copy.getHitCount());
+    }
+
+    @Test
+    public void statisticsTrackExpirationsAndFailedLoads() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Millisecond>(50, TimePeriod.MILLISECOND));
+
+        cache.put(ctx, Collections.singletonList("a"));
+        Thread.sleep(100L);
+        assertNull("An expired entry was returned", cache.get(ctx));
+        try {
+            cache.get(ctx, new Callable<Iterable<String>>() {
+                @Override
+                public Iterable<String> call() throws Exception {
+                    throw new CloudException("Boom");
+                }
+            });
+            fail("The loader error was swallowed");
+        }
+        catch( CloudException expected ) {
+            // counted below
+        }
+        CacheStatistics stats = cache.getStatistics();
+
+        assertEquals("The expiration count does not match", 1L, stats.getExpirationCount());
+        assertEquals("The load failure count does not match", 1L, stats.getLoadFailureCount());
+        assertEquals("A failed load was counted as a load", 0L, stats.getLoadCount());
+    }
+
+    @Test
+    public void invalidationDropsTheAffectedScopeOnly() {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION);
+
+        cache.put(ctx, Collections.singletonList("a"));
+        cache.put(otherRegion, Collections.singletonList("b"));
+        InvalidationBus.publish(otherAccount, String.class, "a");
+        assertNull("A change in the same region did not invalidate a region level cache", cache.get(ctx));
+        assertEquals("A change in another region invalidated the wrong scope", Collections.singletonList("b"), cache.get(otherRegion));
+        InvalidationBus.publish(otherRegion, Integer.class, null);
+        assertEquals("A change to an unrelated type invalidated the cache", Collections.singletonList("b"), cache.get(otherRegion));
+        cache.invalidateOn(Integer.class);
+        InvalidationBus.publish(otherRegion, Integer.class, null);
+        assertNull("A change to a subscribed type did not invalidate the cache", cache.get(otherRegion));
+    }
+
+    @Test
+    public void loadsInFlightDuringInvalidationAreNotCached() throws Exception {
+        final Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Iterable<String>> results = Collections.synchronizedList(new ArrayList<Iterable<String>>());
+        Thread loader = new Thread() {
+            public void run() {
+                try {
+                    results.add(cache.get(ctx, new Callable<Iterable<String>>() {
+                        @Override
+                        public Iterable<String> call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            return Collections.singletonList("stale");
+                        }
+                    }));
+                }
+                catch( Exception ignore ) {
+                    // checked below
+                }
+            }
+        };
+
+        loader.start();
+        assertTrue("The loader was never called", started.await(5, TimeUnit.SECONDS));
+        cache.invalidate(ctx);
+        release.countDown();
+        loader.join(5000L);
+        assertEquals("The caller waiting on the load did not get its results", Collections.singletonList(Collections.singletonList("stale")), results);
+        assertNull("A load overtaken by an invalidation was cached", cache.get(ctx));
+    }
+
+    @Test
+    public void loadsInFlightDuringClearAreNotCached() throws Exception {
+        final Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Iterable<String>> results = Collections.synchronizedList(new ArrayList<Iterable<String>>());
+        Thread loader = new Thread() {
+            public void run() {
+                try {
+                    results.add(cache.get(ctx, new Callable<Iterable<String>>() {
+                        @Override
+                        public Iterable<String> call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            return Collections.singletonList("stale");
+                        }
+                    }));
+                }
+                catch( Exception ignore ) {
+                    // checked below
+                }
+            }
+        };
+
+        loader.start();
+        assertTrue("The loader was never called", started.await(5, TimeUnit.SECONDS));
+        cache.clear();
+        release.countDown();
+        loader.join(5000L);
+        assertEquals("The caller waiting on the load did not get its results", Collections.singletonList(Collections.singletonList("stale")), results);
+        assertNull("A load overtaken by a clear was cached", cache.get(ctx));
+    }
+
+    @Test
+    public void missingIdsAreRememberedForTheNotFoundTimeout() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(5, TimePeriod.MINUTE), CacheEvictionPolicy.unbounded(), new TimePeriod<Millisecond>(100, TimePeriod.MILLISECOND));
+        final AtomicInteger loads = new AtomicInteger(0);
+        Callable<Iterable<String>> loader = new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                loads.incrementAndGet();
+                return Arrays.asList("a:1", "b:2");
+            }
+        };
+        Cache.Identifier<String> identifier = new Cache.Identifier<String>() {
+            @Override
+            public String getId(String item) {
+                return item.substring(0, item.indexOf(':'));
+            }
+        };
+
+        assertEquals("The indexed item does not match", "a:1", cache.get(ctx, "a", identifier, loader));
+        assertNull("A missing item was found", cache.get(ctx, "x", identifier, loader));
+        assertEquals("The first miss should reload the older listing", 2, loads.get());
+        assertTrue("The missing ID was not remembered", cache.isNotFound(ctx, "x"));
+        for( int i=0; i<5; i++ ) {
+            assertNull("A missing item was found", cache.get(ctx, "x", identifier, loader));
+        }
+        assertEquals("Repeated misses went back to the cloud", 2, loads.get());
+        assertFalse("A missing ID leaked into another account", cache.isNotFound(otherAccount, "x"));
+        Thread.sleep(150L);
+        assertFalse("The missing ID outlived the not-found timeout", cache.isNotFound(ctx, "x"));
+        cache.putNotFound(ctx, "y");
+        InvalidationBus.publish(ctx, String.class, "y");
+        assertFalse("An invalidation did not forget missing IDs", cache.isNotFound(ctx, "y"));
+        cache.setNotFoundTimeout(null);
+        cache.putNotFound(ctx, "z");
+        assertFalse("A missing ID was remembered with not-found caching off", cache.isNotFound(ctx, "z"));
+    }
+
+    @Test
+    public void newlyCreatedIdsAreNotRememberedAsMissing() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, cacheName, String.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Minute>(5, TimePeriod.MINUTE), CacheEvictionPolicy.unbounded(), new TimePeriod<Minute>(1, TimePeriod.MINUTE));
+        final AtomicInteger loads = new AtomicInteger(0);
+        Callable<Iterable<String>> loader = new Callable<Iterable<String>>() {
+            @Override
+            public Iterable<String> call() throws Exception {
+                // the cloud has not caught up with the create yet
+                loads.incrementAndGet();
+                return Arrays.asList("a:1", "b:2");
+            }
+        };
+        Cache.Identifier<String> identifier = new Cache.Identifier<String>() {
+            @Override
+            public String getId(String item) {
+                return item.substring(0, item.indexOf(':'));
+            }
+        };
+
+        InvalidationBus.publish(ctx, String.class, "n");
+        assertNull("A missing item was found", cache.get(ctx, "n", identifier, loader));
+        assertFalse("A newly created ID was remembered as missing", cache.isNotFound(ctx, "n"));
+        cache.putNotFound(ctx, "n");
+        assertFalse("A newly created ID was remembered as missing", cache.isNotFound(ctx, "n"));
+        assertNull("A missing item was found", cache.get(ctx, "x", identifier, loader));
+        assertTrue("Other missing IDs were not remembered", cache.isNotFound(ctx, "x"));
+        cache.putNotFound(otherAccount, "n");
+        assertTrue("A newly created ID was exempt in another account", cache.isNotFound(otherAccount, "n"));
+    }
+
+    @Test
+    public void singletonCacheIsContextSensitive() {
+        SingletonCache<String> cache = SingletonCache.getInstance(provider, cacheName, CacheLevel.CLOUD_ACCOUNT);
+
+        cache.put(ctx, "token");
+        assertEquals("The cached singleton does not match", "token", cache.get(otherRegion));
+        assertNull("Account level singleton leaked into another account", cache.get(otherAccount));
+        cache.clear();
+        assertNull("The singleton survived a clear", cache.get(ctx));
+    }
+}
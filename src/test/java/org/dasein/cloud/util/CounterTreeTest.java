@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies the roll-ups maintained by {@link CounterTree}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class CounterTreeTest {
+    @Test
+    public void totalsRollUpAtEveryLevel() {
+        CounterTree tree = new CounterTree();
+
+        tree.add(TraceKey.getInstance("p", "c", "a1", "list"), 2L);
+        tree.add(TraceKey.getInstance("p", "c", "a2", "list"), 3L);
+        tree.add(TraceKey.getInstance("p", "c", "a2", "get"), 1L);
+        tree.add(TraceKey.getInstance("p", "d", "a1", "list"), 4L);
+        tree.add(TraceKey.getInstance("q", "c", "a1", "list"), 5L);
+
+        assertEquals("The grand total is wrong", 15L, tree.get());
+        assertEquals("The provider total is wrong", 10L, tree.get("p"));
+        assertEquals("The cloud total is wrong", 6L, tree.get("p", "c"));
+        assertEquals("The account total is wrong", 4L, tree.get("p", "c", "a2"));
+        assertEquals("The call total is wrong", 3L, tree.get("p", "c", "a2", "list"));
+        assertEquals("The cross-account total is wrong", 5L, tree.getAcrossAccounts("p", "c", "list"));
+        assertEquals("An unknown account has a total", 0L, tree.get("p", "c", "a3"));
+        assertArrayEquals("The providers are wrong", new String[] { "p", "q" }, tree.listProviders());
+        assertArrayEquals("The clouds are wrong", new String[] { "c", "d" }, tree.listClouds("p"));
+        assertArrayEquals("The accounts are wrong", new String[] { "a1", "a2" }, tree.listAccounts("p", "c"));
+        assertArrayEquals("The names are wrong", new String[] { "get", "list" }, tree.listNames("p", "c"));
+        assertEquals("The leaf map is wrong", Long.valueOf(3L), tree.toMap().get("p.c.a2.list"));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        CounterTree tree = new CounterTree();
+        TraceKey key = TraceKey.getInstance("p", "c", "a", "list");
+
+        tree.add(key, 1L);
+        tree.clear();
+        assertEquals("Counts survived a clear", 0L, tree.get());
+        assertEquals("Providers survived a clear", 0, tree.listProviders().length);
+        tree.add(key, 1L);
+        assertEquals("Counting after a clear failed", 1L, tree.get("p", "c", "a", "list"));
+    }
+}
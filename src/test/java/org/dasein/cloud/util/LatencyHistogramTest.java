@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the accuracy and thread safety of {@link LatencyHistogram}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals("An empty histogram has a count", 0L, histogram.getCount());
+        assertEquals("An empty histogram has a percentile", 0L, histogram.getPercentile(99.0));
+        assertEquals("An empty histogram has a mean", 0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithoutGaps() {
+        long previous = -1L;
+
+        for( int bucket=0; LatencyHistogram.getUpperBound(bucket) > previous && bucket < 2000; bucket++ ) {
+            long upper = LatencyHistogram.getUpperBound(bucket);
+
+            assertEquals("The lower edge of bucket " + bucket + " is misplaced", bucket, LatencyHistogram.getBucket(previous + 1));
+            assertEquals("The upper edge of bucket " + bucket + " is misplaced", bucket, LatencyHistogram.getBucket(upper));
+            if( upper == Long.MAX_VALUE ) {
+                return;
+            }
+            previous = upper;
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for( long i=1; i<=10000; i++ ) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals("The count does not match", 10000L, histogram.getCount());
+        assertEquals("The maximum does not match", 10000000L, histogram.getMax());
+        assertEquals("The mean does not match", 5000500.0, histogram.getMean(), 0.5);
+        assertEquals("The median is out of range", 5000000.0, histogram.getPercentile(50.0), 5000000.0 * 0.07);
+        assertEquals("The 99th percentile is out of range", 9900000.0, histogram.getPercentile(99.0), 9900000.0 * 0.07);
+        assertEquals("The 100th percentile should be the maximum", 10000000L, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch done = new CountDownLatch(8);
+
+        for( int t=0; t<8; t++ ) {
+            new Thread() {
+                public void run() {
+                    for( int i=0; i<10000; i++ ) {
+                        histogram.record(i);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        assertTrue("The recording threads never completed", done.await(10, TimeUnit.SECONDS));
+        assertEquals("Concurrent records were lost", 80000L, histogram.getCount());
+        assertEquals("The maximum does not match", 9999L, histogram.getMax());
+    }
+
+    @Test
+    public void addedHistogramsRollUp() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+
+        for( int i=0; i<99; i++ ) {
+            fast.record(1000L);
+        }
+        slow.record(1000000L);
+        all.add(fast);
+        all.add(slow);
+        assertEquals("The rolled up count is wrong", 100L, all.getCount());
+        assertEquals("The rolled up maximum is wrong", 1000000L, all.getMax());
+        assertTrue("The rolled up median is wrong", all.getPercentile(50.0) < 1100L);
+        assertEquals("The rolled up tail is wrong", 1000000L, all.getPercentile(100.0));
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies the sliding window of {@link RateWindow}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class RateWindowTest {
+    @Test
+    public void countsOnlyCompleteSecondsInTheWindow() {
+        RateWindow window = new RateWindow();
+        long now = 1000000000000L;
+
+        window.record(now - 3500L);
+        window.record(now - 1500L);
+        window.record(now - 1200L);
+        window.record(now);
+        assertEquals("The second in progress was counted", 0L, window.getCount(1, now));
+        assertEquals("The window of two seconds is wrong", 2L, window.getCount(2, now));
+        assertEquals("The window of five seconds is wrong", 3L, window.getCount(5, now));
+    }
+
+    @Test
+    public void slotsAreReusedAfterTheWindowPasses() {
+        RateWindow window = new RateWindow();
+        long now = 1000000000000L;
+
+        window.record(now);
+        window.record(now + (RateWindow.MAX_WINDOW + 1) * 1000L);
+        assertEquals("An expired second was counted", 0L, window.getCount(RateWindow.MAX_WINDOW, now + (RateWindow.MAX_WINDOW + 1) * 1000L));
+        assertEquals("The reused slot was not counted", 1L, window.getCount(1, now + (RateWindow.MAX_WINDOW + 2) * 1000L));
+    }
+}
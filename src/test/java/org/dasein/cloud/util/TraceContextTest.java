@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.RequestTrackingStrategy;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that {@link TraceContext} carries trace state across threads.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class TraceContextTest {
+    static private int testNumber = 0;
+
+    private TraceMode       mode;
+    private CloudProvider   provider;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Context.Provider", "Context Cloud", "https://context.example.com/" + testNumber, TestNewCloudProvider.class);
+
+        mode = APITrace.getMode();
+        APITrace.setMode(TraceMode.FULL_TREE);
+        APITrace.reset();
+        provider = cloud.createContext("account", "region").connect();
+        pool = TraceContext.propagating(Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        APITrace.reset();
+        APITrace.setMode(mode);
+    }
+
+    @Test
+    public void fanOutIsAttributedToTheOrigin() throws Exception {
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        APITrace.begin(provider, "VM.launchMany");
+        pool.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                APITrace.begin(provider, "VM.launch");
+                APITrace.trace(provider, "runInstances");
+                APITrace.end();
+                return null;
+            }
+        }).get();
+        APITrace.end();
+
+        String trace = APITrace.getStackTrace(p, c, "VM.launchMany");
+
+        assertNotNull("The originating operation was not captured", trace);
+        assertTrue("The spawned operation is not a child of the origin", trace.contains("VM.launch\"") && trace.contains("runInstances"));
+        assertTrue("The span is not marked as asynchronous", trace.contains("\"async\":true"));
+        assertEquals("Calls on other threads were not counted for the origin", 1L, APITrace.getAPICountForOperation(p, c, "account", "VM.launchMany"));
+        assertEquals("The spawned operation was not counted", 1L, APITrace.getOperationCount(p, c, "account", "VM.launch"));
+    }
+
+    @Test
+    public void requestTrackingIsPropagated() throws Exception {
+        final RequestTrackingStrategy strategy = RequestTrackingStrategy.getInstance("request-1");
+
+        provider.getContext().withRequestTracking(strategy);
+        APITrace.begin(provider, "VM.launchMany");
+
+        final Callable<RequestTrackingStrategy> check = new Callable<RequestTrackingStrategy>() {
+            @Override
+            public RequestTrackingStrategy call() throws Exception {
+                return TraceContext.getRequestTracking(null);
+            }
+        };
+
+        assertSame("The strategy was not carried to the pool", strategy, pool.submit(check).get());
+        APITrace.end();
+        assertSame("The strategy was not carried without an operation", strategy, TraceContext.getRequestTracking(provider.getContext()));
+        assertNull("The strategy leaked into a pooled thread", pool.submit(check).get());
+    }
+
+    @Test
+    public void unendedOperationsAreDiscarded() throws Exception {
+        APITrace.begin(provider, "VM.launchMany");
+        pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                APITrace.begin(provider, "VM.launch");
+                APITrace.end();
+                APITrace.end(); // must not end the span
+                APITrace.begin(provider, "VM.leaked");
+            }
+        }).get();
+        APITrace.CloudOperation current = pool.submit(new Callable<APITrace.CloudOperation>() {
+            @Override
+            public APITrace.CloudOperation call() throws Exception {
+                return APITrace.getCurrentOperation();
+            }
+        }).get();
+
+        assertTrue("Pooled threads keep operations after their task", current != null && current.origin != null);
+        APITrace.end();
+        assertNull("The origin is still in progress", APITrace.getCurrentOperation());
+    }
+
+    @Test
+    public void latencyIsRecordedOnTheThreadMakingTheCall() throws Exception {
+        String p = provider.getProviderName();
+        String c = provider.getCloudName();
+
+        APITrace.trace(provider, "listServers");
+        pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                APITrace.recordLatency(provider, 5000000L);
+            }
+        }).get();
+        APITrace.recordLatency(provider, 9000000L);
+        assertEquals("The latency of the call made on another thread is wrong", 5000000L, APITrace.getAPIMaxLatency(p, c, "listServers"));
+
+        final Callable<String> check = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return APITrace.getPendingApiCall();
+            }
+        };
+
+        assertNull("The call leaked into a pooled thread", pool.submit(check).get());
+    }
+
+    @Test
+    public void nothingIsAttachedWhenOff() throws Exception {
+        APITrace.setMode(TraceMode.OFF);
+        APITrace.begin(provider, "VM.launchMany");
+        TraceContext.capture().run(new Runnable() {
+            @Override
+            public void run() {
+                assertNull("An operation is in progress while tracing is off", APITrace.getCurrentOperation());
+            }
+        });
+        APITrace.end();
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.dasein.util.uom.time.Millisecond;
+import org.dasein.util.uom.time.TimePeriod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the snapshots handed to a {@link TraceReporter} and the built-in reporters.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class TraceReporterTest {
+    static private int testNumber = 0;
+
+    private File          directory;
+    private TraceMode     mode;
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Reporter Provider", "Reporter Cloud", "https://reporter.example.com/" + testNumber, TestNewCloudProvider.class);
+
+        mode = APITrace.getMode();
+        APITrace.setMode(TraceMode.TIMINGS);
+        APITrace.reset();
+        provider = cloud.createContext("account", "region").connect();
+        directory = Files.createTempDirectory("dasein-trace").toFile();
+
+        APITrace.begin(provider, "VM.launch");
+        APITrace.trace(provider, "runInstances");
+        APITrace.recordLatency(provider, 2000000L);
+        APITrace.end();
+    }
+
+    @After
+    public void tearDown() {
+        APITrace.reset();
+        APITrace.setMode(mode);
+        File[] files = directory.listFiles();
+
+        if( files != null ) {
+            for( File f : files ) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void snapshotCopiesCountsAndTimings() {
+        TraceSnapshot snapshot = APITrace.snapshot();
+
+        assertEquals("The API statistics are wrong", 1, snapshot.getApis().size());
+        assertEquals("The operation statistics are wrong", 1, snapshot.getOperations().size());
+
+        TraceStatistics api = snapshot.getApis().get(0);
+        TraceStatistics op = snapshot.getOperations().get(0);
+
+        assertEquals("The API name is wrong", "runInstances", api.getName());
+        assertEquals("The API count is wrong", 1L, api.getCount());
+        assertEquals("The API latency is wrong", 2000000L, api.getMaxLatency());
+        assertEquals("The operation name is wrong", "VM.launch", op.getName());
+        assertEquals("The operation API calls are wrong", 1L, op.getApiCallCount());
+        assertEquals("The operation latency was not recorded", 1L, op.getLatencyCount());
+    }
+
+    @Test
+    public void prometheusFormatIncludesCountsAndQuantiles() {
+        String text = PrometheusTraceReporter.format(APITrace.snapshot());
+        String labels = "{provider=\"" + provider.getProviderName() + "\",cloud=\"" + provider.getCloudName() + "\",account=\"account\",api=\"runInstances\"";
+
+        assertTrue("The API counter is missing", text.contains("# TYPE dasein_api_calls_total counter\n"));
+        assertTrue("The API count is wrong", text.contains("dasein_api_calls_total" + labels + "} 1\n"));
+        assertTrue("The API quantile is wrong", text.contains("dasein_api_latency_seconds" + labels + ",quantile=\"0.99\"} 0.002\n"));
+        assertTrue("The operation API calls are missing", text.contains("dasein_operation_api_calls_total{"));
+    }
+
+    @Test
+    public void prometheusReporterWritesFile() throws IOException {
+        File file = new File(directory, "dasein.prom");
+        PrometheusTraceReporter reporter = PrometheusTraceReporter.toFile(file);
+
+        reporter.report(APITrace.snapshot());
+        assertTrue("The metrics file is incomplete", new String(Files.readAllBytes(file.toPath()), "UTF-8").contains("dasein_api_calls_total{"));
+        assertEquals("Temporary files were left behind", 1, directory.listFiles().length);
+    }
+
+    @Test
+    public void prometheusReporterServesHttp() throws IOException {
+        PrometheusTraceReporter reporter = PrometheusTraceReporter.toHttp(0);
+
+        try {
+            reporter.report(APITrace.snapshot());
+
+            InputStream in = new URL("http://127.0.0.1:" + reporter.getPort() + "/metrics").openStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+
+            try {
+                while( (count = in.read(buffer)) > 0 ) {
+                    bytes.write(buffer, 0, count);
+                }
+            }
+            finally {
+                in.close();
+            }
+            assertTrue("The endpoint did not serve the report", new String(bytes.toByteArray(), "UTF-8").contains("dasein_operation_calls_total{"));
+        }
+        finally {
+            reporter.close();
+        }
+    }
+
+    @Test
+    public void jsonLinesReporterAppendsOneLinePerStatistic() throws IOException {
+        File file = new File(directory, "dasein.jsonl");
+        JsonLinesTraceReporter reporter = new JsonLinesTraceReporter(file);
+
+        reporter.report(APITrace.snapshot());
+        reporter.report(APITrace.snapshot());
+
+        List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+
+        assertEquals("The wrong number of lines was written", 4, lines.size());
+        assertTrue("A line does not look like JSON", lines.get(0).startsWith("{") && lines.get(0).endsWith("}"));
+    }
+
+    @Test
+    public void registeredReportersAreCalledPeriodically() throws InterruptedException {
+        final CountDownLatch reports = new CountDownLatch(2);
+        final CountDownLatch closed = new CountDownLatch(1);
+        TraceReporter reporter = new TraceReporter() {
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+
+            @Override
+            public void report(TraceSnapshot snapshot) {
+                reports.countDown();
+            }
+        };
+
+        APITrace.addReporter(reporter, new TimePeriod<Millisecond>(10, TimePeriod.MILLISECOND));
+        try {
+            assertTrue("The reporter was not called", reports.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            APITrace.removeReporter(reporter);
+        }
+        assertTrue("The reporter was not closed", closed.await(1, TimeUnit.SECONDS));
+    }
+}
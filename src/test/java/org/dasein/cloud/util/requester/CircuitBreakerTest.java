@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.client.methods.HttpGet;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies the state transitions of {@link CircuitBreaker} and which failures count against an endpoint.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class CircuitBreakerTest {
+    static private final long OPEN_TIME = TimeUnit.SECONDS.toNanos(1L);
+
+    static private CircuitBreaker breaker() {
+        return new CircuitBreaker("https://api.example.com:443 (region)", 10, 5, 50, 1000, 2);
+    }
+
+    static private void assertRejected(CircuitBreaker breaker, long now) {
+        try {
+            breaker.acquire(now);
+            fail("The request was let through an open breaker");
+        }
+        catch( CloudException e ) {
+            assertEquals("The wrong error type was raised", CloudErrorType.UNAVAILABLE, e.getErrorType());
+        }
+    }
+
+    @Test
+    public void opensAtTheFailureRate() throws Exception {
+        CircuitBreaker breaker = breaker();
+
+        for( int i=0; i<4; i++ ) {
+            assertFalse("A closed breaker made a trial", breaker.acquire(0L));
+            breaker.record(0L, false, true);
+        }
+        assertEquals("The breaker opened on too few requests", CircuitBreaker.State.CLOSED, breaker.getState(0L));
+        breaker.record(0L, false, true);
+        assertEquals("The breaker did not open", CircuitBreaker.State.OPEN, breaker.getState(0L));
+        assertRejected(breaker, OPEN_TIME - 1L);
+    }
+
+    @Test
+    public void oldOutcomesLeaveTheWindow() throws Exception {
+        CircuitBreaker breaker = breaker();
+
+        for( int i=0; i<10; i++ ) {
+            breaker.record(0L, false, false);
+        }
+        for( int i=0; i<4; i++ ) {
+            breaker.record(0L, false, true);
+        }
+        assertEquals("The failure rate is wrong", 40.0, breaker.getFailureRate(), 0.0001);
+        for( int i=0; i<10; i++ ) {
+            breaker.record(0L, false, false);
+        }
+        assertEquals("Old failures were still counted", 0.0, breaker.getFailureRate(), 0.0001);
+        for( int i=0; i<4; i++ ) {
+            breaker.record(0L, false, true);
+        }
+        assertEquals("The breaker opened below the failure rate", CircuitBreaker.State.CLOSED, breaker.getState(0L));
+        breaker.record(0L, false, true);
+        assertEquals("The breaker did not open at the failure rate", CircuitBreaker.State.OPEN, breaker.getState(0L));
+    }
+
+    @Test
+    public void successfulTrialsCloseTheBreaker() throws Exception {
+        CircuitBreaker breaker = breaker();
+
+        breaker.trip();
+
+        long now = System.nanoTime() + OPEN_TIME;
+
+        assertEquals("The breaker is not half open", CircuitBreaker.State.HALF_OPEN, breaker.getState(now));
+        assertTrue("The first trial was not let through", breaker.acquire(now));
+        assertTrue("The second trial was not let through", breaker.acquire(now));
+        assertRejected(breaker, now);
+        breaker.record(now, true, false);
+        assertEquals("One trial closed the breaker", CircuitBreaker.State.HALF_OPEN, breaker.getState(now));
+        breaker.record(now, true, false);
+        assertEquals("The trials did not close the breaker", CircuitBreaker.State.CLOSED, breaker.getState(now));
+        assertFalse("A closed breaker made a trial", breaker.acquire(now));
+    }
+
+    @Test
+    public void failedTrialReopensTheBreaker() throws Exception {
+        CircuitBreaker breaker = breaker();
+
+        breaker.trip();
+
+        long now = System.nanoTime() + OPEN_TIME;
+
+        assertTrue("The trial was not let through", breaker.acquire(now));
+        breaker.record(now, true, true);
+        assertEquals("The failed trial did not reopen the breaker", CircuitBreaker.State.OPEN, breaker.getState(now));
+        assertRejected(breaker, now + OPEN_TIME - 1L);
+        assertTrue("The breaker did not try again", breaker.acquire(now + OPEN_TIME));
+    }
+
+    @Test
+    public void onlyUnhealthyEndpointsCount() {
+        assertTrue("503 did not count", CircuitBreaker.isFailure(new CloudResponseException(CloudErrorType.GENERAL, 503, "", "down")));
+        assertTrue("502 did not count", CircuitBreaker.isFailure(new CloudResponseException(CloudErrorType.GENERAL, 502, "", "down")));
+        assertFalse("429 counted", CircuitBreaker.isFailure(new CloudResponseException(CloudErrorType.THROTTLING, 429, "", "slow down")));
+        assertFalse("404 counted", CircuitBreaker.isFailure(new CloudResponseException(CloudErrorType.GENERAL, 404, "", "missing")));
+        assertTrue("A refused connection did not count", CircuitBreaker.isFailure(new ConnectException("Connection refused")));
+        assertTrue("A timeout did not count", CircuitBreaker.isFailure(new SocketTimeoutException("Read timed out")));
+        assertFalse("An arbitrary I/O error counted", CircuitBreaker.isFailure(new IOException("Stream closed")));
+    }
+
+    @Test
+    public void breakersAreVisibleOverJmx() throws Exception {
+        Cloud cloud = Cloud.register("Breaker.Provider", "Breaker Cloud", "https://breaker.example.com/", TestNewCloudProvider.class);
+        CloudProvider provider = cloud.createContext("account", "jmx-region").connect();
+        CircuitBreaker breaker = CircuitBreaker.getInstance(provider, new HttpGet("https://breaker.example.com/servers"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CircuitBreaker.OBJECT_NAME);
+        String[] signature = new String[] { String.class.getName() };
+
+        assertEquals("The breaker is named after its endpoint and region", "https://breaker.example.com:443 (jmx-region)", breaker.getName());
+        server.invoke(name, "trip", new Object[] { breaker.getName() }, signature);
+        assertEquals("The breaker was not tripped", "OPEN", server.invoke(name, "getState", new Object[] { breaker.getName() }, signature));
+        server.invoke(name, "reset", new Object[] { breaker.getName() }, signature);
+        assertEquals("The breaker was not reset", CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.dasein.cloud.util.requester.streamprocessors.StreamProcessor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies when {@link AbstractDaseinRequestExecutor} retries a failed attempt.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class DaseinRequestExecutorTest {
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+
+    static private int testNumber = 0;
+
+    static private <T> T stub(Class<T> type, final Object... answers) {
+        return type.cast(Proxy.newProxyInstance(DaseinRequestExecutorTest.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                for( int i=0; i<answers.length; i+=2 ) {
+                    if( m.getName().equals(answers[i]) ) {
+                        return answers[i+1];
+                    }
+                }
+                return (m.getReturnType() == boolean.class ? Boolean.FALSE : null);
+            }
+        }));
+    }
+
+    /**
+     * Answers each request with a list of items whose connection is reset part way through the body, after failing
+     * the first requests before any response is received.
+     */
+    static private class ResettingClient extends CloseableHttpClient {
+        final AtomicInteger calls = new AtomicInteger(0);
+        final int           failuresBeforeResponse;
+
+        ResettingClient(int failuresBeforeResponse) {
+            this.failuresBeforeResponse = failuresBeforeResponse;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+            if( calls.incrementAndGet() <= failuresBeforeResponse ) {
+                throw new SocketException("Connection reset");
+            }
+            InputStream body = new SequenceInputStream(new ByteArrayInputStream("1\n2\n".getBytes(UTF8)), new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new SocketException("Connection reset");
+                }
+            });
+
+            return stub(CloseableHttpResponse.class, "getStatusLine", stub(StatusLine.class, "getStatusCode", 200), "getEntity", stub(HttpEntity.class, "getContent", body));
+        }
+
+        @Override
+        public HttpParams getParams() {
+            return null;
+        }
+
+        @Override
+        public ClientConnectionManager getConnectionManager() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Executor.Provider", "Executor Cloud", "https://executor.example.com/", TestNewCloudProvider.class);
+
+        provider = cloud.createContext("account" + testNumber, "region").connect();
+        provider.getContext().getCustomProperties().setProperty(RetryPolicy.BASE_DELAY, "1");
+    }
+
+    /**
+     * Builds an executor whose handler passes each line of the response on as soon as it is read.
+     */
+    private DaseinRequestExecutor<Void> streaming(final List<String> ids) {
+        return new DaseinRequestExecutor<Void>(provider, HttpClientBuilder.create(), new HttpGet("https://executor" + testNumber + ".example.com/list"),
+                new DaseinResponseHandler<Void>(new StreamProcessor<Void>() {
+                    @Override
+                    public Void read(InputStream inputStream, Class<Void> classType) throws IOException {
+                        StringBuilder line = new StringBuilder();
+                        int c;
+
+                        while( (c = inputStream.read()) != -1 ) {
+                            if( c == '\n' ) {
+                                ids.add(line.toString());
+                                line.setLength(0);
+                            }
+                            else {
+                                line.append((char)c);
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public String write(Void object) {
+                        return null;
+                    }
+                }, Void.class));
+    }
+
+    @Test
+    public void resetBeforeTheResponseIsRetried() throws Exception {
+        List<String> ids = new ArrayList<String>();
+        ResettingClient client = new ResettingClient(1);
+
+        try {
+            streaming(ids).execute(client, new HttpGet("https://executor" + testNumber + ".example.com/list"));
+            fail("The reset in the body was not reported");
+        }
+        catch( CloudException expected ) {
+            // the body is always reset
+        }
+        assertEquals("The reset before the response was not retried", 2, client.calls.get());
+        assertEquals("Items were not read from the retried response", 2, ids.size());
+    }
+
+    @Test
+    public void resetPartWayThroughAStreamIsNotRetried() throws Exception {
+        List<String> ids = new ArrayList<String>();
+        ResettingClient client = new ResettingClient(0);
+
+        try {
+            streaming(ids).execute(client, new HttpGet("https://executor" + testNumber + ".example.com/list"));
+            fail("The reset in the body was not reported");
+        }
+        catch( CloudException expected ) {
+            // expected
+        }
+        assertEquals("The request was sent again after items were passed on", 1, client.calls.get());
+        assertEquals("Items were passed on twice", 2, ids.size());
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the per-endpoint cap on requests in flight and how an adaptive cap follows the endpoint.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class EndpointLimiterTest {
+    static private int testNumber = 0;
+
+    private ExecutorService executor;
+    private String          endpoint;
+
+    @Before
+    public void setUp() {
+        testNumber++;
+        executor = Executors.newFixedThreadPool(8);
+        endpoint = "https://limit" + testNumber + ".example.com:443";
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void endpointsIgnorePathsAndDefaultPorts() {
+        assertEquals("The endpoint is wrong", "https://api.example.com:443", EndpointLimiter.getEndpoint(new HttpGet("https://API.example.com/servers?x=1")));
+        assertEquals("The endpoint is wrong", "http://api.example.com:8080", EndpointLimiter.getEndpoint(new HttpGet("http://api.example.com:8080/")));
+    }
+
+    @Test
+    public void requestsInFlightAreCapped() throws InterruptedException {
+        final EndpointLimiter limiter = EndpointLimiter.getInstance(endpoint, 2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(6);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger peak = new AtomicInteger(0);
+
+        for( int i=0; i<6; i++ ) {
+            limiter.submit(executor, new Runnable() {
+                @Override
+                public void run() {
+                    int n = running.incrementAndGet();
+
+                    while( n > peak.get() && !peak.compareAndSet(peak.get(), n) ) {
+                        // retry
+                    }
+                    try {
+                        release.await();
+                    }
+                    catch( InterruptedException ignore ) {
+                        // finish
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        Thread.sleep(100L);
+        assertEquals("Too many requests are in flight", 2, limiter.getInFlight());
+        assertEquals("Requests over the limit are not waiting", 4, limiter.getWaiting());
+        release.countDown();
+        assertTrue("The waiting requests did not run", done.await(10, TimeUnit.SECONDS));
+        assertEquals("The cap was exceeded", 2, peak.get());
+        Thread.sleep(50L);
+        assertEquals("Permits were not returned", 0, limiter.getInFlight());
+    }
+
+    @Test
+    public void raisingTheLimitStartsWaitingRequests() throws InterruptedException {
+        EndpointLimiter limiter = EndpointLimiter.getInstance(endpoint, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(3);
+
+        for( int i=0; i<3; i++ ) {
+            limiter.submit(executor, new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch( InterruptedException ignore ) {
+                        // finish
+                    }
+                }
+            });
+        }
+        assertEquals("The limiter was recreated", 1, EndpointLimiter.getInstance(endpoint, 10).getLimit());
+        limiter.setLimit(3, executor);
+        assertTrue("Waiting requests were not started", started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void directRequestsWaitForASlot() throws InterruptedException {
+        final EndpointLimiter limiter = EndpointLimiter.getInstance(endpoint, 1);
+        final CountDownLatch admitted = new CountDownLatch(1);
+
+        assertTrue("The free slot was not taken", limiter.acquire());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if( limiter.acquire() ) {
+                        admitted.countDown();
+                        limiter.release();
+                    }
+                }
+                catch( InterruptedException ignore ) {
+                    // finish
+                }
+            }
+        });
+        assertFalse("A request was admitted over the limit", admitted.await(100, TimeUnit.MILLISECONDS));
+        assertEquals("The request is not waiting", 1, limiter.getWaiting());
+        limiter.release();
+        assertTrue("The waiting request was not admitted", admitted.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50L);
+        assertEquals("Slots were not returned", 0, limiter.getInFlight());
+    }
+
+    @Test
+    public void tasksReuseTheirSlot() throws InterruptedException {
+        final EndpointLimiter limiter = EndpointLimiter.getInstance(endpoint, 1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+
+        limiter.submit(executor, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    acquired.set(limiter.acquire());
+                }
+                catch( InterruptedException ignore ) {
+                    // finish
+                }
+                done.countDown();
+            }
+        });
+        assertTrue("The task did not run", done.await(10, TimeUnit.SECONDS));
+        assertFalse("The task took a second slot", acquired.get());
+    }
+
+    @Test
+    public void adaptiveLimitGrowsWhileHealthy() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 10);
+        long now = 0L;
+
+        for( int i=0; i<1000; i++ ) {
+            now += 1000000L;
+            limit.onSample(now, 1000000L, limit.getLimit(), false);
+        }
+        assertEquals("The limit did not grow to its ceiling", 10, limit.getLimit());
+    }
+
+    @Test
+    public void adaptiveLimitIgnoresIdleEndpoints() {
+        AdaptiveLimit limit = new AdaptiveLimit(8, 20);
+
+        for( int i=0; i<1000; i++ ) {
+            limit.onSample(i * 1000000L, 1000000L, 1, false);
+        }
+        assertEquals("The limit grew without load", 8, limit.getLimit());
+    }
+
+    @Test
+    public void adaptiveLimitBacksOffOnThrottling() {
+        AdaptiveLimit limit = new AdaptiveLimit(16, 20);
+
+        limit.onSample(0L, 1000000L, 16, false);
+        assertEquals("Throttling did not shrink the limit", 12, limit.onSample(2000000L, 0L, 16, true));
+        assertEquals("A burst of throttling shrank the limit twice", 12, limit.onSample(2500000L, 0L, 16, true));
+        assertEquals("Later throttling did not shrink the limit", 9, limit.onSample(4000000L, 0L, 16, true));
+    }
+
+    @Test
+    public void adaptiveLimitBacksOffWhenLatencyClimbs() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 10);
+        long now = 0L;
+
+        for( int i=0; i<100; i++ ) {
+            now += 1000000L;
+            limit.onSample(now, 1000000L, 10, false);
+        }
+        for( int i=0; i<20; i++ ) {
+            now += 10000000L;
+            limit.onSample(now, 10000000L, 10, false);
+        }
+        assertTrue("Rising latency did not shrink the limit", limit.getLimit() < 10);
+    }
+
+    @Test
+    public void adaptiveLimitersFollowTheirSamples() throws InterruptedException {
+        EndpointLimiter limiter = EndpointLimiter.getInstance(endpoint, 4, 8, true);
+
+        assertTrue("The limiter is not adaptive", limiter.isAdaptive());
+        limiter.record(1000000L, false);
+        limiter.record(1000000L, true);
+        assertEquals("Throttling did not lower the limit", 3, limiter.getLimit());
+        assertFalse("A fixed limiter is adaptive", EndpointLimiter.getInstance(endpoint + "/fixed", 4).isAdaptive());
+    }
+}
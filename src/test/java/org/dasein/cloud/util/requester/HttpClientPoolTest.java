@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies that {@link HttpClientPool} shares clients between requests.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class HttpClientPoolTest {
+    static private int testNumber = 0;
+
+    private Cloud         cloud;
+    private CloudProvider provider;
+    private CloudProvider otherAccount;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        cloud = Cloud.register("Pool.Provider", "Pool Cloud", "https://pool.example.com/" + testNumber, TestNewCloudProvider.class);
+
+        provider = cloud.createContext("account", "region").connect();
+        otherAccount = cloud.createContext("other", "region").connect();
+        provider.getContext().getCustomProperties().setProperty(HttpClientPool.POOLING, "true");
+        otherAccount.getContext().getCustomProperties().setProperty(HttpClientPool.POOLING, "true");
+    }
+
+    @After
+    public void tearDown() {
+        HttpClientPool.shutdownAll();
+    }
+
+    @Test
+    public void clientsAreSharedPerAccountAndProxy() throws Exception {
+        HttpClientPool.Lease first = HttpClientPool.lease(provider, null, HttpClientBuilder.create());
+        HttpClientPool.Lease second = HttpClientPool.lease(provider, null, HttpClientBuilder.create());
+        HttpClientPool.Lease other = HttpClientPool.lease(otherAccount, null, HttpClientBuilder.create());
+        HttpClientPool.Lease proxied = HttpClientPool.lease(provider, new HttpHost("proxy.example.com", 3128), HttpClientBuilder.create());
+
+        assertTrue("The client is not pooled", first.isPooled());
+        assertSame("The client was not shared", first.getClient(), second.getClient());
+        assertNotSame("Accounts share a client", first.getClient(), other.getClient());
+        assertNotSame("Proxied requests share a direct client", first.getClient(), proxied.getClient());
+        assertEquals("The pools are wrong", 3, HttpClientPool.getInstance().getPools().length);
+        first.close();
+        second.close();
+        other.close();
+        proxied.close();
+    }
+
+    @Test
+    public void credentialsAreNotShared() throws Exception {
+        CloudProvider[] providers = new CloudProvider[3];
+        String[] keys = { "alice", "bob", "alice" };
+
+        for( int i=0; i<providers.length; i++ ) {
+            providers[i] = cloud.createContext("account", "region", new ProviderContext.Value<byte[][]>("apiKeys", new byte[][] { keys[i].getBytes(), "secret".getBytes() })).connect();
+            providers[i].getContext().getCustomProperties().setProperty(HttpClientPool.POOLING, "true");
+        }
+        HttpClientPool.Lease first = HttpClientPool.lease(providers[0], null, HttpClientBuilder.create());
+        HttpClientPool.Lease other = HttpClientPool.lease(providers[1], null, HttpClientBuilder.create());
+        HttpClientPool.Lease same = HttpClientPool.lease(providers[2], null, HttpClientBuilder.create());
+
+        assertNotSame("Contexts with different credentials share a client", first.getClient(), other.getClient());
+        assertSame("Contexts with the same credentials do not share a client", first.getClient(), same.getClient());
+        for( String name : HttpClientPool.getInstance().getPools() ) {
+            assertFalse("A pool name reveals the credentials", name.contains("alice") || name.contains("secret"));
+        }
+        first.close();
+        other.close();
+        same.close();
+    }
+
+    @Test
+    public void reusedBuildersDoNotShareThePool() throws Exception {
+        HttpClientBuilder builder = HttpClientBuilder.create();
+        HttpClientPool.Lease pooled = HttpClientPool.lease(provider, null, builder);
+
+        provider.getContext().getCustomProperties().remove(HttpClientPool.POOLING);
+        HttpClientPool.lease(provider, null, builder).close();
+
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+
+        socket.close();
+        try {
+            pooled.getClient().execute(new HttpGet("http://127.0.0.1:" + port + "/")).close();
+            fail("Nothing is listening on port " + port);
+        }
+        catch( IllegalStateException e ) {
+            fail("Closing a client built from the same builder shut down the pool: " + e.getMessage());
+        }
+        catch( IOException expected ) {
+            // connection refused
+        }
+        pooled.close();
+    }
+
+    @Test
+    public void poolLimitsComeFromTheContext() throws Exception {
+        provider.getContext().getCustomProperties().setProperty(HttpClientPool.MAX_TOTAL, "7");
+        provider.getContext().getCustomProperties().setProperty(HttpClientPool.MAX_PER_ROUTE, "3");
+        HttpClientPool.lease(provider, null, HttpClientBuilder.create()).close();
+
+        String name = HttpClientPool.getInstance().getPools()[0];
+
+        assertEquals("The total limit is wrong", 7, HttpClientPool.getInstance().getMaxConnections(name));
+        assertEquals("The route limit is wrong", 3, HttpClientPool.getInstance().getMaxConnectionsPerRoute(name));
+        assertEquals("Unknown pools have connections", 0, HttpClientPool.getInstance().getMaxConnections("nonsense"));
+    }
+
+    @Test
+    public void poolingIsOffUnlessTurnedOn() throws Exception {
+        provider.getContext().getCustomProperties().remove(HttpClientPool.POOLING);
+
+        HttpClientPool.Lease lease = HttpClientPool.lease(provider, null, HttpClientBuilder.create());
+
+        assertFalse("The client is pooled", lease.isPooled());
+        assertEquals("A pool was created", 0, HttpClientPool.getInstance().getPools().length);
+        lease.close();
+    }
+
+    @Test
+    public void unusedClientsAreDiscarded() throws Exception {
+        HttpClientPool.Lease lease = HttpClientPool.lease(provider, null, HttpClientBuilder.create());
+
+        HttpClientPool.reap(System.currentTimeMillis() + HttpClientPool.CLIENT_TIMEOUT + 1L);
+        assertEquals("A client in use was discarded", 1, HttpClientPool.getInstance().getPools().length);
+        lease.close();
+        HttpClientPool.reap(System.currentTimeMillis() + HttpClientPool.CLIENT_TIMEOUT + 1L);
+        assertEquals("An unused client was kept", 0, HttpClientPool.getInstance().getPools().length);
+    }
+}
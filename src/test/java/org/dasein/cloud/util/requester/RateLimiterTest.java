@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.util.APITrace;
+import org.dasein.cloud.util.TraceContext;
+import org.dasein.cloud.util.TraceMode;
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies that {@link RateLimiter} spaces out requests per account and API.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class RateLimiterTest {
+    static private final long SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    static private int testNumber = 0;
+
+    private CloudProvider provider;
+    private String        prefix;
+
+    @Before
+    public void setUp() throws Exception {
+        testNumber++;
+        Cloud cloud = Cloud.register("Rate.Provider", "Rate Cloud", "https://rate.example.com/", TestNewCloudProvider.class);
+
+        provider = cloud.createContext("account" + testNumber, "region").connect();
+        prefix = provider.getProviderName() + "/" + provider.getCloudName() + "/account" + testNumber + "/";
+    }
+
+    @Test
+    public void bucketAllowsBurstThenSpacesRequests() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(2.0, 2.0, 0L);
+
+        assertEquals("The first permit waited", 0L, bucket.reserve(0L, SECOND));
+        assertEquals("The burst permit waited", 0L, bucket.reserve(0L, SECOND));
+        assertEquals("The third permit did not wait for the rate", SECOND/2, bucket.reserve(0L, SECOND));
+        assertEquals("Reservations did not queue", SECOND, bucket.reserve(0L, SECOND));
+        assertEquals("A reservation beyond the maximum wait was taken", -1L, bucket.reserve(0L, SECOND));
+        assertEquals("Permits did not accrue over time", 0L, bucket.reserve(3L * SECOND, SECOND));
+    }
+
+    @Test
+    public void bucketNeverHoldsMoreThanItsCapacity() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket(10.0, 5.0, 0L);
+
+        assertEquals("The bucket held more than its capacity", 5.0, bucket.getAvailable(60L * SECOND), 0.0001);
+        bucket.configure(10.0, 2.0, 60L * SECOND);
+        assertEquals("Lowering the capacity did not drain the bucket", 2.0, bucket.getAvailable(60L * SECOND), 0.0001);
+    }
+
+    @Test
+    public void longestApiPrefixApplies() {
+        Properties p = new Properties();
+
+        p.setProperty(RateLimiter.RATE + ".Describe", "20");
+        p.setProperty(RateLimiter.RATE + ".DescribeInstances", "5");
+        p.setProperty(RateLimiter.RATE + ".Run", "invalid");
+        String[] prefixes = RateLimiter.getPrefixes(p);
+
+        assertEquals("The longest prefix was not used", "DescribeInstances", RateLimiter.getFamily(prefixes, "DescribeInstancesStatus"));
+        assertEquals("The shorter prefix was not used", "Describe", RateLimiter.getFamily(prefixes, "DescribeImages"));
+        assertNull("An invalid rate was used", RateLimiter.getFamily(prefixes, "RunInstances"));
+        assertNull("An unconfigured call was limited", RateLimiter.getFamily(prefixes, "TerminateInstances"));
+    }
+
+    @Test
+    public void unconfiguredAccountsAreNotLimited() throws Exception {
+        for( int i=0; i<100; i++ ) {
+            RateLimiter.acquire(provider, "DescribeInstances");
+        }
+        for( String name : RateLimiter.getInstance().getBuckets() ) {
+            assertFalse("A bucket was created without a limit", name.startsWith(prefix));
+        }
+    }
+
+    @Test
+    public void requestsBeyondTheMaximumWaitAreThrottled() throws Exception {
+        Properties p = provider.getContext().getCustomProperties();
+
+        p.setProperty(RateLimiter.RATE + ".Describe", "1");
+        p.setProperty(RateLimiter.MAX_WAIT, "10");
+        RateLimiter.acquire(provider, "DescribeInstances");
+        try {
+            RateLimiter.acquire(provider, "DescribeImages");
+            fail("The second request was not throttled");
+        }
+        catch( CloudException e ) {
+            assertEquals("The wrong error type was raised", CloudErrorType.THROTTLING, e.getErrorType());
+        }
+        RateLimiter.acquire(provider, "RunInstances");
+        assertEquals("The request was not counted", 1L, RateLimiter.getInstance().getRequestCount(prefix + "Describe"));
+        assertEquals("The rejection was not counted", 1L, RateLimiter.getInstance().getRejectedCount(prefix + "Describe"));
+    }
+
+    @Test
+    public void waitsAreRecorded() throws Exception {
+        Properties p = provider.getContext().getCustomProperties();
+
+        p.setProperty(RateLimiter.RATE, "20");
+        for( int i=0; i<25; i++ ) {
+            RateLimiter.acquire(provider, null);
+        }
+        String name = prefix + "*";
+
+        assertEquals("Requests were not counted", 25L, RateLimiter.getInstance().getRequestCount(name));
+        assertEquals("Waits were not counted", 5L, RateLimiter.getInstance().getWaitCount(name));
+        assertTrue("The longest wait was not recorded", RateLimiter.getInstance().getMaxWaitInMillis(name) > 0.0);
+    }
+
+    @Test
+    public void tracedCallIsPendingUntilExecuted() {
+        TraceMode mode = APITrace.getMode();
+
+        try {
+            APITrace.setMode(TraceMode.COUNTERS);
+            APITrace.trace(provider, "DescribeInstances");
+            assertEquals("The traced call is not pending", "DescribeInstances", APITrace.getPendingApiCall());
+            APITrace.recordLatency(provider, 1000L);
+            assertNull("The executed call is still pending", APITrace.getPendingApiCall());
+            APITrace.setMode(TraceMode.OFF);
+            APITrace.trace(provider, "DescribeInstances");
+            assertNull("A call was tracked with tracing off", APITrace.getPendingApiCall());
+        }
+        finally {
+            APITrace.setMode(mode);
+        }
+    }
+
+    @Test
+    public void pendingCallMovesWithTheTraceContext() throws Exception {
+        TraceMode mode = APITrace.getMode();
+
+        try {
+            APITrace.setMode(TraceMode.COUNTERS);
+            APITrace.trace(provider, "DescribeInstances");
+
+            final TraceContext context = TraceContext.capture();
+            final AtomicReference<String> pending = new AtomicReference<String>();
+
+            assertNull("The handed off call is still pending on the submitting thread", APITrace.getPendingApiCall());
+
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    context.run(new Runnable() {
+                        @Override
+                        public void run() {
+                            pending.set(APITrace.getPendingApiCall());
+                        }
+                    });
+                }
+            });
+
+            t.start();
+            t.join();
+            assertEquals("The call is not pending on the thread making the request", "DescribeInstances", pending.get());
+        }
+        finally {
+            APITrace.setMode(mode);
+        }
+    }
+}
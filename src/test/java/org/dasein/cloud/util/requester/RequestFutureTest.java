@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.dasein.cloud.CloudException;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies the completion and composition of {@link RequestFuture}.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class RequestFutureTest {
+    static private final DriverToCoreMapper<String, Integer> LENGTH = new DriverToCoreMapper<String, Integer>() {
+        @Override
+        public Integer mapFrom(String entity) {
+            return entity.length();
+        }
+    };
+
+    @Test
+    public void callbacksSeeTheOutcome() {
+        final AtomicReference<String> seen = new AtomicReference<String>();
+        RequestFuture<String> future = new RequestFuture<String>();
+        RequestFuture.Callback<String> callback = new RequestFuture.Callback<String>() {
+            @Override
+            public void onFailure(@Nonnull CloudException error) {
+                seen.set("failed");
+            }
+
+            @Override
+            public void onSuccess(@Nullable String result) {
+                seen.set(result);
+            }
+        };
+
+        future.addCallback(callback);
+        assertTrue("The future did not complete", future.complete("done"));
+        assertFalse("The future completed twice", future.fail(new CloudException("late")));
+        assertEquals("The callback did not run", "done", seen.get());
+        seen.set(null);
+        future.addCallback(callback);
+        assertEquals("A late callback did not run", "done", seen.get());
+    }
+
+    @Test
+    public void mapTransformsResults() throws CloudException {
+        RequestFuture<String> future = new RequestFuture<String>();
+        RequestFuture<Integer> length = future.map(LENGTH);
+
+        assertFalse("The mapped future completed early", length.isDone());
+        future.complete("four");
+        assertEquals("The result was not mapped", Integer.valueOf(4), length.getResult());
+    }
+
+    @Test
+    public void mapperErrorsFailTheMappedFuture() {
+        RequestFuture<Integer> length = RequestFuture.<String>completed(null).map(LENGTH);
+
+        try {
+            length.getResult();
+            fail("The mapper error was swallowed");
+        }
+        catch( CloudException expected ) {
+            assertTrue("The cause is wrong", expected.getCause() instanceof NullPointerException);
+        }
+    }
+
+    @Test
+    public void continuationsChainRequests() throws CloudException {
+        final RequestFuture<Integer> second = new RequestFuture<Integer>();
+        RequestFuture<Integer> chained = RequestFuture.completed("id").then(new RequestFuture.Continuation<String, Integer>() {
+            @Nonnull
+            @Override
+            public RequestFuture<Integer> apply(@Nullable String result) throws CloudException {
+                return second;
+            }
+        });
+
+        assertFalse("The chain completed before the second request", chained.isDone());
+        second.complete(7);
+        assertEquals("The chain result is wrong", Integer.valueOf(7), chained.getResult());
+    }
+
+    @Test
+    public void allOfKeepsOrderAndFailsFast() throws CloudException {
+        RequestFuture<String> a = new RequestFuture<String>();
+        RequestFuture<String> b = new RequestFuture<String>();
+        RequestFuture<List<String>> all = RequestFuture.allOf(Arrays.asList(a, b));
+
+        b.complete("b");
+        a.complete("a");
+        assertEquals("The results are wrong", Arrays.asList("a", "b"), all.getResult());
+
+        CloudException error = new CloudException("failed");
+        RequestFuture<String> c = new RequestFuture<String>();
+        RequestFuture<List<String>> failing = RequestFuture.allOf(Arrays.asList(c, RequestFuture.<String>failed(error)));
+
+        assertTrue("The combined future did not fail fast", failing.isDone());
+        try {
+            failing.getResult();
+            fail("The failure was not reported");
+        }
+        catch( CloudException expected ) {
+            assertSame("The error is wrong", error, expected);
+        }
+        assertTrue("No futures did not complete", RequestFuture.allOf(new ArrayList<RequestFuture<String>>()).isDone());
+    }
+
+    @Test
+    public void cancellationRunsTheCanceller() throws Exception {
+        final AtomicReference<Boolean> aborted = new AtomicReference<Boolean>(false);
+        RequestFuture<String> future = new RequestFuture<String>();
+
+        future.setCanceller(new Runnable() {
+            @Override
+            public void run() {
+                aborted.set(true);
+            }
+        });
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail("The future did not time out");
+        }
+        catch( TimeoutException expected ) {
+            // expected
+        }
+        assertTrue("The future was not cancelled", future.cancel(true));
+        assertTrue("The request was not aborted", aborted.get());
+        assertTrue("The future is not cancelled", future.isCancelled());
+        assertFalse("A cancelled future completed", future.complete("late"));
+        try {
+            future.get();
+            fail("A cancelled future returned a result");
+        }
+        catch( CancellationException expected ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void getWrapsErrors() throws InterruptedException {
+        CloudException error = new CloudException("failed");
+
+        try {
+            RequestFuture.failed(error).get();
+            fail("The error was not reported");
+        }
+        catch( ExecutionException expected ) {
+            assertSame("The cause is wrong", error, expected.getCause());
+        }
+    }
+}
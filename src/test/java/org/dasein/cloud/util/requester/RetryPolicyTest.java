@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.dasein.cloud.CloudErrorType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.URI;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies which failures {@link RetryPolicy} retries, how long it waits and how its retry budget limits retries.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class RetryPolicyTest {
+    static private final HttpUriRequest GET  = new HttpGet("https://api.example.com/servers");
+    static private final HttpUriRequest POST = request("POST");
+
+    static private HttpUriRequest request(final String method) {
+        return (HttpUriRequest)Proxy.newProxyInstance(RetryPolicyTest.class.getClassLoader(), new Class<?>[] { HttpUriRequest.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                if( m.getName().equals("getMethod") ) {
+                    return method;
+                }
+                if( m.getName().equals("getURI") ) {
+                    return URI.create("https://api.example.com/servers");
+                }
+                return null;
+            }
+        });
+    }
+
+    static private HttpResponse response(final int code, final String retryAfter) {
+        final StatusLine status = (StatusLine)Proxy.newProxyInstance(RetryPolicyTest.class.getClassLoader(), new Class<?>[] { StatusLine.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                return (m.getName().equals("getStatusCode") ? code : null);
+            }
+        });
+        final Header header = (retryAfter == null ? null : (Header)Proxy.newProxyInstance(RetryPolicyTest.class.getClassLoader(), new Class<?>[] { Header.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                return (m.getName().equals("getValue") ? retryAfter : "Retry-After");
+            }
+        }));
+
+        return (HttpResponse)Proxy.newProxyInstance(RetryPolicyTest.class.getClassLoader(), new Class<?>[] { HttpResponse.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                if( m.getName().equals("getStatusLine") ) {
+                    return status;
+                }
+                if( m.getName().equals("getFirstHeader") ) {
+                    return ("Retry-After".equalsIgnoreCase((String)args[0]) ? header : null);
+                }
+                return null;
+            }
+        });
+    }
+
+    static private CloudResponseException failure(int code, long retryAfter) {
+        return new CloudResponseException(CloudErrorType.GENERAL, code, "", "failed", retryAfter);
+    }
+
+    static private RetryPolicy policy(int retries, int reserve) {
+        return new RetryPolicy(new RetryPolicy.Budget(10, reserve), retries, 100, 2000);
+    }
+
+    @Test
+    public void throttlingIsRetriedForAnyMethod() {
+        RetryPolicy policy = policy(3, 10);
+
+        assertTrue("429 was not retried", policy.isRetryable(POST, failure(429, -1L)));
+        assertTrue("503 was not retried", policy.isRetryable(POST, failure(503, -1L)));
+    }
+
+    @Test
+    public void serverErrorsAreRetriedOnlyWhenIdempotent() {
+        RetryPolicy policy = policy(3, 10);
+
+        assertTrue("500 was not retried", policy.isRetryable(GET, failure(500, -1L)));
+        assertTrue("504 was not retried", policy.isRetryable(GET, failure(504, -1L)));
+        assertFalse("A POST was retried after a 500", policy.isRetryable(POST, failure(500, -1L)));
+        assertFalse("501 was retried", policy.isRetryable(GET, failure(501, -1L)));
+        assertFalse("404 was retried", policy.isRetryable(GET, failure(404, -1L)));
+        assertFalse("400 was retried", policy.isRetryable(GET, failure(400, -1L)));
+    }
+
+    @Test
+    public void connectionFailuresAreClassified() {
+        RetryPolicy policy = policy(3, 10);
+
+        assertTrue("A refused connection was not retried", policy.isRetryable(POST, new ConnectException("Connection refused")));
+        assertTrue("A wrapped refused connection was not retried", policy.isRetryable(GET, new RuntimeException(new ConnectException("Connection refused"))));
+        assertTrue("A reset was not retried", policy.isRetryable(GET, new SocketException("Connection reset")));
+        assertFalse("A POST was retried after a reset", policy.isRetryable(POST, new SocketException("Connection reset")));
+        assertTrue("A dropped connection was not retried", policy.isRetryable(GET, new NoHttpResponseException("api.example.com failed to respond")));
+        assertFalse("An arbitrary I/O error was retried", policy.isRetryable(GET, new IOException("Stream closed")));
+    }
+
+    @Test
+    public void retriesStopAtTheLimit() {
+        RetryPolicy policy = policy(2, 10);
+
+        assertTrue("The first retry was refused", policy.getDelay(GET, failure(503, -1L), 0) >= 0L);
+        assertTrue("The second retry was refused", policy.getDelay(GET, failure(503, -1L), 1) >= 0L);
+        assertEquals("A third retry was allowed", -1L, policy.getDelay(GET, failure(503, -1L), 2));
+    }
+
+    @Test
+    public void backoffIsJitteredUpToAnExponentialCeiling() {
+        RetryPolicy policy = policy(10, 10);
+
+        for( int retries=0; retries<8; retries++ ) {
+            long ceiling = Math.min(2000L, 100L << retries);
+
+            for( int i=0; i<50; i++ ) {
+                long backoff = policy.getBackoff(retries);
+
+                assertTrue("Backoff of " + backoff + " exceeded " + ceiling, backoff >= 0L && backoff <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void retryAfterIsHonoured() {
+        RetryPolicy policy = policy(3, 10);
+
+        assertEquals("The server's wait was not used", 1500L, policy.getDelay(GET, failure(429, 1500L), 0));
+        assertEquals("A wait longer than the maximum was retried", -1L, policy.getDelay(GET, failure(429, 60000L), 0));
+    }
+
+    @Test
+    public void retryAfterHeaderIsParsed() {
+        SimpleDateFormat fmt = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+
+        fmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+        assertEquals("Seconds were not parsed", 3000L, RetryPolicy.getRetryAfter(response(429, "3")));
+        assertEquals("A missing header was not ignored", -1L, RetryPolicy.getRetryAfter(response(429, null)));
+        assertEquals("An invalid header was not ignored", -1L, RetryPolicy.getRetryAfter(response(429, "soon")));
+
+        long wait = RetryPolicy.getRetryAfter(response(503, fmt.format(new Date(System.currentTimeMillis() + 30000L))));
+
+        assertTrue("The date was not parsed: " + wait, wait > 25000L && wait <= 30000L);
+        assertEquals("A past date was not treated as no wait", 0L, RetryPolicy.getRetryAfter(response(503, fmt.format(new Date(System.currentTimeMillis() - 30000L)))));
+    }
+
+    @Test
+    public void tooManyRequestsIsThrottling() {
+        assertEquals("429 was not throttling", CloudErrorType.THROTTLING, RetryPolicy.getErrorType(response(429, null)));
+        assertEquals("500 was not general", CloudErrorType.GENERAL, RetryPolicy.getErrorType(response(500, null)));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        RetryPolicy policy = policy(3, 2);
+
+        assertTrue("The first retry was refused", policy.getDelay(GET, failure(503, -1L), 0) >= 0L);
+        assertTrue("The second retry was refused", policy.getDelay(GET, failure(503, -1L), 0) >= 0L);
+        assertEquals("A retry was allowed beyond the budget", -1L, policy.getDelay(GET, failure(503, -1L), 0));
+        for( int i=0; i<9; i++ ) {
+            policy.recordRequest();
+        }
+        assertEquals("The budget refilled too quickly", -1L, policy.getDelay(GET, failure(503, -1L), 0));
+        policy.recordRequest();
+        assertTrue("Requests did not refill the budget", policy.getDelay(GET, failure(503, -1L), 0) >= 0L);
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that {@link CodecRegistry} reuses codecs without changing what the stream processors produce.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class CodecRegistryTest {
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+
+    @XmlRootElement(name = "server")
+    static public class Server {
+        public String id;
+        public String name;
+    }
+
+    @XmlRootElement(name = "volume")
+    static public class Volume {
+        public String id;
+    }
+
+    @Test
+    public void jaxbContextsAreCachedPerType() throws Exception {
+        assertSame("The context was not cached", CodecRegistry.getJAXBContext(Server.class), CodecRegistry.getJAXBContext(Server.class));
+        assertNotSame("Types share a context", CodecRegistry.getJAXBContext(Server.class), CodecRegistry.getJAXBContext(Volume.class));
+
+        JAXBContext context = CodecRegistry.getJAXBContext(Server.class);
+
+        CodecRegistry.clear();
+        assertNotSame("The cache was not cleared", context, CodecRegistry.getJAXBContext(Server.class));
+    }
+
+    @Test
+    public void xmlRoundTripsThroughCachedContexts() throws Exception {
+        XmlStreamToObjectProcessor<Server> processor = new XmlStreamToObjectProcessor<Server>();
+        Server server = new Server();
+
+        server.id = "i-1";
+        server.name = "web";
+        for( int i=0; i<3; i++ ) {
+            String xml = processor.write(server);
+            Server copy = processor.read(new ByteArrayInputStream(xml.getBytes(UTF8)), Server.class);
+
+            assertEquals("The ID did not round trip", "i-1", copy.id);
+            assertEquals("The name did not round trip", "web", copy.name);
+        }
+    }
+
+    @Test
+    public void documentParsersAreReusedPerThread() throws Exception {
+        StreamToDocumentProcessor processor = new StreamToDocumentProcessor();
+        Document first = processor.read(new ByteArrayInputStream("<a><b>1</b></a>".getBytes(UTF8)), Document.class);
+        Document second = processor.read(new ByteArrayInputStream("<c/>".getBytes(UTF8)), Document.class);
+
+        assertEquals("The first document is wrong", "a", first.getDocumentElement().getNodeName());
+        assertEquals("The second document is wrong", "c", second.getDocumentElement().getNodeName());
+        assertSame("The parser was not reused", CodecRegistry.getDocumentBuilder(), CodecRegistry.getDocumentBuilder());
+        assertTrue("The document was not written", processor.write(first).contains("<b>1</b>"));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import org.dasein.cloud.util.requester.DriverToCoreMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that {@link JsonStreamToIterableProcessor} finds the array of items at its path and yields its elements.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class JsonStreamToIterableProcessorTest {
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+
+    static public class Item {
+        public String id;
+        public String name;
+    }
+
+    static private class TrackingStream extends ByteArrayInputStream {
+        boolean closed;
+
+        TrackingStream(String json) {
+            super(json.getBytes(UTF8));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    static private final DriverToCoreMapper<Item, String> NAMES = new DriverToCoreMapper<Item, String>() {
+        @Override
+        public String mapFrom(Item entity) {
+            return (entity.id.startsWith("skip") ? null : entity.id + ":" + entity.name);
+        }
+    };
+
+    static private List<String> read(String path, TrackingStream in) throws IOException {
+        List<String> names = new ArrayList<String>();
+
+        for( String name : new JsonStreamToIterableProcessor<Item, String>(path, NAMES, Item.class).read(in) ) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    @Test
+    public void itemsAreReadAtThePath() throws Exception {
+        String json = "{\"response\":{\"servers\":[{\"id\":\"i-1\",\"name\":\"a\"},{\"id\":\"i-2\",\"name\":\"b\"}]}}";
+        List<String> names = read("response/servers", new TrackingStream(json));
+
+        assertEquals("Wrong number of items", 2, names.size());
+        assertEquals("Wrong first item", "i-1:a", names.get(0));
+        assertEquals("Wrong second item", "i-2:b", names.get(1));
+    }
+
+    @Test
+    public void fieldsOffThePathAreSkipped() throws Exception {
+        String json = "{\"meta\":{\"servers\":[{\"id\":\"x\"}]},\"count\":2,\"response\":{\"next\":null," +
+                "\"images\":[{\"id\":\"y\"}],\"servers\":[{\"id\":\"i-1\",\"name\":\"a\"}],\"servers2\":[]}}";
+        List<String> names = read("response/servers", new TrackingStream(json));
+
+        assertEquals("Wrong number of items", 1, names.size());
+        assertEquals("Wrong item", "i-1:a", names.get(0));
+    }
+
+    @Test
+    public void topLevelArrayIsReadWithAnEmptyPath() throws Exception {
+        String json = "[{\"id\":\"i-1\",\"name\":\"a\"},{\"id\":\"i-2\",\"name\":\"b\"}]";
+        List<String> names = read("", new TrackingStream(json));
+
+        assertEquals("Wrong number of items", 2, names.size());
+        assertEquals("Wrong first item", "i-1:a", names.get(0));
+    }
+
+    @Test
+    public void missingPathHasNoItems() throws Exception {
+        TrackingStream in = new TrackingStream("{\"response\":{\"images\":[{\"id\":\"i-1\",\"name\":\"a\"}]}}");
+
+        assertTrue("Items were read from the wrong field", read("response/servers", in).isEmpty());
+        assertTrue("The stream was not closed", in.closed);
+    }
+
+    @Test
+    public void pathToANonArrayHasNoItems() throws Exception {
+        String json = "{\"response\":{\"servers\":{\"id\":\"i-1\",\"name\":\"a\"}}}";
+
+        assertTrue("Items were read from an object", read("response/servers", new TrackingStream(json)).isEmpty());
+    }
+
+    @Test
+    public void nullElementsAreSkipped() throws Exception {
+        String json = "{\"servers\":[null,{\"id\":\"i-1\",\"name\":\"a\"},null]}";
+        List<String> names = read("servers", new TrackingStream(json));
+
+        assertEquals("Wrong number of items", 1, names.size());
+        assertEquals("Wrong item", "i-1:a", names.get(0));
+    }
+
+    @Test
+    public void nullMappingsAreSkipped() throws Exception {
+        String json = "{\"servers\":[{\"id\":\"skip-1\"},{\"id\":\"i-1\",\"name\":\"a\"},{\"id\":\"skip-2\"}]}";
+        List<String> names = read("servers", new TrackingStream(json));
+
+        assertEquals("Wrong number of items", 1, names.size());
+        assertEquals("Wrong item", "i-1:a", names.get(0));
+    }
+
+    @Test
+    public void streamIsClosedAtTheEnd() throws Exception {
+        TrackingStream in = new TrackingStream("{\"servers\":[{\"id\":\"i-1\",\"name\":\"a\"}]}");
+
+        read("servers", in);
+        assertTrue("The stream was not closed", in.closed);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import org.dasein.cloud.util.requester.DriverToCoreMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifies that {@link XmlStreamToIterableProcessor} yields the items of a list response one at a time.
+ * @version 2015.10 initial version
+ * @since 2015.10
+ */
+public class XmlStreamToIterableProcessorTest {
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+
+    static public class Item {
+        public String id;
+        public String name;
+    }
+
+    static private class TrackingStream extends ByteArrayInputStream {
+        boolean closed;
+        int     position;
+        int     size;
+
+        TrackingStream(String xml) {
+            super(xml.getBytes(UTF8));
+            size = count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, Math.min(len, 16));
+
+            position = pos;
+            return n;
+        }
+    }
+
+    static private final DriverToCoreMapper<Item, String> NAMES = new DriverToCoreMapper<Item, String>() {
+        @Override
+        public String mapFrom(Item entity) {
+            return (entity.id.startsWith("skip") ? null : entity.id + ":" + entity.name);
+        }
+    };
+
+    static private String list(int count) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?><response><items>");
+
+        for( int i=0; i<count; i++ ) {
+            xml.append("<item><id>i-").append(i).append("</id><name>vm").append(i).append("</name></item>");
+        }
+        return xml.append("</items></response>").toString();
+    }
+
+    @Test
+    public void itemsAreReadAtThePath() throws Exception {
+        List<String> names = new ArrayList<String>();
+
+        for( String name : new XmlStreamToIterableProcessor<Item, String>("response/items/item", NAMES, Item.class).read(new TrackingStream(list(3))) ) {
+            names.add(name);
+        }
+        assertEquals("Wrong number of items", 3, names.size());
+        assertEquals("Wrong first item", "i-0:vm0", names.get(0));
+        assertEquals("Wrong last item", "i-2:vm2", names.get(2));
+    }
+
+    @Test
+    public void itemsAreReadLazily() throws Exception {
+        TrackingStream in = new TrackingStream(list(200));
+        Iterator<String> it = new XmlStreamToIterableProcessor<Item, String>("response/items/item", NAMES, Item.class).read(in).iterator();
+
+        assertEquals("Wrong first item", "i-0:vm0", it.next());
+        assertTrue("The whole response was read for the first item", in.position < in.size/2);
+        assertFalse("The stream was closed early", in.closed);
+    }
+
+    @Test
+    public void elementsOffThePathAreIgnored() throws Exception {
+        String xml = "<response><meta><item><id>x</id></item></meta><items><item><id>i-1</id><name>a</name></item>" +
+                "<other><item><id>y</id></item></other><item><id>i-2</id><name>b</name></item></items></response>";
+        List<String> names = new ArrayList<String>();
+
+        for( String name : new XmlStreamToIterableProcessor<Item, String>("response/items/item", NAMES, Item.class).read(new TrackingStream(xml)) ) {
+            names.add(name);
+        }
+        assertEquals("Wrong number of items", 2, names.size());
+        assertEquals("Wrong first item", "i-1:a", names.get(0));
+        assertEquals("Wrong second item", "i-2:b", names.get(1));
+    }
+
+    @Test
+    public void nullMappingsAreSkipped() throws Exception {
+        String xml = "<response><items><item><id>skip-1</id></item><item><id>i-1</id><name>a</name></item><item><id>skip-2</id></item></items></response>";
+        List<String> names = new ArrayList<String>();
+
+        for( String name : new XmlStreamToIterableProcessor<Item, String>("response/items/item", NAMES, Item.class).read(new TrackingStream(xml)) ) {
+            names.add(name);
+        }
+        assertEquals("Wrong number of items", 1, names.size());
+        assertEquals("Wrong item", "i-1:a", names.get(0));
+    }
+
+    @Test
+    public void streamIsClosedAtTheEnd() throws Exception {
+        TrackingStream in = new TrackingStream(list(2));
+        Iterator<String> it = new XmlStreamToIterableProcessor<Item, String>("response/items/item", NAMES, Item.class).read(in).iterator();
+
+        while( it.hasNext() ) {
+            it.next();
+        }
+        assertTrue("The stream was not closed", in.closed);
+    }
+
+    @Test
+    public void iterableIsSingleUse() throws Exception {
+        Iterable<String> items = new XmlStreamToIterableProcessor<Item, String>("response/items/item", NAMES, Item.class).read(new TrackingStream(list(1)));
+
+        items.iterator();
+        try {
+            items.iterator();
+            fail("The response was iterated twice");
+        }
+        catch( IllegalStateException expected ) {
+            // expected
+        }
+    }
+}